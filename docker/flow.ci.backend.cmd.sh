@@ -14,6 +14,11 @@ if [[ ! -n $MYSQL_HOST ]]; then
 	export MYSQL_HOST=127.0.0.1
 fi
 
+# set mysql replica jdbc urls separated by comma, default is empty to read from primary only
+if [[ ! -n $MYSQL_REPLICA_URLS ]]; then
+	export MYSQL_REPLICA_URLS=
+fi
+
 # set default port, default is 2181
 if [[ ! -n $FLOW_ZOOKEEPER_PORT ]]; then
     export FLOW_ZOOKEEPER_PORT=2181
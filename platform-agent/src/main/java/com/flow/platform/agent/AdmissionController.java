@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent;
+
+import com.flow.platform.domain.AgentCapacity;
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.util.Logger;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Admit RUN_SHELL cmd by live cpu load, free memory and disk of agent, and the
+ * resource hints of cmd from inputs 'FLOW_JOB_CMD_CPU' and 'FLOW_JOB_CMD_MEMORY'
+ *
+ * The resource of admitted cmd is reserved until released, since the process needs
+ * time to consume it. The free resource is the min of live free and total minus reserved.
+ *
+ * @author yang
+ */
+public class AdmissionController {
+
+    private final static Logger LOGGER = new Logger(AdmissionController.class);
+
+    private final static long MB = 1024 * 1024;
+
+    private final static Path MEM_INFO = Paths.get("/proc/meminfo");
+
+    private final int slots;
+
+    private final Path workspace;
+
+    private final long minDiskFree;
+
+    private final Map<Cmd, AgentCapacity> reserved = new HashMap<>();
+
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+
+    private volatile Consumer<AgentCapacity> listener;
+
+    /**
+     * @param slots max num of concurrent cmd
+     * @param workspace path to check free disk
+     * @param minDiskFree min free disk in MB to admit cmd
+     */
+    public AdmissionController(int slots, Path workspace, long minDiskFree) {
+        this.slots = slots;
+        this.workspace = workspace;
+        this.minDiskFree = minDiskFree;
+    }
+
+    /**
+     * Set listener to receive capacity when cmd admitted or released
+     */
+    public void setListener(Consumer<AgentCapacity> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reserve resource for cmd if it fits current capacity
+     *
+     * @return true if admitted, false if not enough resource
+     */
+    public boolean admit(Cmd cmd) {
+        AgentCapacity demand = AgentCapacity.demandOf(cmd.getInputs());
+        demand.setDisk(minDiskFree);
+
+        AgentCapacity capacity;
+        synchronized (reserved) {
+            capacity = capacity();
+            if (!capacity.fits(demand)) {
+                LOGGER.trace("Cmd %s not admitted since demand %s over %s", cmd.getId(), demand, capacity);
+                return false;
+            }
+
+            reserved.put(cmd, demand);
+            capacity = capacity();
+        }
+
+        notifyListener(capacity);
+        return true;
+    }
+
+    /**
+     * Release reserved resource of cmd
+     */
+    public void release(Cmd cmd) {
+        AgentCapacity capacity;
+        synchronized (reserved) {
+            if (reserved.remove(cmd) == null) {
+                return;
+            }
+            capacity = capacity();
+        }
+
+        notifyListener(capacity);
+    }
+
+    /**
+     * Release all reserved resource
+     */
+    public void releaseAll() {
+        AgentCapacity capacity;
+        synchronized (reserved) {
+            if (reserved.isEmpty()) {
+                return;
+            }
+            reserved.clear();
+            capacity = capacity();
+        }
+
+        notifyListener(capacity);
+    }
+
+    /**
+     * @return remaining capacity of agent
+     */
+    public AgentCapacity capacity() {
+        synchronized (reserved) {
+            double reservedCpu = 0.0;
+            long reservedMemory = 0L;
+
+            for (AgentCapacity demand : reserved.values()) {
+                reservedCpu += demand.getCpu();
+                reservedMemory += demand.getMemory();
+            }
+
+            int cores = osBean.getAvailableProcessors();
+            double load = Math.max(0.0, osBean.getSystemLoadAverage()); // negative if not available
+            double cpu = Math.min(cores - load, cores - reservedCpu);
+
+            long memory = Math.min(freeMemory(), totalMemory() - reservedMemory);
+            long disk = workspace.toFile().getUsableSpace() / MB;
+
+            return new AgentCapacity(Math.max(0.0, cpu), Math.max(0L, memory), disk, slots - reserved.size());
+        }
+    }
+
+    /**
+     * Read 'MemAvailable' from /proc/meminfo since free physical memory excludes reclaimable page cache
+     */
+    private long freeMemory() {
+        try {
+            for (String line : Files.readAllLines(MEM_INFO)) {
+                if (line.startsWith("MemAvailable:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024; // in kB
+                }
+            }
+        } catch (IOException | NumberFormatException ignore) {
+            // fallback to free physical memory
+        }
+
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getFreePhysicalMemorySize() / MB;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private long totalMemory() {
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getTotalPhysicalMemorySize() / MB;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void notifyListener(AgentCapacity capacity) {
+        Consumer<AgentCapacity> current = listener;
+        if (current == null) {
+            return;
+        }
+
+        try {
+            current.accept(capacity);
+        } catch (Throwable e) {
+            LOGGER.warn("Unable to notify agent capacity: %s", e.getMessage());
+        }
+    }
+}
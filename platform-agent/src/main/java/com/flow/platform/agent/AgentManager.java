@@ -16,13 +16,16 @@
 
 package com.flow.platform.agent;
 
+import com.flow.platform.domain.AgentCapacity;
 import com.flow.platform.domain.Cmd;
-import com.flow.platform.domain.Jsonable;
 import com.flow.platform.util.Logger;
 import com.flow.platform.util.zk.ZKClient;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
@@ -43,6 +46,15 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
     private final static int ZK_RECONNECT_TIME = 1;
     private final static int ZK_RETRY_PERIOD = 500;
 
+    // period to publish agent capacity to zk node data in seconds
+    private final static int CAPACITY_PUBLISH_PERIOD = 10;
+
+    // skip periodic publish if capacity not changed over the threshold, to reduce zk writes
+    private final static double CAPACITY_CPU_THRESHOLD = 0.5;
+    private final static long CAPACITY_MEMORY_THRESHOLD = 128; // MB
+    private final static long CAPACITY_DISK_THRESHOLD = 1024; // MB
+    private final static long CAPACITY_LOG_DISK_THRESHOLD = 100; // MB
+
     private String zkHost;
     private int zkTimeout;
     private ZKClient zkClient;
@@ -55,6 +67,16 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
 
     private List<Cmd> cmdHistory = new LinkedList<>();
 
+    private final CmdInbox cmdInbox;
+
+    private final ScheduledExecutorService capacityPublisher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "agent-capacity-publisher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile AgentCapacity lastCapacity;
+
     public AgentManager(String zkHost, int zkTimeout, String zone, String name) throws IOException {
         this.zkHost = zkHost;
         this.zkTimeout = zkTimeout;
@@ -64,6 +86,7 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
         this.name = name;
         this.zonePath = ZKPaths.makePath(Config.ZK_ROOT, this.zone);
         this.nodePath = ZKPaths.makePath(this.zonePath, this.name);
+        this.cmdInbox = new CmdInbox(zkClient, zone, name, this::onCmdReceived);
     }
 
     public ZKClient getZkClient() {
@@ -78,6 +101,10 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
         return cmdHistory;
     }
 
+    public CmdInbox getCmdInbox() {
+        return cmdInbox;
+    }
+
     /**
      * Stop agent
      */
@@ -94,6 +121,15 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
 
         registerZkNodeAndWatch();
 
+        // publish capacity on cmd admitted or released, and periodically for live load and workspaces
+        CmdManager.getInstance().getAdmission().setListener(capacity -> publishCapacity(withLocalState(capacity)));
+        capacityPublisher.scheduleWithFixedDelay(() -> {
+            AgentCapacity capacity = currentCapacity();
+            if (isCapacityChanged(capacity)) {
+                publishCapacity(capacity);
+            }
+        }, CAPACITY_PUBLISH_PERIOD, CAPACITY_PUBLISH_PERIOD, TimeUnit.SECONDS);
+
         synchronized (STATUS_LOCKER) {
             try {
                 STATUS_LOCKER.wait();
@@ -133,9 +169,9 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
             return;
         }
 
+        // cmd is delivered by inbox instead of node data
         if (event.getType() == Type.NODE_UPDATED) {
             LOGGER.traceMarker("ZK-Event", "========= Node Updated: %s =========", eventData.getPath());
-            onDataChanged(eventData.getPath());
             return;
         }
 
@@ -148,6 +184,7 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
 
     @Override
     public void close() throws IOException {
+        capacityPublisher.shutdownNow();
         removeZkNode();
         stop();
     }
@@ -166,44 +203,70 @@ public class AgentManager implements Runnable, TreeCacheListener, AutoCloseable
         }
     }
 
-    private void onDataChanged(String path) {
-        final Cmd cmd;
-
-        try {
-            final byte[] rawData = zkClient.getData(path);
-            if (rawData == null) {
-                LOGGER.warn("Zookeeper node data is null");
-                return;
-            }
-
-            cmd = Jsonable.parse(rawData, Cmd.class);
-            if (cmd == null) {
-                LOGGER.warn("Unable to parse cmd from zk node: " + new String(rawData));
-                return;
-            }
-
-            cmdHistory.add(cmd);
-            LOGGER.trace("Received command: " + cmd.toString());
-            CmdManager.getInstance().execute(cmd);
-
-        } catch (Throwable e) {
-            LOGGER.error("Invalid cmd from server", e);
-            // TODO: should report agent status directly...
-        }
+    private void onCmdReceived(Cmd cmd) {
+        cmdHistory.add(cmd);
+        LOGGER.trace("Received command: %s", cmd);
+        CmdManager.getInstance().execute(cmd);
     }
 
     /**
      * Register agent node to server
-     * Monitor data changed event
+     * Monitor node event and cmd inbox
      *
      * @return path of zookeeper or null if failure
      */
     private String registerZkNodeAndWatch() {
-        String path = zkClient.createEphemeral(nodePath, null);
+        AgentCapacity capacity = currentCapacity();
+        String path = zkClient.createEphemeral(nodePath, capacity.toBytes());
+        lastCapacity = capacity;
         zkClient.watchTree(path, this);
+        cmdInbox.start();
         return path;
     }
 
+    /**
+     * Set capacity to agent node data, the control center selects agent by it
+     */
+    private void publishCapacity(AgentCapacity capacity) {
+        try {
+            zkClient.setData(nodePath, capacity.toBytes());
+            lastCapacity = capacity;
+            LOGGER.trace("Capacity published: %s", capacity);
+        } catch (Throwable e) {
+            LOGGER.warn("Unable to publish capacity: %s", e.getMessage());
+        }
+    }
+
+    private AgentCapacity currentCapacity() {
+        return withLocalState(CmdManager.getInstance().getAdmission().capacity());
+    }
+
+    /**
+     * Add warm workspaces to capacity as affinity hints for the control center, and the log disk usage
+     */
+    private AgentCapacity withLocalState(AgentCapacity capacity) {
+        CmdManager cmdManager = CmdManager.getInstance();
+        capacity.setWorkspaces(cmdManager.getWorkspaceManager().keys());
+        capacity.setLogDisk(cmdManager.getLogSpool().usage() / 1024 / 1024);
+        capacity.setLogPressure(cmdManager.getLogSpool().isPressure());
+        return capacity;
+    }
+
+    private boolean isCapacityChanged(AgentCapacity capacity) {
+        AgentCapacity last = lastCapacity;
+        if (last == null) {
+            return true;
+        }
+
+        return last.getSlots() != capacity.getSlots()
+            || !last.getWorkspaces().equals(capacity.getWorkspaces())
+            || Math.abs(last.getCpu() - capacity.getCpu()) >= CAPACITY_CPU_THRESHOLD
+            || Math.abs(last.getMemory() - capacity.getMemory()) >= CAPACITY_MEMORY_THRESHOLD
+            || Math.abs(last.getDisk() - capacity.getDisk()) >= CAPACITY_DISK_THRESHOLD
+            || last.isLogPressure() != capacity.isLogPressure()
+            || Math.abs(last.getLogDisk() - capacity.getLogDisk()) >= CAPACITY_LOG_DISK_THRESHOLD;
+    }
+
     private void removeZkNode() {
         zkClient.deleteWithoutGuaranteed(nodePath, false);
     }
@@ -0,0 +1,514 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent;
+
+import com.flow.platform.domain.CmdCache;
+import com.flow.platform.util.Logger;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local content addressed dependency cache for RUN_SHELL cmd
+ *
+ * - objects/{xx}/{sha256}[x]: file content, shared by all cache entries, 'x' suffix for executable
+ * - keys/{sha256 of path and key}: manifest of dirs, files and symbol links of cache entry
+ *
+ * Files are copied from objects by default, or restored by hard link to objects if enabled. Objects are
+ * stored as read-only, so file restored by hard link has to be replaced rather than modified in place.
+ * The size and modified time of object are recorded in manifest as well, the entry will be dropped
+ * on restore if object still been modified in place.
+ *
+ * The cache entry is immutable by key, so it's saved only once, and least recently used entries
+ * are evicted when total size of objects over quota.
+ *
+ * @author yang
+ */
+public class CacheManager {
+
+    private final static Logger LOGGER = new Logger(CacheManager.class);
+
+    private final static long MB = 1024 * 1024;
+
+    private final static Pattern ENV_PATTERN = Pattern.compile("\\$\\{([A-Za-z0-9_]+)}");
+
+    private final static Pattern CHECKSUM_PATTERN = Pattern.compile("\\{\\{\\s*checksum\\s+\"?([^\"}]+?)\"?\\s*}}");
+
+    private final static char SEPARATOR = '\t';
+
+    private final static String TYPE_DIR = "D";
+
+    private final static String TYPE_FILE = "F";
+
+    private final static String TYPE_LINK = "L";
+
+    private final Path objects;
+
+    private final Path keys;
+
+    private final Path tmp;
+
+    private final long quota;
+
+    private final boolean hardLink;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param root root dir of cache
+     * @param quota max total size of cached objects in MB
+     * @param hardLink restore file by hard link if possible
+     */
+    public CacheManager(Path root, long quota, boolean hardLink) {
+        this.objects = root.resolve("objects");
+        this.keys = root.resolve("keys");
+        this.tmp = root.resolve("tmp");
+        this.quota = quota * MB;
+        this.hardLink = hardLink;
+
+        try {
+            Files.createDirectories(objects);
+            Files.createDirectories(keys);
+            Files.createDirectories(tmp);
+
+            // clean tmp files left by interrupted save
+            try (Stream<Path> stream = Files.list(tmp)) {
+                for (Path file : stream.collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to create cache dir %s: %s", root, e.getMessage());
+        }
+    }
+
+    /**
+     * Restore caches to working dir
+     *
+     * @return num of hits, misses and the restore time
+     */
+    public CacheStats restore(List<CmdCache> caches, Path workingDir, Map<String, String> inputs) {
+        CacheStats stats = new CacheStats();
+        long start = System.currentTimeMillis();
+
+        lock.readLock().lock();
+        try {
+            for (CmdCache cache : caches) {
+                Path target = resolvePath(cache.getPath(), workingDir);
+                Path manifest = keys.resolve(entryName(cache, workingDir, inputs));
+
+                try {
+                    if (Files.exists(manifest) && restore(manifest, target)) {
+                        Files.setLastModifiedTime(manifest, FileTime.fromMillis(System.currentTimeMillis()));
+                        stats.hits++;
+                        LOGGER.trace("Cache restored: %s", cache);
+                        continue;
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to restore cache %s: %s", cache, e.getMessage());
+                }
+
+                stats.misses++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        stats.restoreTime = System.currentTimeMillis() - start;
+        return stats;
+    }
+
+    /**
+     * Save caches from working dir if the key not been cached
+     */
+    public void save(List<CmdCache> caches, Path workingDir, Map<String, String> inputs) {
+        lock.readLock().lock();
+        try {
+            for (CmdCache cache : caches) {
+                Path source = resolvePath(cache.getPath(), workingDir);
+                Path manifest = keys.resolve(entryName(cache, workingDir, inputs));
+
+                if (Files.exists(manifest) || !Files.isDirectory(source)) {
+                    continue;
+                }
+
+                try {
+                    save(source, manifest);
+                    LOGGER.trace("Cache saved: %s", cache);
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to save cache %s: %s", cache, e.getMessage());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        evict();
+    }
+
+    /**
+     * Delete least recently used entries and unreferenced objects if total size over quota
+     */
+    public void evict() {
+        lock.writeLock().lock();
+        try {
+            List<Path> manifests;
+            try (Stream<Path> stream = Files.list(keys)) {
+                manifests = stream
+                    .sorted(Comparator.comparingLong((Path path) -> path.toFile().lastModified()).reversed())
+                    .collect(Collectors.toList());
+            }
+
+            // keep most recently used entries until the size of referenced objects over quota
+            Set<String> referenced = new HashSet<>();
+            long total = 0;
+
+            for (Path manifest : manifests) {
+                Map<String, Long> entryObjects = new HashMap<>();
+                for (String[] item : readManifest(manifest)) {
+                    if (TYPE_FILE.equals(item[0]) && !referenced.contains(item[1])) {
+                        entryObjects.put(item[1], Long.parseLong(item[2]));
+                    }
+                }
+
+                long entrySize = entryObjects.values().stream().mapToLong(Long::longValue).sum();
+                if (total + entrySize > quota) {
+                    Files.deleteIfExists(manifest);
+                    LOGGER.trace("Cache entry evicted: %s", manifest.getFileName());
+                    continue;
+                }
+
+                total += entrySize;
+                referenced.addAll(entryObjects.keySet());
+            }
+
+            deleteUnreferencedObjects(referenced);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to evict cache: %s", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Resolve key template with ${ENV} and {{ checksum "file" }}
+     */
+    static String resolveKey(String template, Path workingDir, Map<String, String> inputs) {
+        StringBuffer buffer = new StringBuffer();
+
+        Matcher checksum = CHECKSUM_PATTERN.matcher(template);
+        while (checksum.find()) {
+            Path file = resolvePath(resolveEnv(checksum.group(1), inputs), workingDir);
+            checksum.appendReplacement(buffer, Matcher.quoteReplacement(checksumOf(file)));
+        }
+        checksum.appendTail(buffer);
+
+        return resolveEnv(buffer.toString(), inputs);
+    }
+
+    private static String resolveEnv(String value, Map<String, String> inputs) {
+        StringBuffer buffer = new StringBuffer();
+
+        Matcher env = ENV_PATTERN.matcher(value);
+        while (env.find()) {
+            String envValue = inputs.get(env.group(1));
+            if (envValue == null) {
+                envValue = Strings.nullToEmpty(System.getenv(env.group(1)));
+            }
+            env.appendReplacement(buffer, Matcher.quoteReplacement(envValue));
+        }
+        env.appendTail(buffer);
+
+        return buffer.toString();
+    }
+
+    private static Path resolvePath(String path, Path workingDir) {
+        if (path.equals("~") || path.startsWith("~/")) {
+            return Paths.get(System.getProperty("user.home") + path.substring(1));
+        }
+        return workingDir.resolve(path);
+    }
+
+    private static String checksumOf(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return "missing";
+        }
+
+        try {
+            return hashOf(file);
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
+    private static String entryName(CmdCache cache, Path workingDir, Map<String, String> inputs) {
+        String key = resolveKey(cache.getKey(), workingDir, inputs);
+        return Hashing.sha256().hashString(cache.getPath() + "\n" + key, Charsets.UTF_8).toString();
+    }
+
+    private static String hashOf(Path file) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                hasher.putBytes(buffer, 0, read);
+            }
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private Path objectPath(String object) {
+        return objects.resolve(object.substring(0, 2)).resolve(object);
+    }
+
+    /**
+     * Restore entry from manifest, existing files in target are kept
+     *
+     * @return false if any object been lost or modified, and the manifest is deleted
+     */
+    private boolean restore(Path manifest, Path target) throws IOException {
+        List<String[]> items = readManifest(manifest);
+
+        // verify objects before restore
+        for (String[] item : items) {
+            if (!TYPE_FILE.equals(item[0])) {
+                continue;
+            }
+
+            Path object = objectPath(item[1]);
+            if (!Files.exists(object)
+                || Files.size(object) != Long.parseLong(item[2])
+                || Files.getLastModifiedTime(object).toMillis() != Long.parseLong(item[3])) {
+                LOGGER.warn("Cache object %s been modified, drop entry %s", item[1], manifest.getFileName());
+                Files.deleteIfExists(manifest);
+                Files.deleteIfExists(object);
+                return false;
+            }
+        }
+
+        Files.createDirectories(target);
+
+        for (String[] item : items) {
+            Path path = target.resolve(item[item.length - 1]);
+
+            if (TYPE_DIR.equals(item[0])) {
+                Files.createDirectories(path);
+                continue;
+            }
+
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+
+            if (TYPE_LINK.equals(item[0])) {
+                Files.createSymbolicLink(path, Paths.get(item[1]));
+                continue;
+            }
+
+            linkOrCopy(objectPath(item[1]), path);
+        }
+
+        return true;
+    }
+
+    private void linkOrCopy(Path object, Path path) throws IOException {
+        if (hardLink) {
+            try {
+                Files.createLink(path, object);
+                return;
+            } catch (UnsupportedOperationException | IOException ignore) {
+                // cross file system or not supported, copy it
+            }
+        }
+
+        Files.copy(object, path, StandardCopyOption.COPY_ATTRIBUTES);
+        path.toFile().setWritable(true);
+    }
+
+    private void save(Path source, Path manifest) throws IOException {
+        StringBuilder builder = new StringBuilder();
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(source)) {
+                    appendLine(builder, TYPE_DIR, relative(source, dir));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isSymbolicLink()) {
+                    appendLine(builder, TYPE_LINK, Files.readSymbolicLink(file).toString(), relative(source, file));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                String object = hashOf(file) + (Files.isExecutable(file) ? "x" : "");
+                Path objectPath = storeObject(file, object);
+
+                appendLine(builder, TYPE_FILE,
+                    object,
+                    Long.toString(Files.size(objectPath)),
+                    Long.toString(Files.getLastModifiedTime(objectPath).toMillis()),
+                    relative(source, file));
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Path tmpManifest = tmp.resolve(UUID.randomUUID().toString());
+        Files.write(tmpManifest, builder.toString().getBytes(Charsets.UTF_8));
+        moveAtomic(tmpManifest, manifest);
+    }
+
+    /**
+     * Copy file to objects as read-only if not exist
+     */
+    private Path storeObject(Path file, String object) throws IOException {
+        Path objectPath = objectPath(object);
+        if (Files.exists(objectPath)) {
+            return objectPath;
+        }
+
+        Files.createDirectories(objectPath.getParent());
+
+        Path tmpObject = tmp.resolve(UUID.randomUUID().toString());
+        Files.copy(file, tmpObject, StandardCopyOption.REPLACE_EXISTING);
+        tmpObject.toFile().setExecutable(object.endsWith("x"));
+        tmpObject.toFile().setWritable(false, false);
+
+        try {
+            moveAtomic(tmpObject, objectPath);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(tmpObject); // saved by other cmd
+        }
+
+        return objectPath;
+    }
+
+    private void deleteUnreferencedObjects(Set<String> referenced) throws IOException {
+        try (Stream<Path> stream = Files.walk(objects, 2)) {
+            for (Path object : stream.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                if (!referenced.contains(object.getFileName().toString())) {
+                    Files.deleteIfExists(object);
+                }
+            }
+        }
+    }
+
+    private static void moveAtomic(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to);
+        }
+    }
+
+    private static List<String[]> readManifest(Path manifest) throws IOException {
+        List<String[]> items = new ArrayList<>();
+
+        try {
+            for (String line : Files.readAllLines(manifest, Charsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    items.add(line.split(String.valueOf(SEPARATOR)));
+                }
+            }
+        } catch (NoSuchFileException ignore) {
+            // evicted
+        }
+
+        return items;
+    }
+
+    private static String relative(Path root, Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    private static void appendLine(StringBuilder builder, String... fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(fields[i]);
+        }
+        builder.append('\n');
+    }
+
+    public static class CacheStats {
+
+        private int hits;
+
+        private int misses;
+
+        private long restoreTime;
+
+        public int getHits() {
+            return hits;
+        }
+
+        public int getMisses() {
+            return misses;
+        }
+
+        public long getRestoreTime() {
+            return restoreTime;
+        }
+    }
+}
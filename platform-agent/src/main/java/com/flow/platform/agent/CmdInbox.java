@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.agent;
+
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.codec.Codecs;
+import com.flow.platform.util.Logger;
+import com.flow.platform.util.zk.ZKClient;
+import com.flow.platform.util.zk.ZkException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent.Type;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
+
+/**
+ * Agent cmd inbox on zookeeper persistent sequential nodes
+ *
+ * Control center append cmd to /flow-agents-inbox/{zone}/{name}/cmd-{seq}, agent read all pending
+ * cmd in sequence for each watch event and delete node after cmd accepted. The cmd maybe delivered
+ * more than once if agent crashed before deleting, so received cmd id is recorded to skip duplicate
+ *
+ * @author yang
+ */
+public class CmdInbox implements PathChildrenCacheListener {
+
+    private final static Logger LOGGER = new Logger(CmdInbox.class);
+
+    private final static int MAX_RECEIVED_RECORDS = 1000;
+
+    private final ZKClient zkClient;
+
+    private final String inboxPath;
+
+    private final Consumer<Cmd> consumer;
+
+    private final Set<String> received = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_RECEIVED_RECORDS;
+        }
+    });
+
+    public CmdInbox(ZKClient zkClient, String zone, String name, Consumer<Cmd> consumer) {
+        this.zkClient = zkClient;
+        this.inboxPath = ZKPaths.makePath(Config.ZK_INBOX_ROOT, zone, name);
+        this.consumer = consumer;
+    }
+
+    public String getInboxPath() {
+        return inboxPath;
+    }
+
+    /**
+     * Watch inbox and handle pending cmd
+     */
+    public void start() {
+        zkClient.create(inboxPath, null);
+        zkClient.watchChildren(inboxPath, this);
+        drain();
+    }
+
+    @Override
+    public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+        if (event.getType() == Type.CHILD_ADDED || event.getType() == Type.CONNECTION_RECONNECTED) {
+            drain();
+        }
+    }
+
+    /**
+     * Read and ack all pending cmd in inbox by sequence
+     *
+     * @return num of cmd been handled
+     */
+    public synchronized int drain() {
+        List<String> children;
+        try {
+            children = zkClient.getChildren(inboxPath);
+        } catch (ZkException e) {
+            LOGGER.warn("Unable to read cmd inbox %s: %s", inboxPath, e.getMessage());
+            return 0;
+        }
+
+        // sequence suffix has fixed length
+        Collections.sort(children);
+
+        int count = 0;
+        for (String child : children) {
+            String path = ZKPaths.makePath(inboxPath, child);
+
+            try {
+                Cmd cmd = Codecs.decode(zkClient.getData(path), Cmd.class);
+
+                if (cmd == null) {
+                    LOGGER.warn("Unable to parse cmd from inbox node: %s", path);
+                } else if (markReceived(cmd.getId())) {
+                    consumer.accept(cmd);
+                    count++;
+                } else {
+                    LOGGER.trace("Duplicate cmd %s from inbox been skipped", cmd.getId());
+                }
+
+                zkClient.deleteWithoutGuaranteed(path, false);
+            } catch (ZkException.NotExitException ignore) {
+                // node been handled by other event
+            } catch (Throwable e) {
+                LOGGER.error("Fail to handle cmd from inbox node: " + path, e);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return false if cmd been received
+     */
+    private boolean markReceived(String cmdId) {
+        return cmdId == null || received.add(cmdId);
+    }
+}
@@ -16,23 +16,35 @@
 
 package com.flow.platform.agent;
 
+import com.flow.platform.agent.WorkspaceManager.Workspace;
 import com.flow.platform.cmd.CmdExecutor;
 import com.flow.platform.cmd.Log;
 import com.flow.platform.cmd.Log.Type;
 import com.flow.platform.cmd.ProcListener;
+import com.flow.platform.cmd.ProcTree;
+import com.flow.platform.domain.AgentCapacity;
 import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.CmdCache;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
 import com.flow.platform.domain.CmdType;
 import com.flow.platform.domain.Jsonable;
+import com.flow.platform.domain.LayeredEnvs;
 import com.flow.platform.util.Logger;
+import com.flow.platform.util.SystemUtil;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -50,6 +62,10 @@ public class CmdManager {
 
     private final static Logger LOGGER = new Logger(CmdManager.class);
 
+    private final static int MAX_REJECTED_RECORDS = 100;
+
+    private final static int MAX_ENV_BASES = 20;
+
     private final static CmdManager INSTANCE = new CmdManager();
 
     public static CmdManager getInstance() {
@@ -62,8 +78,45 @@ public class CmdManager {
     // finished cmd data
     private final Map<Cmd, CmdResult> finished = Maps.newConcurrentMap();
 
-    // rejected cmd data
-    private final Map<Cmd, CmdResult> rejected = Maps.newConcurrentMap();
+    // rejected cmd data, only keep latest records
+    private final Map<Cmd, CmdResult> rejected = Collections.synchronizedMap(new LinkedHashMap<Cmd, CmdResult>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Cmd, CmdResult> eldest) {
+            return size() > MAX_REJECTED_RECORDS;
+        }
+    });
+
+    // env base layers of sessions by digest, the cmd inputs only include layers above it
+    private final Map<String, LayeredEnvs> envBases = Collections.synchronizedMap(
+        new LinkedHashMap<String, LayeredEnvs>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LayeredEnvs> eldest) {
+                return size() > MAX_ENV_BASES;
+            }
+        });
+
+    // keep job workspaces by flow and branch
+    private final WorkspaceManager workspaceManager =
+        new WorkspaceManager(Config.workspaceDir(), Config.workspaceQuota());
+
+    // dependency caches declared by step
+    private final CacheManager cacheManager =
+        new CacheManager(Config.cacheDir(), Config.cacheQuota(), Config.isCacheHardLink());
+
+    // cmd logs with bounded disk usage
+    private final LogSpool logSpool = new LogSpool(
+        Config.logDir(),
+        Config.logQuota(),
+        Config.logCmdQuota(),
+        Config.logSegmentSize(),
+        Config.logRetention(),
+        Config.logMinDiskFree());
+
+    // admit cmd by free resource and cmd resource hints
+    private final AdmissionController admission = new AdmissionController(
+        Config.concurrentThreadNum(),
+        workspaceManager.getRoot(),
+        Config.cmdMinDiskFree());
 
     // Make thread to Daemon thread, those threads exit while JVM exist
     private final ThreadFactory defaultFactory = r -> {
@@ -105,6 +158,18 @@ public class CmdManager {
         return rejected;
     }
 
+    public WorkspaceManager getWorkspaceManager() {
+        return workspaceManager;
+    }
+
+    public LogSpool getLogSpool() {
+        return logSpool;
+    }
+
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
     public ThreadPoolExecutor getCmdExecutor() {
         return cmdExecutor;
     }
@@ -134,7 +199,7 @@ public class CmdManager {
             }
 
             String shutdownCmd = String.format("echo %s | sudo -S shutdown -h now", password);
-            LOGGER.trace("Shutdown command: " + shutdownCmd);
+            LOGGER.trace("Shutdown command: %s", shutdownCmd);
 
             // exec shutdown command
             CmdExecutor executor = new CmdExecutor(null, Lists.newArrayList(shutdownCmd));
@@ -152,13 +217,25 @@ public class CmdManager {
      */
     public void execute(final Cmd cmd) {
         if (cmd.getType() == CmdType.RUN_SHELL) {
-            // check max concurrent proc
-            int max = cmdExecutor.getMaximumPoolSize();
-            int cur = cmdExecutor.getActiveCount();
-            LOGGER.trace(" ===== CmdExecutor: max=%s, current=%s =====", max, cur);
+            // resolve inputs with env base layer before read resource hints from it
+            try {
+                cmd.setInputs(LayeredEnvs.resolve(cmd.getInputs(), envBases));
+            } catch (IllegalStateException e) {
+                LOGGER.warn("Unable to resolve inputs of cmd '%s': %s", cmd.getId(), e.getMessage());
+                CmdResult result = new CmdResult();
+                result.getExceptions().add(e);
+
+                // base layer lost by restart or eviction, let api resend cmd with base layer
+                if (!cmd.getInputs().containsKey(LayeredEnvs.ENV_BASE_LAYER)) {
+                    result.setExitValue(CmdResult.EXIT_VALUE_FOR_ENV_BASE_MISSING);
+                }
 
-            // reach max proc number, reject this execute
-            if (max == cur) {
+                new ProcEventHandler(cmd, extraProcEventListeners, running, finished).onException(result);
+                return;
+            }
+
+            // reserve resource of cmd, reject if over capacity of agent
+            if (!admission.admit(cmd)) {
                 onReject(cmd);
                 return;
             }
@@ -173,22 +250,61 @@ public class CmdManager {
                     ProcEventHandler procEventHandler =
                         new ProcEventHandler(getCmd(), extraProcEventListeners, running, finished);
 
+                    Workspace workspace = null;
+
                     try {
+                        Map<String, String> inputs = cmd.getInputs();
+                        String workingDir = cmd.getWorkingDir();
+                        String workspaceKey = AgentCapacity.workspaceOf(inputs);
+
+                        // run in kept workspace of flow and branch if working dir not specified
+                        if (workingDir == null && workspaceKey != null) {
+                            workspace = workspaceManager.acquire(workspaceKey, cmd.getSessionId());
+                            workingDir = workspace.getDir().toString();
+
+                            inputs = LayeredEnvs.overlay(inputs, ImmutableMap.of(
+                                WorkspaceManager.ENV_WORKSPACE, workingDir,
+                                WorkspaceManager.ENV_WORKSPACE_WARM, Boolean.toString(workspace.isWarm())));
+                        }
+
+                        // restore dependency caches before run
+                        List<CmdCache> caches = CmdCache.listOf(inputs);
+                        Path cacheBase = workingDir == null
+                            ? Paths.get(System.getProperty("user.dir"))
+                            : SystemUtil.replacePathWithEnv(workingDir);
+
+                        if (!caches.isEmpty()) {
+                            procEventHandler.setCacheStats(cacheManager.restore(caches, cacheBase, inputs));
+                            inputs = new HashMap<>(inputs);
+                            inputs.remove(CmdCache.ENV_CMD_CACHE);
+                        }
+
                         CmdExecutor executor = new CmdExecutor(
                             procEventHandler,
                             logListener,
-                            cmd.getInputs(),
-                            cmd.getWorkingDir(),
+                            inputs,
+                            workingDir,
                             cmd.getOutputEnvFilter(),
                             cmd.getTimeout(),
                             Lists.newArrayList(getCmd().getCmd()));
 
-                        executor.run();
+                        executor.setLimit(Config.cmdMemoryLimit(), Config.cmdCpuTimeLimit());
+                        CmdResult result = executor.run();
+
+                        // save dependency caches only if cmd succeed
+                        if (!caches.isEmpty() && result != null && Objects.equals(result.getExitValue(), 0)) {
+                            cacheManager.save(caches, cacheBase, inputs);
+                        }
                     } catch (Throwable e) {
                         LOGGER.errorMarker("execute", "Cannot init CmdExecutor for cmd " + cmd, e);
                         CmdResult result = new CmdResult();
                         result.getExceptions().add(e);
                         procEventHandler.onException(result);
+                    } finally {
+                        if (workspace != null) {
+                            workspaceManager.release(workspace);
+                        }
+                        admission.release(getCmd());
                     }
                 }
             });
@@ -205,6 +321,12 @@ public class CmdManager {
             return;
         }
 
+        // session ended, workspace of session can be used by others or evicted
+        if (cmd.getType() == CmdType.DELETE_SESSION) {
+            defaultExecutor.execute(() -> workspaceManager.endSession(cmd.getSessionId()));
+            return;
+        }
+
         // kill current running proc
         if (cmd.getType() == CmdType.KILL) {
             defaultExecutor.execute(this::kill);
@@ -265,6 +387,10 @@ public class CmdManager {
             Cmd cmd = entry.getKey();
             finished.put(cmd, r);
 
+            // kill whole process tree since background processes would not be killed by destroy
+            if (r.getProcessId() != null) {
+                ProcTree.kill(r.getProcessId());
+            }
             r.getProcess().destroy();
 
             ReportManager.getInstance().cmdReportSync(cmd.getId(), CmdStatus.KILLED, r);
@@ -276,6 +402,7 @@ public class CmdManager {
         } catch (Throwable ignore) {
 
         } finally {
+            admission.releaseAll();
             cmdExecutor = createExecutor(); // reset cmd executor
             LOGGER.trace("Cmd thread terminated");
         }
@@ -292,7 +419,7 @@ public class CmdManager {
 
         rejected.put(cmd, rejectResult);
         ReportManager.getInstance().cmdReportSync(cmd.getId(), CmdStatus.REJECTED, null);
-        LOGGER.warn("Reject cmd '%s' since over the limit proc of agent", cmd.getId());
+        LOGGER.warn("Reject cmd '%s' since over the capacity of agent", cmd.getId());
     }
 
     private ThreadPoolExecutor createExecutor() {
@@ -306,6 +433,7 @@ public class CmdManager {
             (r, executor) -> {
                 if (r instanceof TaskRunner) {
                     TaskRunner task = (TaskRunner) r;
+                    admission.release(task.getCmd());
                     onReject(task.getCmd());
                     LOGGER.warn("Reject cmd: %s", task.getCmd());
                 }
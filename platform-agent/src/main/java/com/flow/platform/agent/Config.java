@@ -18,6 +18,8 @@ package com.flow.platform.agent;
 
 import com.flow.platform.domain.AgentSettings;
 import com.flow.platform.domain.Jsonable;
+import com.flow.platform.domain.codec.Codec;
+import com.flow.platform.domain.codec.Codecs;
 import com.flow.platform.util.Logger;
 import com.flow.platform.util.StringUtil;
 import com.flow.platform.util.http.HttpClient;
@@ -38,15 +40,34 @@ public class Config {
 
     public final static String ZK_ROOT = "flow-agents";
 
+    /* Persistent cmd inbox of agent /flow-agents-inbox/{zone}/{name}/cmd-{seq} */
+    public final static String ZK_INBOX_ROOT = ZK_ROOT + "-inbox";
+
     /* Config properties by using -Dxxx.xxx = xxx as JVM parameter */
     public final static String PROP_IS_DEBUG = "flow.agent.debug";
     public final static String PROP_CONCURRENT_THREAD = "flow.agent.cmd.thread";
     public final static String PROP_REPORT_STATUS = "flow.agent.cmd.report";
+    public final static String PROP_REPORT_CODEC = "flow.agent.cmd.report.codec";
+    public final static String PROP_CMD_MEMORY_LIMIT = "flow.agent.cmd.limit.memory";
+    public final static String PROP_CMD_CPU_LIMIT = "flow.agent.cmd.limit.cpu";
+    public final static String PROP_CMD_MIN_DISK = "flow.agent.cmd.disk.min";
+
+    public final static String PROP_WORKSPACE_DIR = "flow.agent.workspace.dir";
+    public final static String PROP_WORKSPACE_QUOTA = "flow.agent.workspace.quota";
+
+    public final static String PROP_CACHE_DIR = "flow.agent.cache.dir";
+    public final static String PROP_CACHE_QUOTA = "flow.agent.cache.quota";
+    public final static String PROP_CACHE_HARD_LINK = "flow.agent.cache.link";
 
     public final static String PROP_UPLOAD_AGENT_LOG = "flow.agent.log.upload";
     public final static String PROP_ENABLE_REALTIME_AGENT_LOG = "flow.agent.log.realtime";
     public final static String PROP_DEL_AGENT_LOG = "flow.agent.log.delete";
     public final static String PROP_LOG_DIR = "flow.agent.log.dir";
+    public final static String PROP_LOG_QUOTA = "flow.agent.log.quota";
+    public final static String PROP_LOG_CMD_QUOTA = "flow.agent.log.cmd.quota";
+    public final static String PROP_LOG_SEGMENT = "flow.agent.log.segment";
+    public final static String PROP_LOG_RETENTION = "flow.agent.log.retention";
+    public final static String PROP_LOG_MIN_DISK = "flow.agent.log.disk.min";
 
     public final static String PROP_ZK_TIMEOUT = "flow.agent.zk.timeout";
     public final static String PROP_SUDO_PASSWORD = "flow.agent.sudo.pwd";
@@ -114,6 +135,14 @@ public class Config {
         return Boolean.parseBoolean(boolStr);
     }
 
+    /**
+     * Codec of cmd report payload, binary or json. Json by default since binary report
+     * requires cc which supports binary codec
+     */
+    public static Codec reportCodec() {
+        return Codecs.of(System.getProperty(PROP_REPORT_CODEC, "json"));
+    }
+
     /**
      * Enable to upload real time agent log
      */
@@ -133,11 +162,121 @@ public class Config {
         }
     }
 
+    /**
+     * Max total size of cmd logs in MB
+     */
+    public static long logQuota() {
+        String longStr = System.getProperty(PROP_LOG_QUOTA, "2048");
+        return Long.parseLong(longStr);
+    }
+
+    /**
+     * Max size of log of each cmd in MB
+     */
+    public static long logCmdQuota() {
+        String longStr = System.getProperty(PROP_LOG_CMD_QUOTA, "100");
+        return Long.parseLong(longStr);
+    }
+
+    /**
+     * Size of cmd log segment in MB
+     */
+    public static long logSegmentSize() {
+        String longStr = System.getProperty(PROP_LOG_SEGMENT, "8");
+        return Long.parseLong(longStr);
+    }
+
+    /**
+     * Days to keep cmd logs
+     */
+    public static long logRetention() {
+        String longStr = System.getProperty(PROP_LOG_RETENTION, "7");
+        return Long.parseLong(longStr);
+    }
+
+    /**
+     * Min disk free of log dir in MB, cmd log is throttled if lower than it
+     */
+    public static long logMinDiskFree() {
+        String longStr = System.getProperty(PROP_LOG_MIN_DISK, "512");
+        return Long.parseLong(longStr);
+    }
+
+    public static Path workspaceDir() {
+        Path defaultPath = Paths.get(System.getProperty("user.home"), ".flow-agent", "workspace");
+        String pathStr = System.getProperty(PROP_WORKSPACE_DIR, defaultPath.toString());
+
+        try {
+            return Paths.get(pathStr);
+        } catch (Throwable e) {
+            return defaultPath;
+        }
+    }
+
+    /**
+     * Max total size of kept workspaces in MB
+     */
+    public static long workspaceQuota() {
+        String longStr = System.getProperty(PROP_WORKSPACE_QUOTA, "10240");
+        return Long.parseLong(longStr);
+    }
+
+    public static Path cacheDir() {
+        Path defaultPath = Paths.get(System.getProperty("user.home"), ".flow-agent", "cache");
+        String pathStr = System.getProperty(PROP_CACHE_DIR, defaultPath.toString());
+
+        try {
+            return Paths.get(pathStr);
+        } catch (Throwable e) {
+            return defaultPath;
+        }
+    }
+
+    /**
+     * Max total size of dependency cache in MB
+     */
+    public static long cacheQuota() {
+        String longStr = System.getProperty(PROP_CACHE_QUOTA, "5120");
+        return Long.parseLong(longStr);
+    }
+
+    /**
+     * Restore dependency cache by hard link instead of copy, disabled by default
+     */
+    public static boolean isCacheHardLink() {
+        String boolStr = System.getProperty(PROP_CACHE_HARD_LINK, "false");
+        return Boolean.parseBoolean(boolStr);
+    }
+
     public static int concurrentThreadNum() {
         String intStr = System.getProperty(PROP_CONCURRENT_THREAD, "2");
         return Integer.parseInt(intStr);
     }
 
+    /**
+     * Soft memory limit of cmd process tree in bytes, configured in MB, 0 is unlimited
+     */
+    public static long cmdMemoryLimit() {
+        String longStr = System.getProperty(PROP_CMD_MEMORY_LIMIT, "0");
+        return Long.parseLong(longStr) * 1024 * 1024;
+    }
+
+    /**
+     * Soft cpu time limit of cmd process tree in millis, configured in seconds, 0 is unlimited
+     */
+    public static long cmdCpuTimeLimit() {
+        String longStr = System.getProperty(PROP_CMD_CPU_LIMIT, "0");
+        return Long.parseLong(longStr) * 1000;
+    }
+
+    /**
+     * Min free disk of workspace in MB to admit cmd, 0 is unchecked
+     */
+    public static long cmdMinDiskFree() {
+        String longStr = System.getProperty(PROP_CMD_MIN_DISK, "0");
+        return Long.parseLong(longStr);
+    }
+
     public static String sudoPassword() {
         return System.getProperty(PROP_SUDO_PASSWORD, StringUtil.EMPTY);
     }
@@ -16,6 +16,7 @@
 
 package com.flow.platform.agent;
 
+import com.flow.platform.agent.LogSpool.CmdLog;
 import com.flow.platform.cmd.Log;
 import com.flow.platform.cmd.LogListener;
 import com.flow.platform.domain.AgentSettings;
@@ -23,18 +24,13 @@ import com.flow.platform.domain.Cmd;
 import com.flow.platform.util.CommandUtil.Unix;
 import com.flow.platform.util.Logger;
 import com.google.common.base.Strings;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 import javax.websocket.ClientEndpointConfig;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
@@ -42,7 +38,7 @@ import javax.websocket.Session;
 import org.glassfish.tyrus.client.ClientManager;
 
 /**
- * Record log to $HOME/agent-log/{cmd id}.out.zip
+ * Record log to {log dir}/{cmd id}.out.zip by log spool
  * Send log via web socket if real time log enabled and ws url provided
  * <p>
  *
@@ -52,25 +48,18 @@ public class LogEventHandler implements LogListener {
 
     private final static Logger LOGGER = new Logger(LogEventHandler.class);
 
-    private final static Path DEFAULT_LOG_PATH = Config.logDir();
-
     private final Cmd cmd;
 
-    private Path stdoutLogPath;
-    private FileOutputStream stdoutLogStream;
-    private ZipOutputStream stdoutLogZipStream;
+    private final CmdLog stdoutLog;
 
     private Session wsSession;
 
     public LogEventHandler(Cmd cmd) {
         this.cmd = cmd;
 
-        // init zip log path
-        try {
-            initZipLogFile(this.cmd);
-        } catch (IOException e) {
-            LOGGER.error("Fail to init cmd log file", e);
-        }
+        // init zipped log in spool
+        stdoutLog = CmdManager.getInstance().getLogSpool()
+            .open(getLogFileName(cmd, Log.Type.STDOUT), cmd.getId() + ".out");
 
         AgentSettings config = Config.agentSettings();
 
@@ -94,7 +83,7 @@ public class LogEventHandler implements LogListener {
         sendRealTimeLog(log);
 
         // write stdout & stderr
-        writeZipStream(stdoutLogZipStream, log.getContent());
+        stdoutLog.write(log.getContent());
     }
 
     private void sendRealTimeLog(Log log) {
@@ -116,9 +105,11 @@ public class LogEventHandler implements LogListener {
         // close socket io
         closeWebSocket();
 
-        if (closeZipAndFileStream(stdoutLogZipStream, stdoutLogStream)) {
-            renameAndUpload(stdoutLogPath, Log.Type.STDOUT);
+        Path logPath = stdoutLog.finish();
+        if (logPath != null) {
+            upload(logPath);
         }
+        stdoutLog.release();
     }
 
     public String websocketLogFormat(Log log) {
@@ -147,45 +138,16 @@ public class LogEventHandler implements LogListener {
     }
 
 
-    private void renameAndUpload(Path logPath, Log.Type logType) {
-        // rename xxx.out.tmp to xxx.out.zip and renameAndUpload to server
-        if (Files.exists(logPath)) {
-            try {
-                Path target = Paths
-                    .get(DEFAULT_LOG_PATH.toString(), getLogFileName(cmd, logType, false));
-                Files.move(logPath, target);
-
-                // delete if uploaded
-                ReportManager reportManager = ReportManager.getInstance();
-                if (reportManager.cmdLogUploadSync(cmd.getId(), target) && Config.isDeleteLog()) {
-                    Files.deleteIfExists(target);
-                }
-            } catch (IOException warn) {
-                LOGGER.warn("Exception while move update log name from temp: %s", warn.getMessage());
-            }
-        }
-    }
-
-    private boolean closeZipAndFileStream(final ZipOutputStream zipStream, final FileOutputStream fileStream) {
+    private void upload(Path logPath) {
         try {
-            if (zipStream != null) {
-                zipStream.flush();
-                zipStream.closeEntry();
-                zipStream.close();
-                return true;
-            }
-        } catch (IOException e) {
-            LOGGER.error("Exception while close zip stream", e);
-        } finally {
-            try {
-                if (fileStream != null) {
-                    fileStream.close();
-                }
-            } catch (IOException e) {
-                LOGGER.error("Exception while close log file", e);
+            // delete if uploaded
+            ReportManager reportManager = ReportManager.getInstance();
+            if (reportManager.cmdLogUploadSync(cmd.getId(), logPath) && Config.isDeleteLog()) {
+                Files.deleteIfExists(logPath);
             }
+        } catch (IOException warn) {
+            LOGGER.warn("Exception while delete uploaded log: %s", warn.getMessage());
         }
-        return false;
     }
 
     private void closeWebSocket() {
@@ -198,46 +160,10 @@ public class LogEventHandler implements LogListener {
         }
     }
 
-    private void writeZipStream(final ZipOutputStream stream, final String log) {
-        if (stream == null) {
-            return;
-        }
-
-        // write to zip output stream
-        try {
-            stream.write(log.getBytes());
-            stream.write(Unix.LINE_SEPARATOR.getBytes());
-        } catch (IOException e) {
-            LOGGER.warn("Log cannot write : " + log);
-        }
-    }
-
-    private void initZipLogFile(final Cmd cmd) throws IOException {
-        // init log directory
-        try {
-            Files.createDirectories(DEFAULT_LOG_PATH);
-        } catch (FileAlreadyExistsException ignore) {
-            LOGGER.warn("Log path %s already exist", DEFAULT_LOG_PATH);
-        }
-
-        // init zipped log file for tmp
-        Path stdoutPath = Paths.get(DEFAULT_LOG_PATH.toString(), getLogFileName(cmd, Log.Type.STDOUT, true));
-        Files.deleteIfExists(stdoutPath);
-
-        stdoutLogPath = Files.createFile(stdoutPath);
-
-        // init zip stream for stdout log
-        stdoutLogStream = new FileOutputStream(stdoutLogPath.toFile());
-        stdoutLogZipStream = new ZipOutputStream(stdoutLogStream);
-        ZipEntry outEntry = new ZipEntry(cmd.getId() + ".out");
-        stdoutLogZipStream.putNextEntry(outEntry);
-    }
-
-    private String getLogFileName(Cmd cmd, Log.Type logType, boolean isTemp) {
+    private String getLogFileName(Cmd cmd, Log.Type logType) {
         String logTypeSuffix = logType == Log.Type.STDERR ? ".err" : ".out";
-        String tempSuffix = isTemp ? ".tmp" : ".zip";
 
         // replace / with - since cmd id may includes slash which the same as dir path
-        return cmd.getId().replace(Unix.PATH_SEPARATOR.charAt(0), '-') + logTypeSuffix + tempSuffix;
+        return cmd.getId().replace(Unix.PATH_SEPARATOR.charAt(0), '-') + logTypeSuffix + ".zip";
     }
 }
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent;
+
+import com.flow.platform.util.CommandUtil.Unix;
+import com.flow.platform.util.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Spool of cmd logs in log dir with bounded disk usage
+ *
+ * - Cmd log is written to zipped segments '{name}.{index}.seg', which are rotated by segment size
+ *   and merged to the zipped log '{name}' when cmd finished
+ * - The first segment and the most recent segments are kept if cmd log over the per cmd quota,
+ *   the dropped lines are noted in the log
+ * - Finished logs are deleted by retention time, and the oldest first if spool over the quota
+ * - Log is throttled instead of failed if disk free lower than min free or spool cannot be cleaned
+ *   to quota, lines over the throttle rate are dropped and noted in the log
+ *
+ * @author yang
+ */
+public class LogSpool {
+
+    private final static Logger LOGGER = new Logger(LogSpool.class);
+
+    private final static long MB = 1024 * 1024;
+
+    private final static String SEGMENT_SUFFIX = ".seg";
+
+    private final static String NOTICE_PREFIX = "[flow-agent] ";
+
+    // max log bytes per second of each cmd while spool under pressure
+    private final static long THROTTLE_BYTES_PER_SECOND = 64 * 1024;
+
+    // min interval to refresh spool usage and disk free in millis
+    private final static long REFRESH_INTERVAL = 1000;
+
+    private final Path dir;
+
+    private final long quota;
+
+    private final long cmdQuota;
+
+    private final long segmentSize;
+
+    private final long retention;
+
+    private final long minFree;
+
+    // names of logs which are written or not released
+    private final Set<String> opened = ConcurrentHashMap.newKeySet();
+
+    private volatile long usage;
+
+    private volatile boolean pressure;
+
+    // reason of pressure for throttle notice, null if no pressure
+    private volatile String pressureReason;
+
+    private volatile long refreshedAt;
+
+    /**
+     * @param dir log dir
+     * @param quota max total size of logs in MB
+     * @param cmdQuota max size of log of each cmd in MB
+     * @param segmentSize size of log segment in MB
+     * @param retention max age of finished log in days
+     * @param minFree min disk free of log dir in MB, log is throttled if lower than it
+     */
+    public LogSpool(Path dir, long quota, long cmdQuota, long segmentSize, long retention, long minFree) {
+        this.dir = dir;
+        this.quota = quota * MB;
+        this.segmentSize = Math.max(1, segmentSize) * MB;
+        this.cmdQuota = Math.max(cmdQuota * MB, this.segmentSize * 2);
+        this.retention = TimeUnit.DAYS.toMillis(retention);
+        this.minFree = minFree * MB;
+
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to create log dir %s: %s", dir, e.getMessage());
+        }
+
+        refresh();
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Total size of files in log dir in bytes
+     */
+    public long usage() {
+        refreshIfExpired();
+        return usage;
+    }
+
+    /**
+     * Is log throttled since low disk free or spool over quota
+     */
+    public boolean isPressure() {
+        refreshIfExpired();
+        return pressure;
+    }
+
+    /**
+     * Open log for writing
+     *
+     * @param name file name of zipped log
+     * @param entry entry name in zipped log
+     */
+    public CmdLog open(String name, String entry) {
+        opened.add(name);
+        return new CmdLog(name, entry);
+    }
+
+    /**
+     * Delete expired logs, then the oldest logs while spool over quota, logs in use are skipped
+     */
+    public synchronized void clean() {
+        final long now = System.currentTimeMillis();
+        long total = 0;
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        } catch (IOException e) {
+            LOGGER.warn("Unable to list log dir %s: %s", dir, e.getMessage());
+            return;
+        }
+
+        List<Path> finished = new ArrayList<>(files.size());
+        for (Path file : files) {
+            long size = sizeOf(file);
+            if (isOpened(file)) {
+                total += size;
+                continue;
+            }
+
+            if (now - file.toFile().lastModified() > retention && deleteFile(file)) {
+                continue;
+            }
+
+            total += size;
+            finished.add(file);
+        }
+
+        if (total > quota) {
+            finished.sort(Comparator.comparingLong((Path file) -> file.toFile().lastModified()));
+
+            for (Path file : finished) {
+                if (total <= quota) {
+                    break;
+                }
+
+                long size = sizeOf(file);
+                if (deleteFile(file)) {
+                    total -= size;
+                }
+            }
+        }
+
+        usage = total;
+    }
+
+    private void refreshIfExpired() {
+        if (System.currentTimeMillis() - refreshedAt >= REFRESH_INTERVAL) {
+            refresh();
+        }
+    }
+
+    private synchronized void refresh() {
+        clean();
+
+        long free = Long.MAX_VALUE;
+        try {
+            free = Files.getFileStore(dir).getUsableSpace();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to get disk free of log dir %s: %s", dir, e.getMessage());
+        }
+
+        String reason = null;
+        if (free < minFree) {
+            reason = "low disk space";
+        } else if (usage > quota) {
+            reason = "log spool over quota";
+        }
+
+        boolean current = reason != null;
+        if (current != pressure) {
+            LOGGER.warn("Log spool pressure changed to %s: usage = %s, free = %s", current, usage, free);
+        }
+
+        pressureReason = reason;
+        pressure = current;
+        refreshedAt = System.currentTimeMillis();
+    }
+
+    private boolean isOpened(Path file) {
+        String fileName = file.getFileName().toString();
+        for (String name : opened) {
+            if (fileName.equals(name) || (fileName.startsWith(name) && fileName.endsWith(SEGMENT_SUFFIX))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            LOGGER.trace("Log deleted: %s", file);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete log %s: %s", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private static class Segment {
+
+        private final Path path;
+
+        private long bytes;
+
+        private long lines;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * Log of a cmd, the line is written in memory of zip stream and flushed to segment file by deflater
+     */
+    public class CmdLog {
+
+        private final String name;
+
+        private final String entry;
+
+        private final List<Segment> segments = new LinkedList<>();
+
+        private ZipOutputStream stream;
+
+        private int index = 0;
+
+        // bytes of kept segments
+        private long bytes;
+
+        private long droppedBytes;
+
+        private long droppedLines;
+
+        private long throttledLines;
+
+        // pressure reason when lines were throttled
+        private String throttledReason;
+
+        private long windowStart;
+
+        private long windowBytes;
+
+        private boolean finished = false;
+
+        CmdLog(String name, String entry) {
+            this.name = name;
+            this.entry = entry;
+        }
+
+        public synchronized void write(String line) {
+            if (finished) {
+                return;
+            }
+
+            byte[] content = (line + Unix.LINE_SEPARATOR).getBytes();
+
+            if (isThrottled(content.length)) {
+                throttledLines++;
+                throttledReason = pressureReason;
+                return;
+            }
+
+            try {
+                if (throttledLines > 0) {
+                    appendThrottledNotice();
+                    throttledLines = 0;
+                }
+
+                append(content);
+            } catch (IOException e) {
+                LOGGER.warn("Log cannot write : " + line);
+            }
+        }
+
+        /**
+         * Close segments and merge to zipped log
+         *
+         * @return path of zipped log or null if failure
+         */
+        public synchronized Path finish() {
+            if (finished) {
+                return null;
+            }
+            finished = true;
+
+            try {
+                if (throttledLines > 0) {
+                    appendThrottledNotice();
+                }
+
+                if (segments.isEmpty()) {
+                    openSegment();
+                }
+                closeSegment();
+
+                Path target = dir.resolve(name);
+
+                // move if single segment, otherwise merge segments with note of dropped lines
+                if (segments.size() == 1) {
+                    Files.move(segments.get(0).path, target, StandardCopyOption.REPLACE_EXISTING);
+                    return target;
+                }
+
+                merge(target);
+                return target;
+            } catch (IOException e) {
+                LOGGER.warn("Unable to finish cmd log %s: %s", name, e.getMessage());
+                return null;
+            } finally {
+                for (Segment segment : segments) {
+                    deleteFile(segment.path);
+                }
+                segments.clear();
+            }
+        }
+
+        /**
+         * Log file can be cleaned by spool after released
+         */
+        public void release() {
+            opened.remove(name);
+            clean();
+        }
+
+        private boolean isThrottled(int length) {
+            if (!isPressure()) {
+                return false;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= 1000) {
+                windowStart = now;
+                windowBytes = 0;
+            }
+
+            if (windowBytes + length > THROTTLE_BYTES_PER_SECOND) {
+                return true;
+            }
+
+            windowBytes += length;
+            return false;
+        }
+
+        private void appendThrottledNotice() throws IOException {
+            String reason = throttledReason == null ? "log spool pressure" : throttledReason;
+            append(notice("%s lines of log dropped since %s", throttledLines, reason));
+        }
+
+        private void append(byte[] content) throws IOException {
+            if (stream == null) {
+                openSegment();
+            }
+
+            Segment current = segments.get(segments.size() - 1);
+            stream.write(content);
+            current.bytes += content.length;
+            current.lines++;
+            bytes += content.length;
+
+            if (current.bytes >= segmentSize) {
+                closeSegment();
+                dropSegments();
+            }
+        }
+
+        /**
+         * Drop segments after the first one while the log over quota
+         */
+        private void dropSegments() {
+            while (bytes > cmdQuota && segments.size() > 2) {
+                Segment dropped = segments.remove(1);
+                deleteFile(dropped.path);
+
+                bytes -= dropped.bytes;
+                droppedBytes += dropped.bytes;
+                droppedLines += dropped.lines;
+            }
+        }
+
+        private void openSegment() throws IOException {
+            Segment segment = new Segment(dir.resolve(name + "." + index++ + SEGMENT_SUFFIX));
+            stream = new ZipOutputStream(Files.newOutputStream(segment.path));
+            stream.putNextEntry(new ZipEntry(entry));
+            segments.add(segment);
+        }
+
+        private void closeSegment() throws IOException {
+            if (stream == null) {
+                return;
+            }
+
+            try {
+                stream.closeEntry();
+            } finally {
+                stream.close();
+                stream = null;
+            }
+        }
+
+        private void merge(Path target) throws IOException {
+            Path tmp = dir.resolve(name + ".tmp" + SEGMENT_SUFFIX);
+            byte[] buffer = new byte[64 * 1024];
+
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(tmp))) {
+                out.putNextEntry(new ZipEntry(entry));
+
+                for (int i = 0; i < segments.size(); i++) {
+                    copyEntry(segments.get(i).path, out, buffer);
+
+                    if (i == 0 && droppedLines > 0) {
+                        out.write(notice("%s lines (%s bytes) of log dropped since over the cmd log quota",
+                            droppedLines, droppedBytes));
+                    }
+                }
+
+                out.closeEntry();
+            } catch (IOException e) {
+                deleteFile(tmp);
+                throw e;
+            }
+
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private void copyEntry(Path segment, OutputStream out, byte[] buffer) throws IOException {
+            try (InputStream in = Files.newInputStream(segment); ZipInputStream zis = new ZipInputStream(in)) {
+                if (zis.getNextEntry() == null) {
+                    return;
+                }
+
+                int length;
+                while ((length = zis.read(buffer)) != -1) {
+                    out.write(buffer, 0, length);
+                }
+            }
+        }
+
+        private byte[] notice(String format, Object... args) {
+            return (NOTICE_PREFIX + String.format(format, args) + Unix.LINE_SEPARATOR).getBytes();
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.flow.platform.agent;
 
+import com.flow.platform.agent.CacheManager.CacheStats;
 import com.flow.platform.cmd.ProcListener;
 import com.flow.platform.domain.Cmd;
 import com.flow.platform.domain.CmdResult;
@@ -38,6 +39,8 @@ public class ProcEventHandler implements ProcListener {
     private final List<ProcListener> extraProcEventListeners;
     private final ReportManager reportManager = ReportManager.getInstance();
 
+    private CacheStats cacheStats;
+
     public ProcEventHandler(Cmd cmd,
                             List<ProcListener> extraProcEventListeners,
                             Map<Cmd, CmdResult> running,
@@ -48,8 +51,16 @@ public class ProcEventHandler implements ProcListener {
         this.finished = finished;
     }
 
+    /**
+     * Set dependency cache restore stats which will be reported in cmd result
+     */
+    public void setCacheStats(CacheStats cacheStats) {
+        this.cacheStats = cacheStats;
+    }
+
     @Override
     public void onStarted(CmdResult result) {
+        fillCacheStats(result);
         running.put(cmd, result);
 
         // report cmd async
@@ -87,6 +98,7 @@ public class ProcEventHandler implements ProcListener {
 
     @Override
     public void onException(CmdResult result) {
+        fillCacheStats(result);
         running.remove(cmd);
         finished.put(cmd, result);
 
@@ -97,4 +109,14 @@ public class ProcEventHandler implements ProcListener {
             listener.onException(result);
         }
     }
+
+    private void fillCacheStats(CmdResult result) {
+        if (cacheStats == null) {
+            return;
+        }
+
+        result.setCacheHits(cacheStats.getHits());
+        result.setCacheMisses(cacheStats.getMisses());
+        result.setCacheRestoreTime(cacheStats.getRestoreTime());
+    }
 }
@@ -19,6 +19,7 @@ package com.flow.platform.agent;
 import com.flow.platform.domain.CmdReport;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
+import com.flow.platform.domain.codec.Codec;
 import com.flow.platform.util.ExceptionUtil;
 import com.flow.platform.util.Logger;
 import com.flow.platform.util.http.HttpClient;
@@ -28,6 +29,7 @@ import java.nio.file.Path;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.FileBody;
@@ -77,12 +79,14 @@ public class ReportManager {
         // build post body
         final CmdReport postCmd = new CmdReport(cmdId, status, result);
         final String url = Config.agentSettings().getCmdStatusUrl();
+        final Codec codec = Config.reportCodec();
 
         try {
+            HttpEntity entity = new ByteArrayEntity(codec.encode(postCmd), ContentType.create(codec.getContentType()));
+
             HttpResponse<String> response = HttpClient.build(url)
-                .post(postCmd.toJson())
+                .post(entity)
                 .retry(5)
-                .withContentType(ContentType.APPLICATION_JSON)
                 .bodyAsString();
 
             if (!response.hasSuccess()) {
@@ -91,6 +95,7 @@ public class ReportManager {
             }
 
             LOGGER.trace("Cmd %s report status %s with result %s", cmdId, status, result);
+            LOGGER.fields("cmd-report", "id", cmdId, "status", status, "codec", codec.getContentType());
             return true;
         } catch (Throwable e) {
             LOGGER.warn("Fail to report cmd %s status since %s'", cmdId, ExceptionUtil.findRootCause(e).getMessage());
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent;
+
+import com.flow.platform.util.Logger;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Keep job workspaces on agent by key '{flow}/{branch}', so the checkout and build outputs
+ * of prior job can be updated incrementally instead of starting from empty dir
+ *
+ * - Workspace dir is {root}/{flow}/{branch}/{slot}, a new slot is created only if other slots are in use
+ * - Cmd of the same session always get the same workspace, it is bound to the session until session ended
+ * - Workspace is exclusively locked by cmd until released
+ * - Unlocked workspaces without live session are evicted by least recently used when total size over quota
+ *
+ * @author yang
+ */
+public class WorkspaceManager {
+
+    private final static Logger LOGGER = new Logger(WorkspaceManager.class);
+
+    /**
+     * Env for cmd of workspace dir and whether it has content from prior job
+     */
+    public final static String ENV_WORKSPACE = "FLOW_AGENT_WORKSPACE";
+
+    public final static String ENV_WORKSPACE_WARM = "FLOW_AGENT_WORKSPACE_WARM";
+
+    private final static long MB = 1024 * 1024;
+
+    // max num of workspace keys in agent node data
+    private final static int MAX_REPORTED_WORKSPACES = 50;
+
+    private final Path root;
+
+    private final long quota;
+
+    private final Map<Path, Workspace> workspaces = new HashMap<>();
+
+    /**
+     * @param root root dir of workspaces
+     * @param quota max total size of workspaces in MB
+     */
+    public WorkspaceManager(Path root, long quota) {
+        this.root = root;
+        this.quota = quota * MB;
+        load();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Lock a workspace for key, the workspace used by the same session is preferred,
+     * and wait for it if still locked by the previous cmd of session
+     *
+     * @param key workspace key '{flow}/{branch}'
+     * @param sessionId nullable, session id of cmd
+     */
+    public synchronized Workspace acquire(String key, String sessionId) throws IOException, InterruptedException {
+        Workspace selected = null;
+
+        for (Workspace workspace : workspaces.values()) {
+            if (!workspace.key.equals(key)) {
+                continue;
+            }
+
+            if (sessionId != null && sessionId.equals(workspace.sessionId)) {
+                selected = workspace;
+                break;
+            }
+
+            // workspace bound to other live session cannot be used
+            if (workspace.locked || workspace.sessionId != null) {
+                continue;
+            }
+
+            // prefer warm and most recently used free workspace
+            if (selected == null || isPreferred(workspace, selected)) {
+                selected = workspace;
+            }
+        }
+
+        // create new slot if all workspaces of key are in use
+        if (selected == null) {
+            Path keyDir = root.resolve(toDirName(key));
+            int slot = 0;
+            while (workspaces.containsKey(keyDir.resolve(Integer.toString(slot)))) {
+                slot++;
+            }
+
+            selected = new Workspace(key, keyDir.resolve(Integer.toString(slot)));
+            workspaces.put(selected.dir, selected);
+        }
+
+        while (selected.locked) {
+            wait();
+        }
+
+        workspaces.putIfAbsent(selected.dir, selected); // in case of evicted while waiting
+
+        // dir is recreated as empty if it was deleted
+        if (!Files.exists(selected.dir)) {
+            selected.size = 0;
+        }
+
+        Files.createDirectories(selected.dir);
+        selected.locked = true;
+        selected.sessionId = sessionId;
+        selected.lastUsed = System.currentTimeMillis();
+        LOGGER.trace("Workspace acquired: %s (warm=%s)", selected.dir, selected.isWarm());
+        return selected;
+    }
+
+    private static boolean isPreferred(Workspace workspace, Workspace than) {
+        if (workspace.isWarm() != than.isWarm()) {
+            return workspace.isWarm();
+        }
+        return workspace.lastUsed > than.lastUsed;
+    }
+
+    /**
+     * Unlock workspace, and evict workspaces if over quota
+     */
+    public void release(Workspace workspace) {
+        synchronized (this) {
+            workspace.locked = false;
+            workspace.lastUsed = System.currentTimeMillis();
+            notifyAll();
+        }
+
+        long size = sizeOf(workspace.dir);
+        touch(workspace.dir, workspace.lastUsed);
+
+        synchronized (this) {
+            workspace.size = size;
+        }
+
+        evict();
+    }
+
+    /**
+     * Unbind workspaces from ended session, so they can be used by other session or evicted
+     */
+    public void endSession(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+
+        synchronized (this) {
+            for (Workspace workspace : workspaces.values()) {
+                if (sessionId.equals(workspace.sessionId)) {
+                    workspace.sessionId = null;
+                }
+            }
+        }
+
+        evict();
+    }
+
+    /**
+     * @return keys of warm workspaces order by most recently used
+     */
+    public synchronized Set<String> keys() {
+        Set<String> keys = new LinkedHashSet<>();
+
+        workspaces.values().stream()
+            .filter(Workspace::isWarm)
+            .sorted(Comparator.comparingLong((Workspace w) -> w.lastUsed).reversed())
+            .forEach(w -> {
+                if (keys.size() < MAX_REPORTED_WORKSPACES) {
+                    keys.add(w.key);
+                }
+            });
+
+        return keys;
+    }
+
+    /**
+     * Delete least recently used unlocked workspaces without live session until total size under quota
+     */
+    public void evict() {
+        List<Workspace> toDelete = new ArrayList<>();
+
+        synchronized (this) {
+            long total = 0;
+            for (Workspace workspace : workspaces.values()) {
+                total += workspace.size;
+            }
+
+            List<Workspace> candidates = new ArrayList<>(workspaces.values());
+            candidates.sort(Comparator.comparingLong(w -> w.lastUsed));
+
+            for (Workspace workspace : candidates) {
+                if (total <= quota) {
+                    break;
+                }
+
+                if (workspace.locked || workspace.sessionId != null) {
+                    continue;
+                }
+
+                total -= workspace.size;
+                workspace.size = 0;
+                workspaces.remove(workspace.dir);
+                toDelete.add(workspace);
+            }
+        }
+
+        for (Workspace workspace : toDelete) {
+            try {
+                delete(workspace.dir);
+                deleteIfEmpty(workspace.dir.getParent()); // branch dir
+                deleteIfEmpty(workspace.dir.getParent().getParent()); // flow dir
+                LOGGER.trace("Workspace evicted: %s", workspace.dir);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete workspace %s: %s", workspace.dir, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Load existing workspaces from {root}/{flow}/{branch}/{slot}
+     */
+    private void load() {
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to create workspace root %s: %s", root, e.getMessage());
+            return;
+        }
+
+        try (Stream<Path> dirs = Files.find(root, 3, (path, attrs) -> attrs.isDirectory())) {
+            dirs.filter(dir -> root.relativize(dir).getNameCount() == 3).forEach(dir -> {
+                Path keyDir = root.relativize(dir.getParent());
+                String key = fromDirName(keyDir.getName(0).toString()) + "/" + fromDirName(keyDir.getName(1).toString());
+
+                Workspace workspace = new Workspace(key, dir);
+                workspace.size = sizeOf(dir);
+                workspace.lastUsed = dir.toFile().lastModified();
+                workspaces.put(dir, workspace);
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Unable to load workspaces from %s: %s", root, e.getMessage());
+        }
+    }
+
+    /**
+     * Convert key '{flow}/{branch}' to dir '{flow}/{branch}', the branch could contain '/'
+     */
+    private static String toDirName(String key) {
+        int index = key.indexOf('/');
+        return encode(key.substring(0, index)) + "/" + encode(key.substring(index + 1));
+    }
+
+    private static String encode(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (char c : name.toCharArray()) {
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.') {
+                builder.append(c);
+            } else {
+                builder.append('%').append(String.format("%04x", (int) c));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String fromDirName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '%' && i + 4 < name.length()) {
+                builder.append((char) Integer.parseInt(name.substring(i + 1, i + 5), 16));
+                i += 4;
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static long sizeOf(Path dir) {
+        final long[] size = {0L};
+
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ignore) {
+            // return size of visited files
+        }
+
+        return size[0];
+    }
+
+    private static void touch(Path dir, long time) {
+        try {
+            Files.setLastModifiedTime(dir, FileTime.fromMillis(time));
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static void deleteIfEmpty(Path dir) {
+        try {
+            Files.deleteIfExists(dir);
+        } catch (IOException ignore) {
+            // not empty
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public static class Workspace {
+
+        private final String key;
+
+        private final Path dir;
+
+        private boolean locked;
+
+        private String sessionId; // live session bound to workspace, null if no session or session ended
+
+        private long size;
+
+        private long lastUsed;
+
+        Workspace(String key, Path dir) {
+            this.key = key;
+            this.dir = dir;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Path getDir() {
+            return dir;
+        }
+
+        /**
+         * Workspace has content from prior job
+         */
+        public boolean isWarm() {
+            return size > 0;
+        }
+    }
+}
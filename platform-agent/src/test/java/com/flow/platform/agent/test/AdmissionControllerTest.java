@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent.test;
+
+import com.flow.platform.agent.AdmissionController;
+import com.flow.platform.domain.AgentCapacity;
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.CmdType;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author yang
+ */
+public class AdmissionControllerTest {
+
+    private final AdmissionController admission =
+        new AdmissionController(2, Paths.get(System.getProperty("java.io.tmpdir")), 0);
+
+    @Test
+    public void should_reject_cmd_when_no_free_slot() {
+        // when: admit two cmd without hints
+        Cmd first = createCmd(null, null);
+        Cmd second = createCmd(null, null);
+        Assert.assertTrue(admission.admit(first));
+        Assert.assertTrue(admission.admit(second));
+        Assert.assertEquals(0, admission.capacity().getSlots());
+
+        // then: third cmd should be rejected until slot released
+        Cmd third = createCmd(null, null);
+        Assert.assertFalse(admission.admit(third));
+
+        admission.release(first);
+        Assert.assertTrue(admission.admit(third));
+    }
+
+    @Test
+    public void should_reject_cmd_when_resource_hints_over_capacity() {
+        AgentCapacity capacity = admission.capacity();
+
+        // when: cmd requires more cpu than agent has
+        Cmd tooManyCores = createCmd(String.valueOf(capacity.getCpu() + 1), null);
+        Assert.assertFalse(admission.admit(tooManyCores));
+
+        // when: cmd requires more memory than agent has
+        Cmd tooMuchMemory = createCmd(null, String.valueOf(capacity.getMemory() + 1));
+        Assert.assertFalse(admission.admit(tooMuchMemory));
+
+        // then: slot is not taken by rejected cmd
+        Assert.assertEquals(2, admission.capacity().getSlots());
+    }
+
+    @Test
+    public void should_reserve_memory_of_admitted_cmd() {
+        List<AgentCapacity> notified = new CopyOnWriteArrayList<>();
+        admission.setListener(notified::add);
+
+        // when: admit cmd with memory hint
+        long memory = Math.min(admission.capacity().getMemory(), 64);
+        Cmd cmd = createCmd(null, String.valueOf(memory));
+        Assert.assertTrue(admission.admit(cmd));
+
+        // then: capacity notified with one slot taken
+        Assert.assertEquals(1, notified.size());
+        Assert.assertEquals(1, notified.get(0).getSlots());
+
+        // when: release cmd
+        admission.release(cmd);
+        admission.release(cmd);
+
+        // then: only notified once for release
+        Assert.assertEquals(2, notified.size());
+        Assert.assertEquals(2, notified.get(1).getSlots());
+    }
+
+    private static Cmd createCmd(String cpu, String memory) {
+        Cmd cmd = new Cmd("zone1", "agent1", CmdType.RUN_SHELL, "echo hello");
+        cmd.setId(UUID.randomUUID().toString());
+
+        if (cpu != null) {
+            cmd.getInputs().put(AgentCapacity.ENV_CMD_CPU, cpu);
+        }
+
+        if (memory != null) {
+            cmd.getInputs().put(AgentCapacity.ENV_CMD_MEMORY, memory);
+        }
+
+        return cmd;
+    }
+}
@@ -83,6 +83,7 @@ public class AgentManagerTest extends TestBase {
         String agentNodePath = ZKPaths.makePath(ZK_ROOT, ZONE, MACHINE);
         Assert.assertEquals(true, zkClient.exist(agentNodePath));
         agent.stop();
+        agent.getZkClient().close();
     }
 
     @Test
@@ -91,21 +92,52 @@ public class AgentManagerTest extends TestBase {
         new Thread(agent).start();
         Thread.sleep(5000); // waitting for node created
 
-        // when: send command to agent
+        // when: send command to agent inbox
         Cmd cmd = new Cmd(ZONE, MACHINE, CmdType.RUN_SHELL, "echo hello");
         cmd.setId("mock-cmd-id");
-        zkClient.setData(agent.getNodePath(), cmd.toBytes());
+        String inboxPath = agent.getCmdInbox().getInboxPath();
+        zkClient.createSequential(ZKPaths.makePath(inboxPath, "cmd-"), cmd.toBytes());
         Thread.sleep(2000); // waitting for cmd recieved
 
-        // then: check agent status when command received
+        // then: check agent status when command received and inbox node been deleted
         Assert.assertEquals(1, agent.getCmdHistory().size());
         Assert.assertEquals(cmd, agent.getCmdHistory().get(0));
+        Assert.assertEquals(0, zkClient.getChildren(inboxPath).size());
         agent.stop();
+        agent.getZkClient().close();
+    }
+
+    @Test
+    public void should_receive_back_to_back_commands_in_order_once() throws Throwable {
+        AgentManager agent = new AgentManager(server.getConnectString(), 20000, ZONE, MACHINE);
+        new Thread(agent).start();
+        Thread.sleep(5000); // waitting for node created
+
+        // when: send two commands without interval and the first one again
+        Cmd first = new Cmd(ZONE, MACHINE, CmdType.RUN_SHELL, "echo first");
+        first.setId("mock-cmd-id-1");
+
+        Cmd second = new Cmd(ZONE, MACHINE, CmdType.KILL, null);
+        second.setId("mock-cmd-id-2");
+
+        String prefix = ZKPaths.makePath(agent.getCmdInbox().getInboxPath(), "cmd-");
+        zkClient.createSequential(prefix, first.toBytes());
+        zkClient.createSequential(prefix, second.toBytes());
+        zkClient.createSequential(prefix, first.toBytes());
+        Thread.sleep(2000); // waitting for cmd recieved
+
+        // then: both received in sequence and duplicate one been skipped
+        Assert.assertEquals(2, agent.getCmdHistory().size());
+        Assert.assertEquals(first, agent.getCmdHistory().get(0));
+        Assert.assertEquals(second, agent.getCmdHistory().get(1));
+        agent.stop();
+        agent.getZkClient().close();
     }
 
     @After
     public void after() throws Throwable {
         zkClient.delete(ZKPaths.makePath(ZK_ROOT, ZONE, MACHINE), true);
+        zkClient.delete(ZKPaths.makePath(Config.ZK_INBOX_ROOT, ZONE, MACHINE), true);
         zkClient.close();
     }
 
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent.test;
+
+import com.flow.platform.agent.CacheManager;
+import com.flow.platform.agent.CacheManager.CacheStats;
+import com.flow.platform.domain.CmdCache;
+import com.google.common.collect.ImmutableList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author yang
+ */
+public class CacheManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_restore_cache_by_key_with_checksum() throws Throwable {
+        // given:
+        CacheManager manager = new CacheManager(folder.newFolder("cache").toPath(), 1024, true);
+        List<CmdCache> caches = ImmutableList.of(new CmdCache("deps", "deps-${FLOW_VERSION}-{{ checksum \"pom.xml\" }}"));
+        Map<String, String> inputs = new HashMap<>();
+        inputs.put("FLOW_VERSION", "1");
+
+        Path first = folder.newFolder("first").toPath();
+        Files.write(first.resolve("pom.xml"), "v1".getBytes(StandardCharsets.UTF_8));
+
+        // when: restore and save in first working dir
+        CacheStats stats = manager.restore(caches, first, inputs);
+        Assert.assertEquals(0, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+
+        Files.createDirectories(first.resolve("deps/lib"));
+        Files.write(first.resolve("deps/lib/a.jar"), new byte[256]);
+        manager.save(caches, first, inputs);
+
+        // then: restore to another working dir with same checksum
+        Path second = folder.newFolder("second").toPath();
+        Files.write(second.resolve("pom.xml"), "v1".getBytes(StandardCharsets.UTF_8));
+
+        stats = manager.restore(caches, second, inputs);
+        Assert.assertEquals(1, stats.getHits());
+        Assert.assertEquals(0, stats.getMisses());
+        Assert.assertEquals(256, Files.size(second.resolve("deps/lib/a.jar")));
+
+        // then: miss if checksum file changed
+        Path third = folder.newFolder("third").toPath();
+        Files.write(third.resolve("pom.xml"), "v2".getBytes(StandardCharsets.UTF_8));
+
+        stats = manager.restore(caches, third, inputs);
+        Assert.assertEquals(0, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+        Assert.assertFalse(Files.exists(third.resolve("deps")));
+    }
+
+    @Test
+    public void should_drop_cache_entry_if_restored_file_modified() throws Throwable {
+        // given:
+        CacheManager manager = new CacheManager(folder.newFolder("cache").toPath(), 1024, true);
+        List<CmdCache> caches = ImmutableList.of(new CmdCache("deps", "deps"));
+        Map<String, String> inputs = new HashMap<>();
+
+        Path first = folder.newFolder("first").toPath();
+        Files.createDirectories(first.resolve("deps"));
+        Files.write(first.resolve("deps/a.txt"), "hello".getBytes(StandardCharsets.UTF_8));
+        manager.save(caches, first, inputs);
+
+        // when: restore by hard link and modify the file in place
+        Path second = folder.newFolder("second").toPath();
+        Assert.assertEquals(1, manager.restore(caches, second, inputs).getHits());
+
+        Path restored = second.resolve("deps/a.txt");
+        restored.toFile().setWritable(true); // object is read-only, chmod to modify in place
+        Files.write(restored, "hello world".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(restored, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        // then: the entry should be dropped since object been modified
+        Path third = folder.newFolder("third").toPath();
+        CacheStats stats = manager.restore(caches, third, inputs);
+        Assert.assertEquals(0, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    public void should_restore_writable_copy_of_read_only_object() throws Throwable {
+        // given:
+        CacheManager manager = new CacheManager(folder.newFolder("cache").toPath(), 1024, false);
+        List<CmdCache> caches = ImmutableList.of(new CmdCache("deps", "deps"));
+        Map<String, String> inputs = new HashMap<>();
+
+        Path first = folder.newFolder("first").toPath();
+        Files.createDirectories(first.resolve("deps"));
+        Files.write(first.resolve("deps/a.txt"), "hello".getBytes(StandardCharsets.UTF_8));
+        manager.save(caches, first, inputs);
+
+        // when: restore by copy and modify the file in place
+        Path second = folder.newFolder("second").toPath();
+        Assert.assertEquals(1, manager.restore(caches, second, inputs).getHits());
+
+        Path restored = second.resolve("deps/a.txt");
+        Assert.assertTrue(restored.toFile().canWrite());
+        Files.write(restored, "hello world".getBytes(StandardCharsets.UTF_8));
+
+        // then: the cache entry is not affected
+        Path third = folder.newFolder("third").toPath();
+        Assert.assertEquals(1, manager.restore(caches, third, inputs).getHits());
+        Assert.assertEquals("hello", new String(Files.readAllBytes(third.resolve("deps/a.txt")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void should_evict_least_recently_used_entry_over_quota() throws Throwable {
+        // given: quota is 1 MB
+        CacheManager manager = new CacheManager(folder.newFolder("cache").toPath(), 1, false);
+        Map<String, String> inputs = new HashMap<>();
+        List<CmdCache> older = ImmutableList.of(new CmdCache("deps", "older"));
+        List<CmdCache> newer = ImmutableList.of(new CmdCache("deps", "newer"));
+
+        Path first = folder.newFolder("first").toPath();
+        Files.createDirectories(first.resolve("deps"));
+        Files.write(first.resolve("deps/a.bin"), new byte[600 * 1024]);
+        manager.save(older, first, inputs);
+
+        Thread.sleep(1100);
+
+        // when: save another entry which makes total size over quota
+        Path second = folder.newFolder("second").toPath();
+        Files.createDirectories(second.resolve("deps"));
+        Files.write(second.resolve("deps/b.bin"), new byte[600 * 1024 + 1]);
+        manager.save(newer, second, inputs);
+
+        // then: the older entry should be evicted
+        Path third = folder.newFolder("third").toPath();
+        Assert.assertEquals(1, manager.restore(older, third, inputs).getMisses());
+        Assert.assertEquals(1, manager.restore(newer, third, inputs).getHits());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent.test;
+
+import com.flow.platform.agent.LogSpool;
+import com.flow.platform.agent.LogSpool.CmdLog;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.ZipInputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author yang
+ */
+public class LogSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_keep_head_and_tail_segments_if_over_cmd_quota() throws Throwable {
+        // given: segment is 1 MB and cmd quota is 2 MB
+        LogSpool spool = new LogSpool(folder.newFolder("log").toPath(), 1024, 2, 1, 7, 0);
+        CmdLog log = spool.open("cmd.out.zip", "cmd.out");
+
+        // when: write 5 MB log
+        String padding = new String(new char[1000]).replace('\0', 'x');
+        for (int i = 0; i < 5 * 1024; i++) {
+            log.write(i + padding);
+        }
+
+        Path zipped = log.finish();
+        log.release();
+
+        // then: segments are merged to zipped log
+        Assert.assertEquals(spool.getDir().resolve("cmd.out.zip"), zipped);
+        Assert.assertEquals(1, Files.list(spool.getDir()).count());
+
+        List<String> lines = readZipped(zipped);
+        Assert.assertTrue(lines.get(0).startsWith("0x"));
+        Assert.assertTrue(lines.get(lines.size() - 1).startsWith((5 * 1024 - 1) + "x"));
+        Assert.assertEquals(1, lines.stream().filter(line -> line.startsWith("[flow-agent]")).count());
+        Assert.assertTrue(lines.size() < 5 * 1024);
+    }
+
+    @Test
+    public void should_clean_finished_logs_by_retention_and_quota() throws Throwable {
+        // given: quota is 1 MB
+        Path dir = folder.newFolder("log").toPath();
+        long now = System.currentTimeMillis();
+
+        Path expired = Files.write(dir.resolve("expired.out.zip"), new byte[1024]);
+        Files.setLastModifiedTime(expired, FileTime.fromMillis(now - TimeUnit.DAYS.toMillis(8)));
+
+        Path older = Files.write(dir.resolve("older.out.zip"), new byte[600 * 1024]);
+        Files.setLastModifiedTime(older, FileTime.fromMillis(now - 2000));
+
+        Path newer = Files.write(dir.resolve("newer.out.zip"), new byte[600 * 1024]);
+        Files.setLastModifiedTime(newer, FileTime.fromMillis(now - 1000));
+
+        // when:
+        LogSpool spool = new LogSpool(dir, 1, 100, 8, 7, 0);
+
+        // then: expired and the oldest log are deleted
+        Assert.assertFalse(Files.exists(expired));
+        Assert.assertFalse(Files.exists(older));
+        Assert.assertTrue(Files.exists(newer));
+        Assert.assertEquals(600 * 1024, spool.usage());
+        Assert.assertFalse(spool.isPressure());
+    }
+
+    @Test
+    public void should_throttle_log_if_disk_free_lower_than_min() throws Throwable {
+        // given: min disk free which cannot be satisfied
+        LogSpool spool = new LogSpool(folder.newFolder("log").toPath(), 1024, 100, 8, 7, Long.MAX_VALUE / 1024 / 1024);
+        Assert.assertTrue(spool.isPressure());
+
+        // when: write 1 MB log in burst
+        CmdLog log = spool.open("cmd.out.zip", "cmd.out");
+        String padding = new String(new char[1000]).replace('\0', 'x');
+        for (int i = 0; i < 1024; i++) {
+            log.write(i + padding);
+        }
+
+        // then: log is not failed but lines over throttle rate are dropped
+        List<String> lines = readZipped(log.finish());
+        log.release();
+
+        Assert.assertTrue(lines.size() > 1);
+        Assert.assertTrue(lines.size() < 1024);
+        Assert.assertTrue(lines.get(0).startsWith("0x"));
+        Assert.assertTrue(lines.get(lines.size() - 1).startsWith("[flow-agent]"));
+        Assert.assertTrue(lines.get(lines.size() - 1).endsWith("dropped since low disk space"));
+    }
+
+    @Test
+    public void should_throttle_log_with_reason_if_spool_over_quota() throws Throwable {
+        // given: quota is 1 MB and log in use is 2 MB which cannot be cleaned
+        LogSpool spool = new LogSpool(folder.newFolder("log").toPath(), 1, 100, 8, 7, 0);
+        spool.open("busy.out.zip", "busy.out");
+        Files.write(spool.getDir().resolve("busy.out.zip"), new byte[2 * 1024 * 1024]);
+
+        // when: wait for spool usage refreshed
+        Thread.sleep(1000);
+        Assert.assertTrue(spool.isPressure());
+
+        CmdLog log = spool.open("cmd.out.zip", "cmd.out");
+        String padding = new String(new char[1000]).replace('\0', 'x');
+        for (int i = 0; i < 1024; i++) {
+            log.write(i + padding);
+        }
+
+        // then: notice has the over quota reason
+        List<String> lines = readZipped(log.finish());
+        log.release();
+
+        Assert.assertTrue(lines.size() < 1024);
+        Assert.assertTrue(lines.get(lines.size() - 1).endsWith("dropped since log spool over quota"));
+    }
+
+    private static List<String> readZipped(Path zipped) throws Throwable {
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(zipped))) {
+            Assert.assertNotNull(zis.getNextEntry());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(zis));
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
@@ -16,9 +16,13 @@
 
 package com.flow.platform.agent.test;
 
+import com.flow.platform.agent.Config;
 import com.flow.platform.agent.ReportManager;
+import com.flow.platform.domain.CmdReport;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
+import com.flow.platform.domain.codec.BinaryCodec;
+import com.flow.platform.domain.codec.Codecs;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import org.junit.Assert;
 import org.junit.FixMethodOrder;
@@ -45,8 +49,11 @@ public class ReportManagerTest extends TestBase {
 
     @Test
     public void should_report_cmd_status() {
+        System.setProperty(Config.PROP_REPORT_CODEC, "json");
+
         // when:
         stubFor(post(urlEqualTo("/cmd/report"))
+                .withHeader("Content-Type", containing("application/json"))
                 .withRequestBody(matchingJsonPath("$.id"))
                 .withRequestBody(matchingJsonPath("$.status"))
                 .withRequestBody(matchingJsonPath("$.result"))
@@ -57,6 +64,29 @@ public class ReportManagerTest extends TestBase {
         CmdResult mockResult = new CmdResult();
         boolean result = reportManager.cmdReportSync("cmdId-001", CmdStatus.RUNNING, mockResult);
         Assert.assertTrue(result);
+        System.clearProperty(Config.PROP_REPORT_CODEC);
+    }
+
+    @Test
+    public void should_report_cmd_status_in_binary() {
+        System.setProperty(Config.PROP_REPORT_CODEC, "binary");
+
+        // when:
+        stubFor(post(urlEqualTo("/cmd/report"))
+                .withHeader("Content-Type", equalTo(BinaryCodec.CONTENT_TYPE))
+                .willReturn(aResponse()
+                        .withStatus(200)));
+
+        // then:
+        CmdResult mockResult = new CmdResult();
+        boolean result = reportManager.cmdReportSync("cmdId-001", CmdStatus.RUNNING, mockResult);
+        Assert.assertTrue(result);
+
+        byte[] body = findAll(postRequestedFor(urlEqualTo("/cmd/report"))).get(0).getBody();
+        CmdReport report = Codecs.decode(body, CmdReport.class);
+        Assert.assertEquals("cmdId-001", report.getId());
+        Assert.assertEquals(CmdStatus.RUNNING, report.getStatus());
+        System.clearProperty(Config.PROP_REPORT_CODEC);
     }
 
     @Test
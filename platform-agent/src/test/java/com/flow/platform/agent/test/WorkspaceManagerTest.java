@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.agent.test;
+
+import com.flow.platform.agent.WorkspaceManager;
+import com.flow.platform.agent.WorkspaceManager.Workspace;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author yang
+ */
+public class WorkspaceManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_keep_workspace_for_flow_and_branch() throws Throwable {
+        // given:
+        Path root = folder.newFolder("workspace").toPath();
+        WorkspaceManager manager = new WorkspaceManager(root, 1024);
+
+        // when: first cmd write file to workspace
+        Workspace first = manager.acquire("flow-a/feature/x", "session-1");
+        Assert.assertFalse(first.isWarm());
+        Files.write(first.getDir().resolve("build.out"), new byte[128]);
+        manager.release(first);
+        manager.endSession("session-1");
+
+        // then: the workspace is warm for the next job
+        Workspace second = manager.acquire("flow-a/feature/x", "session-2");
+        Assert.assertEquals(first.getDir(), second.getDir());
+        Assert.assertTrue(second.isWarm());
+        Assert.assertTrue(manager.keys().contains("flow-a/feature/x"));
+
+        // then: concurrent cmd of other session get another workspace
+        Workspace third = manager.acquire("flow-a/feature/x", "session-3");
+        Assert.assertNotEquals(second.getDir(), third.getDir());
+        manager.release(second);
+        manager.release(third);
+
+        // then: workspaces are loaded after agent restart
+        WorkspaceManager reloaded = new WorkspaceManager(root, 1024);
+        Assert.assertTrue(reloaded.keys().contains("flow-a/feature/x"));
+        Assert.assertTrue(reloaded.acquire("flow-a/feature/x", null).isWarm());
+    }
+
+    @Test
+    public void should_wait_for_workspace_locked_by_same_session() throws Throwable {
+        // given:
+        WorkspaceManager manager = new WorkspaceManager(folder.newFolder("workspace").toPath(), 1024);
+        Workspace first = manager.acquire("flow-a/master", "session-1");
+
+        // when: acquire workspace by the next cmd of session
+        AtomicReference<Workspace> next = new AtomicReference<>();
+        CountDownLatch acquired = new CountDownLatch(1);
+        new Thread(() -> {
+            try {
+                next.set(manager.acquire("flow-a/master", "session-1"));
+                acquired.countDown();
+            } catch (Throwable ignore) {
+            }
+        }).start();
+
+        // then: wait until the previous cmd released
+        Assert.assertFalse(acquired.await(500, TimeUnit.MILLISECONDS));
+        manager.release(first);
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(first.getDir(), next.get().getDir());
+    }
+
+    @Test
+    public void should_evict_least_recently_used_workspace_over_quota() throws Throwable {
+        // given: quota is 1 MB
+        WorkspaceManager manager = new WorkspaceManager(folder.newFolder("workspace").toPath(), 1);
+
+        Workspace older = manager.acquire("flow-a/master", null);
+        Files.write(older.getDir().resolve("build.out"), new byte[600 * 1024]);
+        manager.release(older);
+        Thread.sleep(10);
+
+        // when: total size over quota
+        Workspace newer = manager.acquire("flow-b/master", null);
+        Files.write(newer.getDir().resolve("build.out"), new byte[600 * 1024]);
+        manager.release(newer);
+
+        // then: older workspace been deleted
+        Assert.assertFalse(Files.exists(older.getDir()));
+        Assert.assertTrue(Files.exists(newer.getDir()));
+        Assert.assertFalse(manager.keys().contains("flow-a/master"));
+        Assert.assertTrue(manager.keys().contains("flow-b/master"));
+    }
+
+    @Test
+    public void should_not_evict_workspace_of_live_session() throws Throwable {
+        // given: quota is 1 MB and workspace of session over quota
+        WorkspaceManager manager = new WorkspaceManager(folder.newFolder("workspace").toPath(), 1);
+        Workspace first = manager.acquire("flow-a/master", "session-1");
+        Files.write(first.getDir().resolve("build.out"), new byte[2 * 1024 * 1024]);
+
+        // when: first step of session released
+        manager.release(first);
+
+        // then: workspace kept for the next step of session and not used by other session
+        Assert.assertTrue(Files.exists(first.getDir().resolve("build.out")));
+        Assert.assertNotEquals(first.getDir(), manager.acquire("flow-a/master", "session-2").getDir());
+
+        Workspace next = manager.acquire("flow-a/master", "session-1");
+        Assert.assertEquals(first.getDir(), next.getDir());
+        Assert.assertTrue(next.isWarm());
+        manager.release(next);
+
+        // when: session ended
+        manager.endSession("session-1");
+
+        // then: workspace evicted and it is cold if recreated
+        Assert.assertFalse(Files.exists(first.getDir()));
+        Assert.assertFalse(next.isWarm());
+    }
+}
@@ -17,12 +17,15 @@
 package com.flow.platform.api.config;
 
 import com.flow.platform.api.domain.user.User;
+import com.flow.platform.api.util.BlobStore;
 import com.flow.platform.api.util.PlatformURL;
 import com.flow.platform.core.config.AppConfigBase;
 import com.flow.platform.core.config.DatabaseConfig;
 import com.flow.platform.core.util.ThreadUtil;
 import com.flow.platform.plugin.PluginConfig;
 import com.flow.platform.util.Logger;
+import com.flow.platform.util.trace.TrafficRecorder;
+import com.google.common.base.Strings;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -67,6 +70,8 @@ public class AppConfig extends AppConfigBase {
 
     private final static int MULTICASTER_ASYNC_POOL_SIZE = 1;
 
+    private final static int TRAFFIC_RECORD_QUEUE_SIZE = 10000;
+
     private final static ThreadPoolTaskExecutor executor =
         ThreadUtil.createTaskExecutor(ASYNC_POOL_SIZE, ASYNC_POOL_SIZE / 10, 100, THREAD_NAME_PREFIX);
 
@@ -83,9 +88,18 @@ public class AppConfig extends AppConfigBase {
     @Value("${api.git.workspace}")
     private String gitWorkspace;
 
+    @Value("${api.artifact.workspace}")
+    private String artifactWorkspace;
+
+    @Value("${api.sync.bundle.workspace}")
+    private String bundleWorkspace;
+
     @Value("${domain.cc}")
     private String ccDomain;
 
+    @Value("${trace.record.file}")
+    private String traceRecordFile;
+
     @Value(value = "${system.email}")
     private String email;
 
@@ -114,6 +128,24 @@ public class AppConfig extends AppConfigBase {
         return Paths.get(gitWorkspace);
     }
 
+    @Bean
+    public BlobStore artifactBlobStore() {
+        try {
+            return new BlobStore(Paths.get(artifactWorkspace));
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to create flow.ci api artifact dir", e);
+        }
+    }
+
+    @Bean
+    public BlobStore bundleBlobStore() {
+        try {
+            return new BlobStore(Paths.get(bundleWorkspace));
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to create flow.ci api plugin bundle dir", e);
+        }
+    }
+
     @Bean(name = "applicationEventMulticaster")
     public ApplicationEventMulticaster simpleApplicationEventMulticaster() {
         multicasterExecutor.initialize();
@@ -122,6 +154,22 @@ public class AppConfig extends AppConfigBase {
         return eventMulticaster;
     }
 
+    /**
+     * Record webhook traffic for replay if trace file is set
+     */
+    @Bean(destroyMethod = "close")
+    public TrafficRecorder trafficRecorder() {
+        if (Strings.isNullOrEmpty(traceRecordFile)) {
+            return TrafficRecorder.disabled();
+        }
+
+        try {
+            return new TrafficRecorder(Paths.get(traceRecordFile), TRAFFIC_RECORD_QUEUE_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to create traffic trace file", e);
+        }
+    }
+
     @Bean
     public ThreadLocal<User> currentUser() {
         return new ThreadLocal<>();
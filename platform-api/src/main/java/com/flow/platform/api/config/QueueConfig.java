@@ -16,7 +16,6 @@
 
 package com.flow.platform.api.config;
 
-import com.flow.platform.api.service.SyncService;
 import com.flow.platform.core.queue.MemoryQueue;
 import com.flow.platform.core.queue.PriorityMessage;
 import com.flow.platform.queue.PlatformQueue;
@@ -43,9 +42,4 @@ public class QueueConfig {
     public PlatformQueue<PriorityMessage> cmdCallbackQueue() {
         return new MemoryQueue(taskExecutor, 50, "CmdCallbackQueue");
     }
-
-    @Bean
-    public SyncService.QueueCreator syncQueueCreator() {
-        return name -> new MemoryQueue(taskExecutor, 50, name);
-    }
 }
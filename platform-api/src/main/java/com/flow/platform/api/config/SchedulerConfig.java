@@ -18,13 +18,31 @@ package com.flow.platform.api.config;
 
 import com.flow.platform.api.task.NodeCrontabTask;
 import com.flow.platform.core.exception.IllegalStatusException;
+import com.flow.platform.util.Logger;
 import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Properties;
+import javax.sql.DataSource;
+import org.quartz.Job;
 import org.quartz.JobBuilder;
 import org.quartz.JobDetail;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.jdbcjobstore.JobStoreTX;
+import org.quartz.impl.jdbcjobstore.StdJDBCDelegate;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.simpl.SimpleJobFactory;
+import org.quartz.utils.ConnectionProvider;
+import org.quartz.utils.DBConnectionManager;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -39,8 +57,45 @@ import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 @EnableScheduling
 public class SchedulerConfig implements SchedulingConfigurer {
 
+    private final static Logger LOGGER = new Logger(SchedulerConfig.class);
+
     private final static int DEFAULT_SCHEDULER_POOL_SIZE = 10;
 
+    private final static String QUARTZ_STORE_JDBC = "jdbc";
+
+    private final static String QUARTZ_DATA_SOURCE = "flowDS";
+
+    /**
+     * Quartz job store, 'jdbc' for clustered db job store or 'memory' for ram job store
+     */
+    @Value("${task.crontab.store}")
+    private String crontabStore;
+
+    /**
+     * Num of threads to fire crontab triggers
+     */
+    @Value("${task.crontab.pool.size}")
+    private int crontabPoolSize;
+
+    /**
+     * Trigger is misfired if it not fired in threshold, in millis
+     */
+    @Value("${task.crontab.misfire.threshold}")
+    private long crontabMisfireThreshold;
+
+    /**
+     * Interval of instance check in to cluster, in millis
+     */
+    @Value("${task.crontab.cluster.checkin}")
+    private long crontabClusterCheckin;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    @Qualifier("hikariCpDataSource")
+    private DataSource dataSource;
+
     /**
      * Thread pool for spring scheduling
      */
@@ -55,29 +110,89 @@ public class SchedulerConfig implements SchedulingConfigurer {
     }
 
     /**
-     * Setup quartz scheduler
+     * Setup quartz scheduler, triggers are fired by its own bounded thread pool
+     * and stored in db with cluster mode, so only one api instance fires a trigger
      */
     @Bean
     public Scheduler quartzScheduler() {
         try {
+            Properties properties = new Properties();
+            try (InputStream in = new ClassPathResource("quartz.properties").getInputStream()) {
+                properties.load(in);
+            }
+
+            properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount",
+                Integer.toString(crontabPoolSize));
+            properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_PREFIX + ".misfireThreshold",
+                Long.toString(crontabMisfireThreshold));
+
+            if (Objects.equals(crontabStore, QUARTZ_STORE_JDBC)) {
+                setJdbcStore(properties);
+            } else {
+                properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, RAMJobStore.class.getName());
+            }
+
             StdSchedulerFactory factory = new StdSchedulerFactory();
-            factory.initialize(new ClassPathResource("quartz.properties").getInputStream());
-            return factory.getScheduler();
+            factory.initialize(properties);
+
+            Scheduler scheduler = factory.getScheduler();
+            scheduler.setJobFactory((bundle, s) -> {
+                Job job = new SimpleJobFactory().newJob(bundle, s);
+                applicationContext.getAutowireCapableBeanFactory().autowireBean(job);
+                return job;
+            });
+
+            LOGGER.trace("Quartz scheduler initialized with '%s' store and %s threads", crontabStore, crontabPoolSize);
+            return scheduler;
         } catch (SchedulerException | IOException e) {
             throw new IllegalStatusException("Unable to init quartz: " + e.getMessage());
         }
     }
 
     /**
-     * Setup flow crontab job detail
+     * Setup flow crontab job detail, the fixed identity is required since it is stored in db
      */
     @Bean
     public JobDetail nodeCrontabDetail() {
-        return JobBuilder.newJob(NodeCrontabTask.class).storeDurably(true).build();
+        return JobBuilder.newJob(NodeCrontabTask.class)
+            .withIdentity(NodeCrontabTask.class.getSimpleName())
+            .storeDurably(true)
+            .build();
     }
 
     @Override
     public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
         taskRegistrar.setTaskScheduler(schedulerTaskExecutor());
     }
+
+    private void setJdbcStore(Properties properties) {
+        final String prefix = StdSchedulerFactory.PROP_JOB_STORE_PREFIX;
+
+        properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, JobStoreTX.class.getName());
+        properties.setProperty(prefix + ".driverDelegateClass", StdJDBCDelegate.class.getName());
+        properties.setProperty(prefix + ".dataSource", QUARTZ_DATA_SOURCE);
+        properties.setProperty(prefix + ".tablePrefix", "QRTZ_");
+        properties.setProperty(prefix + ".useProperties", "true");
+        properties.setProperty(prefix + ".isClustered", "true");
+        properties.setProperty(prefix + ".clusterCheckinInterval", Long.toString(crontabClusterCheckin));
+
+        // share the primary connection pool since quartz needs row locks on write
+        ConnectionProvider provider = new ConnectionProvider() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return dataSource.getConnection();
+            }
+
+            @Override
+            public void shutdown() {
+                // pool is closed by spring
+            }
+
+            @Override
+            public void initialize() {
+            }
+        };
+
+        DBConnectionManager.getInstance().addConnectionProvider(QUARTZ_DATA_SOURCE, provider);
+    }
 }
@@ -23,6 +23,8 @@ import com.flow.platform.api.security.AuthenticationInterceptor;
 import com.flow.platform.api.security.OptionsInterceptor;
 import com.flow.platform.api.security.token.JwtTokenGenerator;
 import com.flow.platform.api.security.token.TokenGenerator;
+import com.flow.platform.core.dao.routing.RoutingContextInterceptor;
+import com.flow.platform.core.http.converter.BinaryCodecMessageConverter;
 import com.flow.platform.core.http.converter.RawGsonMessageConverter;
 import com.flow.platform.domain.Jsonable;
 import com.flow.platform.util.resource.AppResourceLoader;
@@ -145,6 +147,7 @@ public class WebConfig extends WebMvcConfigurerAdapter {
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RoutingContextInterceptor());
         registry.addInterceptor(new OptionsInterceptor());
         registry.addInterceptor(authInterceptor());
     }
@@ -161,6 +164,9 @@ public class WebConfig extends WebMvcConfigurerAdapter {
         }
 
         converters.add(jsonConverter);
+
+        // binary cmd payload, added after json which keep json as default for accept */*
+        converters.add(new BinaryCodecMessageConverter());
     }
 
     /**
@@ -17,12 +17,29 @@
 package com.flow.platform.api.controller;
 
 import com.flow.platform.api.domain.Artifact;
+import com.flow.platform.api.domain.ArtifactUpload;
 import com.flow.platform.api.service.ArtifactService;
+import com.flow.platform.core.exception.FlowException;
+import com.flow.platform.core.exception.NotFoundException;
+import com.flow.platform.util.http.HttpURL;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
+import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -48,4 +65,81 @@ public class ArtifactController {
         return artifactService.list(jobId);
     }
 
+    /**
+     * @api {post} /artifacts/uploads Create Upload
+     * @apiGroup Artifact
+     * @apiDescription Start a resumable upload, send content by chunks from the returned offset
+     */
+    @PostMapping(path = "/uploads")
+    public ArtifactUpload createUpload() {
+        return artifactService.createUpload();
+    }
+
+    /**
+     * @api {get} /artifacts/uploads/:id Get Upload
+     * @apiGroup Artifact
+     * @apiDescription Get current offset of upload to resume
+     */
+    @GetMapping(path = "/uploads/{id}")
+    public ArtifactUpload getUpload(@PathVariable String id) {
+        return artifactService.getUpload(id);
+    }
+
+    /**
+     * @api {put} /artifacts/uploads/:id Upload Chunk
+     * @apiParam {Number} offset must equal to current upload offset
+     * @apiGroup Artifact
+     * @apiDescription Append raw request body to upload
+     */
+    @PutMapping(path = "/uploads/{id}")
+    public ArtifactUpload uploadChunk(@PathVariable String id,
+                                      @RequestParam long offset,
+                                      HttpServletRequest request) {
+        try (InputStream chunk = request.getInputStream()) {
+            return artifactService.uploadChunk(id, offset, chunk);
+        } catch (IOException e) {
+            throw new FlowException("Unable to read upload chunk", e);
+        }
+    }
+
+    /**
+     * @api {post} /artifacts/uploads/:id/complete Complete Upload
+     * @apiParam {String} jobId job id
+     * @apiParam {String} name artifact name
+     * @apiParam {String} [sha256] verify uploaded content if provided
+     * @apiGroup Artifact
+     * @apiDescription Create artifact from upload, content is stored once by sha256
+     */
+    @PostMapping(path = "/uploads/{id}/complete")
+    public Artifact completeUpload(@PathVariable String id,
+                                   @RequestParam BigInteger jobId,
+                                   @RequestParam String name,
+                                   @RequestParam(required = false) String sha256) {
+        return artifactService.completeUpload(id, jobId, name, sha256);
+    }
+
+    /**
+     * @api {get} /artifacts/:id/download Download
+     * @apiGroup Artifact
+     * @apiDescription Download artifact content, support Range, If-None-Match and If-Modified-Since
+     */
+    @GetMapping(path = "/{id}/download")
+    public ResponseEntity<Resource> download(@PathVariable Integer id) {
+        Artifact artifact = artifactService.get(id);
+        if (Objects.isNull(artifact)) {
+            throw new NotFoundException("Artifact not found: " + id);
+        }
+
+        Path blob = artifactService.getBlob(artifact);
+
+        // Spring returns 304 for matched etag and 206 for range request of resource body
+        return ResponseEntity.ok()
+            .eTag("\"" + artifact.getSha256() + "\"")
+            .lastModified(artifact.getCreatedAt().toInstant().toEpochMilli())
+            .cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header(HttpHeaders.CONTENT_DISPOSITION, HttpURL.contentDisposition(artifact.getName()))
+            .body(new FileSystemResource(blob.toFile()));
+    }
+
 }
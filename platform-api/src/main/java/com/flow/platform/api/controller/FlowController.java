@@ -16,7 +16,9 @@
 
 package com.flow.platform.api.controller;
 
+import com.flow.platform.api.domain.GitRef;
 import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.domain.node.NodeCrontab;
 import com.flow.platform.api.domain.permission.Actions;
 import com.flow.platform.api.domain.request.ListParam;
 import com.flow.platform.api.domain.request.TriggerParam;
@@ -24,10 +26,14 @@ import com.flow.platform.api.domain.response.BooleanValue;
 import com.flow.platform.api.domain.user.User;
 import com.flow.platform.api.envs.EnvUtil;
 import com.flow.platform.api.security.WebSecurity;
-import com.flow.platform.api.service.GitService;
+import com.flow.platform.api.service.GitRefService;
+import com.flow.platform.api.service.node.NodeCrontabService;
 import com.flow.platform.api.service.node.YmlService;
+import com.flow.platform.core.domain.Page;
+import com.flow.platform.core.domain.Pageable;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.google.common.base.Strings;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,7 +58,10 @@ public class FlowController extends NodeController {
     private YmlService ymlService;
 
     @Autowired
-    private GitService gitService;
+    private GitRefService gitRefService;
+
+    @Autowired
+    private NodeCrontabService nodeCrontabService;
 
     @GetMapping
     @WebSecurity(action = Actions.FLOW_SHOW)
@@ -255,6 +264,37 @@ public class FlowController extends NodeController {
         return new BooleanValue(exist);
     }
 
+    /**
+     * @api {get} /flows/:root/crontab Crontab
+     * @apiParam {String} root flow node name
+     * @apiParam {Number} [next] num of next fire times, the default is 5
+     * @apiGroup Flows
+     * @apiDescription Get crontab trigger state and next fire times of flow
+     *
+     * @apiSuccessExample {json} Success-Response
+     *
+     *  {
+     *      path: "flow-name",
+     *      branch: "master",
+     *      cron: "12 0 * ? * *",
+     *      state: "NORMAL",
+     *      previousFireTime: 1512000012,
+     *      nextFireTimes: [
+     *          1512003612,
+     *          1512007212
+     *      ]
+     *  }
+     */
+    @GetMapping("/{root}/crontab")
+    @WebSecurity(action = Actions.FLOW_SHOW)
+    public NodeCrontab crontab(@RequestParam(required = false) Integer next) {
+        if (next == null) {
+            next = 5;
+        }
+
+        return nodeCrontabService.find(currentNodePath.get(), next);
+    }
+
     /**
      * @api {get} /flows/:root/branches List Branches
      * @apiParam {String} root flow node name
@@ -276,7 +316,11 @@ public class FlowController extends NodeController {
         }
 
         Node root = nodeService.find(currentNodePath.get()).root();
-        return gitService.branches(root, refresh);
+        if (refresh) {
+            gitRefService.refresh(root);
+        }
+
+        return names(gitRefService.branches(root, null));
     }
 
     /**
@@ -294,7 +338,71 @@ public class FlowController extends NodeController {
     @GetMapping("/{root}/tags")
     public List<String> listTags() {
         Node root = nodeService.find(currentNodePath.get()).root();
-        return gitService.tags(root, false);
+        return names(gitRefService.tags(root, null));
+    }
+
+    /**
+     * @api {get} /flows/:root/refs/branches Page Branches
+     * @apiParam {String} root flow node name
+     * @apiParam {Number} [number] page number start from 1, return all if not set
+     * @apiParam {Number} [size] page size
+     * @apiGroup Flows
+     * @apiDescription Branches sorted by name with last commit
+     *
+     * @apiSuccessExample {json} Success-Response
+     *
+     *  {
+     *      content: [
+     *          {
+     *              name: "master",
+     *              commitId: "a7bb2ab2c6e1c2b6b0f1f6f3ca2b7a4e1d3c5b8f",
+     *              message: "fix something",
+     *              author: "yang@flow.ci",
+     *              updatedAt: 1512000000
+     *          }
+     *      ],
+     *      totalSize: 1,
+     *      pageNumber: 1,
+     *      pageSize: 20,
+     *      pageCount: 1
+     *  }
+     */
+    @GetMapping("/{root}/refs/branches")
+    @WebSecurity(action = Actions.FLOW_SHOW)
+    public Page<GitRef> pageBranches(Pageable pageable) {
+        Node root = nodeService.find(currentNodePath.get()).root();
+        return gitRefService.branches(root, pageable);
+    }
+
+    /**
+     * @api {get} /flows/:root/refs/tags Page Tags
+     * @apiParam {String} root flow node name
+     * @apiParam {Number} [number] page number start from 1, return all if not set
+     * @apiParam {Number} [size] page size
+     * @apiGroup Flows
+     * @apiDescription Tags sorted by name in descending order with last commit
+     *
+     * @apiSuccessExample {json} Success-Response
+     *
+     *  {
+     *      content: [
+     *          {
+     *              name: "v1.0",
+     *              commitId: "a7bb2ab2c6e1c2b6b0f1f6f3ca2b7a4e1d3c5b8f",
+     *              updatedAt: 1512000000
+     *          }
+     *      ],
+     *      totalSize: 1,
+     *      pageNumber: 1,
+     *      pageSize: 20,
+     *      pageCount: 1
+     *  }
+     */
+    @GetMapping("/{root}/refs/tags")
+    @WebSecurity(action = Actions.FLOW_SHOW)
+    public Page<GitRef> pageTags(Pageable pageable) {
+        Node root = nodeService.find(currentNodePath.get()).root();
+        return gitRefService.tags(root, pageable);
     }
 
     /**
@@ -368,4 +476,12 @@ public class FlowController extends NodeController {
         envService.save(flow, triggerParam.toEnv(), true);
         return flow;
     }
+
+    private static List<String> names(Page<GitRef> refs) {
+        List<String> names = new ArrayList<>(refs.getContent().size());
+        for (GitRef ref : refs.getContent()) {
+            names.add(ref.getName());
+        }
+        return names;
+    }
 }
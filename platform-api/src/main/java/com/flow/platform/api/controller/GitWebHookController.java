@@ -25,6 +25,7 @@ import com.flow.platform.api.envs.GitEnvs;
 import com.flow.platform.api.envs.GitToggleEnvs;
 import com.flow.platform.api.git.GitEventEnvConverter;
 import com.flow.platform.api.git.GitWebhookTriggerFinishEvent;
+import com.flow.platform.api.service.GitRefService;
 import com.flow.platform.api.service.job.JobService;
 import com.flow.platform.core.exception.FlowException;
 import com.flow.platform.core.exception.IllegalStatusException;
@@ -35,6 +36,9 @@ import com.flow.platform.util.git.GitException;
 import com.flow.platform.util.git.hooks.GitHookEventFactory;
 import com.flow.platform.util.git.model.GitEvent;
 import com.flow.platform.util.git.model.GitEventType;
+import com.flow.platform.util.git.model.GitPushTagEvent;
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.trace.TrafficRecorder;
 import com.google.common.base.Strings;
 import com.google.common.io.CharStreams;
 import java.io.IOException;
@@ -65,11 +69,18 @@ public class GitWebHookController extends NodeController {
     @Autowired
     private JobService jobService;
 
+    @Autowired
+    private GitRefService gitRefService;
+
     @Autowired
     private ApplicationEventPublisher applicationEventPublisher;
 
+    @Autowired
+    private TrafficRecorder trafficRecorder;
+
     @PostMapping(path = "/{root}")
     public void onEventReceived(@RequestHeader HttpHeaders headers, HttpServletRequest request) {
+        final long start = System.currentTimeMillis();
         final String path = currentNodePath.get();
         Map<String, String> headerAsMap = headers.toSingleValueMap();
 
@@ -89,6 +100,11 @@ public class GitWebHookController extends NodeController {
 
             LOGGER.trace("Git Webhook received: %s", hookEvent.toString());
 
+            // update git ref catalog even if the event is skipped or filtered
+            if (hookEvent instanceof GitPushTagEvent) {
+                gitRefService.onEvent(flow, (GitPushTagEvent) hookEvent);
+            }
+
             final String changeLog = gitEnvs.get(GitEnvs.FLOW_GIT_CHANGELOG.toString());
             if (!Strings.isNullOrEmpty(changeLog) && changeLog.contains(SKIP_SIGNAL)) {
                 LOGGER.trace("Skipped");
@@ -108,6 +124,8 @@ public class GitWebHookController extends NodeController {
 
         } catch (GitException | FlowException e) {
             LOGGER.warn("Cannot process web hook event: %s", e.getMessage());
+        } finally {
+            trafficRecorder.record(TrafficRecord.Type.WEBHOOK, start, "/hooks/git/" + path, headerAsMap, body);
         }
     }
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.controller;
+
+import com.flow.platform.api.domain.sync.SyncBundle;
+import com.flow.platform.api.service.SyncService;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Plugin bundles for agent, no web security since agent fetch bundle by curl
+ *
+ * @author yang
+ */
+@RestController
+@RequestMapping(path = "/bundles")
+public class SyncBundleController {
+
+    @Autowired
+    private SyncService syncService;
+
+    /**
+     * @api {get} /bundles Manifest
+     * @apiGroup Plugin
+     * @apiDescription List bundle of latest tag for each plugin repo
+     *
+     * @apiSuccessExample {json} Success-Response:
+     *     HTTP/1.1 200 OK
+     *     [
+     *         {
+     *             repo: {
+     *                 name: "fir-cli",
+     *                 tag: "1.4.9",
+     *                 hash: "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08"
+     *             },
+     *             size: 10240
+     *         }
+     *     ]
+     */
+    @GetMapping
+    public List<SyncBundle> manifest() {
+        return syncService.bundles();
+    }
+
+    /**
+     * @api {get} /bundles/:hash Download
+     * @apiParam {String} hash sha256 of bundle
+     * @apiGroup Plugin
+     * @apiDescription Download tar.gz bundle, it is immutable and can be cached by hash
+     */
+    @GetMapping(path = "/{hash}")
+    public ResponseEntity<Resource> download(@PathVariable String hash) {
+        Path bundle = syncService.bundle(hash);
+
+        return ResponseEntity.ok()
+            .eTag("\"" + hash + "\"")
+            .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic())
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .body(new FileSystemResource(bundle.toFile()));
+    }
+}
@@ -19,6 +19,7 @@ package com.flow.platform.api.dao;
 import com.flow.platform.api.domain.Artifact;
 import com.flow.platform.core.dao.BaseDao;
 import java.math.BigInteger;
+import java.time.ZonedDateTime;
 import java.util.List;
 
 /**
@@ -28,4 +29,22 @@ public interface ArtifactDao extends BaseDao<Integer, Artifact> {
 
     List<Artifact> list(BigInteger jobId);
 
+    /**
+     * List flow paths which have artifacts
+     */
+    List<String> listFlowPaths();
+
+    /**
+     * List sha256 of all artifacts in blob store
+     */
+    List<String> listBlobHashes();
+
+    /**
+     * Delete artifacts in local blob store of flow which created before time,
+     * artifacts with external url are not deleted
+     *
+     * @return number of deleted artifacts
+     */
+    int deleteBefore(String flowPath, ZonedDateTime time);
+
 }
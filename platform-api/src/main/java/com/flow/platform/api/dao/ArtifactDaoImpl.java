@@ -17,8 +17,10 @@
 package com.flow.platform.api.dao;
 
 import com.flow.platform.api.domain.Artifact;
+import com.flow.platform.api.domain.ArtifactType;
 import com.flow.platform.core.dao.AbstractBaseDao;
 import java.math.BigInteger;
+import java.time.ZonedDateTime;
 import java.util.List;
 import org.springframework.stereotype.Repository;
 
@@ -46,4 +48,28 @@ public class ArtifactDaoImpl extends AbstractBaseDao<Integer, Artifact> implemen
             .list());
     }
 
+    @Override
+    public List<String> listFlowPaths() {
+        return execute(session -> session
+            .createQuery("select distinct j.nodePath from Artifact a, Job j where a.jobId = j.id", String.class)
+            .list());
+    }
+
+    @Override
+    public List<String> listBlobHashes() {
+        return execute(session -> session
+            .createQuery("select distinct sha256 from Artifact where sha256 is not null", String.class)
+            .list());
+    }
+
+    @Override
+    public int deleteBefore(String flowPath, ZonedDateTime time) {
+        return execute(session -> session
+            .createQuery("delete from Artifact where tag = :tag and createdAt < :time "
+                + "and jobId in (select id from Job where nodePath = :path)")
+            .setParameter("tag", ArtifactType.LOCAL_BLOB_STORE)
+            .setParameter("time", time)
+            .setParameter("path", flowPath)
+            .executeUpdate());
+    }
 }
@@ -23,15 +23,18 @@ import com.flow.platform.api.domain.job.NodeStatus;
 import com.flow.platform.core.dao.AbstractBaseDao;
 import com.flow.platform.core.dao.QueryHelper;
 import com.flow.platform.core.dao.QueryHelper.Builder;
+import com.flow.platform.core.dao.routing.ReadReplica;
 import com.flow.platform.core.domain.Page;
 import com.flow.platform.core.domain.Pageable;
 import com.flow.platform.util.CollectionUtil;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import org.hibernate.Session;
 import org.hibernate.query.NativeQuery;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * @author yh@firim
@@ -124,6 +127,8 @@ public class JobDaoImpl extends AbstractBaseDao<BigInteger, Job> implements JobD
 
 
     @Override
+    @ReadReplica
+    @Transactional(readOnly = true)
     public List<Job> latestByPath(List<String> paths) {
         return execute((Session session) -> {
 
@@ -148,6 +153,8 @@ public class JobDaoImpl extends AbstractBaseDao<BigInteger, Job> implements JobD
     }
 
     @Override
+    @ReadReplica
+    @Transactional(readOnly = true)
     public Page<Job> latestByPath(List<String> paths, Pageable pageable) {
         return execute((Session session) -> {
 
@@ -231,9 +238,21 @@ public class JobDaoImpl extends AbstractBaseDao<BigInteger, Job> implements JobD
 
     @Override
     public List<Job> listByStatus(EnumSet<JobStatus> status) {
-        return execute(session -> session.createQuery("from Job where status in :status", Job.class)
-            .setParameterList("status", status)
-            .list());
+        return execute((Session session) -> {
+            List<String> statusNames = new ArrayList<>(status.size());
+            for (JobStatus item : status) {
+                statusNames.add(item.name());
+            }
+
+            // fetch root result in the same query to avoid loading it for each job
+            Builder builder = JOB_LIST_QUERY_BUILDER.clone()
+                .where("job.job_status in (:status)")
+                .parameter("status", statusNames);
+
+            NativeQuery nativeQuery = builder.createNativeQuery(session).setResultSetMapping("MappingJobResult");
+            List<Object[]> objects = nativeQuery.list();
+            return JobConvertUtil.convert(objects);
+        });
     }
 
     @Override
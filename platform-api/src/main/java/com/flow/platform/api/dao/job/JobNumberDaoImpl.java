@@ -45,8 +45,10 @@ public class JobNumberDaoImpl extends AbstractBaseDao<String, JobNumber> impleme
                 "set a.build_number = (b.build_number + 1)\n" +
                 "where a.node_path = :nodePath";
 
+            // only invalidate job number cache region rather than all regions
             int numOfUpdated = session.createNativeQuery(sql)
                 .setParameter("nodePath", path)
+                .addSynchronizedEntityClass(getEntityClass())
                 .executeUpdate();
 
             JobNumber number = session.get(getEntityClass(), path);
@@ -55,6 +55,18 @@ public class Artifact extends Jsonable{
     @Expose
     private String url;
 
+    /**
+     * sha256 hex of content, only for artifact in local blob store
+     */
+    @Expose
+    private String sha256;
+
+    /**
+     * content length in bytes, only for artifact in local blob store
+     */
+    @Expose
+    private Long size;
+
     public Artifact() {
     }
 
@@ -96,6 +108,22 @@ public class Artifact extends Jsonable{
         this.url = url;
     }
 
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
     public Integer getId() {
         return id;
     }
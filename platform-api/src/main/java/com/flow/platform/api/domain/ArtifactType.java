@@ -28,5 +28,8 @@ public enum ArtifactType {
     FIR_IM,
 
     // aws s3 objects
-    AWS
+    AWS,
+
+    // content addressed blob in api local storage
+    LOCAL_BLOB_STORE
 }
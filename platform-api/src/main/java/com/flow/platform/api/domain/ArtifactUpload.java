@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.domain;
+
+import com.flow.platform.domain.Jsonable;
+import com.google.gson.annotations.Expose;
+
+/**
+ * Resumable artifact upload, next chunk should be sent from offset
+ *
+ * @author yang
+ */
+public class ArtifactUpload extends Jsonable {
+
+    @Expose
+    private String id;
+
+    @Expose
+    private Long offset;
+
+    public ArtifactUpload() {
+    }
+
+    public ArtifactUpload(String id, Long offset) {
+        this.id = id;
+        this.offset = offset;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+
+    @Override
+    public String toString() {
+        return "ArtifactUpload{" +
+            "id='" + id + '\'' +
+            ", offset=" + offset +
+            '}';
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.domain;
+
+import com.flow.platform.domain.Jsonable;
+import com.google.gson.annotations.Expose;
+import java.time.ZonedDateTime;
+
+/**
+ * Git branch or tag with its last commit
+ *
+ * @author yang
+ */
+public class GitRef extends Jsonable {
+
+    /**
+     * Simple ref name, ex: master or v1.0
+     */
+    @Expose
+    private String name;
+
+    @Expose
+    private String commitId;
+
+    /**
+     * Last commit message from git webhook, or loaded from git repo on refresh if commit is available
+     */
+    @Expose
+    private String message;
+
+    /**
+     * Last commit author from git webhook, or loaded from git repo on refresh if commit is available
+     */
+    @Expose
+    private String author;
+
+    /**
+     * Time of ref changed in catalog
+     */
+    @Expose
+    private ZonedDateTime updatedAt;
+
+    public GitRef(String name, String commitId) {
+        this.name = name;
+        this.commitId = commitId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getCommitId() {
+        return commitId;
+    }
+
+    public void setCommitId(String commitId) {
+        this.commitId = commitId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public ZonedDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(ZonedDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "GitRef{" +
+            "name='" + name + '\'' +
+            ", commitId='" + commitId + '\'' +
+            '}';
+    }
+}
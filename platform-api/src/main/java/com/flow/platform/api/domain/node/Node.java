@@ -17,6 +17,7 @@
 package com.flow.platform.api.domain.node;
 
 import com.flow.platform.api.domain.EnvObject;
+import com.flow.platform.domain.CmdCache;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import java.time.ZonedDateTime;
@@ -61,6 +62,12 @@ public final class Node extends EnvObject {
     @Expose
     private String plugin;
 
+    /**
+     * Dependency caches restored before and saved after step by agent
+     */
+    @Expose
+    private List<CmdCache> cache = new LinkedList<>();
+
     @Expose
     private String createdBy;
 
@@ -181,6 +188,14 @@ public final class Node extends EnvObject {
         this.plugin = plugin;
     }
 
+    public List<CmdCache> getCache() {
+        return cache;
+    }
+
+    public void setCache(List<CmdCache> cache) {
+        this.cache = cache;
+    }
+
     public String getCreatedBy() {
         return createdBy;
     }
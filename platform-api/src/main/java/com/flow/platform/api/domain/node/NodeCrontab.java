@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.domain.node;
+
+import com.flow.platform.domain.Jsonable;
+import com.google.gson.annotations.Expose;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Crontab trigger state of flow
+ *
+ * @author yang
+ */
+public class NodeCrontab extends Jsonable {
+
+    @Expose
+    private String path;
+
+    @Expose
+    private String branch;
+
+    /**
+     * Quartz cron expression with jitter
+     */
+    @Expose
+    private String cron;
+
+    @Expose
+    private String state;
+
+    @Expose
+    private ZonedDateTime previousFireTime;
+
+    @Expose
+    private List<ZonedDateTime> nextFireTimes;
+
+    public NodeCrontab(String path, String branch, String cron, String state) {
+        this.path = path;
+        this.branch = branch;
+        this.cron = cron;
+        this.state = state;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public void setBranch(String branch) {
+        this.branch = branch;
+    }
+
+    public String getCron() {
+        return cron;
+    }
+
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public ZonedDateTime getPreviousFireTime() {
+        return previousFireTime;
+    }
+
+    public void setPreviousFireTime(ZonedDateTime previousFireTime) {
+        this.previousFireTime = previousFireTime;
+    }
+
+    public List<ZonedDateTime> getNextFireTimes() {
+        return nextFireTimes;
+    }
+
+    public void setNextFireTimes(List<ZonedDateTime> nextFireTimes) {
+        this.nextFireTimes = nextFireTimes;
+    }
+}
@@ -16,9 +16,7 @@
 
 package com.flow.platform.api.domain.sync;
 
-import com.flow.platform.core.queue.PriorityMessage;
 import com.flow.platform.domain.AgentPath;
-import com.flow.platform.queue.PlatformQueue;
 import com.google.gson.annotations.Expose;
 import java.time.ZonedDateTime;
 import java.util.LinkedHashSet;
@@ -39,12 +37,13 @@ public class Sync {
      * Synced repo list for agent
      */
     @Expose
-    private Set<SyncRepo> repos = new LinkedHashSet<>();
+    private volatile Set<SyncRepo> repos = new LinkedHashSet<>();
 
     /**
-     * Agent sync event queue
+     * Is repo list been reported by agent, the repo list is unknown before first sync finished
      */
-    private PlatformQueue<PriorityMessage> queue;
+    @Expose
+    private volatile boolean reported = false;
 
     /**
      * Latest sync time
@@ -52,9 +51,8 @@ public class Sync {
     @Expose
     private ZonedDateTime syncTime;
 
-    public Sync(AgentPath path, PlatformQueue<PriorityMessage> queue) {
+    public Sync(AgentPath path) {
         this.path = path;
-        this.queue = queue;
         this.syncTime = ZonedDateTime.now();
     }
 
@@ -66,25 +64,24 @@ public class Sync {
         return repos;
     }
 
-    public void enqueue(SyncEvent event, Integer priority) {
-        this.queue.enqueue(PriorityMessage.create(event.toBytes(), priority));
-    }
-
-    public SyncEvent dequeue() {
-        PriorityMessage message = this.queue.dequeue();
-        if (message == null) {
-            return null;
-        }
-
-        return SyncEvent.parse(message.getBody(), SyncEvent.class);
+    public boolean isReported() {
+        return reported;
     }
 
-    public void cleanQueue() {
-        this.queue.clean();
+    /**
+     * Replace repo list by agent reported
+     */
+    public void setRepos(Set<SyncRepo> repos) {
+        this.repos = repos;
+        this.reported = true;
     }
 
-    public int queueSize() {
-        return this.queue.size();
+    /**
+     * Mark repo list as unknown, the agent will be fully synced by next sync
+     */
+    public void reset() {
+        this.repos = new LinkedHashSet<>();
+        this.reported = false;
     }
 
     public ZonedDateTime getSyncTime() {
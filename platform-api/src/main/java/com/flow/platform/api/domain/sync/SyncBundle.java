@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.domain.sync;
+
+import com.flow.platform.domain.Jsonable;
+import com.google.gson.annotations.Expose;
+
+/**
+ * Immutable plugin bundle which is tar.gz of repo at tag, identified by sha256 of content
+ *
+ * @author yang
+ */
+public class SyncBundle extends Jsonable {
+
+    /**
+     * Repo name, tag and sha256 of bundle content
+     */
+    @Expose
+    private SyncRepo repo;
+
+    /**
+     * Bundle size in bytes
+     */
+    @Expose
+    private Long size;
+
+    /**
+     * Git commit id of tag, bundle will not be rebuilt if commit not changed
+     */
+    private String commitId;
+
+    public SyncBundle(String name, String tag, String hash, Long size, String commitId) {
+        this.repo = new SyncRepo(name, tag, hash);
+        this.size = size;
+        this.commitId = commitId;
+    }
+
+    public SyncRepo getRepo() {
+        return repo;
+    }
+
+    public String getHash() {
+        return repo.getHash();
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public String getCommitId() {
+        return commitId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        SyncBundle that = (SyncBundle) o;
+        return getHash().equals(that.getHash());
+    }
+
+    @Override
+    public int hashCode() {
+        return getHash().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "SyncBundle{" +
+            "repo=" + repo +
+            ", hash='" + getHash() + '\'' +
+            ", size=" + size +
+            "} " + super.toString();
+    }
+}
@@ -14,12 +14,14 @@
  * limitations under the License.
  */
 
+
 package com.flow.platform.api.domain.sync;
 
 import com.flow.platform.domain.Jsonable;
 import com.flow.platform.util.CommandUtil.Unix;
 import com.flow.platform.util.StringUtil;
 import com.google.gson.annotations.Expose;
+import java.util.List;
 
 /**
  * @author yang
@@ -31,6 +33,11 @@ public class SyncEvent extends Jsonable {
      */
     public final static String FLOW_SYNC_LIST = "FLOW_SYNC_LIST";
 
+    /**
+     * File in repo folder on agent which records sha256 of installed bundle
+     */
+    public final static String BUNDLE_HASH_FILE = ".flow-bundle";
+
     public final static SyncEvent DELETE_ALL =
         new SyncEvent(null, StringUtil.EMPTY, StringUtil.EMPTY, SyncType.DELETE_ALL);
 
@@ -38,12 +45,79 @@ public class SyncEvent extends Jsonable {
         new SyncEvent(null, StringUtil.EMPTY, StringUtil.EMPTY, SyncType.LIST);
 
     /**
-     * Git source url
+     * Shell function to download bundle, verify sha256 and extract to repo folder,
+     * skip if the folder already installed from same bundle
+     *
+     * args: $1 = folder, $2 = sha256, $3 = bundle url
+     */
+    private final static String FETCH_FUNCTION = "flow_sync_fetch() {\n"
+        + "  if [ \"$(cat \"$1/" + BUNDLE_HASH_FILE + "\" 2>/dev/null)\" = \"$2\" ]; then return 0; fi\n"
+        + "  tmp=\"$1" + BUNDLE_HASH_FILE + ".tar.gz\"\n"
+        + "  curl -sSfL -o \"$tmp\" \"$3\" || { rm -f \"$tmp\"; return 1; }\n"
+        + "  actual=$( (sha256sum \"$tmp\" 2>/dev/null || shasum -a 256 \"$tmp\") | cut -d ' ' -f 1)\n"
+        + "  if [ \"$actual\" != \"$2\" ]; then rm -f \"$tmp\"; return 1; fi\n"
+        + "  rm -rf \"$1\" && mkdir -p \"$1\" && tar -xzf \"$tmp\" -C \"$1\" && echo \"$2\" > \"$1/" + BUNDLE_HASH_FILE + "\"\n"
+        + "  rc=$?\n"
+        + "  rm -f \"$tmp\"\n"
+        + "  return $rc\n"
+        + "}";
+
+    /**
+     * Shell function to list repo folders with installed bundle hash, ex: A[v1.0]@{sha256}
+     */
+    private final static String LIST_FUNCTION = "flow_sync_list() {\n"
+        + "  for d in */; do\n"
+        + "    d=\"${d%/}\"\n"
+        + "    [ -d \"$d\" ] || continue\n"
+        + "    echo \"$d" + SyncRepo.HASH_SEPARATOR + "$(cat \"$d/" + BUNDLE_HASH_FILE + "\" 2>/dev/null)\"\n"
+        + "  done\n"
+        + "}";
+
+    /**
+     * Build single script for events:
+     * - delete events executed first
+     * - bundles are fetched in background with max num of parallel downloads
+     * - list agent repos at the end to report the result
+     */
+    public static String toScript(List<SyncEvent> events, int parallel) {
+        StringBuilder script = new StringBuilder();
+        script.append(FETCH_FUNCTION).append(Unix.LINE_SEPARATOR);
+        script.append(LIST_FUNCTION).append(Unix.LINE_SEPARATOR);
+
+        for (SyncEvent event : events) {
+            if (event.isDelete()) {
+                script.append(event.toScript()).append(Unix.LINE_SEPARATOR);
+            }
+        }
+
+        int numOfFetch = 0;
+        for (SyncEvent event : events) {
+            if (!event.isFetch()) {
+                continue;
+            }
+
+            script.append(event.toScript()).append(" &").append(Unix.LINE_SEPARATOR);
+
+            if (++numOfFetch % parallel == 0) {
+                script.append("wait").append(Unix.LINE_SEPARATOR);
+            }
+        }
+
+        if (numOfFetch % parallel != 0) {
+            script.append("wait").append(Unix.LINE_SEPARATOR);
+        }
+
+        script.append(LIST.toScript());
+        return script.toString();
+    }
+
+    /**
+     * Bundle url to download
      */
-    private String gitUrl;
+    private String url;
 
     /**
-     * Repo name and tag
+     * Repo name, tag and bundle hash
      */
     @Expose
     private SyncRepo repo;
@@ -54,24 +128,24 @@ public class SyncEvent extends Jsonable {
     @Expose
     private SyncType syncType;
 
-    public SyncEvent(String gitUrl, String name, String tag, SyncType syncType) {
-        this.gitUrl = gitUrl;
+    public SyncEvent(String url, String name, String tag, SyncType syncType) {
+        this.url = url;
         this.repo = new SyncRepo(name, tag);
         this.syncType = syncType;
     }
 
-    public SyncEvent(String gitUrl, SyncRepo repo, SyncType syncType) {
-        this.gitUrl = gitUrl;
+    public SyncEvent(String url, SyncRepo repo, SyncType syncType) {
+        this.url = url;
         this.repo = repo;
         this.syncType = syncType;
     }
 
-    public String getGitUrl() {
-        return gitUrl;
+    public String getUrl() {
+        return url;
     }
 
-    public void setGitUrl(String gitUrl) {
-        this.gitUrl = gitUrl;
+    public void setUrl(String url) {
+        this.url = url;
     }
 
     public SyncRepo getRepo() {
@@ -82,35 +156,40 @@ public class SyncEvent extends Jsonable {
         return syncType;
     }
 
+    public boolean isFetch() {
+        return syncType == SyncType.CREATE || syncType == SyncType.UPDATE;
+    }
+
+    public boolean isDelete() {
+        return syncType == SyncType.DELETE || syncType == SyncType.DELETE_ALL;
+    }
+
+    /**
+     * Script for single event, CREATE and UPDATE event depends on functions defined by {@link #toScript(List, int)}
+     */
     public String toScript() {
         if (syncType == SyncType.LIST) {
-            return "export " + FLOW_SYNC_LIST + "=\"$(ls)\"";
+            return "export " + FLOW_SYNC_LIST + "=\"$(flow_sync_list)\"";
         }
 
         if (syncType == SyncType.DELETE_ALL) {
             return "rm -rf ./*/";
         }
 
-        // the sync event type DELETE, CREATE, UPDATE needs folder name
-        String folder = repo.toString();
+        // the sync event type DELETE, CREATE, UPDATE needs folder name, quoted since it contains brackets
+        String folder = "'" + repo.toString() + "'";
 
         if (syncType == SyncType.DELETE) {
             return "rm -rf " + folder;
         }
 
-        return "git init " + folder +
-            Unix.LINE_SEPARATOR +
-            "cd " + folder +
-            Unix.LINE_SEPARATOR +
-            "git pull " + gitUrl + " --tags" +
-            Unix.LINE_SEPARATOR +
-            "git checkout " + repo.getTag();
+        return "flow_sync_fetch " + folder + " " + repo.getHash() + " '" + url + "'";
     }
 
     @Override
     public String toString() {
         return "SyncEvent{" +
-            "gitUrl='" + gitUrl + '\'' +
+            "url='" + url + '\'' +
             ", repo='" + repo + '\'' +
             ", syncType=" + syncType +
             "} " + super.toString();
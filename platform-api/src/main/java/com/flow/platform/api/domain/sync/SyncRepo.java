@@ -16,6 +16,7 @@
 
 package com.flow.platform.api.domain.sync;
 
+import com.google.common.base.Strings;
 import com.google.gson.annotations.Expose;
 
 /**
@@ -24,11 +25,24 @@ import com.google.gson.annotations.Expose;
 public class SyncRepo {
 
     /**
-     * Create SyncRepo instance from string ex: A[v1.0]
+     * Separator between folder name and bundle hash, ex: A[v1.0]@{sha256}
+     */
+    public final static char HASH_SEPARATOR = '@';
+
+    /**
+     * Create SyncRepo instance from string ex: A[v1.0] or A[v1.0]@{sha256}
      *
      * @return SyncRepo instance or {@code null} if str is illegal
      */
     public static SyncRepo build(String str) {
+        String hash = null;
+
+        int indexOfHash = str.lastIndexOf(HASH_SEPARATOR);
+        if (indexOfHash > str.lastIndexOf(']')) {
+            hash = str.substring(indexOfHash + 1);
+            str = str.substring(0, indexOfHash);
+        }
+
         if (!str.endsWith("]")) {
             return null;
         }
@@ -40,7 +54,7 @@ public class SyncRepo {
 
         String name = str.substring(0, indexOfLeftBracket);
         String tag = str.substring(indexOfLeftBracket + 1, str.length() - 1);
-        return new SyncRepo(name, tag);
+        return new SyncRepo(name, tag, Strings.emptyToNull(hash));
     }
 
     @Expose
@@ -49,9 +63,20 @@ public class SyncRepo {
     @Expose
     private String tag;
 
+    /**
+     * Sha256 of bundle which repo installed from, null if unknown
+     */
+    @Expose
+    private String hash;
+
     public SyncRepo(String name, String tag) {
+        this(name, tag, null);
+    }
+
+    public SyncRepo(String name, String tag, String hash) {
         this.name = name;
         this.tag = tag;
+        this.hash = hash;
     }
 
     public String getName() {
@@ -62,6 +87,10 @@ public class SyncRepo {
         return tag;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -23,7 +23,12 @@ import java.util.Set;
  */
 public enum AgentEnvs implements EnvKey {
 
-    FLOW_AGENT_WORKSPACE(false, true, null);
+    FLOW_AGENT_WORKSPACE(false, true, null),
+
+    /**
+     * Set by agent to 'true' if the kept workspace has content from prior job of flow and branch
+     */
+    FLOW_AGENT_WORKSPACE_WARM(true, false, null);
 
     private boolean readonly;
 
@@ -71,7 +71,12 @@ public enum FlowEnvs implements EnvKey {
     /**
      * To define crontab task branch
      */
-    FLOW_TASK_CRONTAB_BRANCH(false, false, null);
+    FLOW_TASK_CRONTAB_BRANCH(false, false, null),
+
+    /**
+     * Days to keep artifacts in local blob store, 0 means keep forever
+     */
+    FLOW_ARTIFACT_RETENTION_DAYS(false, true, null);
 
     public final static String ENV_OUTPUT_SEPARATE = ",";
 
@@ -63,7 +63,17 @@ public enum JobEnvs implements EnvKey {
     /**
      * The job cmd timeout in seconds
      */
-    FLOW_JOB_CMD_TIMEOUT(false, true);
+    FLOW_JOB_CMD_TIMEOUT(false, true),
+
+    /**
+     * The cpu cores required by job cmd, used by agent admission and selection
+     */
+    FLOW_JOB_CMD_CPU(false, true),
+
+    /**
+     * The memory in MB required by job cmd, used by agent admission and selection
+     */
+    FLOW_JOB_CMD_MEMORY(false, true);
 
     private boolean readonly;
 
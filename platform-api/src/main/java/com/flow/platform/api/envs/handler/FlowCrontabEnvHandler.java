@@ -20,10 +20,10 @@ import com.flow.platform.api.domain.node.Node;
 import com.flow.platform.api.envs.EnvKey;
 import com.flow.platform.api.envs.FlowEnvs;
 import com.flow.platform.api.service.node.NodeCrontabService;
+import com.flow.platform.api.util.CrontabUtil;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.google.common.collect.Sets;
 import java.text.ParseException;
-import java.util.Objects;
 import java.util.Set;
 import org.quartz.CronExpression;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,7 +35,7 @@ import org.springframework.stereotype.Component;
 @Component
 public class FlowCrontabEnvHandler extends EnvHandler {
 
-    private final static String NO_SPECIFIC_VALUE = "?";
+    private final static int UNIX_CRONTAB_FIELDS = 5;
 
     @Autowired
     private NodeCrontabService nodeCrontabService;
@@ -57,43 +57,18 @@ public class FlowCrontabEnvHandler extends EnvHandler {
 
     @Override
     void onHandle(Node node, String value) {
-        String[] crons = value.split(" ");
-        if (crons.length != 5) {
+        if (value.trim().split(" ").length != UNIX_CRONTAB_FIELDS) {
             throw new IllegalParameterException("Illegal crontab format");
         }
 
-        String seconds = "0";
-        String minute = crons[0];
-        String hours = crons[1];
-        String dayOfMonth = crons[2];
-        String month = crons[3];
-        String dayOfWeek = crons[4];
-
-        // quartz not support for specifying both a day-of-week and a day-of-month
-        if (!Objects.equals(dayOfMonth, NO_SPECIFIC_VALUE) && !Objects.equals(dayOfWeek, NO_SPECIFIC_VALUE)) {
-            dayOfMonth = NO_SPECIFIC_VALUE;
-        }
-
-        String crontabValue = seconds + " " +
-            minute + " " +
-            hours + " " +
-            dayOfMonth + " " +
-            month + " " +
-            dayOfWeek;
-
         try {
-            // fill seconds to crontab value
-            node.putEnv(env(), crontabValue);
-            new CronExpression(crontabValue);
-
-            // setup new value and crontab task
-            nodeCrontabService.set(node);
+            new CronExpression(CrontabUtil.toQuartz(value));
         } catch (ParseException e) {
             throw new IllegalParameterException(e.getMessage());
-        } finally {
-            // reset value to original
-            node.putEnv(env(), value);
         }
+
+        // setup crontab task, the value will be converted to quartz format
+        nodeCrontabService.set(node);
     }
 
     @Override
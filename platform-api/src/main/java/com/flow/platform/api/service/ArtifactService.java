@@ -17,6 +17,8 @@
 package com.flow.platform.api.service;
 
 import com.flow.platform.api.domain.Artifact;
+import com.flow.platform.api.domain.ArtifactUpload;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.file.Path;
 import java.util.List;
@@ -33,4 +35,37 @@ public interface ArtifactService {
     List<Artifact> list(BigInteger jobId);
 
     List<Artifact> list(String path, Long number);
+
+    /**
+     * Start a resumable upload for artifact content
+     */
+    ArtifactUpload createUpload();
+
+    /**
+     * Get upload with current offset, used to resume upload
+     */
+    ArtifactUpload getUpload(String uploadId);
+
+    /**
+     * Append chunk to upload from offset
+     */
+    ArtifactUpload uploadChunk(String uploadId, long offset, InputStream chunk);
+
+    /**
+     * Move upload content into blob store and create artifact for job,
+     * content with same sha256 only stored once
+     *
+     * @param sha256 optional, verify uploaded content if provided
+     */
+    Artifact completeUpload(String uploadId, BigInteger jobId, String name, String sha256);
+
+    /**
+     * Get blob file of artifact in local blob store
+     */
+    Path getBlob(Artifact artifact);
+
+    /**
+     * Delete artifacts out of flow retention and remove unreferenced blobs
+     */
+    void compactTask();
 }
@@ -17,17 +17,35 @@
 package com.flow.platform.api.service;
 
 import com.flow.platform.api.dao.ArtifactDao;
+import com.flow.platform.api.dao.FlowDao;
 import com.flow.platform.api.domain.Artifact;
 import com.flow.platform.api.domain.ArtifactType;
+import com.flow.platform.api.domain.ArtifactUpload;
 import com.flow.platform.api.domain.job.Job;
+import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.envs.FlowEnvs;
 import com.flow.platform.api.service.job.JobService;
 import com.flow.platform.api.service.node.NodeService;
+import com.flow.platform.api.util.BlobStore;
+import com.flow.platform.core.exception.FlowException;
 import com.flow.platform.core.exception.IllegalParameterException;
+import com.flow.platform.core.exception.NotFoundException;
+import com.flow.platform.util.Logger;
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
@@ -36,6 +54,17 @@ import org.springframework.stereotype.Service;
 @Service
 public class ArtifactServiceImpl implements ArtifactService {
 
+    private final static Logger LOGGER = new Logger(ArtifactService.class);
+
+    private final static String DOWNLOAD_URL_TEMPLATE = "%s/artifacts/%s/download";
+
+    /**
+     * Keep unreferenced blob for a while since upload may be completed but artifact not saved
+     */
+    private final static Duration BLOB_SWEEP_GRACE = Duration.ofHours(1);
+
+    private final static Duration UPLOAD_EXPIRATION = Duration.ofDays(1);
+
     @Autowired
     private ArtifactDao artifactDao;
 
@@ -45,6 +74,18 @@ public class ArtifactServiceImpl implements ArtifactService {
     @Autowired
     private JobService jobService;
 
+    @Autowired
+    private FlowDao flowDao;
+
+    @Autowired
+    private BlobStore artifactBlobStore;
+
+    @Value("${domain.api}")
+    private String apiHost;
+
+    @Value("${api.artifact.retention.days}")
+    private Integer defaultRetentionDays;
+
     @Override
     public Artifact create(Artifact artifact) {
         if (Objects.isNull(artifact.getJobId())) {
@@ -90,4 +131,130 @@ public class ArtifactServiceImpl implements ArtifactService {
 
         return artifactDao.list(job.getId());
     }
+
+    @Override
+    public ArtifactUpload createUpload() {
+        try {
+            String uploadId = artifactBlobStore.createUpload();
+            return new ArtifactUpload(uploadId, 0L);
+        } catch (IOException e) {
+            throw new FlowException("Unable to create artifact upload", e);
+        }
+    }
+
+    @Override
+    public ArtifactUpload getUpload(String uploadId) {
+        try {
+            return new ArtifactUpload(uploadId, artifactBlobStore.uploadOffset(uploadId));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(e.getMessage());
+        } catch (IOException e) {
+            throw new FlowException("Unable to read artifact upload " + uploadId, e);
+        }
+    }
+
+    @Override
+    public ArtifactUpload uploadChunk(String uploadId, long offset, InputStream chunk) {
+        try {
+            return new ArtifactUpload(uploadId, artifactBlobStore.appendChunk(uploadId, offset, chunk));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(e.getMessage());
+        } catch (IOException e) {
+            throw new FlowException("Unable to write artifact upload " + uploadId, e);
+        }
+    }
+
+    @Override
+    public Artifact completeUpload(String uploadId, BigInteger jobId, String name, String sha256) {
+        Job job = jobService.find(jobId);
+        if (Objects.isNull(job)) {
+            throw new IllegalParameterException("Parameter jobId is error, not found job");
+        }
+
+        if (Strings.isNullOrEmpty(name)) {
+            throw new IllegalParameterException("Parameter name is missing");
+        }
+
+        String actualSha256;
+        long size;
+        try {
+            actualSha256 = artifactBlobStore.completeUpload(uploadId, sha256);
+            size = Files.size(artifactBlobStore.blobPath(actualSha256));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(e.getMessage());
+        } catch (IOException e) {
+            throw new FlowException("Unable to complete artifact upload " + uploadId, e);
+        }
+
+        Artifact artifact = new Artifact(jobId, name, null);
+        artifact.setTag(ArtifactType.LOCAL_BLOB_STORE);
+        artifact.setSha256(actualSha256);
+        artifact.setSize(size);
+        artifact.setCreatedAt(ZonedDateTime.now());
+        artifactDao.save(artifact);
+
+        artifact.setUrl(String.format(DOWNLOAD_URL_TEMPLATE, apiHost, artifact.getId()));
+        artifactDao.update(artifact);
+        return artifact;
+    }
+
+    @Override
+    public Path getBlob(Artifact artifact) {
+        if (artifact.getTag() != ArtifactType.LOCAL_BLOB_STORE || Objects.isNull(artifact.getSha256())) {
+            throw new IllegalParameterException("Artifact is not in local blob store");
+        }
+
+        Path blob = artifactBlobStore.blobPath(artifact.getSha256());
+        if (!Files.exists(blob)) {
+            throw new NotFoundException("Artifact content not found: " + artifact.getSha256());
+        }
+
+        return blob;
+    }
+
+    @Override
+    @Scheduled(fixedDelay = 60 * 60 * 1000, initialDelay = 10 * 60 * 1000)
+    public void compactTask() {
+        LOGGER.trace("artifact compact task start");
+
+        for (String flowPath : artifactDao.listFlowPaths()) {
+            int days = retentionDays(flowPath);
+            if (days <= 0) {
+                continue;
+            }
+
+            int deleted = artifactDao.deleteBefore(flowPath, ZonedDateTime.now().minusDays(days));
+            if (deleted > 0) {
+                LOGGER.trace("%s artifacts of flow %s are out of retention", deleted, flowPath);
+            }
+        }
+
+        try {
+            Set<String> referenced = new HashSet<>(artifactDao.listBlobHashes());
+            int blobs = artifactBlobStore.sweep(referenced, BLOB_SWEEP_GRACE);
+            int uploads = artifactBlobStore.cleanUploads(UPLOAD_EXPIRATION);
+            LOGGER.trace("artifact compact task end: %s blobs and %s uploads deleted", blobs, uploads);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to compact artifact blob store: %s", e.getMessage());
+        }
+    }
+
+    private int retentionDays(String flowPath) {
+        Node flow = flowDao.get(flowPath);
+        if (Objects.isNull(flow)) {
+            return defaultRetentionDays;
+        }
+
+        String days = flow.getEnv(FlowEnvs.FLOW_ARTIFACT_RETENTION_DAYS);
+        if (Strings.isNullOrEmpty(days)) {
+            return defaultRetentionDays;
+        }
+
+        try {
+            return Integer.parseInt(days);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid %s '%s' of flow %s", FlowEnvs.FLOW_ARTIFACT_RETENTION_DAYS, days, flowPath);
+            return defaultRetentionDays;
+        }
+    }
 }
@@ -49,6 +49,13 @@ public interface CredentialService {
      */
     Map<String, String> findByName(String rsaOrUsernameCredentialName);
 
+    /**
+     * Find envs of multiple credentials, resolved from cache or loaded by one query
+     *
+     * @return credential name to envs, credential not found will not be included
+     */
+    Map<String, Map<String, String>> findByNames(Collection<String> rsaOrUsernameCredentialNames);
+
     /**
      * find credential by name
      */
@@ -33,8 +33,12 @@ import com.flow.platform.core.exception.FlowException;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.util.CollectionUtil;
 import com.flow.platform.util.ExceptionUtil;
+import com.flow.platform.util.Logger;
 import com.flow.platform.util.StringUtil;
+import com.flow.platform.util.zip.ZipStats;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.KeyPair;
@@ -49,9 +53,12 @@ import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -59,6 +66,8 @@ import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * @author lhl
@@ -68,6 +77,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class CredentialServiceImpl extends CurrentUser implements CredentialService {
 
+    private final static Logger LOGGER = new Logger(CredentialService.class);
+
     private final static String PRIVATE_KEY_SUFFIX = "id_rsa";
 
     private final static String PUBLIC_KEY_SUFFIX = "id_rsa.pub";
@@ -76,6 +87,10 @@ public class CredentialServiceImpl extends CurrentUser implements CredentialServ
 
     private final static String CREDENTIAL_FOLDER = "credentials";
 
+    private final static int ENV_CACHE_EXPIRE_SECOND = 60;
+
+    private final static int ENV_CACHE_MAX_SIZE = 500;
+
     @Autowired
     private CredentialDao credentialDao;
 
@@ -84,6 +99,14 @@ public class CredentialServiceImpl extends CurrentUser implements CredentialServ
 
     private final Map<CredentialType, DetailHandler> handlerMapping = new HashMap<>();
 
+    /**
+     * Short-lived cache for resolved credential envs which are unmodifiable
+     */
+    private final Cache<String, Map<String, String>> envCache = CacheBuilder.newBuilder()
+        .expireAfterWrite(ENV_CACHE_EXPIRE_SECOND, TimeUnit.SECONDS)
+        .maximumSize(ENV_CACHE_MAX_SIZE)
+        .build();
+
     @PostConstruct
     public void init() {
         handlerMapping.put(CredentialType.RSA, new RSADetailHandler());
@@ -135,6 +158,9 @@ public class CredentialServiceImpl extends CurrentUser implements CredentialServ
         credential.setCreatedBy(currentUser().getEmail());
         credentialDao.saveOrUpdate(credential);
 
+        invalidateEnvs(name);
+        deleteZipResource(name);
+
         return credentialDao.get(name);
     }
 
@@ -149,33 +175,82 @@ public class CredentialServiceImpl extends CurrentUser implements CredentialServ
             return Collections.emptyMap();
         }
 
-        try {
-            Credential credential = find(rsaOrUsernameCredentialName);
-            CredentialType credentialType = credential.getType();
+        Map<String, Map<String, String>> envs = findByNames(Collections.singleton(rsaOrUsernameCredentialName));
+        return envs.getOrDefault(rsaOrUsernameCredentialName, Collections.emptyMap());
+    }
 
-            // for git ssh client needs rsa credential
-            if (credentialType.equals(CredentialType.RSA)) {
-                RSACredentialDetail credentialDetail = (RSACredentialDetail) credential.getDetail();
+    @Override
+    public Map<String, Map<String, String>> findByNames(Collection<String> rsaOrUsernameCredentialNames) {
+        Map<String, Map<String, String>> result = new HashMap<>(rsaOrUsernameCredentialNames.size());
+        Set<String> missed = new HashSet<>();
 
-                Map<String, String> envs = new HashMap<>(2);
-                envs.put(GitEnvs.FLOW_GIT_SSH_PRIVATE_KEY.name(), credentialDetail.getPrivateKey());
-                envs.put(GitEnvs.FLOW_GIT_SSH_PUBLIC_KEY.name(), credentialDetail.getPublicKey());
-                return envs;
+        for (String name : rsaOrUsernameCredentialNames) {
+            if (Strings.isNullOrEmpty(name)) {
+                continue;
             }
 
-            // for git http client needs username credential
-            if (credentialType.equals(CredentialType.USERNAME)) {
+            Map<String, String> envs = envCache.getIfPresent(name);
 
-                UsernameCredentialDetail credentialDetail = (UsernameCredentialDetail) credential.getDetail();
-
-                Map<String, String> envs = new HashMap<>(2);
-                envs.put(GitEnvs.FLOW_GIT_HTTP_USER.name(), credentialDetail.getUsername());
-                envs.put(GitEnvs.FLOW_GIT_HTTP_PASS.name(), credentialDetail.getPassword());
-                return envs;
+            if (envs == null) {
+                missed.add(name);
+                continue;
             }
 
-        } catch (IllegalParameterException ignore) {
-            // credential not found
+            result.put(name, envs);
+        }
+
+        if (missed.isEmpty()) {
+            return result;
+        }
+
+        // load all missed credentials in one query
+        for (Credential credential : credentialDao.list(missed)) {
+            Map<String, String> envs = Collections.unmodifiableMap(toEnvs(credential));
+            envCache.put(credential.getName(), envs);
+            result.put(credential.getName(), envs);
+        }
+
+        return result;
+    }
+
+    /**
+     * Invalidate cached envs now and after commit, since envs loaded by other thread
+     * before commit are still the old values
+     */
+    private void invalidateEnvs(String name) {
+        envCache.invalidate(name);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    envCache.invalidate(name);
+                }
+            });
+        }
+    }
+
+    private Map<String, String> toEnvs(Credential credential) {
+        CredentialType credentialType = credential.getType();
+
+        // for git ssh client needs rsa credential
+        if (credentialType.equals(CredentialType.RSA)) {
+            RSACredentialDetail credentialDetail = (RSACredentialDetail) credential.getDetail();
+
+            Map<String, String> envs = new HashMap<>(2);
+            envs.put(GitEnvs.FLOW_GIT_SSH_PRIVATE_KEY.name(), credentialDetail.getPrivateKey());
+            envs.put(GitEnvs.FLOW_GIT_SSH_PUBLIC_KEY.name(), credentialDetail.getPublicKey());
+            return envs;
+        }
+
+        // for git http client needs username credential
+        if (credentialType.equals(CredentialType.USERNAME)) {
+            UsernameCredentialDetail credentialDetail = (UsernameCredentialDetail) credential.getDetail();
+
+            Map<String, String> envs = new HashMap<>(2);
+            envs.put(GitEnvs.FLOW_GIT_HTTP_USER.name(), credentialDetail.getUsername());
+            envs.put(GitEnvs.FLOW_GIT_HTTP_PASS.name(), credentialDetail.getPassword());
+            return envs;
         }
 
         return Collections.emptyMap();
@@ -196,6 +271,7 @@ public class CredentialServiceImpl extends CurrentUser implements CredentialServ
     public void delete(String name) {
         Credential credential = find(name);
         credentialDao.delete(credential);
+        invalidateEnvs(name);
         deleteZipResource(name);
     }
 
@@ -316,7 +392,8 @@ public class CredentialServiceImpl extends CurrentUser implements CredentialServ
                 Files.write(privateKey, detail.getPrivateKey().getBytes(AppConfig.DEFAULT_CHARSET));
                 Files.write(publicKey, detail.getPublicKey().getBytes(AppConfig.DEFAULT_CHARSET));
 
-                ZipUtil.zipFolder(tmp.toFile(), targetFile);
+                ZipStats stats = ZipUtil.zipFolder(tmp.toFile(), targetFile);
+                LOGGER.trace("Credential resource zipped to %s: %s", zipPath, stats);
 
             } catch (IOException e) {
                 throw new FlowException("Io exception " + ExceptionUtil.findRootCause(e));
@@ -361,10 +438,11 @@ public class CredentialServiceImpl extends CurrentUser implements CredentialServ
                     FileUtils.copyFileToDirectory(Paths.get(fileResource.getPath()).toFile(), tmp.toFile());
                 }
 
-                ZipUtil.zipFolder(tmp.toFile(), targetFile);
+                ZipStats stats = ZipUtil.zipFolder(tmp.toFile(), targetFile);
+                LOGGER.trace("Credential resource zipped to %s: %s", zipPath, stats);
             } catch (IOException e) {
                 throw new FlowException("Io exception " + ExceptionUtil.findRootCause(e));
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.service;
+
+import com.flow.platform.api.domain.GitRef;
+import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.core.domain.Page;
+import com.flow.platform.core.domain.Pageable;
+import com.flow.platform.util.git.model.GitPushTagEvent;
+
+/**
+ * Catalog of git branches and tags of flow, the read methods never call the remote git repo
+ * except the first load of flow, the catalog is refreshed by schedule and updated by git webhook
+ *
+ * @author yang
+ */
+public interface GitRefService {
+
+    long REFRESH_TASK_PERIOD = 5 * 60 * 1000;
+
+    /**
+     * Branches of flow sorted by name
+     */
+    Page<GitRef> branches(Node flow, Pageable pageable);
+
+    /**
+     * Tags of flow sorted by name in descending order
+     */
+    Page<GitRef> tags(Node flow, Pageable pageable);
+
+    /**
+     * Load branches and tags from git repo, only changed refs are updated
+     */
+    void refresh(Node flow);
+
+    /**
+     * Update branch or tag from git push or tag event
+     */
+    void onEvent(Node flow, GitPushTagEvent event);
+
+    /**
+     * Refresh catalog of all flows with git settings
+     */
+    void refreshTask();
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.service;
+
+import com.flow.platform.api.domain.GitRef;
+import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.envs.EnvUtil;
+import com.flow.platform.api.service.node.NodeService;
+import com.flow.platform.core.domain.Page;
+import com.flow.platform.core.domain.Pageable;
+import com.flow.platform.core.exception.FlowException;
+import com.flow.platform.util.Logger;
+import com.flow.platform.util.git.model.GitCommit;
+import com.flow.platform.util.git.model.GitEventCommit;
+import com.flow.platform.util.git.model.GitPushTagEvent;
+import com.google.common.base.Strings;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.eclipse.jgit.lib.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * @author yang
+ */
+@Service
+public class GitRefServiceImpl implements GitRefService {
+
+    private final static Logger LOGGER = new Logger(GitRefService.class);
+
+    private final static String ZERO_COMMIT_ID = "0000000000000000000000000000000000000000";
+
+    // max num of commits loaded in one refresh, the rest refs without commit info are loaded by next refresh
+    private final static int MAX_COMMITS_PER_REFRESH = 100;
+
+    /**
+     * Branches and tags of flow, sorted by name
+     */
+    private static class Catalog {
+
+        private final NavigableMap<String, GitRef> branches = new ConcurrentSkipListMap<>();
+
+        private final NavigableMap<String, GitRef> tags = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+
+        // full ref name as key and deleted time as value, which prevent a running refresh
+        // with refs listed before the webhook deletion from adding the ref back
+        private final Map<String, ZonedDateTime> tombstones = new HashMap<>();
+
+        private volatile boolean loaded = false;
+    }
+
+    // flow path as key
+    private final Map<String, Catalog> catalogs = new ConcurrentHashMap<>();
+
+    @Autowired
+    private GitService gitService;
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Override
+    public Page<GitRef> branches(Node flow, Pageable pageable) {
+        return page(load(flow).branches, pageable);
+    }
+
+    @Override
+    public Page<GitRef> tags(Node flow, Pageable pageable) {
+        return page(load(flow).tags, pageable);
+    }
+
+    @Override
+    public void refresh(Node flow) {
+        Catalog catalog = catalogs.computeIfAbsent(flow.getPath(), path -> new Catalog());
+        ZonedDateTime startedAt = ZonedDateTime.now();
+
+        // remote call out of lock, webhook events will not be blocked
+        Map<String, String> refs = gitService.refs(flow);
+        Map<String, GitCommit> commits = loadCommits(flow, catalog, refs);
+
+        synchronized (catalog) {
+            int changed = merge(catalog.branches, refs, Constants.R_HEADS, startedAt, catalog.tombstones, commits);
+            changed += merge(catalog.tags, refs, Constants.R_TAGS, startedAt, catalog.tombstones, commits);
+
+            // refs listed after deletion are up to date, tombstones before refresh started are useless
+            catalog.tombstones.values().removeIf(deletedAt -> !deletedAt.isAfter(startedAt));
+            catalog.loaded = true;
+            LOGGER.trace("Git refs of flow %s refreshed with %s changes", flow.getPath(), changed);
+        }
+    }
+
+    @Override
+    public void onEvent(Node flow, GitPushTagEvent event) {
+        Catalog catalog = catalogs.get(flow.getPath());
+
+        // not loaded yet, all refs will be loaded at first time
+        if (catalog == null || !catalog.loaded || event.getRef() == null) {
+            return;
+        }
+
+        String name;
+        NavigableMap<String, GitRef> refs;
+
+        if (event.getRef().startsWith(Constants.R_HEADS)) {
+            name = event.getRef().substring(Constants.R_HEADS.length());
+            refs = catalog.branches;
+        } else if (event.getRef().startsWith(Constants.R_TAGS)) {
+            name = event.getRef().substring(Constants.R_TAGS.length());
+            refs = catalog.tags;
+        } else {
+            return;
+        }
+
+        synchronized (catalog) {
+            // ref deleted
+            if (Strings.isNullOrEmpty(event.getAfter()) || Objects.equals(event.getAfter(), ZERO_COMMIT_ID)) {
+                refs.remove(name);
+                catalog.tombstones.put(event.getRef(), ZonedDateTime.now());
+                return;
+            }
+
+            catalog.tombstones.remove(event.getRef());
+
+            // the 'after' of annotated tag is tag object id, use peeled commit id as same as refresh
+            String commitId = Strings.isNullOrEmpty(event.getHeadCommitId()) ? event.getAfter() : event.getHeadCommitId();
+
+            GitRef ref = new GitRef(name, commitId);
+            ref.setUpdatedAt(ZonedDateTime.now());
+            ref.setMessage(event.getMessage());
+            ref.setAuthor(event.getUserEmail());
+
+            GitEventCommit commit = headCommit(event, commitId);
+            if (commit != null) {
+                ref.setMessage(commit.getMessage());
+                if (commit.getAuthor() != null) {
+                    ref.setAuthor(commit.getAuthor().getEmail());
+                }
+            }
+
+            refs.put(name, ref);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelay = REFRESH_TASK_PERIOD, initialDelay = 30 * 1000)
+    public void refreshTask() {
+        Set<String> paths = new HashSet<>();
+
+        for (Node flow : nodeService.listFlows(false)) {
+            if (!EnvUtil.hasRequiredEnvKey(flow, GitService.REQUIRED_ENVS)) {
+                continue;
+            }
+
+            paths.add(flow.getPath());
+            try {
+                refresh(flow);
+            } catch (FlowException e) {
+                LOGGER.warn("Unable to refresh git refs of flow %s: %s", flow.getPath(), e.getMessage());
+            }
+        }
+
+        // remove catalog of deleted flows
+        catalogs.keySet().retainAll(paths);
+    }
+
+    /**
+     * Get catalog of flow, load from git repo if it's the first time
+     */
+    private Catalog load(Node flow) {
+        Catalog catalog = catalogs.computeIfAbsent(flow.getPath(), path -> new Catalog());
+        if (!catalog.loaded) {
+            refresh(flow);
+        }
+        return catalog;
+    }
+
+    /**
+     * Load commits of refs which are new, changed or without commit info, since ls-remote only lists commit id
+     *
+     * @return commit id to commit
+     */
+    private Map<String, GitCommit> loadCommits(Node flow, Catalog catalog, Map<String, String> refs) {
+        Set<String> commitIds = new HashSet<>();
+
+        for (Map.Entry<String, String> entry : refs.entrySet()) {
+            if (commitIds.size() >= MAX_COMMITS_PER_REFRESH) {
+                break;
+            }
+
+            GitRef ref;
+            if (entry.getKey().startsWith(Constants.R_HEADS)) {
+                ref = catalog.branches.get(entry.getKey().substring(Constants.R_HEADS.length()));
+            } else if (entry.getKey().startsWith(Constants.R_TAGS)) {
+                ref = catalog.tags.get(entry.getKey().substring(Constants.R_TAGS.length()));
+            } else {
+                continue;
+            }
+
+            if (ref == null || ref.getMessage() == null || !Objects.equals(ref.getCommitId(), entry.getValue())) {
+                commitIds.add(entry.getValue());
+            }
+        }
+
+        if (commitIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            return gitService.commits(flow, commitIds);
+        } catch (FlowException e) {
+            LOGGER.warn("Unable to load git commits of flow %s: %s", flow.getPath(), e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Merge refs with prefix into catalog, the ref updated or deleted after refresh started is kept
+     *
+     * @return num of changed refs
+     */
+    private static int merge(NavigableMap<String, GitRef> target, Map<String, String> refs, String prefix,
+                             ZonedDateTime startedAt, Map<String, ZonedDateTime> tombstones,
+                             Map<String, GitCommit> commits) {
+        Map<String, String> latest = new HashMap<>(refs.size());
+        for (Map.Entry<String, String> entry : refs.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                latest.put(entry.getKey().substring(prefix.length()), entry.getValue());
+            }
+        }
+
+        int changed = 0;
+
+        // remove deleted refs
+        Iterator<GitRef> iterator = target.values().iterator();
+        while (iterator.hasNext()) {
+            GitRef ref = iterator.next();
+            if (!latest.containsKey(ref.getName()) && !isUpdatedAfter(ref, startedAt)) {
+                iterator.remove();
+                changed++;
+            }
+        }
+
+        // add new refs or update commit id of changed refs
+        for (Map.Entry<String, String> entry : latest.entrySet()) {
+            ZonedDateTime deletedAt = tombstones.get(prefix + entry.getKey());
+            if (deletedAt != null && deletedAt.isAfter(startedAt)) {
+                continue;
+            }
+
+            GitRef ref = target.get(entry.getKey());
+            if (ref != null && isUpdatedAfter(ref, startedAt)) {
+                continue;
+            }
+
+            GitCommit commit = commits.get(entry.getValue());
+            boolean sameCommit = ref != null && Objects.equals(ref.getCommitId(), entry.getValue());
+
+            // fill commit info of unchanged ref only if it's missing
+            if (sameCommit && (ref.getMessage() != null || commit == null)) {
+                continue;
+            }
+
+            GitRef updated = new GitRef(entry.getKey(), entry.getValue());
+            updated.setUpdatedAt(sameCommit ? ref.getUpdatedAt() : startedAt);
+            if (commit != null) {
+                updated.setMessage(commit.getMessage());
+                updated.setAuthor(commit.getAuthor());
+            }
+
+            target.put(entry.getKey(), updated);
+            if (!sameCommit) {
+                changed++;
+            }
+        }
+
+        return changed;
+    }
+
+    private static boolean isUpdatedAfter(GitRef ref, ZonedDateTime time) {
+        return ref.getUpdatedAt() != null && ref.getUpdatedAt().isAfter(time);
+    }
+
+    /**
+     * Find commit of event which is the head of ref
+     */
+    private static GitEventCommit headCommit(GitPushTagEvent event, String commitId) {
+        if (event.getCommits() == null) {
+            return null;
+        }
+
+        for (GitEventCommit commit : event.getCommits()) {
+            if (Objects.equals(commit.getId(), commitId)) {
+                return commit;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get page of refs, return all refs if pageable is empty
+     */
+    private static Page<GitRef> page(NavigableMap<String, GitRef> refs, Pageable pageable) {
+        int total = refs.size();
+
+        if (Pageable.isEmpty(pageable)) {
+            return new Page<>(new ArrayList<>(refs.values()), total, 1, total);
+        }
+
+        List<GitRef> content = new ArrayList<>(pageable.getPageSize());
+        int index = 0;
+
+        for (GitRef ref : refs.values()) {
+            if (content.size() >= pageable.getPageSize()) {
+                break;
+            }
+
+            if (index++ >= pageable.getOffset()) {
+                content.add(ref);
+            }
+        }
+
+        return new Page<>(content, pageable.getPageSize(), pageable.getPageNumber(), total);
+    }
+}
@@ -22,7 +22,9 @@ import com.flow.platform.api.envs.GitEnvs;
 import com.flow.platform.util.git.GitException;
 import com.flow.platform.util.git.model.GitCommit;
 import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.eclipse.jgit.lib.Repository;
 
@@ -74,6 +76,22 @@ public interface GitService {
      */
     List<String> tags(Node node, boolean refresh);
 
+    /**
+     * Fetch branches and tags with commit id from git repo in one remote call
+     *
+     * @return full ref name, ex: refs/heads/master, to commit id
+     */
+    Map<String, String> refs(Node node);
+
+    /**
+     * Fetch commits by commit id, the commit not found is skipped
+     *
+     * - For UNDEFINED_SSH or UNDEFINED_HTTP will be load from git local git repo
+     *
+     * @return commit id to commit
+     */
+    Map<String, GitCommit> commits(Node node, Collection<String> commitIds);
+
     /**
      * Fetch latest commit from git repo
      *
@@ -38,6 +38,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -155,6 +156,35 @@ public class GitServiceImpl implements GitService {
         }
     }
 
+    @Override
+    public Map<String, String> refs(Node node) {
+        GitClient client = gitClientInstance(node);
+        try {
+            return client.refs();
+        } catch (GitException e) {
+            throw new IllegalStatusException("Cannot load refs from git: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, GitCommit> commits(Node node, Collection<String> commitIds) {
+        GitClient client = gitClientInstance(node);
+        Map<String, GitCommit> commits = new HashMap<>(commitIds.size());
+
+        for (String commitId : commitIds) {
+            try {
+                GitCommit commit = client.commit(commitId);
+                if (commit != null) {
+                    commits.put(commitId, commit);
+                }
+            } catch (GitException e) {
+                LOGGER.trace("Cannot get commit %s of %s: %s", commitId, node.getPath(), e.getMessage());
+            }
+        }
+
+        return commits;
+    }
+
     @Override
     public GitCommit latestCommit(Node node) {
         GitClient client = gitClientInstance(node);
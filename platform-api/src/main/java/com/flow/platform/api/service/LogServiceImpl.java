@@ -24,21 +24,23 @@ import com.flow.platform.api.service.job.NodeResultService;
 import com.flow.platform.api.util.PlatformURL;
 import com.flow.platform.api.util.ZipUtil;
 import com.flow.platform.core.exception.FlowException;
+import com.flow.platform.util.Logger;
 import com.flow.platform.util.ObjectWrapper;
 import com.flow.platform.util.StringUtil;
 import com.flow.platform.util.http.HttpClient;
 import com.flow.platform.util.http.HttpURL;
+import com.flow.platform.util.zip.ZipStats;
 import com.google.common.base.Strings;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,6 +54,8 @@ import org.springframework.stereotype.Service;
 @Service
 public class LogServiceImpl implements LogService {
 
+    private final static Logger LOGGER = new Logger(LogService.class);
+
     @Autowired
     private NodeResultService nodeResultService;
 
@@ -103,34 +107,6 @@ public class LogServiceImpl implements LogService {
         return allResource;
     }
 
-    /**
-     * save step log to workspace/:flowName/:jobId/
-     */
-    private String saveStepLog(Job job, InputStream inputStream, NodeResult nodeResult) {
-        Path jobPath = getJobLogPath(job);
-        Path targetPath = Paths.get(jobPath.toString(), nodeResult.getName() + ".log");
-
-        File flowFolderFile = new File(jobPath.toString());
-        if (!flowFolderFile.exists()) {
-            flowFolderFile.mkdirs();
-        }
-
-        byte[] buffers;
-        try {
-            buffers = new byte[inputStream.available()];
-            inputStream.read(buffers);
-
-            File file = new File(targetPath.toString());
-            try (OutputStream outputStream = new FileOutputStream(file)) {
-                outputStream.write(buffers);
-            }
-        } catch (IOException e) {
-            return null;
-        }
-
-        return targetPath.toString();
-    }
-
     /**
      * read step log from workspace/:flowName/log/:jobId/
      */
@@ -144,22 +120,14 @@ public class LogServiceImpl implements LogService {
         }
 
         // read step log from cc
-        content = readStepLogFromCC(job, nodeResult);
-        if (content != null) {
-            saveStepLog(job, new ByteArrayInputStream(
-                content.getBytes(AppConfig.DEFAULT_CHARSET)), nodeResult);
-        }
-
-        return content;
+        return readStepLogFromCC(job, nodeResult);
     }
 
     /**
      * read log from api storage
      */
     private String readStepLogFromLocal(Job job, NodeResult nodeResult) {
-        Path jobPath = getJobLogPath(job);
-
-        Path targetPath = Paths.get(jobPath.toString(), nodeResult.getName() + ".log");
+        Path targetPath = getStepLogPath(job, nodeResult);
 
         File file = new File(targetPath.toString());
         if (!file.exists()) {
@@ -194,34 +162,55 @@ public class LogServiceImpl implements LogService {
         }
 
         final String url = platformURL.getCmdDownloadLogUrl() + "?cmdId=" + HttpURL.encode(cmdId) + "&index=" + 0;
-        ObjectWrapper<String> logContent = new ObjectWrapper<>();
+        ObjectWrapper<Boolean> isDownloaded = new ObjectWrapper<>(false);
 
         HttpClient.build(url).get().bodyAsStream((response) -> {
             if (response.getBody() == null) {
-                logContent.setInstance(StringUtil.EMPTY);
                 return;
             }
 
+            // unzip log to temp file in the same dir and move it to log path once completed,
+            // so readers never see a partial log
+            Path logPath = getStepLogPath(job, nodeResult);
+            Path tmpPath = null;
             try {
-                String log = ZipUtil.readZipFile(response.getBody());
-                logContent.setInstance(log);
+                Files.createDirectories(logPath.getParent());
+                tmpPath = Files.createTempFile(logPath.getParent(), logPath.getFileName().toString(), ".tmp");
 
-                //save file to local storage
-                InputStream stream = new ByteArrayInputStream(log.getBytes(AppConfig.DEFAULT_CHARSET));
-                String logPath = saveStepLog(job, stream, nodeResult);
-
-                if (logPath == null) {
-                    throw new FlowException("store log to api error");
+                try (OutputStream outputStream = Files.newOutputStream(tmpPath)) {
+                    ZipStats stats = ZipUtil.readZipFile(response.getBody(), outputStream);
+                    LOGGER.trace("Log of cmd %s unzipped: %s", cmdId, stats);
                 }
 
-                nodeResult.setLogPath(logPath);
+                Files.move(tmpPath, logPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                tmpPath = null;
+
+                nodeResult.setLogPath(logPath.toString());
                 nodeResultService.update(nodeResult);
+                isDownloaded.setInstance(true);
             } catch (IOException e) {
                 throw new FlowException("Cannot unzip log file for " + cmdId, e);
+            } finally {
+                deleteQuietly(tmpPath);
             }
         });
 
-        return logContent.getInstance();
+        if (!isDownloaded.getInstance()) {
+            return StringUtil.EMPTY;
+        }
+
+        return readStepLogFromLocal(job, nodeResult);
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignore) {
+        }
     }
 
     /**
@@ -236,7 +225,8 @@ public class LogServiceImpl implements LogService {
         File destFile = new File(destPath.toString());
 
         try {
-            ZipUtil.zipFolder(folderFile, zipFile);
+            ZipStats stats = ZipUtil.zipFolder(folderFile, zipFile);
+            LOGGER.trace("Log of job %s zipped: %s", job.getId(), stats);
             FileUtils.moveFile(zipFile, destFile);
         } catch (IOException e) {
             throw new FlowException("save zip log error");
@@ -280,4 +270,11 @@ public class LogServiceImpl implements LogService {
     private Path getJobLogPath(Job job) {
         return Paths.get(workspace.toString(), job.getNodeName(), "log", job.getId().toString());
     }
+
+    /**
+     * get step log path
+     */
+    private Path getStepLogPath(Job job, NodeResult nodeResult) {
+        return Paths.get(getJobLogPath(job).toString(), nodeResult.getName() + ".log");
+    }
 }
@@ -17,13 +17,13 @@
 package com.flow.platform.api.service;
 
 import com.flow.platform.api.domain.sync.Sync;
-import com.flow.platform.api.domain.sync.SyncEvent;
+import com.flow.platform.api.domain.sync.SyncBundle;
 import com.flow.platform.api.domain.sync.SyncTask;
 import com.flow.platform.api.domain.sync.SyncType;
-import com.flow.platform.core.queue.PriorityMessage;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.Cmd;
-import com.flow.platform.queue.PlatformQueue;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * @author yang
@@ -31,27 +31,17 @@ import com.flow.platform.queue.PlatformQueue;
 
 public interface SyncService {
 
-    int DEFAULT_SYNC_QUEUE_PRIORITY = 1;
-
     int DEFAULT_CMD_PRIORITY = 10;
 
-    interface QueueCreator {
-
-        PlatformQueue<PriorityMessage> create(String name);
-    }
-
     /**
-     * Load and init repos from file system
+     * Load repos from file system and build bundle for latest tag of each repo
      */
     void load();
 
     /**
-     * Put sync event to event queue
-     */
-    void put(SyncEvent event);
-
-    /**
-     * Put sync event with raw data
+     * Handle plugin repo changes, the bundle manifest will be rebuilt
+     * and agents will be synced by next sync task
+     *
      * @param name repo name
      * @param tag repo tag
      * @param type sync type
@@ -59,10 +49,22 @@ public interface SyncService {
     void put(String name, String tag, SyncType type);
 
     /**
-     * Reload sync event from git repo and reset all agent event queue
+     * Reload bundles from git repo and reset repo list of all agents
      */
     void reset();
 
+    /**
+     * List bundle manifest ordered by repo name
+     */
+    List<SyncBundle> bundles();
+
+    /**
+     * Get bundle file by sha256
+     *
+     * @throws com.flow.platform.core.exception.NotFoundException if bundle not found
+     */
+    Path bundle(String hash);
+
     /**
      * Get sync data for agent
      */
@@ -96,7 +98,8 @@ public interface SyncService {
     /**
      * Start sync to agent
      * - do not execute if agent path has not been registered
-     * - just list exiting repos if no other sync events
+     * - do not create session if agent repos already match the bundle manifest
+     * - missing bundles are fetched by single shell cmd, and list existing repos at the end
      */
     void sync(AgentPath agent);
 
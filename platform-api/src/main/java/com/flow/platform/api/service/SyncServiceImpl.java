@@ -14,16 +14,21 @@
  * limitations under the License.
  */
 
+
 package com.flow.platform.api.service;
 
 import com.flow.platform.api.config.AppConfig;
 import com.flow.platform.api.domain.sync.Sync;
+import com.flow.platform.api.domain.sync.SyncBundle;
 import com.flow.platform.api.domain.sync.SyncEvent;
 import com.flow.platform.api.domain.sync.SyncRepo;
 import com.flow.platform.api.domain.sync.SyncTask;
 import com.flow.platform.api.domain.sync.SyncType;
 import com.flow.platform.api.envs.EnvUtil;
 import com.flow.platform.api.service.job.CmdService;
+import com.flow.platform.api.util.BlobStore;
+import com.flow.platform.api.util.BundleUtil;
+import com.flow.platform.core.exception.NotFoundException;
 import com.flow.platform.domain.Agent;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.AgentStatus;
@@ -38,21 +43,31 @@ import com.flow.platform.util.StringUtil;
 import com.flow.platform.util.git.GitException;
 import com.flow.platform.util.git.JGitUtil;
 import com.flow.platform.util.http.HttpURL;
-import com.google.common.base.Strings;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.PostConstruct;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -61,6 +76,12 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 /**
+ * Sync plugin repos to agents by content hashed bundles:
+ * - bundle is tar.gz of repo at latest tag, stored in blob store by sha256 and served by /bundles/{sha256}
+ * - the diff between bundle manifest and agent repos is computed once per zone and reused by agents
+ *   with same repo list in the zone
+ * - agent fetches missing bundles in parallel within single shell cmd, and reports its repo list
+ *
  * @author yang
  */
 
@@ -69,12 +90,34 @@ public class SyncServiceImpl implements SyncService {
 
     private final static Logger LOGGER = new Logger(SyncService.class);
 
+    // unreferenced bundle kept for agents which still downloading it
+    private final static Duration BUNDLE_SWEEP_GRACE = Duration.ofDays(1);
+
+    /**
+     * Diff between bundle manifest and agent repos
+     */
+    private static class ZoneDiff {
+
+        private final long version;
+
+        private final String fingerprint;
+
+        private final List<SyncEvent> events;
+
+        ZoneDiff(long version, String fingerprint, List<SyncEvent> events) {
+            this.version = version;
+            this.fingerprint = fingerprint;
+            this.events = events;
+        }
+    }
+
     private final Map<AgentPath, Sync> syncs = new ConcurrentHashMap<>();
 
     private final Map<AgentPath, SyncTask> syncTasks = new ConcurrentHashMap<>();
 
-    @Autowired
-    private QueueCreator syncQueueCreator;
+    private final Map<String, ZoneDiff> zoneDiffs = new ConcurrentHashMap<>();
+
+    private final AtomicLong manifestVersion = new AtomicLong(0);
 
     @Autowired
     private GitService gitService;
@@ -88,10 +131,17 @@ public class SyncServiceImpl implements SyncService {
     @Autowired
     private ThreadPoolTaskExecutor taskExecutor;
 
+    @Autowired
+    private BlobStore bundleBlobStore;
+
     @Value("${domain.api}")
     private String apiDomain;
 
-    private Set<SyncRepo> repos = Collections.emptySet();
+    @Value("${api.sync.bundle.parallel}")
+    private int bundleParallel;
+
+    // bundle of repo latest tag, key is repo name
+    private volatile Map<String, SyncBundle> bundles = Collections.emptyMap();
 
     private String callbackUrl;
 
@@ -101,7 +151,7 @@ public class SyncServiceImpl implements SyncService {
 
         taskExecutor.execute(() -> {
             try {
-                LOGGER.trace("Start to init agent list in thread: " + Thread.currentThread().getName());
+                LOGGER.trace("Start to init agent list in thread: %s", Thread.currentThread().getName());
                 load();
 
                 List<Agent> agents = agentService.list();
@@ -118,9 +168,9 @@ public class SyncServiceImpl implements SyncService {
     }
 
     @Override
-    public void load() {
+    public synchronized void load() {
         final List<Repository> gitRepos = gitService.repos();
-        repos = new HashSet<>(gitRepos.size());
+        final Map<String, SyncBundle> latest = new TreeMap<>();
 
         for (Repository repo : gitRepos) {
             try {
@@ -134,46 +184,69 @@ public class SyncServiceImpl implements SyncService {
                 }
 
                 gitRepoName = StringUtil.trimEnd(gitRepoName, ".git");
-                repos.add(new SyncRepo(gitRepoName, tags.get(0)));
-            } catch (GitException e) {
+                latest.put(gitRepoName, buildBundle(repo, gitRepoName, tags.get(0)));
+            } catch (GitException | IOException e) {
                 LOGGER.warn(e.getMessage());
             } finally {
                 repo.close();
             }
         }
+
+        if (latest.equals(bundles)) {
+            return;
+        }
+
+        bundles = Collections.unmodifiableMap(latest);
+        manifestVersion.incrementAndGet();
+        zoneDiffs.clear();
+        LOGGER.trace("Bundle manifest updated: %s", latest.values());
+
+        Set<String> referenced = new HashSet<>(latest.size());
+        for (SyncBundle bundle : latest.values()) {
+            referenced.add(bundle.getHash());
+        }
+
+        try {
+            bundleBlobStore.sweep(referenced, BUNDLE_SWEEP_GRACE);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to sweep bundles: %s", e.getMessage());
+        }
     }
 
     @Override
-    public void put(SyncEvent event) {
-        for (Sync syncForAgent : syncs.values()) {
-            syncForAgent.enqueue(event, DEFAULT_SYNC_QUEUE_PRIORITY);
-        }
+    public void put(String name, String tag, SyncType type) {
+        LOGGER.trace("Plugin repo '%s[%s]' changed by %s", name, tag, type);
+        load();
     }
 
     @Override
     public void reset() {
-        List<SyncEvent> events = toEvents(repos, SyncType.CREATE);
-        events.add(0, SyncEvent.DELETE_ALL);
-
-        Set<Sync> cleanSet = new HashSet<>(syncs.size());
+        load();
 
         for (Sync syncForAgent : syncs.values()) {
-            if (!cleanSet.contains(syncForAgent)) {
-                syncForAgent.cleanQueue();
-                cleanSet.add(syncForAgent);
-            }
-
-            for (SyncEvent event : events) {
-                event.setGitUrl(createGitUrl(event.getRepo().getName())); // ensure git url is correct
-                syncForAgent.enqueue(event, DEFAULT_SYNC_QUEUE_PRIORITY);
-            }
+            syncForAgent.reset();
         }
+
+        zoneDiffs.clear();
     }
 
     @Override
-    public void put(String name, String tag, SyncType type) {
-        SyncEvent event = new SyncEvent(createGitUrl(name), name, tag, type);
-        put(event);
+    public List<SyncBundle> bundles() {
+        return new ArrayList<>(bundles.values());
+    }
+
+    @Override
+    public Path bundle(String hash) {
+        try {
+            Path path = bundleBlobStore.blobPath(hash);
+            if (Files.exists(path)) {
+                return path;
+            }
+        } catch (IllegalArgumentException ignore) {
+            // illegal sha256
+        }
+
+        throw new NotFoundException("Bundle not found: " + hash);
     }
 
     @Override
@@ -188,17 +261,7 @@ public class SyncServiceImpl implements SyncService {
 
     @Override
     public void register(AgentPath agent) {
-        if (syncs.containsKey(agent)) {
-            return;
-        }
-
-        Sync sync = new Sync(agent, syncQueueCreator.create(agent.toString() + "-sync"));
-        syncs.put(agent, sync);
-
-        // init sync event from git
-        for (SyncEvent event : toEvents(repos, SyncType.CREATE)) {
-            sync.enqueue(event, DEFAULT_SYNC_QUEUE_PRIORITY);
-        }
+        syncs.putIfAbsent(agent, new Sync(agent));
     }
 
     @Override
@@ -210,6 +273,8 @@ public class SyncServiceImpl implements SyncService {
     @Override
     public void clean() {
         syncs.clear();
+        syncTasks.clear();
+        zoneDiffs.clear();
     }
 
     @Override
@@ -218,10 +283,7 @@ public class SyncServiceImpl implements SyncService {
 
         // delete session if sync task for agent cannot be found
         if (cmd.getType() != CmdType.DELETE_SESSION && task == null) {
-            CmdInfo deleteSession = new CmdInfo(cmd.getAgentPath(), CmdType.DELETE_SESSION, null);
-            deleteSession.setWebhook(callbackUrl);
-            deleteSession.setSessionId(cmd.getSessionId());
-            cmdService.sendCmd(deleteSession, false, 0);
+            deleteSession(cmd);
             return;
         }
 
@@ -232,70 +294,46 @@ public class SyncServiceImpl implements SyncService {
                 sync.setSyncTime(ZonedDateTime.now());
             }
 
-            LOGGER.trace("Sync task finished for agent " + cmd.getAgentPath());
+            LOGGER.trace("Sync task finished for agent %s", cmd.getAgentPath());
             return;
         }
 
-        SyncEvent next = null;
-
         if (cmd.getType() == CmdType.CREATE_SESSION) {
-            if (cmd.getStatus() == CmdStatus.SENT) {
-                // get next sync event but not remove
-                next = task.getSyncQueue().peek();
-            } else {
+            if (cmd.getStatus() != CmdStatus.SENT) {
                 syncTasks.remove(cmd.getAgentPath());
-                LOGGER.trace("Sync task stopped since create session failure for agent: " + cmd.getAgentPath());
+                LOGGER.trace("Sync task stopped since create session failure for agent: %s", cmd.getAgentPath());
                 return;
             }
-        } else if (cmd.getType() == CmdType.RUN_SHELL) {
-            if (Cmd.FINISH_STATUS.contains(cmd.getStatus())) {
-                CmdResult result = cmd.getCmdResult();
-                if (Objects.isNull(result)) {
-                    result = CmdResult.EMPTY;
-                }
-
-                boolean shouldSendBack = false;
-                if (Objects.isNull(result.getExitValue()) || result.getExitValue() != 0) {
-                    shouldSendBack = true;
-                }
-
-                SyncEvent current = task.getSyncQueue().peek();
-
-                Sync sync = syncs.get(cmd.getAgentPath());
-                if (sync != null) {
-                    if (shouldSendBack) {
-                        sync.enqueue(current, DEFAULT_SYNC_QUEUE_PRIORITY);
-                    }
-
-                    // update agent repo list from env FLOW_SYNC_LIST
-                    String repos = result.getOutput().get(SyncEvent.FLOW_SYNC_LIST);
-                    updateAgentRepo(sync, repos);
-                }
-
-                // remove current sync event
-                task.getSyncQueue().remove();
-
-                // set next node whatever the result
-                next = task.getSyncQueue().peek();
-            }
-        }
 
-        // run next sync event
-        if (next != null) {
-            CmdInfo runShell = new CmdInfo(cmd.getAgentPath(), CmdType.RUN_SHELL, next.toScript());
+            // fetch all missing bundles by single cmd
+            String script = SyncEvent.toScript(new ArrayList<>(task.getSyncQueue()), bundleParallel);
+            CmdInfo runShell = new CmdInfo(cmd.getAgentPath(), CmdType.RUN_SHELL, script);
             runShell.setWebhook(callbackUrl);
             runShell.setSessionId(cmd.getSessionId());
             runShell.setWorkingDir(AppConfig.DEFAULT_AGENT_REPO_DIR);
             runShell.setOutputEnvFilter(EnvUtil.parseCommaEnvToList(SyncEvent.FLOW_SYNC_LIST));
             cmdService.sendCmd(runShell, false, 0);
+            return;
         }
 
-        // delete session when queue is empty
-        if (next == null && task.getSyncQueue().isEmpty()) {
-            CmdInfo deleteSession = new CmdInfo(cmd.getAgentPath(), CmdType.DELETE_SESSION, null);
-            deleteSession.setWebhook(callbackUrl);
-            deleteSession.setSessionId(cmd.getSessionId());
-            cmdService.sendCmd(deleteSession, false, 0);
+        if (cmd.getType() == CmdType.RUN_SHELL && Cmd.FINISH_STATUS.contains(cmd.getStatus())) {
+            CmdResult result = cmd.getCmdResult();
+            if (Objects.isNull(result)) {
+                result = CmdResult.EMPTY;
+            }
+
+            if (Objects.isNull(result.getExitValue()) || result.getExitValue() != 0) {
+                LOGGER.warn("Sync cmd failure on agent %s with status %s", cmd.getAgentPath(), cmd.getStatus());
+            }
+
+            // update agent repo list from env FLOW_SYNC_LIST, the failed bundles will be fetched by next sync
+            Sync sync = syncs.get(cmd.getAgentPath());
+            if (sync != null && result.getOutput().containsKey(SyncEvent.FLOW_SYNC_LIST)) {
+                updateAgentRepo(sync, result.getOutput().get(SyncEvent.FLOW_SYNC_LIST));
+            }
+
+            task.getSyncQueue().clear();
+            deleteSession(cmd);
         }
     }
 
@@ -306,8 +344,19 @@ public class SyncServiceImpl implements SyncService {
             return;
         }
 
-        // create queue for agent task
-        SyncTask task = new SyncTask(agentPath, buildSyncEventQueueForTask(sync));
+        List<SyncEvent> events = diff(sync);
+
+        // agent repos matched the manifest, no session needed
+        if (events.isEmpty() && sync.isReported()) {
+            sync.setSyncTime(ZonedDateTime.now());
+            return;
+        }
+
+        // create queue for agent task and list agent exist repos finally
+        Queue<SyncEvent> queue = new ConcurrentLinkedQueue<>(events);
+        queue.add(SyncEvent.LIST);
+
+        SyncTask task = new SyncTask(agentPath, queue);
         syncTasks.put(agentPath, task);
 
         // create cmd to create sync session with higher priority then job, the extra field record node path
@@ -315,7 +364,7 @@ public class SyncServiceImpl implements SyncService {
             CmdInfo cmdInfo = new CmdInfo(agentPath, CmdType.CREATE_SESSION, null);
             cmdInfo.setWebhook(callbackUrl);
             cmdService.sendCmd(cmdInfo, true, DEFAULT_CMD_PRIORITY);
-            LOGGER.trace("Start sync '%s' git repo to agent '%s'", task.getTotal(), agentPath);
+            LOGGER.trace("Start sync '%s' bundles to agent '%s'", events.size(), agentPath);
         } catch (Throwable e) {
             syncTasks.remove(agentPath);
             LOGGER.warn(e.getMessage());
@@ -331,53 +380,137 @@ public class SyncServiceImpl implements SyncService {
     }
 
     /**
-     * Update agent repo list
-     *
-     * @param sync Sync instance for agent
-     * @param latestReposStr repo raw string, ex: RepoA[v1.0]\nRepoB[v1.0]
+     * Build bundle for repo tag, reuse current bundle if tag commit not changed
      */
-    private void updateAgentRepo(Sync sync, String latestReposStr) {
-        if (Strings.isNullOrEmpty(latestReposStr)) {
-            sync.getRepos().clear();
-            return;
+    private SyncBundle buildBundle(Repository repo, String name, String tag) throws IOException {
+        ObjectId commitId = repo.resolve(Constants.R_TAGS + tag + "^{commit}");
+        if (commitId == null) {
+            throw new IOException("Tag '" + tag + "' not found in repo " + name);
+        }
+
+        SyncBundle current = bundles.get(name);
+        if (current != null
+            && current.getRepo().getTag().equals(tag)
+            && current.getCommitId().equals(commitId.getName())
+            && bundleBlobStore.exist(current.getHash())) {
+            return current;
         }
 
-        String[] repos = latestReposStr.split(Unix.LINE_SEPARATOR);
-        for (String repo : repos) {
-            SyncRepo repoObj = SyncRepo.build(repo);
-            if (Objects.isNull(repoObj)) {
-                continue;
+        Path tmp = Files.createTempFile("flow-bundle-", ".tar.gz");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                BundleUtil.archive(repo, commitId, out);
+            }
+
+            String hash;
+            try (InputStream in = Files.newInputStream(tmp)) {
+                hash = bundleBlobStore.put(in);
             }
 
-            sync.getRepos().add(repoObj);
+            long size = Files.size(bundleBlobStore.blobPath(hash));
+            LOGGER.trace("Bundle %s[%s] built: %s", name, tag, hash);
+            return new SyncBundle(name, tag, hash, size, commitId.getName());
+        } finally {
+            Files.deleteIfExists(tmp);
         }
     }
 
     /**
-     * Build sync task from agent sync queue and list agent repos at the last
+     * Get diff events for agent, the zone diff is reused if manifest and agent repo list not changed
      */
-    private Queue<SyncEvent> buildSyncEventQueueForTask(Sync sync) {
-        Queue<SyncEvent> syncEventQueue = new ConcurrentLinkedQueue<>();
+    private List<SyncEvent> diff(Sync sync) {
+        final long version = manifestVersion.get();
+        final Map<String, SyncBundle> manifest = bundles;
+        final Set<SyncRepo> installed = sync.getRepos();
 
-        SyncEvent event = null;
-        while ((event = sync.dequeue()) != null) {
-            syncEventQueue.add(event);
+        String zone = sync.getPath().getZone();
+        String fingerprint = fingerprint(sync.isReported(), installed);
+
+        ZoneDiff zoneDiff = zoneDiffs.get(zone);
+        if (zoneDiff != null && zoneDiff.version == version && zoneDiff.fingerprint.equals(fingerprint)) {
+            return zoneDiff.events;
         }
 
-        // list agent exist repos finally
-        syncEventQueue.add(SyncEvent.LIST);
-        return syncEventQueue;
+        List<SyncEvent> events = Collections.unmodifiableList(toEvents(manifest.values(), installed));
+        zoneDiffs.put(zone, new ZoneDiff(version, fingerprint, events));
+        return events;
     }
 
-    private List<SyncEvent> toEvents(Collection<SyncRepo> repos, SyncType syncType) {
-        List<SyncEvent> events = new LinkedList<>();
-        for (SyncRepo repo : repos) {
-            events.add(new SyncEvent(createGitUrl(repo.getName()), repo.getName(), repo.getTag(), syncType));
+    /**
+     * Delete repo folders not in manifest, and create repo from bundle which not installed
+     */
+    private List<SyncEvent> toEvents(Collection<SyncBundle> manifest, Collection<SyncRepo> installed) {
+        Set<String> folders = new HashSet<>(manifest.size());
+        for (SyncBundle bundle : manifest) {
+            folders.add(bundle.getRepo().toString());
         }
+
+        // match installed repo by folder and hash, since same commit of different tags has the same bundle hash
+        Set<String> installedBundles = new HashSet<>(installed.size());
+        List<SyncEvent> events = new ArrayList<>();
+
+        for (SyncRepo repo : installed) {
+            if (repo.getHash() != null) {
+                installedBundles.add(repo.toString() + SyncRepo.HASH_SEPARATOR + repo.getHash());
+            }
+
+            if (!folders.contains(repo.toString())) {
+                events.add(new SyncEvent(null, repo, SyncType.DELETE));
+            }
+        }
+
+        for (SyncBundle bundle : manifest) {
+            if (!installedBundles.contains(bundle.getRepo().toString() + SyncRepo.HASH_SEPARATOR + bundle.getHash())) {
+                events.add(new SyncEvent(bundleUrl(bundle.getHash()), bundle.getRepo(), SyncType.CREATE));
+            }
+        }
+
         return events;
     }
 
-    private String createGitUrl(String repoName) {
-        return HttpURL.build(apiDomain).append("git").append(repoName + ".git").toString();
+    private static String fingerprint(boolean reported, Collection<SyncRepo> installed) {
+        if (!reported) {
+            return StringUtil.EMPTY;
+        }
+
+        Set<String> sorted = new TreeSet<>();
+        for (SyncRepo repo : installed) {
+            sorted.add(repo.toString() + SyncRepo.HASH_SEPARATOR + repo.getHash());
+        }
+        return "reported:" + String.join(",", sorted);
+    }
+
+    /**
+     * Update agent repo list
+     *
+     * @param sync Sync instance for agent
+     * @param latestReposStr repo raw string, ex: RepoA[v1.0]@{sha256}\nRepoB[v1.0]@{sha256}
+     */
+    private void updateAgentRepo(Sync sync, String latestReposStr) {
+        Set<SyncRepo> repos = new LinkedHashSet<>();
+
+        if (latestReposStr != null) {
+            for (String repo : latestReposStr.split(Unix.LINE_SEPARATOR)) {
+                SyncRepo repoObj = SyncRepo.build(repo.trim());
+                if (Objects.isNull(repoObj)) {
+                    continue;
+                }
+
+                repos.add(repoObj);
+            }
+        }
+
+        sync.setRepos(repos);
+    }
+
+    private void deleteSession(Cmd cmd) {
+        CmdInfo deleteSession = new CmdInfo(cmd.getAgentPath(), CmdType.DELETE_SESSION, null);
+        deleteSession.setWebhook(callbackUrl);
+        deleteSession.setSessionId(cmd.getSessionId());
+        cmdService.sendCmd(deleteSession, false, 0);
+    }
+
+    private String bundleUrl(String hash) {
+        return HttpURL.build(apiDomain).append("bundles").append(hash).toString();
     }
 }
@@ -53,7 +53,7 @@ public class SysInfoServiceImpl extends SysInfoServiceImplBase {
         infoLoaders.put(Category.API, new HashMap<>(3));
         infoLoaders.get(Category.API).put(SystemInfo.Type.JVM, new JvmLoader());
         infoLoaders.get(Category.API)
-            .put(SystemInfo.Type.DB, new DBInfoLoader(defaultDriverName, dbUrl, dbUsername, dbPassword));
+            .put(SystemInfo.Type.DB, new DBInfoLoader(defaultDriverName, dbUrl, dbUsername, dbPassword, routingDataSource));
         infoLoaders.get(Category.API).put(SystemInfo.Type.SERVER, new AppServerLoader());
 
         // init cc system loader
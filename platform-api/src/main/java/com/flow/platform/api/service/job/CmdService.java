@@ -52,6 +52,11 @@ public interface CmdService {
      */
     CmdInfo runShell(Job job, Node node, String cmdId, EnvObject envVars);
 
+    /**
+     * Forget env base layer sent to agent of session, the base layer will be sent with next run shell cmd
+     */
+    void resetEnvBase(String sessionId);
+
     /**
      * Send shutdown cmd to agent, and shutdown host machine
      *
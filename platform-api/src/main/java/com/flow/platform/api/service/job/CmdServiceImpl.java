@@ -20,8 +20,10 @@ import com.flow.platform.api.domain.EnvObject;
 import com.flow.platform.api.domain.job.Job;
 import com.flow.platform.api.domain.node.Node;
 import com.flow.platform.api.envs.AgentEnvs;
+import com.flow.platform.api.envs.EnvKey;
 import com.flow.platform.api.envs.EnvUtil;
 import com.flow.platform.api.envs.FlowEnvs;
+import com.flow.platform.api.envs.GitEnvs;
 import com.flow.platform.api.envs.JobEnvs;
 import com.flow.platform.api.service.node.NodeService;
 import com.flow.platform.api.util.PlatformURL;
@@ -30,9 +32,11 @@ import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.core.exception.IllegalStatusException;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.CmdCache;
 import com.flow.platform.domain.CmdInfo;
 import com.flow.platform.domain.CmdType;
 import com.flow.platform.domain.Jsonable;
+import com.flow.platform.domain.LayeredEnvs;
 import com.flow.platform.util.ExceptionUtil;
 import com.flow.platform.util.Logger;
 import com.flow.platform.util.http.HttpClient;
@@ -40,9 +44,13 @@ import com.flow.platform.util.http.HttpResponse;
 import com.flow.platform.util.http.HttpURL;
 import com.google.common.base.Strings;
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.http.entity.ContentType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
 /**
@@ -57,6 +65,16 @@ public class CmdServiceImpl implements CmdService {
 
     private final static String DEFAULT_CMD_TIMEOUT = "3600";
 
+    // digest of env base layer which has been sent to agent of session
+    private final static String SESSION_ENV_BASE_CACHE = "sessionEnvBaseCache";
+
+    private final static EnvKey[] SESSION_HINTS = {
+        JobEnvs.FLOW_JOB_CMD_CPU,
+        JobEnvs.FLOW_JOB_CMD_MEMORY,
+        FlowEnvs.FLOW_NAME,
+        GitEnvs.FLOW_GIT_BRANCH
+    };
+
     private final int httpRetryTimes = 5;
 
     @Autowired
@@ -65,6 +83,9 @@ public class CmdServiceImpl implements CmdService {
     @Autowired
     private PlatformURL platformURL;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     @Value(value = "${api.zone.default}")
     private String zone;
 
@@ -82,6 +103,14 @@ public class CmdServiceImpl implements CmdService {
 
         CmdInfo cmdInfo = new CmdInfo(zone, agent, CmdType.CREATE_SESSION, null);
         cmdInfo.setWebhook(buildCmdWebhook(job));
+
+        // resource and workspace hints for control center to select agent by capacity and warm workspace
+        for (EnvKey hint : SESSION_HINTS) {
+            String value = job.getEnv(hint);
+            if (!Strings.isNullOrEmpty(value)) {
+                cmdInfo.getInputs().put(hint.name(), value);
+            }
+        }
         LOGGER.traceMarker("CreateSession", "job id - %s", job.getId());
 
         // create session
@@ -107,6 +136,8 @@ public class CmdServiceImpl implements CmdService {
         cmdInfo.setSessionId(job.getSessionId());
         cmdInfo.setWebhook(buildCmdWebhook(job));
 
+        resetEnvBase(job.getSessionId());
+
         try {
             LOGGER.traceMarker("DeleteSession", "Send delete session for session id %s", job.getSessionId());
             sendDirectly(cmdInfo);
@@ -118,9 +149,14 @@ public class CmdServiceImpl implements CmdService {
     @Override
     public CmdInfo runShell(Job job, Node node, String cmdId, EnvObject envVars) {
         CmdInfo cmdInfo = new CmdInfo(zone, null, CmdType.RUN_SHELL, nodeService.getRunningScript(node));
-        cmdInfo.setInputs(envVars.getEnvs());
+        cmdInfo.setInputs(toInputs(job, envVars));
         cmdInfo.setWebhook(buildCmdWebhook(job));
 
+        // dependency caches restored and saved by agent around the step
+        if (!node.getCache().isEmpty()) {
+            cmdInfo.getInputs().put(CmdCache.ENV_CMD_CACHE, Jsonable.GSON_CONFIG.toJson(node.getCache()));
+        }
+
         String outputFilter = envVars.getEnv(FlowEnvs.FLOW_ENV_OUTPUT_PREFIX, "FLOW_OUTPUT");
         cmdInfo.setOutputEnvFilter(EnvUtil.parseCommaEnvToList(outputFilter));
 
@@ -139,6 +175,11 @@ public class CmdServiceImpl implements CmdService {
         try {
             LOGGER.traceMarker("RunShell", "step name - %s, node path - %s", node.getName(), node.getPath());
             sendDirectly(cmdInfo);
+
+            String envBase = cmdInfo.getInputs().get(LayeredEnvs.ENV_BASE);
+            if (envBase != null) {
+                sessionEnvBaseCache().put(job.getSessionId(), envBase);
+            }
         } catch (Throwable e) {
             final String rootCause = ExceptionUtil.findRootCause(e).getMessage();
             final IllegalStatusException exception = new IllegalStatusException(rootCause);
@@ -149,6 +190,31 @@ public class CmdServiceImpl implements CmdService {
         return cmdInfo;
     }
 
+    @Override
+    public void resetEnvBase(String sessionId) {
+        if (!Strings.isNullOrEmpty(sessionId)) {
+            sessionEnvBaseCache().evict(sessionId);
+        }
+    }
+
+    /**
+     * Create cmd inputs from env vars, the env base layer is excluded if it has been sent to agent of session
+     */
+    private Map<String, String> toInputs(Job job, EnvObject envVars) {
+        Map<String, String> envs = envVars.getEnvs();
+        if (!(envs instanceof LayeredEnvs) || Strings.isNullOrEmpty(job.getSessionId())) {
+            return new HashMap<>(envs);
+        }
+
+        LayeredEnvs layered = (LayeredEnvs) envs;
+        String sent = sessionEnvBaseCache().get(job.getSessionId(), String.class);
+        return layered.toInputs(!layered.base().digest().equals(sent));
+    }
+
+    private Cache sessionEnvBaseCache() {
+        return cacheManager.getCache(SESSION_ENV_BASE_CACHE);
+    }
+
     @Override
     public void shutdown(AgentPath path, String password) {
         CmdInfo cmdInfo = new CmdInfo(path, CmdType.SHUTDOWN, password);
@@ -19,6 +19,7 @@ package com.flow.platform.api.service.job;
 import com.flow.platform.api.domain.SearchCondition;
 import com.flow.platform.api.envs.GitEnvs;
 import com.flow.platform.api.domain.job.Job;
+import com.flow.platform.core.dao.routing.ReadReplica;
 import com.flow.platform.core.domain.Page;
 import com.flow.platform.core.domain.Pageable;
 import com.flow.platform.util.CollectionUtil;
@@ -28,12 +29,15 @@ import java.util.LinkedList;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * @author gyfirim
  */
 
 @Service(value = "searchService")
+@ReadReplica
+@Transactional(readOnly = true)
 public class JobSearchServiceImpl implements JobSearchService {
 
     private static List<Condition> conditions = new ArrayList<>(3);
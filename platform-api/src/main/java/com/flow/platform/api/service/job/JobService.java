@@ -132,7 +132,7 @@ public interface JobService {
     void checkTimeOut(Job job);
 
     /**
-     * check timeout job
+     * Load running job from db to check timeout and register timeout to timing wheel
      */
     void checkTimeOutTask();
 
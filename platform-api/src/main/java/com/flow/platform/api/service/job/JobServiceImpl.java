@@ -38,6 +38,7 @@ import com.flow.platform.api.domain.node.Node;
 import com.flow.platform.api.domain.node.NodeTree;
 import com.flow.platform.api.domain.node.Yml;
 import com.flow.platform.api.domain.user.User;
+import com.flow.platform.api.envs.EnvKey;
 import com.flow.platform.api.envs.EnvUtil;
 import com.flow.platform.api.envs.FlowEnvs;
 import com.flow.platform.api.envs.FlowEnvs.YmlStatusValue;
@@ -46,6 +47,7 @@ import com.flow.platform.api.envs.JobEnvs;
 import com.flow.platform.api.events.JobStatusChangeEvent;
 import com.flow.platform.api.git.GitEventEnvConverter;
 import com.flow.platform.api.script.GroovyRunner;
+import com.flow.platform.api.service.CredentialService;
 import com.flow.platform.api.service.GitService;
 import com.flow.platform.api.service.node.EnvService;
 import com.flow.platform.api.service.node.NodeService;
@@ -60,10 +62,13 @@ import com.flow.platform.core.exception.IllegalStatusException;
 import com.flow.platform.core.exception.NotFoundException;
 import com.flow.platform.core.queue.PriorityMessage;
 import com.flow.platform.core.service.ApplicationEventService;
+import com.flow.platform.core.timer.TimingWheel;
 import com.flow.platform.domain.Cmd;
 import com.flow.platform.domain.CmdInfo;
+import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
 import com.flow.platform.domain.CmdType;
+import com.flow.platform.domain.LayeredEnvs;
 import com.flow.platform.queue.PlatformQueue;
 import com.flow.platform.util.DateUtil;
 import com.flow.platform.util.ExceptionUtil;
@@ -78,6 +83,7 @@ import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -86,6 +92,8 @@ import java.util.Set;
 import java.util.function.Consumer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
@@ -99,6 +107,28 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
 
     private static Logger LOGGER = new Logger(JobService.class);
 
+    /**
+     * Envs which value is credential name, credential envs will be injected before step start
+     */
+    private final static Set<EnvKey> CREDENTIAL_NAME_ENVS = ImmutableSet.of(GitEnvs.FLOW_GIT_CREDENTIAL);
+
+    private final static String TIMEOUT_KEY_PREFIX = "job-timeout-";
+
+    /**
+     * Cmd id suffix of node resent with env base layer, node will not be resent twice
+     */
+    private final static String ENV_BASE_RESEND_SUFFIX = "-env";
+
+    /**
+     * Env base layer of job by job id, reused by steps until job envs changed
+     */
+    private final static String JOB_ENV_BASE_CACHE = "jobEnvBaseCache";
+
+    /**
+     * Period to reload running job timeout in case of missing registration
+     */
+    private final static long TIMEOUT_RELOAD_PERIOD = 3600 * 1000;
+
     private final Integer createSessionRetryTimes = 5;
 
     @Value("${task.job.toggle.execution_timeout}")
@@ -128,6 +158,9 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
     @Autowired
     private GitService gitService;
 
+    @Autowired
+    private CredentialService credentialService;
+
     @Autowired
     private NodeService nodeService;
 
@@ -146,6 +179,12 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
     @Autowired
     private ThreadPoolTaskExecutor taskExecutor;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TimingWheel timingWheel;
+
     @Override
     public Job find(String flowName, Long number) {
         Job job = jobDao.get(flowName, number);
@@ -411,31 +450,49 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
     }
 
     private EnvObject buildEnvsBeforeStart(Node node, NodeTree tree, Job job) {
-        // create env vars instance which will pass to agent
-        EnvObject envVars = new EnvObject();
-        envVars.putAll(job.getEnvs());
+        // create layered env vars which will pass to agent, the job envs is the base layer
+        // which is held by agent of session, so only the upper layers are sent for each step
+        LayeredEnvs envs = envBase(job);
 
         // pass root node output to current node
         NodeResult rootResult = nodeResultService.find(tree.root().getPath(), job.getId());
-        envVars.putAll(rootResult.getOutputs());
+        envs = envs.with(rootResult.getOutputs());
 
         // pass last step node status
         Node prev = tree.prev(node.getPath());
         if (prev != null) {
             NodeResult prevResult = nodeResultService.find(prev.getPath(), job.getId());
             if (prevResult != null) {
-                envVars.putEnv(JobEnvs.FLOW_JOB_LAST_STATUS, prevResult.getStatus().toString());
+                envs = envs.with(JobEnvs.FLOW_JOB_LAST_STATUS.name(), prevResult.getStatus().toString());
             }
         }
 
         // pass current node envs
-        envVars.putAll(node.getEnvs());
+        envs = envs.with(node.getEnvs());
+
+        // inject latest envs of all referenced credentials in one batch
+        envs = envs.with(resolveCredentialEnvs(new EnvObject(envs)));
 
         // format credential variables
-        Map<String, String> credentialEnvs = keepNewLineForCredentialEnvs(node);
-        envVars.putAll(credentialEnvs);
+        envs = envs.with(keepNewLineForCredentialEnvs(new EnvObject(envs)));
+
+        return new EnvObject(envs);
+    }
+
+    /**
+     * Get env base layer of job, the cached one is reused if job envs not changed,
+     * so the copy and digest of job envs are computed once per env version instead of each step
+     */
+    private LayeredEnvs envBase(Job job) {
+        Cache cache = cacheManager.getCache(JOB_ENV_BASE_CACHE);
+        LayeredEnvs base = cache.get(job.getId(), LayeredEnvs.class);
+        if (base != null && base.getLayer().equals(job.getEnvs())) {
+            return base;
+        }
 
-        return envVars;
+        base = LayeredEnvs.of(job.getEnvs());
+        cache.put(job.getId(), base);
+        return base;
     }
 
     private Boolean executeConditionScript(Job job, Node node, EnvObject envVars) {
@@ -477,12 +534,35 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
         return false;
     }
 
+    /**
+     * Resolve envs of credentials referenced by env vars
+     */
+    private Map<String, String> resolveCredentialEnvs(EnvObject envVars) {
+        Set<String> names = new HashSet<>(CREDENTIAL_NAME_ENVS.size());
+        for (EnvKey key : CREDENTIAL_NAME_ENVS) {
+            String name = envVars.getEnv(key);
+            if (!Strings.isNullOrEmpty(name)) {
+                names.add(name);
+            }
+        }
+
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> envs = new HashMap<>();
+        for (Map<String, String> credentialEnvs : credentialService.findByNames(names).values()) {
+            envs.putAll(credentialEnvs);
+        }
+        return envs;
+    }
+
     /**
      * keep new line to private key and public key
      * @param node
      * @return Map
      */
-    private Map<String, String> keepNewLineForCredentialEnvs(Node node) {
+    private Map<String, String> keepNewLineForCredentialEnvs(EnvObject node) {
         Map<String, String> map = new HashMap<>(2);
 
         String privateKey = node.getEnv(GitEnvs.FLOW_GIT_SSH_PRIVATE_KEY);
@@ -540,6 +620,24 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
         Node node = tree.find(path);
         Node next = tree.next(path);
 
+        // agent lost env base layer of session, resend node with base layer
+        if (isEnvBaseMissing(cmd)) {
+            NodeResult nodeResult = nodeResultService.find(path, job.getId());
+            String cmdId = nodeResult.getCmdId();
+
+            if (!cmdId.endsWith(ENV_BASE_RESEND_SUFFIX)) {
+                LOGGER.warn("Env base layer not found on agent for cmd '%s', resend with base layer", cmdId);
+                cmdService.resetEnvBase(job.getSessionId());
+
+                // cmd id is unique on cc, so the resent cmd needs a new one
+                nodeResult.setCmdId(cmdId + ENV_BASE_RESEND_SUFFIX);
+                nodeResultService.update(nodeResult);
+
+                run(node, job);
+                return;
+            }
+        }
+
         // bottom up recursive update node result
         NodeResult nodeResult = nodeResultService.updateStatusByCmd(job, node, cmd, null);
         LOGGER.debug("Run shell callback for node result: %s", nodeResult);
@@ -577,6 +675,12 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
         }
     }
 
+    private static boolean isEnvBaseMissing(Cmd cmd) {
+        return cmd.getStatus() == CmdStatus.EXCEPTION
+            && cmd.getCmdResult() != null
+            && Objects.equals(cmd.getCmdResult().getExitValue(), CmdResult.EXIT_VALUE_FOR_ENV_BASE_MISSING);
+    }
+
     @Override
     public void enqueue(CmdCallbackQueueItem cmdQueueItem, long priority) {
         cmdCallbackQueue.enqueue(PriorityMessage.create(cmdQueueItem.toBytes(), priority));
@@ -636,6 +740,7 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
         LOGGER.debug("Job '%s' status is changed to : %s", job.getId(), newStatus);
         job.setStatus(newStatus);
         jobDao.update(job);
+        scheduleTimeOut(job);
 
         this.dispatchEvent(new JobStatusChangeEvent(this, job, originStatus, newStatus));
     }
@@ -682,7 +787,7 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
 
         @Override
         public void accept(Yml yml) {
-            LOGGER.trace("Yml content has been loaded for path : " + path);
+            LOGGER.trace("Yml content has been loaded for path : %s", path);
             Node root = nodeService.find(PathUtil.rootPath(path)).root();
 
             // set git commit info to job env
@@ -796,7 +901,7 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
     }
 
     @Override
-    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    @Scheduled(fixedDelay = TIMEOUT_RELOAD_PERIOD, initialDelay = 10 * 1000)
     public void checkTimeOutTask() {
         if (!isEnableJobTimeOut) {
             return;
@@ -807,11 +912,51 @@ public class JobServiceImpl extends ApplicationEventService implements JobServic
         List<Job> jobs = jobDao.listByStatus(Job.RUNNING_STATUS);
         for (Job job : jobs) {
             checkTimeOut(job);
+            scheduleTimeOut(job);
         }
 
         LOGGER.trace("job timeout task end");
     }
 
+    /**
+     * Register job timeout to timing wheel by job status, or cancel it if job finished
+     */
+    private void scheduleTimeOut(Job job) {
+        final String key = TIMEOUT_KEY_PREFIX + job.getId();
+
+        if (Job.FINISH_STATUS.contains(job.getStatus())) {
+            timingWheel.cancel(key);
+            return;
+        }
+
+        if (!isEnableJobTimeOut || job.getCreatedAt() == null) {
+            return;
+        }
+
+        final BigInteger jobId = job.getId();
+
+        timingWheel.schedule(key, timeOutDeadline(job), () -> {
+            Job current = jobDao.get(jobId);
+            if (current == null) {
+                return;
+            }
+
+            checkTimeOut(current);
+
+            // not expired since job status changed to the one with longer timeout,
+            // reschedule on the exact remaining deadline instead of waiting for reload task
+            if (!Job.FINISH_STATUS.contains(current.getStatus())
+                && timeOutDeadline(current).isAfter(ZonedDateTime.now())) {
+                scheduleTimeOut(current);
+            }
+        });
+    }
+
+    private ZonedDateTime timeOutDeadline(Job job) {
+        long timeout = job.getStatus() == JobStatus.SESSION_CREATING ? jobTimeOutOnCreateSession : jobTimeOutOnRunning;
+        return job.getCreatedAt().plusSeconds(timeout);
+    }
+
     private void updateJobAndNodeResultTimeout(Job job) {
         // if job is running , please delete session first
         if (job.getStatus() == JobStatus.RUNNING) {
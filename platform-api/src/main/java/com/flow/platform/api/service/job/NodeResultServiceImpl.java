@@ -75,8 +75,6 @@ public class NodeResultServiceImpl extends ApplicationEventService implements No
         for (Node node : nodeTree.children()) {
             NodeResult nodeResult = createNodeResult(job, nodeTree, node);
             nodeResult.setOrder(order++);
-
-            nodeResultDao.save(nodeResult);
             resultList.add(nodeResult);
         }
 
@@ -84,11 +82,10 @@ public class NodeResultServiceImpl extends ApplicationEventService implements No
         NodeResult rootResult = createNodeResult(job, nodeTree, nodeTree.root());
         rootResult.setOrder(order);
         fillRootResultOutputsFromJob(job, rootResult);
-
-        nodeResultDao.save(rootResult);
         resultList.add(rootResult);
 
-        return resultList;
+        // save all node results in jdbc batch
+        return nodeResultDao.saveAll(resultList);
     }
 
     @Override
@@ -127,6 +124,8 @@ public class NodeResultServiceImpl extends ApplicationEventService implements No
     @Transactional
     public void updateStatus(Job job, NodeStatus targetStatus, Set<NodeStatus> skipped) {
         List<NodeResult> children = list(job, true);
+        List<NodeResult> changed = new ArrayList<>(children.size() + 1);
+        List<NodeStatusChangeEvent> events = new ArrayList<>(children.size() + 1);
 
         // update children node result status
         for (NodeResult nodeResult : children) {
@@ -134,13 +133,19 @@ public class NodeResultServiceImpl extends ApplicationEventService implements No
                 continue;
             }
 
-            updateNodeResultStatus(nodeResult, targetStatus);
+            setNodeResultStatus(nodeResult, targetStatus, changed, events);
         }
 
         // update root node result status
         NodeTree nodeTree = jobNodeService.get(job);
         NodeResult rootResult = nodeResultDao.get(new NodeResultKey(job.getId(), nodeTree.root().getPath()));
-        updateNodeResultStatus(rootResult, targetStatus);
+        setNodeResultStatus(rootResult, targetStatus, changed, events);
+
+        // write changed node results in jdbc batch then dispatch events
+        nodeResultDao.updateAll(changed);
+        for (NodeStatusChangeEvent event : events) {
+            this.dispatchEvent(event);
+        }
     }
 
     @Override
@@ -170,15 +175,18 @@ public class NodeResultServiceImpl extends ApplicationEventService implements No
         nodeResultDao.delete(jobIds);
     }
 
-    private void updateNodeResultStatus(NodeResult nodeResult, NodeStatus targetStatus) {
+    private void setNodeResultStatus(NodeResult nodeResult,
+                                     NodeStatus targetStatus,
+                                     List<NodeResult> changed,
+                                     List<NodeStatusChangeEvent> events) {
         NodeStatus originStatus = nodeResult.getStatus();
         if (originStatus == targetStatus) {
             return;
         }
 
         nodeResult.setStatus(targetStatus);
-        nodeResultDao.update(nodeResult);
-        this.dispatchEvent(new NodeStatusChangeEvent(this, nodeResult.getKey(), originStatus, targetStatus));
+        changed.add(nodeResult);
+        events.add(new NodeStatusChangeEvent(this, nodeResult.getKey(), originStatus, targetStatus));
     }
 
     /**
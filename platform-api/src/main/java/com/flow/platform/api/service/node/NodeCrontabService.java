@@ -17,6 +17,7 @@
 package com.flow.platform.api.service.node;
 
 import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.domain.node.NodeCrontab;
 import com.flow.platform.core.context.ContextEvent;
 import java.util.List;
 import org.quartz.Trigger;
@@ -31,7 +32,9 @@ public interface NodeCrontabService extends ContextEvent {
     String KEY_NODE_PATH = "node_path";
 
     /**
-     * Set crontab task for node
+     * Set crontab task for node, it will not reset trigger if crontab and branch not changed
+     *
+     * @throws com.flow.platform.core.exception.IllegalParameterException if crontab env missing or invalid
      */
     void set(Node node);
 
@@ -45,6 +48,22 @@ public interface NodeCrontabService extends ContextEvent {
      */
     List<Trigger> triggers();
 
+    /**
+     * List crontab state with next fire times of all flows
+     *
+     * @param numOfFireTimes num of next fire times of each flow
+     */
+    List<NodeCrontab> list(int numOfFireTimes);
+
+    /**
+     * Find crontab state with next fire times of flow
+     *
+     * @param path flow path
+     * @param numOfFireTimes num of next fire times
+     * @throws com.flow.platform.core.exception.NotFoundException if crontab not set for flow
+     */
+    NodeCrontab find(String path, int numOfFireTimes);
+
     /**
      * Clean triggers
      */
@@ -14,20 +14,29 @@
  * limitations under the License.
  */
 
+
 package com.flow.platform.api.service.node;
 
 import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.domain.node.NodeCrontab;
 import com.flow.platform.api.envs.EnvKey;
-import com.flow.platform.api.envs.FlowEnvs;
-import com.flow.platform.api.service.job.JobService;
-import com.flow.platform.api.service.user.UserService;
 import com.flow.platform.api.envs.EnvUtil;
+import com.flow.platform.api.envs.FlowEnvs;
+import com.flow.platform.api.util.CrontabUtil;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.core.exception.IllegalStatusException;
+import com.flow.platform.core.exception.NotFoundException;
+import com.flow.platform.util.DateUtil;
 import com.flow.platform.util.Logger;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import javax.annotation.PostConstruct;
 import org.quartz.CronScheduleBuilder;
@@ -40,6 +49,7 @@ import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
 import org.quartz.TriggerKey;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
@@ -54,32 +64,77 @@ public class NodeCrontabServiceImpl implements NodeCrontabService {
     private final static Set<EnvKey> CRONTAB_REQUIRED_ENVS = ImmutableSet.of(
         FlowEnvs.FLOW_TASK_CRONTAB_BRANCH, FlowEnvs.FLOW_TASK_CRONTAB_CONTENT);
 
+    /**
+     * Misfire policy to fire once immediately when scheduler recovered
+     */
+    private final static String MISFIRE_FIRE_ONCE = "fire_once";
+
+    /**
+     * Misfire policy to skip misfired triggers and wait for next fire time
+     */
+    private final static String MISFIRE_SKIP = "skip";
+
+    private final static int MAX_NUM_OF_FIRE_TIMES = 50;
+
     @Autowired
     private Scheduler quartzScheduler;
 
     @Autowired
     private JobDetail nodeCrontabDetail;
 
-    @Autowired
-    private JobService jobService;
-
     @Autowired
     private NodeService nodeService;
 
-    @Autowired
-    private UserService userService;
-
     @Autowired
     public ThreadPoolTaskExecutor taskExecutor;
 
+    @Value("${task.crontab.misfire.policy}")
+    private String misfirePolicy;
+
+    /**
+     * Max seconds to shift the crontab fired at the same minute
+     */
+    @Value("${task.crontab.jitter}")
+    private int jitter;
+
+    /**
+     * Reconcile triggers with flows since triggers are persisted in job store
+     */
     @PostConstruct
     public void initCrontabTask() {
+        if (!Objects.equals(misfirePolicy, MISFIRE_FIRE_ONCE) && !Objects.equals(misfirePolicy, MISFIRE_SKIP)) {
+            throw new IllegalParameterException("Illegal crontab misfire policy: " + misfirePolicy);
+        }
+
         taskExecutor.execute(() -> {
-            List<Node> flows = nodeService.listFlows(false);
-            for (Node flow : flows) {
+            // load triggers before flows, the trigger set after that will not be removed
+            List<Trigger> triggers = triggers();
+
+            Set<String> paths = new HashSet<>();
+            for (Node flow : nodeService.listFlows(false)) {
+                if (!EnvUtil.hasRequiredEnvKey(flow, CRONTAB_REQUIRED_ENVS)) {
+                    continue;
+                }
+
+                paths.add(flow.getPath());
                 try {
                     set(flow);
-                } catch (Throwable ignore) {
+                } catch (Throwable e) {
+                    LOGGER.warn("Unable to set crontab for flow '%s': %s", flow.getPath(), e.getMessage());
+                }
+            }
+
+            // remove triggers of deleted flows or flows without crontab settings
+            for (Trigger trigger : triggers) {
+                if (paths.contains(trigger.getKey().getName())) {
+                    continue;
+                }
+
+                try {
+                    quartzScheduler.unscheduleJob(trigger.getKey());
+                    LOGGER.trace("Crontab trigger '%s' removed", trigger.getKey().getName());
+                } catch (SchedulerException e) {
+                    LOGGER.warn("Unable to remove crontab trigger '%s': %s", trigger.getKey(), e.getMessage());
                 }
             }
         });
@@ -111,29 +166,24 @@ public class NodeCrontabServiceImpl implements NodeCrontabService {
 
         final String branch = node.getEnv(FlowEnvs.FLOW_TASK_CRONTAB_BRANCH);
         final String crontab = node.getEnv(FlowEnvs.FLOW_TASK_CRONTAB_CONTENT);
+        final String cron = CrontabUtil.withJitter(CrontabUtil.toQuartz(crontab), node.getPath(), jitter);
 
         // init and verify cron expression
         CronScheduleBuilder cronSchedule;
         try {
-            cronSchedule = CronScheduleBuilder.cronSchedule(crontab);
+            cronSchedule = CronScheduleBuilder.cronSchedule(cron);
         } catch (RuntimeException e) {
             throw new IllegalParameterException(e.getMessage());
         }
 
-        // init job if it doesn't exist
-        try {
-            if (!quartzScheduler.checkExists(nodeCrontabDetail.getKey())) {
-                quartzScheduler.addJob(nodeCrontabDetail, true);
-            }
-        } catch (SchedulerException e) {
-            throw new IllegalStatusException("Unable to init quartz job: " + e.getMessage());
+        if (Objects.equals(misfirePolicy, MISFIRE_SKIP)) {
+            cronSchedule = cronSchedule.withMisfireHandlingInstructionDoNothing();
+        } else {
+            cronSchedule = cronSchedule.withMisfireHandlingInstructionFireAndProceed();
         }
 
-        // create data map
+        // create data map, only string values since job store uses properties
         JobDataMap dataMap = new JobDataMap();
-        dataMap.put("jobService", jobService);
-        dataMap.put("nodeService", nodeService);
-        dataMap.put("userService", userService);
         dataMap.put(KEY_BRANCH, branch);
         dataMap.put(KEY_NODE_PATH, node.getPath());
 
@@ -146,8 +196,15 @@ public class NodeCrontabServiceImpl implements NodeCrontabService {
             .build();
 
         try {
-            quartzScheduler.unscheduleJob(cronTrigger.getKey());
-            quartzScheduler.scheduleJob(cronTrigger);
+            // keep the trigger state if nothing changed, otherwise next fire time will be reset
+            Trigger existing = quartzScheduler.getTrigger(cronTrigger.getKey());
+            if (isSame(existing, cronTrigger)) {
+                return;
+            }
+
+            // save job and trigger in one transaction
+            quartzScheduler.scheduleJob(nodeCrontabDetail, Collections.singleton(cronTrigger), true);
+            LOGGER.trace("Crontab trigger '%s' set with '%s' on branch %s", node.getPath(), cron, branch);
         } catch (SchedulerException e) {
             throw new IllegalStatusException(e.getMessage());
         }
@@ -172,12 +229,88 @@ public class NodeCrontabServiceImpl implements NodeCrontabService {
         }
     }
 
+    @Override
+    public List<NodeCrontab> list(int numOfFireTimes) {
+        List<Trigger> triggers = triggers();
+        List<NodeCrontab> crontabs = new ArrayList<>(triggers.size());
+
+        for (Trigger trigger : triggers) {
+            crontabs.add(toNodeCrontab(trigger, numOfFireTimes));
+        }
+
+        return crontabs;
+    }
+
+    @Override
+    public NodeCrontab find(String path, int numOfFireTimes) {
+        Trigger trigger;
+        try {
+            trigger = quartzScheduler.getTrigger(new TriggerKey(path));
+        } catch (SchedulerException e) {
+            throw new IllegalStatusException(e.getMessage());
+        }
+
+        if (trigger == null) {
+            throw new NotFoundException("Crontab not found for flow: " + path);
+        }
+
+        return toNodeCrontab(trigger, numOfFireTimes);
+    }
+
     @Override
     public void cleanTriggers() {
         try {
-            quartzScheduler.getTriggersOfJob(nodeCrontabDetail.getKey()).clear();
+            List<TriggerKey> keys = new ArrayList<>();
+            for (Trigger trigger : quartzScheduler.getTriggersOfJob(nodeCrontabDetail.getKey())) {
+                keys.add(trigger.getKey());
+            }
+            quartzScheduler.unscheduleJobs(keys);
         } catch (SchedulerException e) {
             throw new IllegalStatusException(e.getMessage());
         }
     }
+
+    private boolean isSame(Trigger existing, CronTrigger trigger) {
+        if (!(existing instanceof CronTrigger)) {
+            return false;
+        }
+
+        CronTrigger cronTrigger = (CronTrigger) existing;
+        return Objects.equals(cronTrigger.getCronExpression(), trigger.getCronExpression())
+            && cronTrigger.getMisfireInstruction() == trigger.getMisfireInstruction()
+            && Objects.equals(cronTrigger.getJobDataMap().getString(KEY_BRANCH),
+            trigger.getJobDataMap().getString(KEY_BRANCH));
+    }
+
+    private NodeCrontab toNodeCrontab(Trigger trigger, int numOfFireTimes) {
+        String path = trigger.getJobDataMap().getString(KEY_NODE_PATH);
+        String branch = trigger.getJobDataMap().getString(KEY_BRANCH);
+        String cron = trigger instanceof CronTrigger ? ((CronTrigger) trigger).getCronExpression() : null;
+
+        String state;
+        try {
+            state = quartzScheduler.getTriggerState(trigger.getKey()).name();
+        } catch (SchedulerException e) {
+            throw new IllegalStatusException(e.getMessage());
+        }
+
+        NodeCrontab crontab = new NodeCrontab(path, branch, cron, state);
+
+        if (trigger.getPreviousFireTime() != null) {
+            crontab.setPreviousFireTime(DateUtil.fromDateForUTC(trigger.getPreviousFireTime()));
+        }
+
+        // compute next fire times from trigger
+        int num = Math.min(numOfFireTimes, MAX_NUM_OF_FIRE_TIMES);
+        List<ZonedDateTime> nextFireTimes = new ArrayList<>(Math.max(num, 0));
+
+        Date next = trigger.getNextFireTime();
+        while (next != null && nextFireTimes.size() < num) {
+            nextFireTimes.add(DateUtil.fromDateForUTC(next));
+            next = trigger.getFireTimeAfter(next);
+        }
+
+        crontab.setNextFireTimes(nextFireTimes);
+        return crontab;
+    }
 }
@@ -81,6 +81,7 @@ public class ActionServiceImpl extends CurrentUser implements ActionService {
         action.setTag(body.getTag());
 
         actionDao.update(action);
+        actionDao.evict(action.getName());
         return action;
     }
 
@@ -95,6 +96,7 @@ public class ActionServiceImpl extends CurrentUser implements ActionService {
         }
 
         actionDao.delete(action);
+        actionDao.evict(action.getName());
     }
 
     @Override
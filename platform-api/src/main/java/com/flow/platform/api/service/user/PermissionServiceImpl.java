@@ -66,15 +66,19 @@ public class PermissionServiceImpl implements PermissionService {
 
     @Override
     public void assign(Role role, Collection<Action> actions) {
+        List<Permission> permissions = new ArrayList<>(actions.size());
         for (Action action : actions) {
-            permissionDao.save(new Permission(role.getId(), action.getName()));
+            permissions.add(new Permission(role.getId(), action.getName()));
         }
+        permissionDao.saveAll(permissions);
     }
 
     @Override
     public void unAssign(Role role, Collection<Action> actions) {
         for (Action action : actions) {
-            permissionDao.delete(new Permission(role.getId(), action.getName()));
+            Permission permission = new Permission(role.getId(), action.getName());
+            permissionDao.delete(permission);
+            permissionDao.evict(permission.getKey());
         }
     }
 
@@ -87,6 +87,7 @@ public class RoleServiceImpl extends CurrentUser implements RoleService {
     public void update(Role role) {
         role.setCreatedBy(currentUser().getEmail());
         roleDao.update(role);
+        roleDao.evict(role.getId());
     }
 
     @Override
@@ -100,6 +101,7 @@ public class RoleServiceImpl extends CurrentUser implements RoleService {
         }
 
         roleDao.delete(role);
+        roleDao.evict(role.getId());
     }
 
     @Override
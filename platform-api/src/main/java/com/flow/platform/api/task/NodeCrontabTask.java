@@ -32,23 +32,31 @@ import java.util.Map;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
 
 /**
+ * Quartz job to create job from flow, the services are autowired by job factory
+ *
  * @author yang
  */
 public class NodeCrontabTask implements Job {
 
     private final static Logger LOGGER = new Logger(NodeCrontabTask.class);
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private UserService userService;
+
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
         final String branch = context.getMergedJobDataMap().getString(KEY_BRANCH);
         final String path = context.getMergedJobDataMap().getString(KEY_NODE_PATH);
 
-        final JobService jobService = (JobService) context.getMergedJobDataMap().get("jobService");
-        final NodeService nodeService = (NodeService) context.getMergedJobDataMap().get("nodeService");
-        final UserService userService = (UserService) context.getMergedJobDataMap().get("userService");
-
         LOGGER.debug("branch %s with node path %s", branch, path);
 
         try {
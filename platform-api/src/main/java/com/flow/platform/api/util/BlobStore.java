@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.util;
+
+import com.google.common.util.concurrent.Striped;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Content addressed blob store on local file system
+ *
+ * - blobs/{sha[0:2]}/{sha[2:4]}/{sha}: immutable blob keyed by sha256 of content
+ * - uploads/{id}: in progress upload which can be resumed from current size
+ *
+ * Same content is only stored once, blob without any reference can be removed by sweep
+ *
+ * @author yang
+ */
+public class BlobStore {
+
+    private final static String BLOB_DIR = "blobs";
+
+    private final static String UPLOAD_DIR = "uploads";
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private final static Pattern SHA256_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+
+    private final static Pattern UPLOAD_ID_PATTERN = Pattern.compile("^[0-9a-f\\-]{36}$");
+
+    private final static int UPLOAD_LOCK_STRIPES = 64;
+
+    private final Path blobRoot;
+
+    private final Path uploadRoot;
+
+    // serialize chunk append and complete on the same upload, otherwise concurrent chunks
+    // with same offset both pass the offset check and corrupt the content
+    private final Striped<Lock> uploadLocks = Striped.lock(UPLOAD_LOCK_STRIPES);
+
+    public BlobStore(Path root) throws IOException {
+        this.blobRoot = Files.createDirectories(root.resolve(BLOB_DIR));
+        this.uploadRoot = Files.createDirectories(root.resolve(UPLOAD_DIR));
+    }
+
+    /**
+     * Create an empty upload
+     *
+     * @return upload id
+     */
+    public String createUpload() throws IOException {
+        String id = UUID.randomUUID().toString();
+        Files.createFile(uploadPath(id));
+        return id;
+    }
+
+    /**
+     * Get current size of upload which is the offset for next chunk
+     */
+    public long uploadOffset(String id) throws IOException {
+        return Files.size(existUploadPath(id));
+    }
+
+    /**
+     * Append chunk to upload, the offset must equal to current upload size
+     *
+     * @return upload size after chunk appended
+     */
+    public long appendChunk(String id, long offset, InputStream chunk) throws IOException {
+        Path path = existUploadPath(id);
+        Lock lock = uploadLocks.get(id);
+        lock.lock();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() != offset) {
+                throw new IllegalArgumentException(
+                    "Upload offset mismatch, expected " + channel.size() + " but " + offset);
+            }
+
+            channel.position(offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer wrap = ByteBuffer.wrap(buffer);
+            int length;
+            while ((length = chunk.read(buffer)) != -1) {
+                wrap.clear().limit(length);
+                while (wrap.hasRemaining()) {
+                    channel.write(wrap);
+                }
+            }
+
+            channel.force(false);
+            return channel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move upload into blob store, the upload will be removed
+     *
+     * @param expectedSha256 optional sha256 to verify content
+     * @return sha256 of content
+     */
+    public String completeUpload(String id, String expectedSha256) throws IOException {
+        Path path = existUploadPath(id);
+        Lock lock = uploadLocks.get(id);
+        lock.lock();
+        try {
+            return doCompleteUpload(path, expectedSha256);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String doCompleteUpload(Path path, String expectedSha256) throws IOException {
+        String sha256 = hash(path);
+
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+            Files.deleteIfExists(path);
+            throw new IllegalArgumentException("Upload content sha256 mismatch, actual is " + sha256);
+        }
+
+        Path blob = blobPath(sha256);
+        if (Files.exists(blob)) {
+            // dedup: content already in store, touch blob to protect it from sweep
+            Files.setLastModifiedTime(blob, FileTime.from(Instant.now()));
+            Files.deleteIfExists(path);
+            return sha256;
+        }
+
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.move(path, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(path);
+        }
+
+        return sha256;
+    }
+
+    /**
+     * Store content from stream
+     *
+     * @return sha256 of content
+     */
+    public String put(InputStream content) throws IOException {
+        String id = createUpload();
+        try {
+            appendChunk(id, 0, content);
+            return completeUpload(id, null);
+        } finally {
+            Files.deleteIfExists(uploadPath(id));
+        }
+    }
+
+    public boolean exist(String sha256) {
+        return Files.exists(blobPath(sha256));
+    }
+
+    /**
+     * Get blob path by sha256
+     */
+    public Path blobPath(String sha256) {
+        if (sha256 == null || !SHA256_PATTERN.matcher(sha256).matches()) {
+            throw new IllegalArgumentException("Illegal sha256: " + sha256);
+        }
+        return blobRoot.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    /**
+     * Delete blobs which not in referenced set and not modified within grace period
+     *
+     * @return number of deleted blobs
+     */
+    public int sweep(Set<String> referenced, Duration grace) throws IOException {
+        final Instant threshold = Instant.now().minus(grace);
+        int deleted = 0;
+
+        try (Stream<Path> files = Files.walk(blobRoot)) {
+            for (Path blob : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String sha256 = blob.getFileName().toString();
+                if (referenced.contains(sha256)) {
+                    continue;
+                }
+
+                if (Files.getLastModifiedTime(blob).toInstant().isAfter(threshold)) {
+                    continue;
+                }
+
+                if (Files.deleteIfExists(blob)) {
+                    deleted++;
+                }
+            }
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Delete uploads which not be touched within expiration
+     *
+     * @return number of deleted uploads
+     */
+    public int cleanUploads(Duration expiration) throws IOException {
+        final Instant threshold = Instant.now().minus(expiration);
+        int deleted = 0;
+
+        try (DirectoryStream<Path> uploads = Files.newDirectoryStream(uploadRoot)) {
+            for (Path upload : uploads) {
+                if (Files.getLastModifiedTime(upload).toInstant().isBefore(threshold)) {
+                    Files.deleteIfExists(upload);
+                    deleted++;
+                }
+            }
+        }
+
+        return deleted;
+    }
+
+    private Path existUploadPath(String id) throws IOException {
+        Path path = uploadPath(id);
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("Upload not found: " + id);
+        }
+        return path;
+    }
+
+    private Path uploadPath(String id) {
+        if (id == null || !UPLOAD_ID_PATTERN.matcher(id).matches()) {
+            throw new IllegalArgumentException("Illegal upload id: " + id);
+        }
+        return uploadRoot.resolve(id);
+    }
+
+    private static String hash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        }
+
+        StringBuilder builder = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Write git tree of commit to tar.gz bundle
+ *
+ * The bundle content only depends on the tree and commit time, same commit always produce
+ * same bytes, so that the sha256 of bundle can be used as content hash
+ *
+ * @author yang
+ */
+public class BundleUtil {
+
+    private final static int BLOCK_SIZE = 512;
+
+    private final static int NAME_LENGTH = 100;
+
+    private final static byte TYPE_FILE = '0';
+
+    private final static byte TYPE_SYMLINK = '2';
+
+    private final static byte TYPE_PAX = 'x';
+
+    private final static int MODE_FILE = 0644;
+
+    private final static int MODE_EXECUTABLE = 0755;
+
+    private final static int MODE_SYMLINK = 0777;
+
+    /**
+     * Write tree of commit to output stream as tar.gz, submodules are ignored
+     *
+     * @return num of entries in bundle
+     */
+    public static int archive(Repository repo, ObjectId commitId, OutputStream out) throws IOException {
+        int numOfEntries = 0;
+
+        try (RevWalk revWalk = new RevWalk(repo); TreeWalk treeWalk = new TreeWalk(repo)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            long mtime = commit.getCommitTime();
+
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+
+            // gzip header mtime is always zero in jdk
+            BundleGzipStream gzip = new BundleGzipStream(out);
+
+            try {
+                numOfEntries = writeEntries(repo, treeWalk, gzip, mtime);
+
+                // end of archive is two empty blocks
+                gzip.write(new byte[BLOCK_SIZE * 2]);
+                gzip.finish();
+            } finally {
+                gzip.end();
+            }
+        }
+
+        return numOfEntries;
+    }
+
+    private static int writeEntries(Repository repo, TreeWalk treeWalk, OutputStream gzip, long mtime)
+        throws IOException {
+        int numOfEntries = 0;
+
+        while (treeWalk.next()) {
+            FileMode mode = treeWalk.getFileMode(0);
+            if (mode == FileMode.GITLINK) {
+                continue;
+            }
+
+            String path = treeWalk.getPathString();
+            ObjectLoader loader = repo.open(treeWalk.getObjectId(0));
+
+            if (mode == FileMode.SYMLINK) {
+                String target = new String(loader.getCachedBytes(), StandardCharsets.UTF_8);
+                writeHeader(gzip, path, target, MODE_SYMLINK, 0, mtime, TYPE_SYMLINK);
+            } else {
+                int fileMode = mode == FileMode.EXECUTABLE_FILE ? MODE_EXECUTABLE : MODE_FILE;
+                writeHeader(gzip, path, null, fileMode, loader.getSize(), mtime, TYPE_FILE);
+                loader.copyTo(gzip);
+                writePadding(gzip, loader.getSize());
+            }
+
+            numOfEntries++;
+        }
+
+        return numOfEntries;
+    }
+
+    private static void writeHeader(OutputStream out,
+                                    String path,
+                                    String linkTarget,
+                                    int mode,
+                                    long size,
+                                    long mtime,
+                                    byte type) throws IOException {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[] linkBytes = linkTarget == null ? new byte[0] : linkTarget.getBytes(StandardCharsets.UTF_8);
+
+        // pax extended header for long path or link target
+        if (pathBytes.length > NAME_LENGTH || linkBytes.length > NAME_LENGTH) {
+            StringBuilder records = new StringBuilder();
+            if (pathBytes.length > NAME_LENGTH) {
+                records.append(paxRecord("path", path));
+            }
+            if (linkBytes.length > NAME_LENGTH) {
+                records.append(paxRecord("linkpath", linkTarget));
+            }
+
+            byte[] content = records.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(header("PaxHeader".getBytes(StandardCharsets.UTF_8), new byte[0], MODE_FILE,
+                content.length, mtime, TYPE_PAX));
+            out.write(content);
+            writePadding(out, content.length);
+        }
+
+        out.write(header(pathBytes, linkBytes, mode, size, mtime, type));
+    }
+
+    private static byte[] header(byte[] path, byte[] link, int mode, long size, long mtime, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+
+        System.arraycopy(path, 0, header, 0, Math.min(path.length, NAME_LENGTH));
+        writeOctal(header, 100, 8, mode);
+        writeOctal(header, 108, 8, 0); // uid
+        writeOctal(header, 116, 8, 0); // gid
+        writeOctal(header, 124, 12, size);
+        writeOctal(header, 136, 12, mtime);
+        header[156] = type;
+        System.arraycopy(link, 0, header, 157, Math.min(link.length, NAME_LENGTH));
+
+        byte[] magic = "ustar\u000000".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(magic, 0, header, 257, magic.length);
+
+        // checksum calculated with checksum field filled by spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        writeOctal(header, 148, 7, checksum);
+        header[155] = ' ';
+
+        return header;
+    }
+
+    /**
+     * Write zero padded octal number with NUL terminated to header field
+     */
+    private static void writeOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+
+        if (octal.length() > digits) {
+            throw new IllegalArgumentException("Value " + value + " is too large for tar header");
+        }
+
+        for (int i = 0; i < digits - octal.length(); i++) {
+            header[offset + i] = '0';
+        }
+
+        byte[] bytes = octal.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset + digits - bytes.length, bytes.length);
+        header[offset + digits] = 0;
+    }
+
+    /**
+     * Pax record format is '{length} {key}={value}\n', the length includes itself
+     */
+    private static String paxRecord(String key, String value) {
+        String record = " " + key + "=" + value + "\n";
+        int base = record.getBytes(StandardCharsets.UTF_8).length;
+
+        int length = base + String.valueOf(base).length();
+        if (String.valueOf(length).length() > String.valueOf(base).length()) {
+            length++;
+        }
+
+        return length + record;
+    }
+
+    private static void writePadding(OutputStream out, long size) throws IOException {
+        int remain = (int) (size % BLOCK_SIZE);
+        if (remain > 0) {
+            out.write(new byte[BLOCK_SIZE - remain]);
+        }
+    }
+
+    /**
+     * Gzip stream which can release native deflater without closing the underlying stream
+     */
+    private static class BundleGzipStream extends GZIPOutputStream {
+
+        BundleGzipStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        void end() {
+            def.end();
+        }
+    }
+}
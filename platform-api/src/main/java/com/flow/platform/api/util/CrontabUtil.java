@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.util;
+
+import com.flow.platform.core.exception.IllegalParameterException;
+import java.util.Objects;
+
+/**
+ * Convert unix crontab to quartz cron expression
+ * Unix format: {minute} {hour} {day of month} {month} {day of week}
+ * Quartz format: {second} {minute} {hour} {day of month} {month} {day of week}
+ *
+ * @author yang
+ */
+public class CrontabUtil {
+
+    private final static String NO_SPECIFIC_VALUE = "?";
+
+    private final static String FIELD_SEPARATOR = " ";
+
+    private final static String DEFAULT_SECOND = "0";
+
+    private final static int UNIX_FIELDS = 5;
+
+    private final static int QUARTZ_FIELDS = 6;
+
+    private final static int MAX_JITTER_SECONDS = 59;
+
+    private CrontabUtil() {
+
+    }
+
+    /**
+     * Convert unix crontab to quartz format, the quartz format is returned directly
+     */
+    public static String toQuartz(String crontab) {
+        String[] crons = crontab.trim().split(FIELD_SEPARATOR);
+        if (crons.length == QUARTZ_FIELDS) {
+            return crontab.trim();
+        }
+
+        if (crons.length != UNIX_FIELDS) {
+            throw new IllegalParameterException("Illegal crontab format");
+        }
+
+        String minute = crons[0];
+        String hours = crons[1];
+        String dayOfMonth = crons[2];
+        String month = crons[3];
+        String dayOfWeek = crons[4];
+
+        // quartz not support for specifying both a day-of-week and a day-of-month
+        if (!Objects.equals(dayOfMonth, NO_SPECIFIC_VALUE) && !Objects.equals(dayOfWeek, NO_SPECIFIC_VALUE)) {
+            dayOfMonth = NO_SPECIFIC_VALUE;
+        }
+
+        return String.join(FIELD_SEPARATOR, DEFAULT_SECOND, minute, hours, dayOfMonth, month, dayOfWeek);
+    }
+
+    /**
+     * Shift the second field of quartz cron by the hash of key, so crontab on the same
+     * minute of different flows are not fired at the same time
+     *
+     * @param cron quartz cron expression
+     * @param key the key to compute stable offset, ex: node path
+     * @param maxSeconds max jitter in seconds, up to 59, 0 means no jitter
+     * @return cron expression with jitter, or the original one if the second field is specified
+     */
+    public static String withJitter(String cron, String key, int maxSeconds) {
+        int max = Math.min(maxSeconds, MAX_JITTER_SECONDS);
+        if (max <= 0) {
+            return cron;
+        }
+
+        String[] fields = cron.split(FIELD_SEPARATOR);
+        if (fields.length != QUARTZ_FIELDS || !Objects.equals(fields[0], DEFAULT_SECOND)) {
+            return cron;
+        }
+
+        // String.hashCode is stable across jvm, all api instances get the same offset
+        fields[0] = Integer.toString(Math.floorMod(key.hashCode(), max + 1));
+        return String.join(FIELD_SEPARATOR, fields);
+    }
+}
@@ -18,6 +18,7 @@ package com.flow.platform.api.util;
 import com.flow.platform.api.domain.node.Node;
 import com.flow.platform.api.exception.NodeFormatException;
 import com.flow.platform.api.exception.YmlException;
+import com.flow.platform.domain.CmdCache;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -274,7 +275,8 @@ public class NodeUtil {
         private final List<Consumer<Node>> validators = ImmutableList.of(
             new ConstrainsValidator(),
             new UniqueNameValidator(),
-            new FinalNodeValidator()
+            new FinalNodeValidator(),
+            new CacheValidator()
         );
 
         void validate(Node node) {
@@ -347,6 +349,26 @@ public class NodeUtil {
         }
     }
 
+    private static class CacheValidator implements Consumer<Node> {
+
+        @Override
+        public void accept(Node node) {
+            for (Node item : flat(node)) {
+                Set<String> paths = new HashSet<>();
+
+                for (CmdCache cache : item.getCache()) {
+                    if (Strings.isNullOrEmpty(cache.getPath()) || Strings.isNullOrEmpty(cache.getKey())) {
+                        throw new NodeFormatException("The cache path and key are required : " + item.getName());
+                    }
+
+                    if (!paths.add(cache.getPath())) {
+                        throw new NodeFormatException("The cache path is duplicated : " + cache.getPath());
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Represent YML root flow
      */
@@ -383,6 +405,8 @@ public class NodeUtil {
 
         public String plugin;
 
+        public List<Map<String, String>> cache;
+
         public NodeWrapper() {
         }
 
@@ -399,6 +423,13 @@ public class NodeUtil {
             plugin = node.getPlugin();
             steps = new LinkedList<>();
 
+            if (!node.getCache().isEmpty()) {
+                cache = new LinkedList<>();
+                for (CmdCache item : node.getCache()) {
+                    cache.add(ImmutableMap.of("path", item.getPath(), "key", item.getKey()));
+                }
+            }
+
             List<Node> children = node.getChildren();
             for (Node child : children) {
                 steps.add(new NodeWrapper(child));
@@ -421,6 +452,12 @@ public class NodeUtil {
                 node.setEnvs(envs);
             }
 
+            if (!Objects.isNull(cache)) {
+                for (Map<String, String> item : cache) {
+                    node.getCache().add(new CmdCache(item.get("path"), item.get("key")));
+                }
+            }
+
             if (Objects.isNull(steps)) {
                 return node;
             }
@@ -446,7 +483,8 @@ public class NodeUtil {
             .put("condition", 5)
             .put("plugin", 6)
             .put("script", 7)
-            .put("steps", 8)
+            .put("cache", 8)
+            .put("steps", 9)
             .build();
 
         private final PropertySorter sorter = new PropertySorter();
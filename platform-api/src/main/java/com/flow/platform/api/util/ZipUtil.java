@@ -17,67 +17,43 @@
 package com.flow.platform.api.util;
 
 import com.flow.platform.api.config.AppConfig;
+import com.flow.platform.util.zip.ZipArchiver;
+import com.flow.platform.util.zip.ZipReader;
+import com.flow.platform.util.zip.ZipStats;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
-import org.apache.commons.io.IOUtils;
 
 /**
  * @author yh@firim
  */
 public class ZipUtil {
 
-    public static void zipFolder(final File folder, final File zipFile) throws IOException {
-        zipFolder(folder, new FileOutputStream(zipFile));
+    public static ZipStats zipFolder(final File folder, final File zipFile) throws IOException {
+        return new ZipArchiver().zip(folder.toPath(), zipFile.toPath());
     }
 
-    public static void zipFolder(final File folder, final OutputStream outputStream) throws IOException {
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-            processFolder(folder, zipOutputStream, folder.getPath().length() + 1);
+    public static ZipStats zipFolder(final File folder, final OutputStream outputStream) throws IOException {
+        try (OutputStream out = outputStream) {
+            return new ZipArchiver().zip(folder.toPath(), out);
         }
     }
 
-    private static void processFolder(final File folder, final ZipOutputStream zipOutputStream, final int prefixLength)
-        throws IOException {
-        for (final File file : folder.listFiles()) {
-            if (file.isFile()) {
-                final ZipEntry zipEntry = new ZipEntry(file.getPath().substring(prefixLength));
-                zipOutputStream.putNextEntry(zipEntry);
-                try (FileInputStream inputStream = new FileInputStream(file)) {
-                    IOUtils.copy(inputStream, zipOutputStream);
-                }
-                zipOutputStream.closeEntry();
-            } else if (file.isDirectory()) {
-                processFolder(file, zipOutputStream, prefixLength);
-            }
-        }
+    /**
+     * Write content of all zip entries to output stream without loading into memory
+     */
+    public static ZipStats readZipFile(InputStream zippedStream, OutputStream outputStream) throws IOException {
+        return ZipReader.copy(zippedStream, outputStream);
     }
 
     /**
      * readZipFile
      */
     public static String readZipFile(InputStream zippedStream) throws IOException {
-        try (ZipInputStream zis = new ZipInputStream(zippedStream)) {
-            StringBuilder content = new StringBuilder();
-
-            ZipEntry ze;
-            byte[] buffer = new byte[2048];
-
-            while ((ze = zis.getNextEntry()) != null) {
-
-                int length = 0;
-                while ((length = zis.read(buffer)) > 0) {
-                    content.append(new String(buffer, 0, length, AppConfig.DEFAULT_CHARSET));
-                }
-            }
-
-            return content.toString();
-        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        readZipFile(zippedStream, content);
+        return new String(content.toByteArray(), AppConfig.DEFAULT_CHARSET);
     }
 }
@@ -0,0 +1,13 @@
+USE flow_api_db;
+
+-- job list by session id for agent callback
+CREATE INDEX `idx_job_session_id` ON `job` (`session_id`);
+
+-- job list by status for timeout check
+CREATE INDEX `idx_job_status` ON `job` (`job_status`);
+
+-- job list of flows order by created time
+CREATE INDEX `idx_job_node_path_created_at` ON `job` (`node_path`, `created_at`);
+
+-- artifact list by job id
+CREATE INDEX `idx_artifact_job_id` ON `artifact` (`job_id`);
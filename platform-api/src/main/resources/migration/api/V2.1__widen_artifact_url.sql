@@ -0,0 +1,4 @@
+USE flow_api_db;
+
+-- artifact url from external storage could be longer than 100
+ALTER TABLE `artifact` MODIFY `url` varchar(1024) DEFAULT NULL;
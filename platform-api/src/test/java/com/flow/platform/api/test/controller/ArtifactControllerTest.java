@@ -2,25 +2,46 @@ package com.flow.platform.api.test.controller;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.flow.platform.api.domain.Artifact;
+import com.flow.platform.api.domain.ArtifactType;
+import com.flow.platform.api.domain.ArtifactUpload;
 import com.flow.platform.api.domain.job.Job;
 import com.flow.platform.api.domain.job.JobCategory;
 import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.envs.FlowEnvs;
 import com.flow.platform.api.envs.GitEnvs;
+import com.flow.platform.api.service.ArtifactService;
 import com.flow.platform.api.test.TestBase;
+import com.flow.platform.api.util.BlobStore;
 import com.flow.platform.domain.Jsonable;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
 import org.apache.http.entity.ContentType;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MvcResult;
 
 /**
  * @author yh@firim
  */
 public class ArtifactControllerTest extends TestBase {
 
+    @Autowired
+    private ArtifactService artifactService;
+
+    @Autowired
+    private BlobStore artifactBlobStore;
+
     private Job job;
 
     @Before
@@ -56,4 +77,116 @@ public class ArtifactControllerTest extends TestBase {
         Assert.assertEquals(1, artifacts.length);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void should_upload_by_chunks_and_dedup_content() throws Exception {
+        Artifact first = uploadArtifact("first.apk", "hello ", "artifact");
+        Assert.assertEquals(ArtifactType.LOCAL_BLOB_STORE, first.getTag());
+        Assert.assertEquals(14L, first.getSize().longValue());
+        Assert.assertTrue(first.getUrl().endsWith("/artifacts/" + first.getId() + "/download"));
+
+        // same content should be point to same blob
+        Artifact second = uploadArtifact("second.apk", "hello artifact");
+        Assert.assertEquals(first.getSha256(), second.getSha256());
+        Assert.assertEquals(1, artifactDao.listBlobHashes().size());
+    }
+
+    @Test
+    public void should_reject_chunk_with_wrong_offset() throws Exception {
+        String result = performRequestWith200Status(post("/artifacts/uploads"));
+        ArtifactUpload upload = Jsonable.parse(result, ArtifactUpload.class);
+
+        mockMvc.perform(put("/artifacts/uploads/" + upload.getId() + "?offset=10").content("hello"))
+            .andExpect(status().isBadRequest());
+
+        result = performRequestWith200Status(get("/artifacts/uploads/" + upload.getId()));
+        Assert.assertEquals(0L, Jsonable.parse(result, ArtifactUpload.class).getOffset().longValue());
+    }
+
+    @Test
+    public void should_download_with_range_and_etag() throws Exception {
+        Artifact artifact = uploadArtifact("hello.txt", "hello artifact");
+        String downloadUrl = "/artifacts/" + artifact.getId() + "/download";
+
+        MvcResult result = mockMvc.perform(get(downloadUrl))
+            .andExpect(status().isOk())
+            .andReturn();
+        Assert.assertEquals("hello artifact", result.getResponse().getContentAsString());
+
+        String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        Assert.assertEquals("\"" + artifact.getSha256() + "\"", etag);
+
+        mockMvc.perform(get(downloadUrl).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+
+        result = mockMvc.perform(get(downloadUrl).header(HttpHeaders.RANGE, "bytes=6-13"))
+            .andExpect(status().isPartialContent())
+            .andReturn();
+        Assert.assertEquals("artifact", result.getResponse().getContentAsString());
+    }
+
+    @Test
+    public void should_download_with_quoted_file_name() throws Exception {
+        Artifact artifact = uploadArtifact("hello world;.txt", "hello artifact");
+
+        MvcResult result = mockMvc.perform(get("/artifacts/" + artifact.getId() + "/download"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+        String disposition = result.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION);
+        Assert.assertTrue(disposition.startsWith("attachment; filename=\"hello world;.txt\""));
+    }
+
+    @Test
+    public void should_delete_artifacts_out_of_retention_and_sweep_blobs() throws Exception {
+        // given: flow keeps artifacts for 7 days
+        Node flow = flowDao.get(job.getNodePath());
+        flow.putEnv(FlowEnvs.FLOW_ARTIFACT_RETENTION_DAYS, "7");
+        flowDao.update(flow);
+
+        Artifact expired = artifactDao.get(uploadArtifact("expired.apk", "expired content").getId());
+        expired.setCreatedAt(ZonedDateTime.now().minusDays(8));
+        artifactDao.update(expired);
+
+        Artifact kept = uploadArtifact("kept.apk", "kept content");
+
+        Artifact external = new Artifact(job.getId(), "external.apk", "http://fir.im/aabcc");
+        external.setTag(ArtifactType.FIR_IM);
+        external.setCreatedAt(ZonedDateTime.now().minusDays(8));
+        artifactDao.save(external);
+
+        // blobs and upload are older than sweep grace and upload expiration
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofDays(2)));
+        Files.setLastModifiedTime(artifactBlobStore.blobPath(expired.getSha256()), old);
+        Files.setLastModifiedTime(artifactBlobStore.blobPath(kept.getSha256()), old);
+
+        // when:
+        artifactService.compactTask();
+
+        // then: expired artifact and its blob are deleted
+        Assert.assertNull(artifactDao.get(expired.getId()));
+        Assert.assertFalse(artifactBlobStore.exist(expired.getSha256()));
+
+        // then: artifact in retention and its blob are kept
+        Assert.assertNotNull(artifactDao.get(kept.getId()));
+        Assert.assertTrue(artifactBlobStore.exist(kept.getSha256()));
+
+        // then: artifact with external url is not managed by retention
+        Assert.assertNotNull(artifactDao.get(external.getId()));
+    }
+
+    private Artifact uploadArtifact(String name, String... chunks) throws Exception {
+        String result = performRequestWith200Status(post("/artifacts/uploads"));
+        ArtifactUpload upload = Jsonable.parse(result, ArtifactUpload.class);
+
+        for (String chunk : chunks) {
+            result = performRequestWith200Status(
+                put("/artifacts/uploads/" + upload.getId() + "?offset=" + upload.getOffset()).content(chunk));
+            upload = Jsonable.parse(result, ArtifactUpload.class);
+        }
+
+        result = performRequestWith200Status(post("/artifacts/uploads/" + upload.getId() + "/complete")
+            .param("jobId", job.getId().toString())
+            .param("name", name));
+        return Jsonable.parse(result, Artifact.class);
+    }
+}
@@ -32,12 +32,14 @@ import com.flow.platform.api.domain.credential.RSAKeyPair;
 import com.flow.platform.api.domain.credential.UsernameCredentialDetail;
 import com.flow.platform.api.domain.file.FileResource;
 import com.flow.platform.api.domain.file.PasswordFileResource;
+import com.flow.platform.api.envs.GitEnvs;
 import com.flow.platform.api.service.CredentialService;
 import com.flow.platform.domain.Jsonable;
 import com.google.common.collect.Lists;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.zip.ZipFile;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
@@ -316,6 +318,31 @@ public class CredentialControllerTest extends ControllerTestWithoutAuth {
         Assert.assertEquals(false, path.toFile().exists());
     }
 
+    @Test
+    public void should_find_envs_of_credentials_in_batch() throws Throwable {
+        // when: find envs of multiple credentials
+        Map<String, Map<String, String>> envs = credentialService.findByNames(
+            Lists.newArrayList("rsa-credential", "username-credential", "not-existed"));
+
+        // then: should only contain existed credentials
+        Assert.assertEquals(2, envs.size());
+        Assert.assertEquals("private key", envs.get("rsa-credential").get(GitEnvs.FLOW_GIT_SSH_PRIVATE_KEY.name()));
+        Assert.assertEquals("pass", envs.get("username-credential").get(GitEnvs.FLOW_GIT_HTTP_PASS.name()));
+
+        // when: update credential which envs has been cached
+        credentialService.createOrUpdate("rsa-credential", new RSACredentialDetail("public", "private"));
+
+        // then: should load latest envs
+        Map<String, String> rsaEnvs = credentialService.findByName("rsa-credential");
+        Assert.assertEquals("private", rsaEnvs.get(GitEnvs.FLOW_GIT_SSH_PRIVATE_KEY.name()));
+
+        // when: delete credential
+        credentialService.delete("rsa-credential");
+
+        // then: should not find from cache
+        Assert.assertTrue(credentialService.findByName("rsa-credential").isEmpty());
+    }
+
     private String getUrlForCredential(String credentialName) {
         return "/credentials/" + credentialName;
     }
@@ -18,6 +18,8 @@ package com.flow.platform.api.test.dao;
 import com.flow.platform.api.domain.user.Permission;
 import com.flow.platform.api.domain.user.PermissionKey;
 import com.flow.platform.api.test.TestBase;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -67,6 +69,31 @@ public class PermissionDaoTest extends TestBase {
         Assert.assertEquals(2L, permissionDao.numOfRole(action).longValue());
     }
 
+    @Test
+    public void should_save_and_update_permissions_in_batch() {
+        // given:
+        List<Permission> permissions = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            permissions.add(new Permission(1, "action-" + i));
+        }
+
+        // when:
+        permissionDao.saveAll(permissions);
+
+        // then:
+        Assert.assertEquals(100, permissionDao.list(1).size());
+
+        // when: update all permissions
+        for (Permission permission : permissions) {
+            permission.setCreatedBy("test@flow.ci");
+        }
+        permissionDao.updateAll(permissions);
+
+        // then:
+        Permission loaded = permissionDao.get(new PermissionKey(1, "action-99"));
+        Assert.assertEquals("test@flow.ci", loaded.getCreatedBy());
+    }
+
     @Test
     public void should_delete_users_roles() {
         PermissionKey rolePermissionKey = new PermissionKey(1, "show");
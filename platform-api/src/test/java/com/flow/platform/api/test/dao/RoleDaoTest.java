@@ -18,6 +18,7 @@ package com.flow.platform.api.test.dao;
 import com.flow.platform.api.dao.user.RoleDao;
 import com.flow.platform.api.domain.user.Role;
 import com.flow.platform.api.test.TestBase;
+import org.hibernate.SessionFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +31,9 @@ public class RoleDaoTest extends TestBase {
     @Autowired
     private RoleDao roleDao;
 
+    @Autowired
+    private SessionFactory sessionFactory;
+
     @Test
     public void should_create_role_success() {
         // when:
@@ -76,4 +80,30 @@ public class RoleDaoTest extends TestBase {
         roleDao.delete(role);
         Assert.assertEquals(0, roleDao.list().size());
     }
+
+    @Test
+    public void should_load_role_after_evict_from_cache() {
+        // given: role loaded into second level cache
+        Role role = new Role();
+        role.setName("cached");
+        roleDao.save(role);
+
+        Assert.assertEquals("cached", roleDao.get(role.getId()).getName());
+        Assert.assertTrue(sessionFactory.getCache().containsEntity(Role.class, role.getId()));
+
+        // when: evict single role
+        roleDao.evict(role.getId());
+
+        // then: cache missed and role reloaded into cache from db
+        Assert.assertFalse(sessionFactory.getCache().containsEntity(Role.class, role.getId()));
+        Assert.assertEquals("cached", roleDao.get(role.getId()).getName());
+        Assert.assertTrue(sessionFactory.getCache().containsEntity(Role.class, role.getId()));
+
+        // when: evict whole region
+        roleDao.evictAll();
+
+        // then:
+        Assert.assertFalse(sessionFactory.getCache().containsEntity(Role.class, role.getId()));
+        Assert.assertEquals("cached", roleDao.get(role.getId()).getName());
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.test.service;
+
+import com.flow.platform.api.domain.GitRef;
+import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.envs.GitEnvs;
+import com.flow.platform.api.service.GitRefService;
+import com.flow.platform.api.test.TestBase;
+import com.flow.platform.core.domain.Page;
+import com.flow.platform.core.domain.Pageable;
+import com.flow.platform.util.git.model.GitEventCommit;
+import com.flow.platform.util.git.model.GitEventType;
+import com.flow.platform.util.git.model.GitPushTagEvent;
+import com.flow.platform.util.git.model.GitSource;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * @author yang
+ */
+public class GitRefServiceTest extends TestBase {
+
+    private final static String COMMIT_ID = "a7bb2ab2c6e1c2b6b0f1f6f3ca2b7a4e1d3c5b8f";
+
+    @Autowired
+    private GitRefService gitRefService;
+
+    private Node node;
+
+    @Before
+    public void initNodeWithGitInfo() throws Throwable {
+        node = new Node("flow_git_ref", "flow_git_ref");
+        node.putEnv(GitEnvs.FLOW_GIT_SOURCE, GitSource.UNDEFINED_SSH.name());
+        node.putEnv(GitEnvs.FLOW_GIT_URL, TestBase.GITHUB_TEST_REPO_SSH);
+        node.putEnv(GitEnvs.FLOW_GIT_SSH_PRIVATE_KEY, getResourceContent("ssh_private_key"));
+    }
+
+    @Test
+    public void should_load_sorted_branches_with_page() {
+        // when: load branches at first time
+        Page<GitRef> branches = gitRefService.branches(node, null);
+
+        // then: branches should be sorted by name with commit id
+        Assert.assertTrue(branches.getTotalSize() >= 2);
+        Assert.assertEquals("develop", branches.getContent().get(0).getName());
+        Assert.assertEquals("master", branches.getContent().get(1).getName());
+        Assert.assertNotNull(branches.getContent().get(0).getCommitId());
+
+        // when: load second page with size 1
+        Page<GitRef> page = gitRefService.branches(node, new Pageable(2, 1));
+
+        // then:
+        Assert.assertEquals(1, page.getContent().size());
+        Assert.assertEquals("master", page.getContent().get(0).getName());
+        Assert.assertEquals(branches.getTotalSize(), page.getTotalSize());
+    }
+
+    @Test
+    public void should_update_branch_from_push_event() {
+        gitRefService.branches(node, null);
+
+        // when: receive push event of new branch
+        GitPushTagEvent event = new GitPushTagEvent(GitSource.GITHUB, GitEventType.PUSH);
+        event.setRef("refs/heads/feature/catalog");
+        event.setAfter(COMMIT_ID);
+
+        GitEventCommit commit = new GitEventCommit(COMMIT_ID);
+        commit.setMessage("add git ref catalog");
+        event.setCommits(Lists.newArrayList(commit));
+
+        gitRefService.onEvent(node, event);
+
+        // then: branch should be added with last commit
+        GitRef ref = findBranch("feature/catalog");
+        Assert.assertNotNull(ref);
+        Assert.assertEquals(COMMIT_ID, ref.getCommitId());
+        Assert.assertEquals("add git ref catalog", ref.getMessage());
+
+        // when: receive push event of branch deleted
+        event.setAfter("0000000000000000000000000000000000000000");
+        event.setCommits(null);
+        gitRefService.onEvent(node, event);
+
+        // then:
+        Assert.assertNull(findBranch("feature/catalog"));
+    }
+
+    @Test
+    public void should_store_peeled_commit_id_of_annotated_tag_from_event() {
+        gitRefService.tags(node, null);
+
+        // when: receive tag event which after is the tag object id
+        GitPushTagEvent event = new GitPushTagEvent(GitSource.GITLAB, GitEventType.TAG);
+        event.setRef("refs/tags/v100.0");
+        event.setAfter("f0c8e3d6b1a2c4e5d7f9a0b1c2d3e4f5a6b7c8d9");
+        event.setHeadCommitId(COMMIT_ID);
+        event.setMessage("release v100.0");
+
+        gitRefService.onEvent(node, event);
+
+        // then: tag should point to the commit as same as loaded by refresh
+        GitRef tag = null;
+        for (GitRef ref : gitRefService.tags(node, null).getContent()) {
+            if (ref.getName().equals("v100.0")) {
+                tag = ref;
+            }
+        }
+
+        Assert.assertNotNull(tag);
+        Assert.assertEquals(COMMIT_ID, tag.getCommitId());
+        Assert.assertEquals("release v100.0", tag.getMessage());
+    }
+
+    private GitRef findBranch(String name) {
+        for (GitRef ref : gitRefService.branches(node, null).getContent()) {
+            if (ref.getName().equals(name)) {
+                return ref;
+            }
+        }
+        return null;
+    }
+}
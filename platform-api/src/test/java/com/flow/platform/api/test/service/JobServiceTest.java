@@ -49,6 +49,7 @@ import com.flow.platform.queue.PlatformQueue;
 import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -287,12 +288,82 @@ public class JobServiceTest extends TestBase {
         // then: check num of cmd request to run shell, 5 steps + 1 del session requests
         verify(exactly(6), postRequestedFor(urlEqualTo("/cmd/send")));
 
+        // then: env base layer only sent with the first step of session
+        verify(exactly(1), postRequestedFor(urlEqualTo("/cmd/send"))
+            .withRequestBody(matchingJsonPath("$.inputs.FLOW_ENV_BASE_LAYER")));
+
         // then: check job status
         job = reload(job);
         Assert.assertEquals(JobStatus.SUCCESS, job.getStatus());
         Assert.assertEquals(NodeStatus.SUCCESS, job.getRootResult().getStatus());
     }
 
+    @Test
+    public void should_resend_step_with_env_base_layer_if_agent_restarted() throws Throwable {
+        // given: job running on session
+        final String sessionId = "session-id-2";
+        Node root = createRootFlow("flow_run_job_agent_restart", "yml/for_job_service_run_job.yml");
+        Job job = createMockJob(root.getPath());
+
+        Cmd cmd = new Cmd("default", null, CmdType.CREATE_SESSION, null);
+        cmd.setSessionId(sessionId);
+        cmd.setStatus(CmdStatus.SENT);
+        jobService.callback(new CmdCallbackQueueItem(job.getId(), cmd));
+        verify(exactly(1), postRequestedFor(urlEqualTo("/cmd/send")));
+
+        NodeTree tree = jobNodeService.get(job);
+        List<Node> steps = new ArrayList<>();
+        for (Node step : tree.children()) {
+            if (tree.canRun(step.getPath())) {
+                steps.add(step);
+            }
+        }
+
+        // when: first step success and agent restarted before the second step
+        jobService.callback(new CmdCallbackQueueItem(job.getId(), createStepCmd(steps.get(0), sessionId, 0)));
+        verify(exactly(2), postRequestedFor(urlEqualTo("/cmd/send")));
+
+        Node second = steps.get(1);
+        String firstCmdId = nodeResultService.find(second.getPath(), job.getId()).getCmdId();
+        Cmd missing = createStepCmd(second, sessionId, CmdResult.EXIT_VALUE_FOR_ENV_BASE_MISSING);
+        missing.setStatus(CmdStatus.EXCEPTION);
+        jobService.callback(new CmdCallbackQueueItem(job.getId(), missing));
+
+        // then: second step resent with env base layer and new cmd id
+        verify(exactly(3), postRequestedFor(urlEqualTo("/cmd/send")));
+        verify(exactly(2), postRequestedFor(urlEqualTo("/cmd/send"))
+            .withRequestBody(matchingJsonPath("$.inputs.FLOW_ENV_BASE_LAYER")));
+
+        NodeResult secondResult = nodeResultService.find(second.getPath(), job.getId());
+        Assert.assertEquals(NodeStatus.PENDING, secondResult.getStatus());
+        Assert.assertEquals(firstCmdId + "-env", secondResult.getCmdId());
+
+        // when: the rest steps run success on restarted agent
+        for (Node step : steps.subList(1, steps.size())) {
+            jobService.callback(new CmdCallbackQueueItem(job.getId(), createStepCmd(step, sessionId, 0)));
+        }
+
+        // then: base layer not sent again and job finished with success
+        verify(exactly(2), postRequestedFor(urlEqualTo("/cmd/send"))
+            .withRequestBody(matchingJsonPath("$.inputs.FLOW_ENV_BASE_LAYER")));
+
+        job = reload(job);
+        Assert.assertEquals(JobStatus.SUCCESS, job.getStatus());
+    }
+
+    private Cmd createStepCmd(Node step, String sessionId, Integer exitValue) {
+        Cmd stepCmd = new Cmd("default", null, CmdType.RUN_SHELL, nodeService.getRunningScript(step));
+        stepCmd.setSessionId(sessionId);
+        stepCmd.setStatus(CmdStatus.LOGGED);
+        stepCmd.setCmdResult(new CmdResult(exitValue));
+        stepCmd.setExtra(step.getPath());
+
+        ZonedDateTime start = ZonedDateTime.now();
+        stepCmd.getCmdResult().setStartTime(start);
+        stepCmd.getCmdResult().setFinishTime(start.plusSeconds(30));
+        return stepCmd;
+    }
+
     @Test
     public void should_stop_success() throws IOException {
         Node rootForFlow = createRootFlow("flow1", "yml/demo_flow2.yaml");
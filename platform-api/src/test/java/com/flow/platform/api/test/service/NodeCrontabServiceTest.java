@@ -19,9 +19,11 @@ package com.flow.platform.api.test.service;
 import com.flow.platform.api.domain.job.Job;
 import com.flow.platform.api.domain.job.JobCategory;
 import com.flow.platform.api.domain.node.Node;
+import com.flow.platform.api.domain.node.NodeCrontab;
 import com.flow.platform.api.envs.FlowEnvs;
 import com.flow.platform.api.service.node.NodeCrontabService;
 import com.flow.platform.api.test.TestBase;
+import com.flow.platform.core.exception.NotFoundException;
 import com.google.common.collect.Sets;
 import java.util.HashMap;
 import java.util.Map;
@@ -29,6 +31,7 @@ import java.util.Set;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.quartz.Trigger;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
@@ -78,4 +81,40 @@ public class NodeCrontabServiceTest extends TestBase {
         // then: check num of trigger
         Assert.assertEquals(0, flowCrontabService.triggers().size());
     }
+
+    @Test
+    public void should_keep_trigger_and_list_next_fire_times() throws Throwable {
+        // given: flow with crontab on every hour
+        Node flow = createRootFlow("FirstFlow", "yml/demo_flow.yaml");
+
+        Map<String, String> envs = new HashMap<>();
+        envs.put(FlowEnvs.FLOW_TASK_CRONTAB_BRANCH.name(), "master");
+        envs.put(FlowEnvs.FLOW_TASK_CRONTAB_CONTENT.name(), "0 * * * *");
+        envService.save(flow, envs, true);
+
+        Trigger trigger = flowCrontabService.triggers().get(0);
+
+        // when: set crontab again without changes
+        flowCrontabService.set(flow);
+
+        // then: trigger should not be reset
+        Assert.assertEquals(1, flowCrontabService.triggers().size());
+        Assert.assertEquals(trigger.getStartTime(), flowCrontabService.triggers().get(0).getStartTime());
+
+        // when: find next fire times
+        NodeCrontab crontab = flowCrontabService.find(flow.getPath(), 3);
+
+        // then: fire times should be on every hour with jitter
+        Assert.assertEquals("master", crontab.getBranch());
+        Assert.assertEquals(3, crontab.getNextFireTimes().size());
+        Assert.assertEquals(3600, crontab.getNextFireTimes().get(1).toEpochSecond()
+            - crontab.getNextFireTimes().get(0).toEpochSecond());
+        Assert.assertTrue(crontab.getNextFireTimes().get(0).getSecond() <= 30);
+        Assert.assertEquals(1, flowCrontabService.list(1).size());
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void should_raise_not_found_if_crontab_not_set() {
+        flowCrontabService.find("NotExistFlow", 1);
+    }
 }
@@ -24,23 +24,27 @@ import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 
 import com.flow.platform.api.domain.sync.Sync;
+import com.flow.platform.api.domain.sync.SyncBundle;
 import com.flow.platform.api.domain.sync.SyncEvent;
 import com.flow.platform.api.domain.sync.SyncRepo;
 import com.flow.platform.api.domain.sync.SyncType;
 import com.flow.platform.api.service.SyncService;
 import com.flow.platform.api.test.TestBase;
+import com.flow.platform.core.exception.NotFoundException;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.Cmd;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
 import com.flow.platform.domain.CmdType;
-import com.flow.platform.util.git.JGitUtil;
 import com.github.tomakehurst.wiremock.client.CountMatchingStrategy;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import org.apache.commons.io.FileUtils;
@@ -64,6 +68,8 @@ public class SyncServiceTest extends TestBase {
     @Autowired
     private Path gitWorkspace;
 
+    private final static String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
     private List<AgentPath> agents;
 
     private Cmd createSessionCmdResponse;
@@ -91,19 +97,14 @@ public class SyncServiceTest extends TestBase {
     @Test
     public void should_convert_sync_event_to_script() throws Throwable {
         // test create event script
-        String gitUrl = "http://localhost/git/hello.git";
-        SyncRepo repo = new SyncRepo(JGitUtil.getRepoNameFromGitUrl(gitUrl), "v1.0");
-        SyncEvent createEvent = new SyncEvent(gitUrl, repo, SyncType.CREATE);
-
-        String script = "git init hello[v1.0]\n"
-            + "cd hello[v1.0]\n"
-            + "git pull http://localhost/git/hello.git --tags\n"
-            + "git checkout v1.0";
-        Assert.assertEquals(script, createEvent.toScript());
+        String bundleUrl = "http://localhost/bundles/" + HASH;
+        SyncRepo repo = new SyncRepo("hello", "v1.0", HASH);
+        SyncEvent createEvent = new SyncEvent(bundleUrl, repo, SyncType.CREATE);
+        Assert.assertEquals("flow_sync_fetch 'hello[v1.0]' " + HASH + " '" + bundleUrl + "'", createEvent.toScript());
 
         // test delete event script
-        SyncEvent deleteEvent = new SyncEvent(gitUrl, repo, SyncType.DELETE);
-        Assert.assertEquals("rm -rf hello[v1.0]", deleteEvent.toScript());
+        SyncEvent deleteEvent = new SyncEvent(null, repo, SyncType.DELETE);
+        Assert.assertEquals("rm -rf 'hello[v1.0]'", deleteEvent.toScript());
 
         // test delete event script
         SyncEvent deleteAllEvent = new SyncEvent(null, null, SyncType.DELETE_ALL);
@@ -111,81 +112,90 @@ public class SyncServiceTest extends TestBase {
 
         // test list event script
         SyncEvent listEvent = new SyncEvent(null, null, SyncType.LIST);
-        Assert.assertEquals("export FLOW_SYNC_LIST=\"$(ls)\"", listEvent.toScript());
+        Assert.assertEquals("export FLOW_SYNC_LIST=\"$(flow_sync_list)\"", listEvent.toScript());
+
+        // test script for events: delete first, then fetch in parallel and list at the end
+        List<SyncEvent> events = ImmutableList.of(createEvent, createEvent, createEvent, deleteEvent);
+        String script = SyncEvent.toScript(events, 2);
+
+        String expectedBody = "rm -rf 'hello[v1.0]'\n"
+            + createEvent.toScript() + " &\n"
+            + createEvent.toScript() + " &\n"
+            + "wait\n"
+            + createEvent.toScript() + " &\n"
+            + "wait\n"
+            + listEvent.toScript();
+        Assert.assertTrue(script.startsWith("flow_sync_fetch() {"));
+        Assert.assertTrue(script.endsWith(expectedBody));
     }
 
     @Test
-    public void should_add_sync_event_been_added_for_agent() throws Throwable {
-        // given:
-        AgentPath firstAgent = agents.get(0);
-        AgentPath secondAgent = agents.get(1);
-
-        syncService.register(firstAgent);
-        syncService.register(secondAgent);
-
-        // when: put sync event to service
-        syncService.put(new SyncEvent("http://127.0.0.1/git/hello.git", new SyncRepo("hello", "v1.0"), SyncType.CREATE));
-        syncService.put(new SyncEvent("http://127.0.0.1/git/flow.git", new SyncRepo("flow", "v1.0"), SyncType.CREATE));
-
-        // then: two events should be in the agent sync queue, include list
-        Assert.assertEquals(2, syncService.get(firstAgent).queueSize());
-        Assert.assertEquals(2, syncService.get(secondAgent).queueSize());
+    public void should_parse_sync_repo_with_bundle_hash() {
+        SyncRepo repo = SyncRepo.build("hello[v1.0]@" + HASH);
+        Assert.assertEquals("hello", repo.getName());
+        Assert.assertEquals("v1.0", repo.getTag());
+        Assert.assertEquals(HASH, repo.getHash());
+
+        // repo installed from git without bundle hash
+        repo = SyncRepo.build("hello[v1.0]@");
+        Assert.assertEquals("v1.0", repo.getTag());
+        Assert.assertNull(repo.getHash());
+
+        Assert.assertNull(SyncRepo.build("hello"));
     }
 
     @Test
-    public void should_init_sync_event_when_agent_registered() throws Throwable {
+    public void should_build_bundle_manifest_from_git_repo() throws Throwable {
         // given: copy exist git to workspace
-        ClassLoader classLoader = TestBase.class.getClassLoader();
-        URL resource = classLoader.getResource("hello.git");
-        File path = new File(resource.getFile());
-        FileUtils.copyDirectoryToDirectory(path, gitWorkspace.toFile());
+        copyHelloGit();
 
-        // when: register agent to sync service
+        // when: load bundles
         syncService.load();
-        syncService.register(agents.get(0));
-        syncService.register(agents.get(1));
 
-        // then: verify the sync event been initialized into both agents
+        // then: bundle for latest tag should be created
+        List<SyncBundle> bundles = syncService.bundles();
+        Assert.assertEquals(1, bundles.size());
 
-        // check sync queue for first agent
-        Sync sync = syncService.get(agents.get(0));
-        Assert.assertEquals(1, sync.queueSize());
+        SyncBundle bundle = bundles.get(0);
+        Assert.assertEquals("hello", bundle.getRepo().getName());
+        Assert.assertEquals("v1.0", bundle.getRepo().getTag());
+        Assert.assertEquals(64, bundle.getHash().length());
 
-        SyncEvent createEvent = sync.dequeue();
-        Assert.assertEquals("http://localhost:8080/git/hello.git", createEvent.getGitUrl());
-        Assert.assertEquals("v1.0", createEvent.getRepo().getTag());
-        Assert.assertEquals(SyncType.CREATE, createEvent.getSyncType());
+        Path file = syncService.bundle(bundle.getHash());
+        Assert.assertEquals(bundle.getSize().longValue(), Files.size(file));
 
-        // check sync queue for second agent
-        sync = syncService.get(agents.get(1));
-        Assert.assertEquals(1, sync.queueSize());
+        // then: bundle should not be rebuilt if tag not changed
+        syncService.load();
+        Assert.assertSame(bundle, syncService.bundles().get(0));
+    }
 
-        createEvent = sync.dequeue();
-        Assert.assertEquals("http://localhost:8080/git/hello.git", createEvent.getGitUrl());
-        Assert.assertEquals("v1.0", createEvent.getRepo().getTag());
-        Assert.assertEquals(SyncType.CREATE, createEvent.getSyncType());
+    @Test(expected = NotFoundException.class)
+    public void should_throw_not_found_if_bundle_not_exist() {
+        syncService.bundle(HASH);
     }
 
     @Test
-    public void should_execute_sync_event_callback() throws Throwable {
+    public void should_execute_sync_by_single_cmd_and_skip_if_synced() throws Throwable {
         // given: copy exist git to workspace
-        ClassLoader classLoader = TestBase.class.getClassLoader();
-        URL resource = classLoader.getResource("hello.git");
-        File path = new File(resource.getFile());
-        FileUtils.copyDirectoryToDirectory(path, gitWorkspace.toFile());
+        copyHelloGit();
 
-        // and: register agent to sync service
+        // and: register agents to sync service
         AgentPath agent = agents.get(0);
         syncService.load();
         syncService.register(agent);
-        Assert.assertEquals(1, syncService.get(agent).queueSize());
+        SyncBundle bundle = syncService.bundles().get(0);
 
         // when: execute sync task
-        syncService.syncTask();
+        syncService.sync(agent);
 
-        // then: the create session cmd should be send
+        // then: the create session cmd should be send with create and list event
         CountMatchingStrategy strategy = new CountMatchingStrategy(CountMatchingStrategy.EQUAL_TO, 1);
         verify(strategy, postRequestedFor(urlEqualTo("/cmd/queue/send?priority=10&retry=5")));
+        Assert.assertEquals(2, syncService.getSyncTask(agent).getTotal().intValue());
+
+        SyncEvent createEvent = syncService.getSyncTask(agent).getSyncQueue().peek();
+        Assert.assertEquals(SyncType.CREATE, createEvent.getSyncType());
+        Assert.assertEquals("http://localhost:8080/bundles/" + bundle.getHash(), createEvent.getUrl());
 
         // when: mock create session cmd been callback
         Cmd mockSessionCallback = new Cmd(agent.getZone(), agent.getName(), CmdType.CREATE_SESSION, null);
@@ -193,39 +203,28 @@ public class SyncServiceTest extends TestBase {
         mockSessionCallback.setSessionId(createSessionCmdResponse.getSessionId());
         syncService.onCallback(mockSessionCallback);
 
-        // then: send run shell cmd for sync event and sync task queue size not changed
+        // then: send single run shell cmd for all sync events
         strategy = new CountMatchingStrategy(CountMatchingStrategy.EQUAL_TO, 1);
         verify(strategy, postRequestedFor(urlEqualTo("/cmd/send")));
         Assert.assertEquals(2, syncService.getSyncTask(agent).getSyncQueue().size());
 
-        // when: mock cmd been executed
-        Cmd mockRunShellSuccess = new Cmd(agent.getZone(), agent.getName(), CmdType.RUN_SHELL, "git pull xxx");
+        // when: mock run shell cmd been executed with repo list
+        Cmd mockRunShellSuccess = new Cmd(agent.getZone(), agent.getName(), CmdType.RUN_SHELL, "flow_sync_fetch");
         mockRunShellSuccess.setSessionId(mockSessionCallback.getSessionId());
         mockRunShellSuccess.setStatus(CmdStatus.LOGGED);
         mockRunShellSuccess.setCmdResult(new CmdResult(0));
+        mockRunShellSuccess.getCmdResult().getOutput()
+            .put(SyncEvent.FLOW_SYNC_LIST, "hello[v1.0]@" + bundle.getHash());
         syncService.onCallback(mockRunShellSuccess);
 
-        // then: should send list repos cmd and sync task queue size should be 1
-        strategy = new CountMatchingStrategy(CountMatchingStrategy.EQUAL_TO, 2);
-        verify(strategy, postRequestedFor(urlEqualTo("/cmd/send")));
-        Assert.assertEquals(1, syncService.getSyncTask(agent).getSyncQueue().size());
-
-        // when: mock list cmd been executed
-        Cmd mockListRepoSuccess =
-            new Cmd(agent.getZone(), agent.getName(), CmdType.RUN_SHELL, "export FLOW_SYNC_LIST=$(ls)");
-        mockListRepoSuccess.setSessionId(mockSessionCallback.getSessionId());
-        mockListRepoSuccess.setStatus(CmdStatus.LOGGED);
-        mockListRepoSuccess.setCmdResult(new CmdResult(0));
-        mockListRepoSuccess.getCmdResult().getOutput().put(SyncEvent.FLOW_SYNC_LIST, "A[v1]\nB[v2]");
-        syncService.onCallback(mockListRepoSuccess);
-
-        // then: agent repo list size should be 2
-        Assert.assertEquals(2, syncService.get(agent).getRepos().size());
-        Assert.assertTrue(syncService.get(agent).getRepos().contains(new SyncRepo("A", "v1")));
-        Assert.assertTrue(syncService.get(agent).getRepos().contains(new SyncRepo("B", "v2")));
+        // then: agent repo list should be updated
+        Sync sync = syncService.get(agent);
+        Assert.assertTrue(sync.isReported());
+        Assert.assertEquals(1, sync.getRepos().size());
+        Assert.assertEquals(bundle.getHash(), sync.getRepos().iterator().next().getHash());
 
         // then: should send delete session cmd and sync task queue size should be zero
-        strategy = new CountMatchingStrategy(CountMatchingStrategy.EQUAL_TO, 3);
+        strategy = new CountMatchingStrategy(CountMatchingStrategy.EQUAL_TO, 2);
         verify(strategy, postRequestedFor(urlEqualTo("/cmd/send")));
         Assert.assertEquals(0, syncService.getSyncTask(agent).getSyncQueue().size());
 
@@ -237,6 +236,61 @@ public class SyncServiceTest extends TestBase {
 
         // then: sync task of agent should be deleted
         Assert.assertNull(syncService.getSyncTask(agent));
+
+        // when: sync again
+        syncService.syncTask();
+
+        // then: session should not be created since agent repos matched the manifest
+        strategy = new CountMatchingStrategy(CountMatchingStrategy.EQUAL_TO, 1);
+        verify(strategy, postRequestedFor(urlEqualTo("/cmd/queue/send?priority=10&retry=5")));
+        Assert.assertNull(syncService.getSyncTask(agent));
+    }
+
+    @Test
+    public void should_delete_repo_not_in_manifest() throws Throwable {
+        // given: agent has repo which not in manifest
+        copyHelloGit();
+        syncService.load();
+        SyncBundle bundle = syncService.bundles().get(0);
+
+        AgentPath agent = agents.get(0);
+        syncService.register(agent);
+        syncService.get(agent).setRepos(ImmutableSet.of(
+            new SyncRepo("hello", "v1.0", bundle.getHash()), new SyncRepo("flow", "v0.1", null)));
+
+        // when: sync to agent
+        syncService.sync(agent);
+
+        // then: only delete event and list event in the task
+        List<SyncEvent> events = new ArrayList<>(syncService.getSyncTask(agent).getSyncQueue());
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(SyncType.DELETE, events.get(0).getSyncType());
+        Assert.assertEquals("flow", events.get(0).getRepo().getName());
+        Assert.assertEquals(SyncType.LIST, events.get(1).getSyncType());
+    }
+
+    @Test
+    public void should_create_repo_if_tag_changed_with_same_bundle_hash() throws Throwable {
+        // given: agent has old tag of repo which point to the same commit as latest tag
+        copyHelloGit();
+        syncService.load();
+        SyncBundle bundle = syncService.bundles().get(0);
+
+        AgentPath agent = agents.get(0);
+        syncService.register(agent);
+        syncService.get(agent).setRepos(ImmutableSet.of(new SyncRepo("hello", "v0.9", bundle.getHash())));
+
+        // when: sync to agent
+        syncService.sync(agent);
+
+        // then: old tag folder deleted and latest tag created from the same bundle
+        List<SyncEvent> events = new ArrayList<>(syncService.getSyncTask(agent).getSyncQueue());
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(SyncType.DELETE, events.get(0).getSyncType());
+        Assert.assertEquals("v0.9", events.get(0).getRepo().getTag());
+        Assert.assertEquals(SyncType.CREATE, events.get(1).getSyncType());
+        Assert.assertEquals("v1.0", events.get(1).getRepo().getTag());
+        Assert.assertEquals(SyncType.LIST, events.get(2).getSyncType());
     }
 
     @Test
@@ -245,10 +299,7 @@ public class SyncServiceTest extends TestBase {
         wireMockRule.resetAll();
 
         // and copy exist git to workspace
-        ClassLoader classLoader = TestBase.class.getClassLoader();
-        URL resource = classLoader.getResource("hello.git");
-        File path = new File(resource.getFile());
-        FileUtils.copyDirectoryToDirectory(path, gitWorkspace.toFile());
+        copyHelloGit();
 
         // and: register agent to sync service
         AgentPath agent = agents.get(0);
@@ -264,10 +315,7 @@ public class SyncServiceTest extends TestBase {
     @Test
     public void should_remove_sync_task_if_create_session_failure_on_callback() throws Throwable {
         // given: copy exist git to workspace
-        ClassLoader classLoader = TestBase.class.getClassLoader();
-        URL resource = classLoader.getResource("hello.git");
-        File path = new File(resource.getFile());
-        FileUtils.copyDirectoryToDirectory(path, gitWorkspace.toFile());
+        copyHelloGit();
 
         // and: register agent to sync service
         AgentPath agent = agents.get(0);
@@ -290,6 +338,13 @@ public class SyncServiceTest extends TestBase {
         Assert.assertNull(syncService.getSyncTask(agent));
     }
 
+    private void copyHelloGit() throws IOException {
+        ClassLoader classLoader = TestBase.class.getClassLoader();
+        URL resource = classLoader.getResource("hello.git");
+        File path = new File(resource.getFile());
+        FileUtils.copyDirectoryToDirectory(path, gitWorkspace.toFile());
+    }
+
     @After
     public void clean() throws IOException {
         File[] files = gitWorkspace.toFile().listFiles();
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.api.test.util;
+
+import com.flow.platform.api.util.CrontabUtil;
+import com.flow.platform.core.exception.IllegalParameterException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author yang
+ */
+public class CrontabUtilTest {
+
+    @Test
+    public void should_convert_unix_crontab_to_quartz() {
+        Assert.assertEquals("0 0 5,17 * * ?", CrontabUtil.toQuartz("0 5,17 * * ?"));
+        Assert.assertEquals("0 */10 * ? * *", CrontabUtil.toQuartz("*/10 * * * *"));
+
+        // quartz format should not be changed
+        Assert.assertEquals("0 */10 * ? * *", CrontabUtil.toQuartz("0 */10 * ? * *"));
+    }
+
+    @Test(expected = IllegalParameterException.class)
+    public void should_raise_exception_if_illegal_crontab_format() {
+        CrontabUtil.toQuartz("* * *");
+    }
+
+    @Test
+    public void should_shift_second_with_stable_jitter() {
+        String cron = CrontabUtil.withJitter("0 0 * ? * *", "flow-a", 30);
+        Assert.assertEquals(cron, CrontabUtil.withJitter("0 0 * ? * *", "flow-a", 30));
+
+        int second = Integer.parseInt(cron.split(" ")[0]);
+        Assert.assertTrue(second >= 0 && second <= 30);
+        Assert.assertTrue(cron.endsWith(" 0 * ? * *"));
+
+        // should not shift if no jitter or second is specified
+        Assert.assertEquals("0 0 * ? * *", CrontabUtil.withJitter("0 0 * ? * *", "flow-a", 0));
+        Assert.assertEquals("0/1 0 * ? * *", CrontabUtil.withJitter("0/1 0 * ? * *", "flow-a", 30));
+    }
+}
@@ -22,6 +22,7 @@ import com.flow.platform.api.exception.NodeFormatException;
 import com.flow.platform.api.exception.YmlException;
 import com.flow.platform.api.util.NodeUtil;
 import com.flow.platform.api.util.PathUtil;
+import com.flow.platform.domain.CmdCache;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
@@ -181,4 +182,41 @@ public class NodeUtilYmlTest {
         String yml = NodeUtil.parseToYml(root);
         Assert.assertNotNull(yml);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_parse_step_cache_from_yml() throws Throwable {
+        // given:
+        String yml = "flow:\n"
+            + "  - steps:\n"
+            + "     - name: step1\n"
+            + "       script: \"mvn package\"\n"
+            + "       cache:\n"
+            + "        - path: \"~/.m2/repository\"\n"
+            + "          key: \"m2-{{ checksum \\\"pom.xml\\\" }}\"\n";
+
+        // when:
+        Node root = NodeUtil.buildFromYml(yml, "flow");
+        Node step1 = root.getChildren().get(0);
+
+        // then:
+        Assert.assertEquals(0, root.getCache().size());
+        Assert.assertEquals(1, step1.getCache().size());
+        Assert.assertEquals(new CmdCache("~/.m2/repository", "m2-{{ checksum \"pom.xml\" }}"), step1.getCache().get(0));
+
+        // then: cache should be kept when parse node to yml
+        Node parsed = NodeUtil.buildFromYml(NodeUtil.parseToYml(root), "flow");
+        Assert.assertEquals(step1.getCache(), parsed.getChildren().get(0).getCache());
+    }
+
+    @Test(expected = NodeFormatException.class)
+    public void should_raise_error_if_step_cache_key_missing() throws Throwable {
+        String flow = "yml-flow";
+        Node root = new Node(flow, flow);
+        Node step = new Node(null, "step1");
+        step.setScript("echo 1");
+        step.getCache().add(new CmdCache("node_modules", null));
+        root.getChildren().add(step);
+
+        NodeUtil.parseToYml(root);
+    }
+}
@@ -23,6 +23,7 @@ import com.flow.platform.util.DateUtil;
 import com.flow.platform.util.Logger;
 import com.flow.platform.util.SystemUtil;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -147,6 +148,12 @@ public final class CmdExecutor {
 
     private Integer timeout;
 
+    // soft memory limit in bytes of cmd process tree, 0 is unlimited
+    private long memoryLimit = 0;
+
+    // soft cpu time limit in millis of cmd process tree, 0 is unlimited
+    private long cpuTimeLimit = 0;
+
     /**
      * @param procListener nullable
      * @param logListener nullable
@@ -220,16 +227,31 @@ public final class CmdExecutor {
         this.logListener = logListener;
     }
 
+    /**
+     * Set soft limit of cmd process tree, the process tree will be killed if over the limit
+     *
+     * @param memoryLimit max resident memory in bytes, 0 is unlimited
+     * @param cpuTimeLimit max cpu time in millis, 0 is unlimited
+     */
+    public void setLimit(long memoryLimit, long cpuTimeLimit) {
+        this.memoryLimit = memoryLimit;
+        this.cpuTimeLimit = cpuTimeLimit;
+    }
+
 
     public CmdResult run() {
         outputResult = new CmdResult();
         outputResult.setStartTime(DateUtil.now());
+        ProcSupervisor supervisor = null;
 
         try {
             Process p = pBuilder.start();
             outputResult.setProcessId(getPid(p));
             outputResult.setProcess(p);
 
+            supervisor = new ProcSupervisor(outputResult.getProcessId(), memoryLimit, cpuTimeLimit);
+            supervisor.start();
+
             procListener.onStarted(outputResult);
 
             // thread to send cmd list to bash
@@ -246,9 +268,19 @@ public final class CmdExecutor {
             if (p.waitFor(timeout.longValue(), TimeUnit.SECONDS)) {
                 outputResult.setExitValue(p.exitValue());
             } else {
+                supervisor.kill();
+                p.destroy();
                 outputResult.setExitValue(CmdResult.EXIT_VALUE_FOR_TIMEOUT);
             }
 
+            if (supervisor.getOverLimit() != null) {
+                outputResult.setExitValue(CmdResult.EXIT_VALUE_FOR_OVER_LIMIT);
+                loggingQueue.add(new Log(Log.Type.STDERR, "Cmd been killed since " + supervisor.getOverLimit()));
+            }
+
+            // kill background processes left and collect usage
+            supervisor.stop(outputResult);
+
             outputResult.setExecutedTime(DateUtil.now());
             procListener.onExecuted(outputResult);
             LOGGER.trace("====== 1. Process executed : %s ======", outputResult.getExitValue());
@@ -267,8 +299,16 @@ public final class CmdExecutor {
             LOGGER.trace("====== 2. Logging executed ======");
 
         } catch (InterruptedException ignore) {
+            if (supervisor != null) {
+                supervisor.stop(outputResult);
+            }
+
             LOGGER.warn(ignore.getMessage());
         } catch (Throwable e) {
+            if (supervisor != null) {
+                supervisor.stop(outputResult);
+            }
+
             outputResult.getExceptions().add(e);
             outputResult.setFinishTime(DateUtil.now());
             procListener.onException(outputResult);
@@ -280,18 +320,21 @@ public final class CmdExecutor {
         return outputResult;
     }
 
-    private String getExecutor() {
+    private List<String> getExecutor() {
         if (SystemUtil.isWindows()) {
 
             String cygwinHome = System.getenv(CYGWIN_HOME);
             if (Strings.isNullOrEmpty(cygwinHome)) {
-                return Windows.CMD_EXECUTOR;
+                return Lists.newArrayList(Windows.CMD_EXECUTOR);
             }
 
-            return Paths.get(cygwinHome, "bin", "bash.exe").toString();
+            return Lists.newArrayList(Paths.get(cygwinHome, "bin", "bash.exe").toString());
         }
 
-        return Unix.CMD_EXECUTOR;
+        // start bash in new session, so all processes started by cmd can be found and killed by session
+        List<String> executor = ProcTree.sessionPrefix();
+        executor.add(Unix.CMD_EXECUTOR);
+        return executor;
     }
 
     /**
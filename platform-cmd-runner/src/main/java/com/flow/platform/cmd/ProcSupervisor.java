@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.cmd;
+
+import com.flow.platform.cmd.ProcTree.Stat;
+import com.flow.platform.domain.CmdResult;
+import com.flow.platform.util.Logger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Supervise process tree of cmd, to sample cpu, memory and io usage, kill the process tree
+ * if over the soft limit, and kill the background processes left after cmd finished
+ *
+ * @author gy@fir.im
+ */
+public class ProcSupervisor {
+
+    private final static Logger LOGGER = new Logger(ProcSupervisor.class);
+
+    private final static long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    private final static ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("proc-supervisor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int pid;
+
+    // memory limit in bytes, 0 is unlimited
+    private final long memoryLimit;
+
+    // cpu time limit in millis, 0 is unlimited
+    private final long cpuTimeLimit;
+
+    // latest usage of each process which is {cpu time include waited children, read bytes, write bytes} by process key
+    private final Map<String, long[]> usages = new HashMap<>();
+
+    // parent process key by process key, removed if process reparented out of the tree
+    private final Map<String, String> parents = new HashMap<>();
+
+    // exited processes waited by parent, which cpu time is in children cpu time of ancestor
+    private final Set<String> reaped = new HashSet<>();
+
+    // start time of root process to identify it after pid reused, -1 if unknown
+    private volatile long startTime = -1;
+
+    private long maxMemory = 0;
+
+    private volatile String overLimit;
+
+    private ScheduledFuture<?> sampling;
+
+    public ProcSupervisor(int pid, long memoryLimit, long cpuTimeLimit) {
+        this.pid = pid;
+        this.memoryLimit = memoryLimit;
+        this.cpuTimeLimit = cpuTimeLimit;
+    }
+
+    /**
+     * @return the reason of over limit, or null if not over limit
+     */
+    public String getOverLimit() {
+        return overLimit;
+    }
+
+    public void start() {
+        if (pid <= 0 || !ProcTree.isSupported()) {
+            return;
+        }
+
+        startTime = ProcTree.startTime(pid);
+
+        sampling = SAMPLER.scheduleWithFixedDelay(() -> {
+            try {
+                sample();
+                checkLimit();
+            } catch (Throwable e) {
+                LOGGER.warn("Unable to sample process %s: %s", pid, e.getMessage());
+            }
+        }, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Kill the process tree, only the processes in session are killed if root pid been reused
+     */
+    public void kill() {
+        ProcTree.kill(pid, startTime);
+    }
+
+    /**
+     * Stop sampling, kill processes left in the tree and set usage to cmd result
+     */
+    public void stop(CmdResult result) {
+        if (!Objects.isNull(sampling)) {
+            sampling.cancel(false);
+        }
+
+        if (pid <= 0 || !ProcTree.isSupported()) {
+            return;
+        }
+
+        // the background processes left in session of cmd
+        sample();
+        kill();
+
+        synchronized (usages) {
+            long cpuTime = 0, readBytes = 0, writeBytes = 0;
+            for (long[] usage : usages.values()) {
+                cpuTime += usage[0];
+                readBytes += usage[1];
+                writeBytes += usage[2];
+            }
+
+            result.setCpuTime(cpuTime);
+            result.setMaxMemory(maxMemory);
+            result.setReadBytes(readBytes);
+            result.setWriteBytes(writeBytes);
+        }
+    }
+
+    private void sample() {
+        Collection<Stat> stats = ProcTree.list(pid, startTime);
+
+        Map<Integer, String> keys = new HashMap<>(stats.size());
+        for (Stat stat : stats) {
+            keys.put(stat.getPid(), stat.getKey());
+        }
+
+        synchronized (usages) {
+            long memory = 0;
+            for (Stat stat : stats) {
+                long cpuTime = stat.getCpuTime() + stat.getChildrenCpuTime();
+                usages.put(stat.getKey(), new long[]{cpuTime, stat.getReadBytes(), stat.getWriteBytes()});
+                memory += stat.getMemory();
+
+                String parent = keys.get(stat.getPpid());
+                if (Objects.isNull(parent)) {
+                    parents.remove(stat.getKey());
+                } else {
+                    parents.put(stat.getKey(), parent);
+                }
+            }
+            maxMemory = Math.max(maxMemory, memory);
+
+            // exited process waited by parent in the tree or by reaped parent, its cpu time
+            // is in children cpu time of ancestor
+            Set<String> alive = new HashSet<>(keys.values());
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Map.Entry<String, long[]> entry : usages.entrySet()) {
+                    String key = entry.getKey();
+                    if (alive.contains(key) || reaped.contains(key)) {
+                        continue;
+                    }
+
+                    String parent = parents.get(key);
+                    if (alive.contains(parent) || reaped.contains(parent)) {
+                        entry.getValue()[0] = 0;
+                        reaped.add(key);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkLimit() {
+        if (!Objects.isNull(overLimit)) {
+            return;
+        }
+
+        long cpuTime = 0;
+        long memory;
+
+        synchronized (usages) {
+            for (long[] usage : usages.values()) {
+                cpuTime += usage[0];
+            }
+            memory = maxMemory;
+        }
+
+        if (memoryLimit > 0 && memory > memoryLimit) {
+            overLimit = String.format("memory %s bytes over limit %s bytes", memory, memoryLimit);
+        } else if (cpuTimeLimit > 0 && cpuTime > cpuTimeLimit) {
+            overLimit = String.format("cpu time %s ms over limit %s ms", cpuTime, cpuTimeLimit);
+        }
+
+        if (!Objects.isNull(overLimit)) {
+            LOGGER.warn("Kill process tree of %s since %s", pid, overLimit);
+            kill();
+        }
+    }
+}
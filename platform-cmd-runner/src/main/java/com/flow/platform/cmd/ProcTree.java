@@ -0,0 +1,349 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.cmd;
+
+import com.flow.platform.util.Logger;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process tree of cmd read from linux /proc file system
+ * <p>
+ * The tree contains the root process, its descendants and the processes in the session of root
+ * which started by setsid, so the background children still be found after parent exited
+ *
+ * @author gy@fir.im
+ */
+public final class ProcTree {
+
+    private final static Logger LOGGER = new Logger(ProcTree.class);
+
+    private final static Path PROC = Paths.get("/proc");
+
+    // USER_HZ of /proc/[pid]/stat cpu time, it is 100 on all common linux
+    private final static long CLOCK_TICKS_PER_SECOND = 100;
+
+    private final static long PAGE_SIZE = 4096;
+
+    private final static long KILL_WAITING_MILLIS = 5000;
+
+    private final static String SETSID = "setsid";
+
+    private final static String[] SETSID_PATHS = {"/usr/bin/setsid", "/bin/setsid"};
+
+    /**
+     * Stat of single process
+     */
+    public static class Stat {
+
+        private final int pid;
+
+        private final int ppid;
+
+        private final int session;
+
+        // process start time after boot in clock ticks, to identify process with reused pid
+        private final long startTime;
+
+        // user + system cpu time in millis
+        private final long cpuTime;
+
+        // user + system cpu time of waited-for children in millis
+        private final long childrenCpuTime;
+
+        // resident memory in bytes
+        private final long memory;
+
+        private long readBytes;
+
+        private long writeBytes;
+
+        Stat(int pid, int ppid, int session, long startTime, long cpuTime, long childrenCpuTime, long memory) {
+            this.pid = pid;
+            this.ppid = ppid;
+            this.session = session;
+            this.startTime = startTime;
+            this.cpuTime = cpuTime;
+            this.childrenCpuTime = childrenCpuTime;
+            this.memory = memory;
+        }
+
+        public int getPid() {
+            return pid;
+        }
+
+        public int getPpid() {
+            return ppid;
+        }
+
+        public String getKey() {
+            return pid + ":" + startTime;
+        }
+
+        public long getCpuTime() {
+            return cpuTime;
+        }
+
+        public long getChildrenCpuTime() {
+            return childrenCpuTime;
+        }
+
+        public long getMemory() {
+            return memory;
+        }
+
+        public long getReadBytes() {
+            return readBytes;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+    }
+
+    public static boolean isSupported() {
+        return Files.exists(PROC.resolve("self").resolve("stat"));
+    }
+
+    /**
+     * Command prefix to start process in new session, empty if setsid not found
+     */
+    public static List<String> sessionPrefix() {
+        List<String> prefix = new ArrayList<>(1);
+        for (String path : SETSID_PATHS) {
+            if (Files.isExecutable(Paths.get(path))) {
+                prefix.add(SETSID);
+                break;
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * Start time of process, or -1 if process not exist
+     */
+    public static long startTime(int pid) {
+        Stat stat = readStat(PROC.resolve(Integer.toString(pid)));
+        return Objects.isNull(stat) ? -1 : stat.startTime;
+    }
+
+    /**
+     * List stat of processes in the tree of root pid
+     */
+    public static Collection<Stat> list(int rootPid) {
+        return list(rootPid, startTime(rootPid));
+    }
+
+    /**
+     * List stat of processes in the tree of root pid, the descendants by parent pid are only
+     * included if root start time matched, since the pid may be reused after root exited
+     */
+    public static Collection<Stat> list(int rootPid, long rootStartTime) {
+        if (rootPid <= 0 || !isSupported()) {
+            return new ArrayList<>(0);
+        }
+
+        Map<Integer, Stat> all = new HashMap<>();
+        Map<Integer, List<Stat>> children = new HashMap<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for (Path dir : stream) {
+                Stat stat = readStat(dir);
+                if (Objects.isNull(stat)) {
+                    continue;
+                }
+
+                all.put(stat.pid, stat);
+                children.computeIfAbsent(stat.ppid, key -> new ArrayList<>()).add(stat);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to list processes: %s", e.getMessage());
+        }
+
+        Map<Integer, Stat> tree = new LinkedHashMap<>();
+
+        // the session id is pid of session leader, which is root pid if started by setsid
+        for (Stat stat : all.values()) {
+            if (stat.session == rootPid) {
+                tree.put(stat.pid, stat);
+            }
+        }
+
+        // descendants of root by parent pid, children of exited root are reparented and found by session
+        Set<Integer> visited = new HashSet<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        Stat root = all.get(rootPid);
+        if (!Objects.isNull(root) && root.startTime == rootStartTime) {
+            tree.put(rootPid, root);
+            queue.add(rootPid);
+            visited.add(rootPid);
+        }
+
+        while (!queue.isEmpty()) {
+            for (Stat child : children.getOrDefault(queue.poll(), Collections.emptyList())) {
+                if (visited.add(child.pid)) {
+                    tree.put(child.pid, child);
+                    queue.add(child.pid);
+                }
+            }
+        }
+
+        for (Stat stat : tree.values()) {
+            readIo(stat);
+        }
+        return tree.values();
+    }
+
+    /**
+     * Kill process tree of root pid, send SIGTERM first and SIGKILL if not exited in 5 seconds
+     */
+    public static void kill(int rootPid) {
+        kill(rootPid, startTime(rootPid));
+    }
+
+    /**
+     * Kill process tree of root pid started at start time, the processes of reused root pid are not killed
+     */
+    public static void kill(int rootPid, long rootStartTime) {
+        if (rootPid <= 0) {
+            return;
+        }
+
+        List<Integer> pids = pids(rootPid, rootStartTime);
+        if (pids.isEmpty()) {
+            return;
+        }
+
+        signal(pids, "TERM");
+
+        long deadline = System.currentTimeMillis() + KILL_WAITING_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            pids.removeIf(pid -> !Files.exists(PROC.resolve(Integer.toString(pid))));
+            if (pids.isEmpty()) {
+                return;
+            }
+
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        // kill all processes still in the tree include the new started
+        pids = pids(rootPid, rootStartTime);
+        if (!pids.isEmpty()) {
+            signal(pids, "KILL");
+            LOGGER.warn("Process tree of %s been force killed: %s", rootPid, pids);
+        }
+    }
+
+    private static List<Integer> pids(int rootPid, long rootStartTime) {
+        List<Integer> pids = new ArrayList<>();
+
+        if (!isSupported()) {
+            pids.add(rootPid);
+            return pids;
+        }
+
+        for (Stat stat : list(rootPid, rootStartTime)) {
+            pids.add(stat.pid);
+        }
+        return pids;
+    }
+
+    private static void signal(List<Integer> pids, String signal) {
+        List<String> cmd = new ArrayList<>(pids.size() + 2);
+        cmd.add("kill");
+        cmd.add("-" + signal);
+        for (Integer pid : pids) {
+            cmd.add(pid.toString());
+        }
+
+        try {
+            Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+            process.getInputStream().close();
+            process.waitFor(10, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to send %s to %s: %s", signal, pids, e.getMessage());
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    /**
+     * Parse /proc/[pid]/stat, the fields after comm which in parentheses and may contain space
+     */
+    private static Stat readStat(Path dir) {
+        try {
+            String raw = new String(Files.readAllBytes(dir.resolve("stat")), StandardCharsets.UTF_8);
+            String[] fields = raw.substring(raw.lastIndexOf(')') + 2).trim().split(" ");
+
+            // fields start from 'state' which is the 3rd field of stat
+            int pid = Integer.parseInt(raw.substring(0, raw.indexOf(' ')));
+            int ppid = Integer.parseInt(fields[1]);
+            int session = Integer.parseInt(fields[3]);
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            long childrenTicks = Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+            long startTime = Long.parseLong(fields[19]);
+            long rss = Long.parseLong(fields[21]);
+
+            long cpuTime = TimeUnit.SECONDS.toMillis(ticks) / CLOCK_TICKS_PER_SECOND;
+            long childrenCpuTime = TimeUnit.SECONDS.toMillis(childrenTicks) / CLOCK_TICKS_PER_SECOND;
+            return new Stat(pid, ppid, session, startTime, cpuTime, childrenCpuTime, rss * PAGE_SIZE);
+        } catch (Throwable e) {
+            // process exited while reading
+            return null;
+        }
+    }
+
+    private static void readIo(Stat stat) {
+        Path io = PROC.resolve(Integer.toString(stat.pid)).resolve("io");
+
+        try {
+            for (String line : Files.readAllLines(io, StandardCharsets.UTF_8)) {
+                if (line.startsWith("read_bytes:")) {
+                    stat.readBytes = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                } else if (line.startsWith("write_bytes:")) {
+                    stat.writeBytes = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                }
+            }
+        } catch (Throwable ignore) {
+            // io is only readable for process of same user
+        }
+    }
+
+    private ProcTree() {
+    }
+}
@@ -3,9 +3,14 @@ package com.flow.platform.cmd.test;
 import com.flow.platform.cmd.CmdExecutor;
 import com.flow.platform.cmd.Log;
 import com.flow.platform.cmd.LogListener;
+import com.flow.platform.cmd.ProcTree;
 import com.flow.platform.domain.CmdResult;
 import com.google.common.collect.Lists;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 /**
@@ -78,4 +83,77 @@ public class CmdExecutorTest {
         Assert.assertEquals(0, result.getOutput().size());
         Assert.assertNotEquals(0, result.getExitValue().intValue());
     }
+
+    @Test
+    public void should_kill_background_process_when_cmd_timeout() throws Throwable {
+        Assume.assumeTrue(ProcTree.isSupported());
+
+        Path pidFile = Files.createTempFile("cmd-runner-test", ".pid");
+
+        CmdExecutor executor = new CmdExecutor(null,
+            logListener,
+            null,
+            null,
+            null,
+            2,
+            Lists.newArrayList(
+                "sleep 60 &",
+                String.format("echo $! > %s", pidFile),
+                "sleep 60"));
+
+        long start = System.currentTimeMillis();
+        CmdResult result = executor.run();
+
+        // then: cmd should be killed with timeout exit value
+        Assert.assertEquals(CmdResult.EXIT_VALUE_FOR_TIMEOUT, result.getExitValue());
+        Assert.assertTrue(System.currentTimeMillis() - start < 30 * 1000);
+
+        // then: background process should be killed as well
+        String pid = new String(Files.readAllBytes(pidFile)).trim();
+        Assert.assertFalse(Files.exists(Paths.get("/proc", pid)));
+
+        // then: usage should be sampled
+        Assert.assertNotNull(result.getCpuTime());
+        Assert.assertTrue(result.getMaxMemory() > 0);
+        Files.deleteIfExists(pidFile);
+    }
+
+    @Test
+    public void should_count_cpu_time_of_short_lived_children() throws Throwable {
+        Assume.assumeTrue(ProcTree.isSupported());
+
+        // children exit between samples, their cpu time is only in children cpu time of shell
+        CmdExecutor executor = new CmdExecutor(null,
+            logListener,
+            null,
+            null,
+            null,
+            30,
+            Lists.newArrayList(
+                "for i in 1 2 3 4; do timeout 0.4 sh -c 'while :; do :; done' || true; done",
+                "sleep 2"));
+
+        CmdResult result = executor.run();
+        Assert.assertEquals(0, result.getExitValue().intValue());
+        Assert.assertTrue(result.getCpuTime() >= 800);
+    }
+
+    @Test
+    public void should_kill_process_tree_when_over_memory_limit() throws Throwable {
+        Assume.assumeTrue(ProcTree.isSupported());
+
+        CmdExecutor executor = new CmdExecutor(null,
+            logListener,
+            null,
+            null,
+            null,
+            30,
+            Lists.newArrayList("sleep 60"));
+
+        // set 1 byte memory limit which always over limit
+        executor.setLimit(1, 0);
+
+        CmdResult result = executor.run();
+        Assert.assertEquals(CmdResult.EXIT_VALUE_FOR_OVER_LIMIT, result.getExitValue());
+    }
 }
@@ -20,6 +20,8 @@ import com.flow.platform.core.config.AppConfigBase;
 import com.flow.platform.core.config.DatabaseConfig;
 import com.flow.platform.core.util.ThreadUtil;
 import com.flow.platform.util.Logger;
+import com.flow.platform.util.trace.TrafficRecorder;
+import com.google.common.base.Strings;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -47,6 +49,8 @@ public class AppConfig extends AppConfigBase {
 
     private final static String THREAD_NAME_PREFIX = "async-task-";
 
+    private final static int TRAFFIC_RECORD_QUEUE_SIZE = 10000;
+
     private final static Logger LOGGER = new Logger(AppConfig.class);
 
     private final static ThreadPoolTaskExecutor executor =
@@ -55,6 +59,9 @@ public class AppConfig extends AppConfigBase {
     @Value("${cc.workspace}")
     private String workspace;
 
+    @Value("${trace.record.file}")
+    private String traceRecordFile;
+
     @Bean
     public Path workspace() {
         try {
@@ -74,6 +81,22 @@ public class AppConfig extends AppConfigBase {
         }
     }
 
+    /**
+     * Record cmd and agent traffic for replay if trace file is set
+     */
+    @Bean(destroyMethod = "close")
+    public TrafficRecorder trafficRecorder() {
+        if (Strings.isNullOrEmpty(traceRecordFile)) {
+            return TrafficRecorder.disabled();
+        }
+
+        try {
+            return new TrafficRecorder(Paths.get(traceRecordFile), TRAFFIC_RECORD_QUEUE_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to create traffic trace file", e);
+        }
+    }
+
     @Bean(name = "applicationEventMulticaster")
     public ApplicationEventMulticaster simpleApplicationEventMulticaster() {
         SimpleApplicationEventMulticaster eventMulticaster = new SimpleApplicationEventMulticaster();
@@ -16,12 +16,16 @@
 
 package com.flow.platform.cc.config;
 
+import com.flow.platform.core.queue.FileQueue;
 import com.flow.platform.core.queue.MemoryQueue;
 import com.flow.platform.core.queue.PriorityMessage;
 import com.flow.platform.core.queue.RabbitQueue;
+import com.flow.platform.queue.FsyncPolicy;
 import com.flow.platform.queue.PlatformQueue;
 import com.flow.platform.util.Logger;
 import com.google.common.collect.Range;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -39,6 +43,11 @@ public class QueueConfig {
 
     public final static int QUEUE_MAX_LENGTH = 100;
 
+    /**
+     * Max unacked items of journal file queue, which is bounded by disk instead of memory
+     */
+    public final static int FILE_QUEUE_MAX_LENGTH = 100000;
+
     /**
      * Default queue priority
      */
@@ -84,6 +93,18 @@ public class QueueConfig {
     @Value("${queue.cmd.rabbit.enable}")
     private Boolean cmdQueueRabbitEnable;
 
+    /**
+     * Enable journal file queue if RabbitMQ not enabled, cmd will not be lost after restart
+     */
+    @Value("${queue.cmd.file.enable}")
+    private Boolean cmdQueueFileEnable;
+
+    /**
+     * Fsync policy of journal file queue: ALWAYS, INTERVAL or NEVER
+     */
+    @Value("${queue.cmd.file.fsync}")
+    private String cmdQueueFileFsync;
+
     /**
      * Enable cmd queue retry instead of pause/resume logic
      */
@@ -96,6 +117,9 @@ public class QueueConfig {
     @Autowired
     private ThreadPoolTaskExecutor taskExecutor;
 
+    @Autowired
+    private Path workspace;
+
     @PostConstruct
     public void init() {
         LOGGER.trace("Host: %s", host);
@@ -103,6 +127,7 @@ public class QueueConfig {
 
         LOGGER.trace("Cmd queue name: %s", cmdQueueName);
         LOGGER.trace("Cmd RabbitMQ enabled: %s", cmdQueueRabbitEnable);
+        LOGGER.trace("Cmd file queue enabled: %s", cmdQueueFileEnable);
         LOGGER.trace("Cmd queue retry enabled: %s", cmdQueueRetryEnable);
     }
 
@@ -113,6 +138,13 @@ public class QueueConfig {
             return new RabbitQueue(taskExecutor, host, QUEUE_MAX_LENGTH, DEFAULT_PRIORITY, cmdQueueName);
         }
 
+        if (cmdQueueFileEnable) {
+            LOGGER.trace("Apply journal file queue for cmd queue");
+            Path dir = Paths.get(workspace.toString(), "queue", "cmd");
+            FsyncPolicy fsyncPolicy = FsyncPolicy.valueOf(cmdQueueFileFsync.toUpperCase());
+            return new FileQueue(taskExecutor, FILE_QUEUE_MAX_LENGTH, "CmdQueue", dir, fsyncPolicy);
+        }
+
         LOGGER.trace("Apply in memory queue for cmd queue");
         return new MemoryQueue(taskExecutor, QUEUE_MAX_LENGTH, "CmdQueue");
     }
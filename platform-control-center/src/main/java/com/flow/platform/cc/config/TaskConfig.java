@@ -39,6 +39,9 @@ public class TaskConfig {
     @Value("${task.cmd.toggle.execution_timeout}")
     private boolean enableCmdExecTimeoutTask;
 
+    @Value("${task.cmd.toggle.log_archive}")
+    private boolean enableCmdLogArchiveTask;
+
     @Value("${task.instance.mos.toggle.clean}")
     private boolean enableMosCleanTask;
 
@@ -47,6 +50,7 @@ public class TaskConfig {
         LOGGER.trace("Zone.Toggle.KeepIdleAgent: %s", enableKeepIdleAgentTask);
         LOGGER.trace("Agent.Toggle.SessionTimeout: %s", enableAgentSessionTimeoutTask);
         LOGGER.trace("Cmd.Toggle.ExecutionTimeout: %s", enableCmdExecTimeoutTask);
+        LOGGER.trace("Cmd.Toggle.LogArchive: %s", enableCmdLogArchiveTask);
         LOGGER.trace("Mos.Toggle.Clean: %s", enableMosCleanTask);
     }
 
@@ -62,6 +66,10 @@ public class TaskConfig {
         return enableCmdExecTimeoutTask;
     }
 
+    public boolean isEnableCmdLogArchiveTask() {
+        return enableCmdLogArchiveTask;
+    }
+
     public boolean isEnableMosCleanTask() {
         return enableMosCleanTask;
     }
@@ -17,6 +17,8 @@
 package com.flow.platform.cc.config;
 
 import com.flow.platform.cc.resource.PropertyResourceLoader;
+import com.flow.platform.core.dao.routing.RoutingContextInterceptor;
+import com.flow.platform.core.http.converter.BinaryCodecMessageConverter;
 import com.flow.platform.core.http.converter.RawGsonMessageConverter;
 import com.flow.platform.domain.Jsonable;
 import com.flow.platform.util.Logger;
@@ -38,6 +40,7 @@ import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
 /**
@@ -99,6 +102,14 @@ public class WebConfig extends WebMvcConfigurerAdapter {
         jsonConverter.setGsonForWriter(Jsonable.GSON_CONFIG);
         jsonConverter.setIgnoreType(true);
         converters.add(jsonConverter);
+
+        // binary cmd payload, added after json which keep json as default for accept */*
+        converters.add(new BinaryCodecMessageConverter());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RoutingContextInterceptor());
     }
 
     @Override
@@ -92,6 +92,11 @@ public class CmdQueueConsumer implements QueueListener<PriorityMessage> {
                 return;
             }
 
+            // queue is full, throw to let queue redeliver current item instead of losing the retry
+            if (cmdQueue.isFull()) {
+                throw new IllegalStatusException("Cmd queue is full, retry later: " + cmdId);
+            }
+
             // reset cmd status to pending, record num of retry
             int retry = cmd.getRetry() - 1;
             cmd.setStatus(CmdStatus.PENDING);
@@ -56,8 +56,9 @@ public class CmdStatusQueueConsumer implements QueueListener<PriorityMessage> {
 
         try {
             CmdStatusItem statusItem = CmdStatusItem.parse(item.getBody(), CmdStatusItem.class);
-            LOGGER.debug(Thread.currentThread().getName() + " : " + item.toString());
+            LOGGER.debug("%s : %s", Thread.currentThread().getName(), item);
             cmdService.updateStatus(statusItem, false);
+            LOGGER.fields("cmd-status", "id", statusItem.getCmdId(), "status", statusItem.getStatus());
         } catch (Throwable e) {
             LOGGER.error("Update cmd error:", e);
         }
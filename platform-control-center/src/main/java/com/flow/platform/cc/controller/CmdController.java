@@ -17,26 +17,35 @@
 package com.flow.platform.cc.controller;
 
 import com.flow.platform.cc.config.QueueConfig;
+import com.flow.platform.cc.domain.CmdLogFile;
 import com.flow.platform.cc.domain.CmdStatusItem;
 import com.flow.platform.cc.service.CmdDispatchService;
+import com.flow.platform.cc.service.CmdLogService;
 import com.flow.platform.cc.service.CmdService;
+import com.flow.platform.cc.util.CmdLogSender;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.core.exception.IllegalStatusException;
+import com.flow.platform.core.exception.NotFoundException;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.Cmd;
 import com.flow.platform.domain.CmdInfo;
 import com.flow.platform.domain.CmdReport;
+import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
 import com.flow.platform.domain.CmdType;
+import com.flow.platform.domain.Jsonable;
+import com.flow.platform.domain.codec.Codecs;
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.trace.TrafficRecorder;
 import com.google.common.collect.Range;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -61,6 +70,12 @@ public class CmdController {
     @Autowired
     private CmdDispatchService cmdDispatchService;
 
+    @Autowired
+    private CmdLogService cmdLogService;
+
+    @Autowired
+    private TrafficRecorder trafficRecorder;
+
     @GetMapping(path = "/types")
     public CmdType[] getCmdTypes() {
         return CmdType.values();
@@ -71,8 +86,16 @@ public class CmdController {
      */
     @PostMapping(path = "/send")
     public Cmd sendCommand(@RequestBody CmdInfo cmd) {
-        Cmd cmdToExec = cmdService.create(cmd);
-        return cmdDispatchService.dispatch(cmdToExec);
+        final long start = System.currentTimeMillis();
+        Cmd created = null;
+        try {
+            created = cmdService.create(cmd);
+            return cmdDispatchService.dispatch(created);
+        } finally {
+            if (trafficRecorder.isEnabled()) {
+                trafficRecorder.record(TrafficRecord.Type.CMD_SEND, start, "/cmd/send", null, toTraffic(cmd, created));
+            }
+        }
     }
 
     @PostMapping(path = "/queue/send")
@@ -85,7 +108,17 @@ public class CmdController {
             throw new IllegalParameterException("Illegal retry value should between (0 - 100)");
         }
 
-        return cmdService.enqueue(cmd, priority, retry);
+        final long start = System.currentTimeMillis();
+        Cmd created = null;
+        try {
+            created = cmdService.enqueue(cmd, priority, retry);
+            return created;
+        } finally {
+            if (trafficRecorder.isEnabled()) {
+                String path = String.format("/cmd/queue/send?priority=%s&retry=%s", priority, retry);
+                trafficRecorder.record(TrafficRecord.Type.CMD_SEND, start, path, null, toTraffic(cmd, created));
+            }
+        }
     }
 
     /**
@@ -113,8 +146,15 @@ public class CmdController {
             throw new IllegalParameterException("Cmd id, status and cmd result are required");
         }
 
-        CmdStatusItem statusItem = new CmdStatusItem(reportData, true, true);
-        cmdService.updateStatus(statusItem, true);
+        final long start = System.currentTimeMillis();
+        try {
+            CmdStatusItem statusItem = new CmdStatusItem(reportData, true, true);
+            cmdService.updateStatus(statusItem, true);
+        } finally {
+            if (trafficRecorder.isEnabled()) {
+                trafficRecorder.record(TrafficRecord.Type.CMD_REPORT, start, "/cmd/report", null, toTraffic(reportData));
+            }
+        }
     }
 
     /**
@@ -140,27 +180,51 @@ public class CmdController {
     }
 
     /**
-     * Get zipped log file by cmd id
+     * Get zipped log file by cmd id, support single byte range and conditional request
      */
     @GetMapping(path = "/log/download", produces = "application/zip")
-    public Resource downloadFullLog(@RequestParam String cmdId,
-                                    @RequestParam Integer index,
-                                    HttpServletResponse httpResponse) {
-
-        Cmd cmd = cmdService.find(cmdId);
-        if (cmd == null) {
-            throw new IllegalParameterException("Cmd not found");
+    public void downloadFullLog(@RequestParam String cmdId,
+                                @RequestParam(required = false, defaultValue = "0") Integer index,
+                                HttpServletRequest httpRequest,
+                                HttpServletResponse httpResponse) throws IOException {
+
+        // only one zipped log for each cmd
+        if (index != 0) {
+            throw new NotFoundException("Log not found");
         }
 
-        try {
-            Path filePath = Paths.get(cmd.getLogPath());
-
-            FileSystemResource resource = new FileSystemResource(filePath.toFile());
-            httpResponse.setHeader("Content-Disposition",
-                String.format("attachment; filename=%s", filePath.getFileName().toString()));
-            return resource;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            throw new IllegalStatusException("Log not found");
-        }
+        CmdLogFile logFile = cmdLogService.find(cmdId);
+        CmdLogSender.send(logFile, httpRequest, httpResponse);
+    }
+
+    /**
+     * Only keep identity of cmd for traffic record since cmd content and inputs might contain secret
+     *
+     * @param created null if cmd not created
+     */
+    private static String toTraffic(CmdInfo cmd, Cmd created) {
+        Map<String, Object> traffic = new LinkedHashMap<>(6);
+        traffic.put("id", created == null ? null : created.getId());
+        traffic.put("type", cmd.getType());
+        traffic.put("zone", cmd.getZoneName());
+        traffic.put("agent", cmd.getAgentName());
+        traffic.put("sessionId", cmd.getSessionId());
+        traffic.put("timeout", cmd.getTimeout());
+        return Jsonable.GSON_CONFIG.toJson(traffic);
+    }
+
+    /**
+     * Only keep status and timing of report for traffic record since cmd output might contain secret
+     */
+    private static byte[] toTraffic(CmdReport report) {
+        CmdResult result = report.getResult();
+        CmdResult timing = new CmdResult(result.getExitValue());
+        timing.setCmdId(report.getId());
+        timing.setStartTime(result.getStartTime());
+        timing.setExecutedTime(result.getExecutedTime());
+        timing.setFinishTime(result.getFinishTime());
+        timing.setDuration(result.getDuration());
+        timing.setTotalDuration(result.getTotalDuration());
+        return Codecs.encode(new CmdReport(report.getId(), report.getStatus(), timing));
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.cc.domain;
+
+import java.nio.file.Path;
+
+/**
+ * Metadata of stored zipped cmd log, used as index entry to serve log without db lookup
+ *
+ * @author yang
+ */
+public class CmdLogFile {
+
+    private final String cmdId;
+
+    private final Path path;
+
+    private final long size;
+
+    // last modified time in millis
+    private final long lastModified;
+
+    // strong etag from sha1 of file content, with quotes
+    private final String etag;
+
+    public CmdLogFile(String cmdId, Path path, long size, long lastModified, String etag) {
+        this.cmdId = cmdId;
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.etag = etag;
+    }
+
+    public String getCmdId() {
+        return cmdId;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    @Override
+    public String toString() {
+        return "CmdLogFile{" +
+            "cmdId='" + cmdId + '\'' +
+            ", path=" + path +
+            ", size=" + size +
+            ", etag='" + etag + '\'' +
+            '}';
+    }
+}
@@ -18,6 +18,7 @@ package com.flow.platform.cc.service;
 
 import com.flow.platform.core.service.WebhookService;
 import com.flow.platform.domain.Agent;
+import com.flow.platform.domain.AgentCapacity;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.AgentSettings;
 import com.flow.platform.domain.AgentStatus;
@@ -30,7 +31,7 @@ import java.util.Set;
  */
 public interface AgentService extends WebhookService {
 
-    int SESSION_TIMEOUT_TASK_HEARTBEAT = 60 * 1000; // millisecond
+    int SESSION_TIMEOUT_TASK_HEARTBEAT = 3600 * 1000; // millisecond, reload session timeout to timing wheel
 
     int IDLE_AGENT_TASK_HEARTBEAT = 30 * 1000; // millisecond
 
@@ -39,6 +40,11 @@ public interface AgentService extends WebhookService {
      */
     void report(AgentPath path, AgentStatus status);
 
+    /**
+     * Update agent remaining capacity from agent node data, null to remove
+     */
+    void reportCapacity(AgentPath path, AgentCapacity capacity);
+
     /**
      * List agent by zone name
      */
@@ -69,6 +75,14 @@ public interface AgentService extends WebhookService {
      */
     List<Agent> findAvailable(String zone);
 
+    /**
+     * Find available agent which capacity fits the demand by zone name,
+     * agent without reported capacity is listed after the fitted agents
+     *
+     * @return Sorted agent list by warm workspace, free cpu and memory
+     */
+    List<Agent> findAvailable(String zone, AgentCapacity demand);
+
     /**
      * Save agent status and other properties, and send agent webhook
      */
@@ -104,7 +118,8 @@ public interface AgentService extends WebhookService {
     void delete(Agent agent);
 
     /**
-     * To check agent session timeout
+     * To load agent session from db and register timeout to timing wheel,
+     * the session already timeout will be deleted directly
      */
     void sessionTimeoutTask();
 
@@ -21,10 +21,13 @@ import com.flow.platform.cc.dao.AgentDao;
 import com.flow.platform.cc.event.AgentResourceEvent;
 import com.flow.platform.cc.event.AgentResourceEvent.Category;
 import com.flow.platform.cc.exception.AgentErr;
+import com.flow.platform.cc.util.ZKHelper;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.core.exception.IllegalStatusException;
 import com.flow.platform.core.service.WebhookServiceImplBase;
+import com.flow.platform.core.timer.TimingWheel;
 import com.flow.platform.domain.Agent;
+import com.flow.platform.domain.AgentCapacity;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.AgentSettings;
 import com.flow.platform.domain.AgentStatus;
@@ -35,15 +38,22 @@ import com.flow.platform.domain.Zone;
 import com.flow.platform.util.DateUtil;
 import com.flow.platform.util.ExceptionUtil;
 import com.flow.platform.util.Logger;
+import com.flow.platform.util.zk.ZKClient;
 import com.google.common.base.Strings;
 import com.google.gson.annotations.Expose;
 import java.sql.SQLDataException;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -62,6 +72,8 @@ public class AgentServiceImpl extends WebhookServiceImplBase implements AgentSer
 
     private final static Logger LOGGER = new Logger(AgentService.class);
 
+    private final static String SESSION_TIMEOUT_KEY_PREFIX = "agent-session-timeout-";
+
     @Autowired
     private ZoneService zoneService;
 
@@ -80,13 +92,24 @@ public class AgentServiceImpl extends WebhookServiceImplBase implements AgentSer
     @Autowired
     private AgentSettings agentSettings;
 
+    @Autowired
+    private TimingWheel timingWheel;
+
+    @Autowired
+    private ZKClient zkClient;
+
+    // remaining capacity of agent which reported from agent node data
+    private final Map<AgentPath, AgentCapacity> capacities = new ConcurrentHashMap<>();
+
     @Override
     public void report(AgentPath path, AgentStatus status) {
         Agent exist = find(path);
 
-        // For agent offline status
+        // For agent offline status, cmd in inbox will not be handled anymore
         if (status == AgentStatus.OFFLINE) {
+            capacities.remove(path);
             saveWithStatus(exist, AgentStatus.OFFLINE);
+            zkClient.deleteWithoutGuaranteed(ZKHelper.buildInboxPath(path), true);
             return;
         }
 
@@ -131,6 +154,50 @@ public class AgentServiceImpl extends WebhookServiceImplBase implements AgentSer
         return agentDao.list(zone, "updatedDate", AgentStatus.IDLE);
     }
 
+    @Override
+    public void reportCapacity(AgentPath path, AgentCapacity capacity) {
+        if (capacity == null) {
+            capacities.remove(path);
+            return;
+        }
+        capacities.put(path, capacity);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Agent> findAvailable(String zone, AgentCapacity demand) {
+        List<Map.Entry<Agent, AgentCapacity>> fitted = new LinkedList<>();
+        List<Agent> unknown = new LinkedList<>();
+
+        for (Agent agent : findAvailable(zone)) {
+            AgentCapacity capacity = capacities.get(agent.getPath());
+
+            if (capacity == null) {
+                unknown.add(agent);
+                continue;
+            }
+
+            if (capacity.fits(demand)) {
+                fitted.add(new SimpleImmutableEntry<>(agent, capacity));
+            }
+        }
+
+        // prefer agent with warm workspace, then most free cpu and memory
+        fitted.sort(Comparator
+            .comparing((Map.Entry<Agent, AgentCapacity> entry) -> entry.getValue().isWarmFor(demand))
+            .thenComparingDouble(entry -> entry.getValue().getCpu())
+            .thenComparingLong(entry -> entry.getValue().getMemory())
+            .reversed());
+
+        List<Agent> selected = new LinkedList<>();
+        for (Map.Entry<Agent, AgentCapacity> entry : fitted) {
+            selected.add(entry.getKey());
+        }
+
+        selected.addAll(unknown);
+        return selected;
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Agent> listForOnline(String zone) {
@@ -162,6 +229,8 @@ public class AgentServiceImpl extends WebhookServiceImplBase implements AgentSer
         agentDao.update(agent);
         LOGGER.trace("Agent status been updated to '%s'", status);
 
+        scheduleSessionTimeout(agent);
+
         // send webhook if status changed
         if (statusIsChanged) {
             this.webhookCallback(agent);
@@ -254,17 +323,56 @@ public class AgentServiceImpl extends WebhookServiceImplBase implements AgentSer
         for (Zone zone : zoneService.getZones()) {
             Collection<Agent> agents = listForOnline(zone.getName());
             for (Agent agent : agents) {
-                if (agent.getSessionId() != null && isSessionTimeout(agent, now, zone.getAgentSessionTimeout())) {
-                    Cmd delSessionCmd = cmdService.create(new CmdInfo(agent.getPath(), CmdType.DELETE_SESSION, null));
-                    cmdDispatchService.dispatch(delSessionCmd);
-                    LOGGER.traceMarker("sessionTimeoutTask", "Send DELETE_SESSION to agent %s", agent);
+                if (agent.getSessionId() == null) {
+                    continue;
                 }
+
+                if (isSessionTimeout(agent, now, zone.getAgentSessionTimeout())) {
+                    deleteTimeoutSession(agent);
+                    continue;
+                }
+
+                scheduleSessionTimeout(agent);
             }
         }
 
         LOGGER.traceMarker("sessionTimeoutTask", "end");
     }
 
+    /**
+     * Register agent session timeout to timing wheel, or cancel it if session been released
+     */
+    private void scheduleSessionTimeout(Agent agent) {
+        final String key = SESSION_TIMEOUT_KEY_PREFIX + agent.getPath();
+
+        if (agent.getSessionId() == null || agent.getStatus() == AgentStatus.OFFLINE) {
+            timingWheel.cancel(key);
+            return;
+        }
+
+        Zone zone = zoneService.getZone(agent.getZone());
+        if (!taskConfig.isEnableAgentSessionTimeoutTask() || zone == null || agent.getSessionDate() == null) {
+            return;
+        }
+
+        final AgentPath path = agent.getPath();
+        final String sessionId = agent.getSessionId();
+        ZonedDateTime deadline = agent.getSessionDate().plusSeconds(zone.getAgentSessionTimeout());
+
+        timingWheel.schedule(key, deadline, () -> {
+            Agent current = find(path);
+            if (current != null && Objects.equals(current.getSessionId(), sessionId)) {
+                deleteTimeoutSession(current);
+            }
+        });
+    }
+
+    private void deleteTimeoutSession(Agent agent) {
+        Cmd delSessionCmd = cmdService.create(new CmdInfo(agent.getPath(), CmdType.DELETE_SESSION, null));
+        cmdDispatchService.dispatch(delSessionCmd);
+        LOGGER.traceMarker("sessionTimeoutTask", "Send DELETE_SESSION to agent %s", agent);
+    }
+
     @Override
     @Transactional(propagation = Propagation.NEVER)
     @Scheduled(initialDelay = 10 * 1000, fixedDelay = IDLE_AGENT_TASK_HEARTBEAT)
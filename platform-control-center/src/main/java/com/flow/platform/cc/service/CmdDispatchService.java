@@ -31,7 +31,8 @@ public interface CmdDispatchService {
     Cmd dispatch(Cmd cmd);
 
     /**
-     * Task to check cmd is executing timeout
+     * Task to load working cmd from db and register timeout to timing wheel,
+     * the cmd already timeout will be killed directly
      */
     void checkTimeoutTask();
 
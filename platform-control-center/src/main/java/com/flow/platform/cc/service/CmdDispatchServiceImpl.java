@@ -26,7 +26,9 @@ import com.flow.platform.cc.util.ZKHelper;
 import com.flow.platform.core.exception.FlowException;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.core.service.ApplicationEventService;
+import com.flow.platform.core.timer.TimingWheel;
 import com.flow.platform.domain.Agent;
+import com.flow.platform.domain.AgentCapacity;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.AgentStatus;
 import com.flow.platform.domain.Cmd;
@@ -34,6 +36,7 @@ import com.flow.platform.domain.CmdInfo;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
 import com.flow.platform.domain.CmdType;
+import com.flow.platform.domain.codec.Codecs;
 import com.flow.platform.util.DateUtil;
 import com.flow.platform.util.Logger;
 import com.flow.platform.util.zk.ZKClient;
@@ -47,6 +50,7 @@ import java.util.Map;
 import java.util.UUID;
 import javax.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
@@ -61,6 +65,13 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
 
     private final static Logger LOGGER = new Logger(CmdDispatchService.class);
 
+    private final static String TIMEOUT_KEY_PREFIX = "cmd-timeout-";
+
+    /**
+     * Period to reload working cmd timeout in case of missing registration
+     */
+    private final static long TIMEOUT_RELOAD_PERIOD = 3600 * 1000;
+
     @Autowired
     private TaskConfig taskConfig;
 
@@ -73,6 +84,15 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
     @Autowired
     protected ZKClient zkClient;
 
+    @Autowired
+    private TimingWheel timingWheel;
+
+    /**
+     * Codec of cmd written to agent inbox, binary requires agent which supports binary codec
+     */
+    @Value("${zk.cmd.codec:json}")
+    private String cmdCodec;
+
     private final Map<CmdType, CmdHandler> handler = new HashMap<>(CmdType.values().length);
 
     @PostConstruct
@@ -147,7 +167,7 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
 
     @Override
     @Transactional(propagation = Propagation.NEVER)
-    @Scheduled(fixedDelay = 300 * 1000)
+    @Scheduled(initialDelay = 10 * 1000, fixedDelay = TIMEOUT_RELOAD_PERIOD)
     public void checkTimeoutTask() {
         if (!taskConfig.isEnableCmdExecTimeoutTask()) {
             return;
@@ -163,24 +183,54 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
             }
 
             if (DateUtil.isTimeOut(cmd.getCreatedDate(), ZonedDateTime.now(), cmd.getTimeout())) {
-                try {
-                    Cmd killCmd = cmdService.create(new CmdInfo(cmd.getAgentPath(), CmdType.KILL, null));
-                    dispatch(killCmd);
-                    LOGGER.traceMarker("checkTimeoutTask", "Send KILL for timeout cmd %s", cmd);
-
-                    CmdStatusItem statusItem = new CmdStatusItem(cmd.getId(), CmdStatus.TIMEOUT_KILL, null, true, true);
-                    cmdService.updateStatus(statusItem, false);
-                } catch (Throwable e) {
-                    LOGGER.warn(e.getMessage());
-                }
+                killTimeoutCmd(cmd);
+                continue;
             }
+
+            scheduleTimeout(cmd);
         }
 
         LOGGER.traceMarker("checkTimeoutTask", "end");
     }
 
     /**
-     * Send cmd to agent via zookeeper
+     * Register RUN_SHELL cmd timeout to timing wheel, it will be cancelled by cmd service when cmd finished
+     */
+    private void scheduleTimeout(Cmd cmd) {
+        if (!taskConfig.isEnableCmdExecTimeoutTask() || cmd.getTimeout() == null) {
+            return;
+        }
+
+        final String cmdId = cmd.getId();
+        ZonedDateTime deadline = cmd.getCreatedDate().plusSeconds(cmd.getTimeout());
+
+        timingWheel.schedule(timeoutKey(cmdId), deadline, () -> {
+            Cmd current = cmdService.find(cmdId);
+            if (current != null && current.isCurrent()) {
+                killTimeoutCmd(current);
+            }
+        });
+    }
+
+    private void killTimeoutCmd(Cmd cmd) {
+        try {
+            Cmd killCmd = cmdService.create(new CmdInfo(cmd.getAgentPath(), CmdType.KILL, null));
+            dispatch(killCmd);
+            LOGGER.traceMarker("checkTimeoutTask", "Send KILL for timeout cmd %s", cmd);
+
+            CmdStatusItem statusItem = new CmdStatusItem(cmd.getId(), CmdStatus.TIMEOUT_KILL, null, true, true);
+            cmdService.updateStatus(statusItem, false);
+        } catch (Throwable e) {
+            LOGGER.warn(e.getMessage());
+        }
+    }
+
+    static String timeoutKey(String cmdId) {
+        return TIMEOUT_KEY_PREFIX + cmdId;
+    }
+
+    /**
+     * Send cmd to agent inbox via zookeeper sequential node, the agent deletes it after received
      */
     private void sendCmdToAgent(Agent target, Cmd cmd) {
         String agentNodePath = ZKHelper.buildPath(target.getPath());
@@ -188,7 +238,7 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
             throw new AgentErr.NotFoundException("Node path in zookeeper not found " + target.getPath());
         }
 
-        zkClient.setData(agentNodePath, cmd.toBytes());
+        zkClient.createSequential(ZKHelper.buildInboxItemPath(target.getPath()), Codecs.of(cmdCodec).encode(cmd));
     }
 
     private Cmd createDeleteSessionCmd(Agent target) {
@@ -212,12 +262,13 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
     }
 
     /**
-     * Auto select agent from zone
+     * Auto select agent from zone which capacity fits resource hints in cmd inputs
      *
      * @throws AgentErr.NotAvailableException if no available agent
      */
-    private Agent selectAgentFromZone(String zone) {
-        List<Agent> availableList = agentService.findAvailable(zone);
+    private Agent selectAgentFromZone(String zone, Cmd cmd) {
+        AgentCapacity demand = AgentCapacity.demandOf(cmd.getInputs());
+        List<Agent> availableList = agentService.findAvailable(zone, demand);
 
         if (availableList.size() > 0) {
             return availableList.get(0);
@@ -271,7 +322,7 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
             AgentPath path = cmd.getAgentPath();
 
             if (!path.hasName()) {
-                return selectAgentFromZone(path.getZone());
+                return selectAgentFromZone(path.getZone(), cmd);
             }
 
             return agentService.find(path);
@@ -318,10 +369,11 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
         public void doExec(Agent target, Cmd cmd) {
             // stop all cmd when agent not been assigned
             if (target == null) {
-                for (Cmd cmdItem : cmdService.listBySession(cmd.getSessionId())) {
+                List<Cmd> sessionCmds = cmdService.listBySession(cmd.getSessionId());
+                for (Cmd cmdItem : sessionCmds) {
                     cmdItem.setStatus(CmdStatus.STOPPED);
-                    cmdService.save(cmdItem);
                 }
+                cmdService.saveAll(sessionCmds);
                 return;
             }
 
@@ -331,6 +383,13 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
                 handler.get(CmdType.KILL).exec(killCmd);
             }
 
+            // let agent unbind workspace of session
+            try {
+                sendCmdToAgent(target, cmd);
+            } catch (AgentErr.NotFoundException e) {
+                LOGGER.warn("Unable to send delete session to agent %s: %s", target.getPath(), e.getMessage());
+            }
+
             target.setSessionId(null);
             agentService.saveWithStatus(target, AgentStatus.IDLE);
         }
@@ -377,7 +436,7 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
             AgentPath path = cmd.getAgentPath();
 
             if (!path.hasName()) {
-                return selectAgentFromZone(path.getZone());
+                return selectAgentFromZone(path.getZone(), cmd);
             }
 
             return agentService.find(path);
@@ -398,6 +457,7 @@ public class CmdDispatchServiceImpl extends ApplicationEventService implements C
             }
 
             sendCmdToAgent(target, cmd);
+            scheduleTimeout(cmd);
         }
     }
 
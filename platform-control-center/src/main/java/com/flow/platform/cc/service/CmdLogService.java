@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.cc.service;
+
+import com.flow.platform.cc.domain.CmdLogFile;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Storage of zipped cmd logs, recent logs in hot dir and old logs compressed in cold dir
+ *
+ * @author yang
+ */
+public interface CmdLogService {
+
+    int ARCHIVE_TASK_PERIOD = 3600 * 1000; // millisecond
+
+    /**
+     * Save zipped cmd log to hot dir and index it
+     */
+    void save(String cmdId, MultipartFile file);
+
+    /**
+     * Find zipped cmd log, restore it to hot dir if it has been archived
+     *
+     * @throws com.flow.platform.core.exception.NotFoundException if log not found
+     */
+    CmdLogFile find(String cmdId);
+
+    /**
+     * Move logs which not modified in archive days and not indexed to cold dir
+     *
+     * @return num of archived logs
+     */
+    int archive();
+
+    /**
+     * Scheduler task to archive cmd logs
+     */
+    void archiveTask();
+}
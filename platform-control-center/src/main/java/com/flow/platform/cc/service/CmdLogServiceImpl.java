@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.cc.service;
+
+import com.flow.platform.cc.config.TaskConfig;
+import com.flow.platform.cc.dao.CmdLogDao;
+import com.flow.platform.cc.domain.CmdLogFile;
+import com.flow.platform.core.exception.NotFoundException;
+import com.flow.platform.domain.CmdLog;
+import com.flow.platform.util.Logger;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * @author yang
+ */
+@Service
+@Transactional
+public class CmdLogServiceImpl implements CmdLogService {
+
+    private final static Logger LOGGER = new Logger(CmdLogService.class);
+
+    private final static String COLD_DIR_NAME = "cold";
+
+    private final static String COLD_FILE_EXT = ".gz";
+
+    @Autowired
+    private CmdLogDao cmdLogDao;
+
+    @Autowired
+    private Path cmdLogDir;
+
+    @Autowired
+    private TaskConfig taskConfig;
+
+    @Value("${cmd.log.archive.days}")
+    private int archiveDays;
+
+    private Path coldDir;
+
+    // path of indexed log to cmd id, for archive task to check whether log is indexed
+    private final Map<Path, String> indexedPaths = new ConcurrentHashMap<>();
+
+    // cmd id as key, indexed log will not be archived
+    private final Cache<String, CmdLogFile> index = CacheBuilder.newBuilder()
+        .maximumSize(1000)
+        .removalListener((RemovalNotification<String, CmdLogFile> notification) ->
+            indexedPaths.remove(notification.getValue().getPath(), notification.getKey()))
+        .build();
+
+    // to sync file moving between hot and cold dir
+    private final Object storageLock = new Object();
+
+    @PostConstruct
+    public void init() throws IOException {
+        coldDir = Files.createDirectories(Paths.get(cmdLogDir.toString(), COLD_DIR_NAME));
+    }
+
+    @Override
+    public void save(String cmdId, MultipartFile file) {
+        CmdLog cmdLog = cmdLogDao.get(cmdId);
+        if (cmdLog == null) {
+            throw new IllegalArgumentException("Cmd not exist");
+        }
+
+        try {
+            // only keep file name to avoid write out of log dir
+            Path target = Paths.get(cmdLogDir.toString(), Paths.get(file.getOriginalFilename()).getFileName().toString());
+            byte[] bytes = file.getBytes();
+
+            synchronized (storageLock) {
+                Files.write(target, bytes);
+                Files.deleteIfExists(coldPath(target));
+                putIndex(new CmdLogFile(cmdId, target, bytes.length,
+                    Files.getLastModifiedTime(target).toMillis(), etag(Hashing.sha1().hashBytes(bytes).toString())));
+            }
+
+            cmdLog.setLogPath(target.toString());
+            cmdLogDao.update(cmdLog);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public CmdLogFile find(String cmdId) {
+        CmdLogFile logFile = index.getIfPresent(cmdId);
+        if (logFile != null && Files.exists(logFile.getPath())) {
+            return logFile;
+        }
+
+        CmdLog cmdLog = cmdLogDao.get(cmdId);
+        if (cmdLog == null || cmdLog.getLogPath() == null) {
+            throw new NotFoundException("Log not found");
+        }
+
+        Path path = Paths.get(cmdLog.getLogPath());
+
+        try {
+            synchronized (storageLock) {
+                logFile = index.getIfPresent(cmdId);
+                if (logFile != null && Files.exists(logFile.getPath())) {
+                    return logFile;
+                }
+
+                if (!Files.exists(path) && !restore(path)) {
+                    throw new NotFoundException("Log not found");
+                }
+
+                String sha1 = com.google.common.io.Files.asByteSource(path.toFile()).hash(Hashing.sha1()).toString();
+                logFile = new CmdLogFile(cmdId, path, Files.size(path),
+                    Files.getLastModifiedTime(path).toMillis(), etag(sha1));
+
+                putIndex(logFile);
+                return logFile;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NEVER)
+    public int archive() {
+        long expiredAt = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(archiveDays);
+        int numOfArchived = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cmdLogDir, Files::isRegularFile)) {
+            for (Path path : stream) {
+                synchronized (storageLock) {
+                    if (isIndexed(path) || Files.getLastModifiedTime(path).toMillis() > expiredAt) {
+                        continue;
+                    }
+
+                    compress(path);
+                    numOfArchived++;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Fail to archive cmd logs: %s", e.getMessage());
+        }
+
+        return numOfArchived;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NEVER)
+    @Scheduled(initialDelay = 10 * 1000, fixedDelay = ARCHIVE_TASK_PERIOD)
+    public void archiveTask() {
+        if (!taskConfig.isEnableCmdLogArchiveTask()) {
+            return;
+        }
+
+        LOGGER.traceMarker("archiveTask", "start");
+        int numOfArchived = archive();
+        LOGGER.traceMarker("archiveTask", "end with %s logs archived", numOfArchived);
+    }
+
+    private boolean isIndexed(Path path) {
+        return indexedPaths.containsKey(path);
+    }
+
+    /**
+     * Put log file to index, the path must be recorded after cache put since the removal listener of
+     * replaced entry is notified within the put
+     */
+    private void putIndex(CmdLogFile logFile) {
+        index.put(logFile.getCmdId(), logFile);
+        indexedPaths.put(logFile.getPath(), logFile.getCmdId());
+    }
+
+    /**
+     * Gzip hot log to cold dir with same last modified time, then delete hot log
+     */
+    private void compress(Path hot) throws IOException {
+        Path cold = coldPath(hot);
+        Path tmp = Paths.get(cold.toString() + ".tmp");
+
+        try (InputStream in = Files.newInputStream(hot);
+            OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+            ByteStreams.copy(in, out);
+        }
+
+        Files.setLastModifiedTime(tmp, Files.getLastModifiedTime(hot));
+        Files.move(tmp, cold, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(hot);
+        LOGGER.trace("Cmd log archived: %s", cold);
+    }
+
+    /**
+     * Gunzip cold log back to hot dir
+     *
+     * @return false if cold log not found
+     */
+    private boolean restore(Path hot) throws IOException {
+        Path cold = coldPath(hot);
+        if (!Files.exists(cold)) {
+            return false;
+        }
+
+        Path tmp = Paths.get(hot.toString() + ".tmp");
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(cold));
+            OutputStream out = Files.newOutputStream(tmp)) {
+            ByteStreams.copy(in, out);
+        }
+
+        Files.setLastModifiedTime(tmp, Files.getLastModifiedTime(cold));
+        Files.move(tmp, hot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(cold);
+        LOGGER.trace("Cmd log restored: %s", hot);
+        return true;
+    }
+
+    private Path coldPath(Path hot) {
+        return Paths.get(coldDir.toString(), hot.getFileName().toString() + COLD_FILE_EXT);
+    }
+
+    private static String etag(String sha1) {
+        return "\"" + sha1 + "\"";
+    }
+}
@@ -22,6 +22,7 @@ import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.Cmd;
 import com.flow.platform.domain.CmdInfo;
 import com.flow.platform.domain.CmdResult;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import org.springframework.web.multipart.MultipartFile;
@@ -50,6 +51,11 @@ public interface CmdService extends WebhookService {
      */
     void save(Cmd cmd);
 
+    /**
+     * Save properties of cmd list in batch
+     */
+    void saveAll(Collection<Cmd> cmds);
+
     /**
      * Find cmd obj by id
      *
@@ -25,7 +25,6 @@ import static com.flow.platform.domain.CmdType.STOP;
 
 import com.flow.platform.cc.config.QueueConfig;
 import com.flow.platform.cc.dao.CmdDao;
-import com.flow.platform.cc.dao.CmdLogDao;
 import com.flow.platform.cc.dao.CmdResultDao;
 import com.flow.platform.cc.domain.CmdStatusItem;
 import com.flow.platform.cc.exception.AgentErr;
@@ -33,12 +32,12 @@ import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.core.exception.IllegalStatusException;
 import com.flow.platform.core.queue.PriorityMessage;
 import com.flow.platform.core.service.WebhookServiceImplBase;
+import com.flow.platform.core.timer.TimingWheel;
 import com.flow.platform.domain.Agent;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.AgentStatus;
 import com.flow.platform.domain.Cmd;
 import com.flow.platform.domain.CmdInfo;
-import com.flow.platform.domain.CmdLog;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdType;
 import com.flow.platform.domain.Zone;
@@ -47,11 +46,8 @@ import com.flow.platform.util.Logger;
 import com.flow.platform.util.zk.ZKClient;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -90,9 +86,6 @@ public class CmdServiceImpl extends WebhookServiceImplBase implements CmdService
     @Autowired
     private CmdResultDao cmdResultDao;
 
-    @Autowired
-    private Path cmdLogDir;
-
     /**
      * The queue item is cmd id as string
      */
@@ -100,11 +93,14 @@ public class CmdServiceImpl extends WebhookServiceImplBase implements CmdService
     private PlatformQueue<PriorityMessage> cmdQueue;
 
     @Autowired
-    private CmdLogDao cmdLogDao;
+    private CmdLogService cmdLogService;
 
     @Autowired
     protected ZKClient zkClient;
 
+    @Autowired
+    private TimingWheel timingWheel;
+
     private final Map<EnumSet<CmdType>, CmdValidator> cmdValidators = new HashMap<>();
 
     @PostConstruct
@@ -173,6 +169,11 @@ public class CmdServiceImpl extends WebhookServiceImplBase implements CmdService
         cmdDao.update(cmd);
     }
 
+    @Override
+    public void saveAll(Collection<Cmd> cmds) {
+        cmdDao.updateAll(cmds);
+    }
+
     @Override
     public Cmd find(String cmdId) {
         return cmdDao.get(cmdId);
@@ -201,6 +202,11 @@ public class CmdServiceImpl extends WebhookServiceImplBase implements CmdService
     @Override
     @Transactional(propagation = Propagation.NEVER)
     public Cmd enqueue(CmdInfo cmdInfo, int priority, int retry) {
+        // check before create, otherwise a pending cmd is left without queue item
+        if (cmdQueue.isFull()) {
+            throw new IllegalStatusException("Cmd queue is full, please retry later");
+        }
+
         Cmd cmd = create(cmdInfo, retry);
         PriorityMessage message = PriorityMessage.create(cmd.getId().getBytes(), priority);
         cmdQueue.enqueue(message);
@@ -234,6 +240,11 @@ public class CmdServiceImpl extends WebhookServiceImplBase implements CmdService
         // update cmd status
         save(cmd);
 
+        // cmd finished, no need to watch timeout
+        if (!cmd.isCurrent()) {
+            timingWheel.cancel(CmdDispatchServiceImpl.timeoutKey(cmdId));
+        }
+
         // compare exiting cmd result and update
         CmdResult inputResult = statusItem.getCmdResult();
 
@@ -255,19 +266,7 @@ public class CmdServiceImpl extends WebhookServiceImplBase implements CmdService
 
     @Override
     public void saveLog(String cmdId, MultipartFile file) {
-        CmdLog cmdLog = cmdLogDao.get(cmdId);
-        if (cmdLog == null) {
-            throw new IllegalArgumentException("Cmd not exist");
-        }
-
-        try {
-            Path target = Paths.get(cmdLogDir.toString(), file.getOriginalFilename());
-            Files.write(target, file.getBytes());
-            cmdLog.setLogPath(target.toString());
-            cmdLogDao.update(cmdLog);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        cmdLogService.save(cmdId, file);
     }
 
     /**
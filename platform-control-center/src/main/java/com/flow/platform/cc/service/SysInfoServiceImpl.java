@@ -56,7 +56,7 @@ public class SysInfoServiceImpl extends SysInfoServiceImplBase {
         infoLoaders.get(Category.CC).put(SystemInfo.Type.JVM, new JvmLoader());
 
         infoLoaders.get(Category.CC)
-            .put(SystemInfo.Type.DB, new DBInfoLoader(defaultDriverName, dbUrl, dbUsername, dbPassword));
+            .put(SystemInfo.Type.DB, new DBInfoLoader(defaultDriverName, dbUrl, dbUsername, dbPassword, routingDataSource));
 
         infoLoaders.get(Category.CC).put(SystemInfo.Type.SERVER, new AppServerLoader());
 
@@ -22,6 +22,7 @@ import com.flow.platform.cloud.InstanceManager;
 import com.flow.platform.core.context.ContextEvent;
 import com.flow.platform.core.context.SpringContext;
 import com.flow.platform.domain.Agent;
+import com.flow.platform.domain.AgentCapacity;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.AgentSettings;
 import com.flow.platform.domain.AgentStatus;
@@ -31,7 +32,10 @@ import com.flow.platform.domain.CmdType;
 import com.flow.platform.domain.Instance;
 import com.flow.platform.domain.Zone;
 import com.flow.platform.util.Logger;
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.trace.TrafficRecorder;
 import com.flow.platform.util.zk.ZKClient;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import java.util.HashMap;
 import java.util.List;
@@ -77,6 +81,9 @@ public class ZoneServiceImpl implements ZoneService, ContextEvent {
     @Autowired
     protected ZKClient zkClient;
 
+    @Autowired
+    private TrafficRecorder trafficRecorder;
+
     private final Map<Zone, ZoneEventListener> zoneEventWatchers = new HashMap<>();
 
     @Override
@@ -119,7 +126,7 @@ public class ZoneServiceImpl implements ZoneService, ContextEvent {
         }
 
         ZoneEventListener zoneEventWatcher = zoneEventWatchers.computeIfAbsent(zone, ZoneEventListener::new);
-        zkClient.watchChildren(zonePath, zoneEventWatcher);
+        zkClient.watchChildren(zonePath, true, zoneEventWatcher);
         return zonePath;
     }
 
@@ -235,19 +242,50 @@ public class ZoneServiceImpl implements ZoneService, ContextEvent {
 
         @Override
         public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+            final long start = System.currentTimeMillis();
             final Type eventType = event.getType();
             final String path = event.getData().getPath();
             final String name = ZKHelper.getNameFromPath(path);
             LOGGER.debugMarker("ZoneEventListener", "Receive zookeeper event %s %s", eventType, path);
 
-            if (eventType == Type.CHILD_ADDED || eventType == Type.CHILD_UPDATED) {
-                agentService.report(new AgentPath(zone.getName(), name), AgentStatus.IDLE);
-                return;
+            try {
+                if (eventType == Type.CHILD_ADDED) {
+                    AgentPath agentPath = new AgentPath(zone.getName(), name);
+                    agentService.report(agentPath, AgentStatus.IDLE);
+                    agentService.reportCapacity(agentPath, parseCapacity(event.getData().getData()));
+                    return;
+                }
+
+                // node data updated by agent capacity report only, agent status must not be reset
+                if (eventType == Type.CHILD_UPDATED) {
+                    AgentPath agentPath = new AgentPath(zone.getName(), name);
+                    agentService.reportCapacity(agentPath, parseCapacity(event.getData().getData()));
+                    return;
+                }
+
+                if (eventType == Type.CHILD_REMOVED) {
+                    agentService.report(new AgentPath(zone.getName(), name), AgentStatus.OFFLINE);
+                    return;
+                }
+            } finally {
+                trafficRecorder.record(TrafficRecord.Type.AGENT_EVENT, start, path,
+                    ImmutableMap.of(TrafficRecord.HEADER_AGENT_EVENT, eventType.name()), event.getData().getData());
+            }
+        }
+
+        /**
+         * Parse agent capacity from node data, null if agent not publish capacity
+         */
+        private AgentCapacity parseCapacity(byte[] data) {
+            if (data == null || data.length == 0) {
+                return null;
             }
 
-            if (eventType == Type.CHILD_REMOVED) {
-                agentService.report(new AgentPath(zone.getName(), name), AgentStatus.OFFLINE);
-                return;
+            try {
+                return AgentCapacity.parse(data, AgentCapacity.class);
+            } catch (Throwable e) {
+                LOGGER.warn("Invalid agent capacity data: %s", e.getMessage());
+                return null;
             }
         }
     }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.cc.util;
+
+import com.flow.platform.cc.domain.CmdLogFile;
+import com.flow.platform.util.http.HttpURL;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Send zipped cmd log to http response with single byte range and conditional request support,
+ * the file content is transferred by zero-copy
+ *
+ * @author yang
+ */
+public final class CmdLogSender {
+
+    private final static String CONTENT_TYPE = "application/zip";
+
+    // request attributes of tomcat sendfile
+    private final static String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private final static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private final static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private final static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final static String BYTES_UNIT = "bytes=";
+
+    public static void send(CmdLogFile logFile, HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+
+        final long size = logFile.getSize();
+        final String etag = logFile.getEtag();
+
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", logFile.getLastModified());
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Cache-Control", "private, no-cache");
+
+        if (isNotModified(logFile, request)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = size - 1;
+
+        String range = request.getHeader("Range");
+        if (range != null && isIfRangeMatched(logFile, request)) {
+            long[] parsed = parseRange(range, size);
+
+            if (parsed == null) {
+                response.setHeader("Content-Range", "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+
+            // empty array means invalid or multiple ranges, ignore it and send full content
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, size));
+            }
+        }
+
+        final long length = end - start + 1;
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Content-Length", Long.toString(length));
+        String fileName = logFile.getPath().getFileName().toString();
+        response.setHeader("Content-Disposition", HttpURL.contentDisposition(fileName));
+
+        if (Objects.equals(request.getMethod(), "HEAD") || length <= 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, logFile.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    private static boolean isNotModified(CmdLogFile logFile, HttpServletRequest request) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(logFile.getEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+        return ifModifiedSince != -1 && logFile.getLastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Range only applied if If-Range absent or matches current etag or last modified time
+     */
+    private static boolean isIfRangeMatched(CmdLogFile logFile, HttpServletRequest request) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(logFile.getEtag());
+        }
+
+        long date = getDateHeader(request, "If-Range");
+        return date != -1 && logFile.getLastModified() / 1000 == date / 1000;
+    }
+
+    /**
+     * Parse single byte range as 'bytes=a-b', 'bytes=a-' or 'bytes=-n'
+     *
+     * @return [start, end] of range, empty array if invalid or multiple ranges, null if not satisfiable
+     */
+    private static long[] parseRange(String range, long size) {
+        if (!range.startsWith(BYTES_UNIT)) {
+            return new long[0];
+        }
+
+        String spec = range.substring(BYTES_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (spec.contains(",") || dash < 0) {
+            return new long[0];
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            // suffix range
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return null;
+                }
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+
+            if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                return new long[0];
+            }
+
+            if (start >= size) {
+                return null;
+            }
+
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private CmdLogSender() {
+    }
+}
@@ -28,6 +28,10 @@ import org.springframework.stereotype.Component;
 @Component
 public class ZKHelper {
 
+    private final static String INBOX_SUFFIX = "-inbox";
+
+    private final static String INBOX_ITEM_PREFIX = "cmd-";
+
     private static String ROOT_NODE;
 
     @Value("${zk.node.root}")
@@ -53,6 +57,20 @@ public class ZKHelper {
         return ZKPaths.makePath(ROOT_NODE, agentPath.getZone(), agentPath.getName());
     }
 
+    /**
+     * Get persistent cmd inbox path for agent, ex: /flow-agents-inbox/{zone}/{name}
+     */
+    public static String buildInboxPath(AgentPath agentPath) {
+        return ZKPaths.makePath(ROOT_NODE + INBOX_SUFFIX, agentPath.getZone(), agentPath.getName());
+    }
+
+    /**
+     * Get node path prefix for new cmd in agent inbox
+     */
+    public static String buildInboxItemPath(AgentPath agentPath) {
+        return ZKPaths.makePath(buildInboxPath(agentPath), INBOX_ITEM_PREFIX);
+    }
+
     public static String getNameFromPath(String path) {
         return ZKPaths.getNodeFromPath(path);
     }
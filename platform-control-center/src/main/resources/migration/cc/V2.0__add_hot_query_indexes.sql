@@ -0,0 +1,17 @@
+USE flow_cc_db;
+
+-- cmd list by agent path and status order by created date
+CREATE INDEX `idx_cmd_agent_status` ON `cmd` (`agent_zone`, `agent_name`, `status`, `created_date`);
+
+-- cmd list by session id
+CREATE INDEX `idx_cmd_session_id` ON `cmd` (`session_id`);
+
+-- cmd list by status for timeout check
+CREATE INDEX `idx_cmd_status` ON `cmd` (`status`, `created_date`);
+
+-- agent list by zone and status for agent allocation
+CREATE INDEX `idx_agent_zone_status` ON `agent` (`agent_zone`, `status`);
+
+-- agent find by session id or token
+CREATE INDEX `idx_agent_session_id` ON `agent` (`session_id`);
+CREATE INDEX `idx_agent_token` ON `agent` (`token`);
@@ -23,14 +23,19 @@ import com.flow.platform.cc.dao.CmdResultDao;
 import com.flow.platform.cc.resource.PropertyResourceLoader;
 import com.flow.platform.cc.util.ZKHelper;
 import com.flow.platform.domain.AgentPath;
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.codec.Codecs;
 import com.flow.platform.util.zk.ZKClient;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 import java.util.stream.Stream;
 import javax.annotation.PostConstruct;
 import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.ZKPaths;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -125,8 +130,8 @@ public abstract class TestBase {
 
     @AfterClass
     public static void afterClass() throws IOException {
-        // clean up cmd log folder
-        Stream<Path> list = Files.list(CMD_LOG_DIR);
+        // clean up cmd log folder include archived logs
+        Stream<Path> list = Files.walk(CMD_LOG_DIR).filter(Files::isRegularFile);
         list.forEach(path -> {
             try {
                 Files.deleteIfExists(path);
@@ -143,6 +148,18 @@ public abstract class TestBase {
         return agentPath;
     }
 
+    /**
+     * Get the latest cmd sent to agent inbox
+     */
+    protected Cmd getLatestInboxCmd(AgentPath agentPath) {
+        String inboxPath = ZKHelper.buildInboxPath(agentPath);
+        List<String> children = zkClient.getChildren(inboxPath);
+        Collections.sort(children);
+
+        byte[] raw = zkClient.getData(ZKPaths.makePath(inboxPath, children.get(children.size() - 1)));
+        return Codecs.decode(raw, Cmd.class);
+    }
+
     protected void deleteNodeWithChildren(String node) {
         if (!zkClient.exist(node)) {
             return;
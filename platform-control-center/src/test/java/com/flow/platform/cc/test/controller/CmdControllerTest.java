@@ -36,8 +36,9 @@ import com.flow.platform.domain.CmdReport;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
 import com.flow.platform.domain.CmdType;
-import com.flow.platform.domain.Jsonable;
 import com.flow.platform.domain.Zone;
+import com.flow.platform.domain.codec.BinaryCodec;
+import com.flow.platform.domain.codec.Codecs;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.google.common.collect.Sets;
 import java.net.URL;
@@ -119,6 +120,35 @@ public class CmdControllerTest extends TestBase {
         Assert.assertTrue(loaded.getStatus().equals(CmdStatus.EXECUTED));
     }
 
+    @Test
+    public void should_update_cmd_status_with_binary_report() throws Throwable {
+        // given:
+        String zone = "test-mos-mac";
+        String agent = "test-002";
+
+        AgentPath path = new AgentPath(zone, agent);
+        agentService.report(path, AgentStatus.IDLE);
+        Thread.sleep(1000);
+
+        CmdInfo base = new CmdInfo(zone, agent, CmdType.STOP, null);
+        Cmd cmd = cmdService.create(base);
+
+        // when:
+        CmdReport postData = new CmdReport(cmd.getId(), CmdStatus.EXECUTED, new CmdResult());
+
+        MockHttpServletRequestBuilder content = post("/cmd/report")
+            .contentType(MediaType.parseMediaType(BinaryCodec.CONTENT_TYPE))
+            .content(Codecs.BINARY.encode(postData));
+
+        this.mockMvc.perform(content).andDo(print()).andExpect(status().isOk());
+
+        // then: wait queue processing and check status
+        Thread.sleep(2000);
+        Cmd loaded = cmdService.find(cmd.getId());
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(CmdStatus.EXECUTED, loaded.getStatus());
+    }
+
     @Test
     public void should_send_cmd_to_agent() throws Throwable {
         // given:
@@ -157,11 +187,8 @@ public class CmdControllerTest extends TestBase {
         Assert.assertEquals(2, cmdInfo.getInputs().size());
         Assert.assertEquals("/user/flow", cmdInfo.getWorkingDir());
 
-        // then: check node data
-        byte[] raw = zkClient.getData(path);
-        Assert.assertNotNull(raw);
-
-        Cmd received = Jsonable.parse(raw, Cmd.class);
+        // then: check cmd in agent inbox
+        Cmd received = getLatestInboxCmd(cmdInfo.getAgentPath());
         Assert.assertNotNull(received);
         Assert.assertEquals(cmdInfo, received);
         Assert.assertEquals(2, received.getInputs().size());
@@ -212,6 +239,53 @@ public class CmdControllerTest extends TestBase {
         Assert.assertTrue(response.getHeader("Content-Disposition").contains(originalFilename));
     }
 
+    @Test
+    public void should_download_log_with_range_and_etag() throws Throwable {
+        // given: uploaded zipped log
+        byte[] data = "0123456789".getBytes();
+        Cmd cmd = cmdService.create(new CmdInfo("test-zone-1", "test-agent-1", CmdType.RUN_SHELL, "~/hello.sh"));
+
+        this.mockMvc.perform(fileUpload("/cmd/log/upload")
+            .file(new MockMultipartFile("file", cmd.getId() + ".out.zip", "application/zip", data))
+            .file(new MockMultipartFile("cmdId", "", "text/plain", cmd.getId().getBytes())))
+            .andExpect(status().isOk());
+
+        // when: download with range
+        MockHttpServletResponse response = this.mockMvc.perform(get("/cmd/log/download")
+            .param("cmdId", cmd.getId())
+            .header("Range", "bytes=2-5"))
+            .andExpect(status().isPartialContent())
+            .andReturn().getResponse();
+
+        // then:
+        Assert.assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        Assert.assertEquals("2345", response.getContentAsString());
+
+        // when: download with etag
+        String etag = response.getHeader("ETag");
+        Assert.assertNotNull(etag);
+
+        this.mockMvc.perform(get("/cmd/log/download")
+            .param("cmdId", cmd.getId())
+            .header("If-None-Match", etag))
+            .andExpect(status().isNotModified());
+
+        // when: download with range out of file size
+        this.mockMvc.perform(get("/cmd/log/download")
+            .param("cmdId", cmd.getId())
+            .header("Range", "bytes=100-"))
+            .andExpect(status().isRequestedRangeNotSatisfiable());
+
+        // when: download with suffix range
+        response = this.mockMvc.perform(get("/cmd/log/download")
+            .param("cmdId", cmd.getId())
+            .header("Range", "bytes=-3"))
+            .andExpect(status().isPartialContent())
+            .andReturn().getResponse();
+
+        Assert.assertEquals("789", response.getContentAsString());
+    }
+
     @Test
     public void should_raise_exception_if_illegal_parameter_for_queue() throws Exception {
         // given:
@@ -29,6 +29,7 @@ import com.flow.platform.cc.service.ZoneService;
 import com.flow.platform.cc.test.TestBase;
 import com.flow.platform.cc.util.ZKHelper;
 import com.flow.platform.domain.Agent;
+import com.flow.platform.domain.AgentCapacity;
 import com.flow.platform.domain.AgentPath;
 import com.flow.platform.domain.AgentSettings;
 import com.flow.platform.domain.AgentStatus;
@@ -145,6 +146,36 @@ public class AgentServiceTest extends TestBase {
         Assert.assertTrue(agentService.listForOnline(zoneName).contains(new Agent(zoneName, agentName)));
     }
 
+    @Test
+    public void should_find_available_agent_by_capacity() throws Throwable {
+        // given: agents with different capacity in node data
+        String zoneName = "ut-test-zone-capacity";
+        zoneService.createZone(new Zone(zoneName, MOCK_PROVIDER_NAME));
+
+        AgentCapacity small = new AgentCapacity(1.0, 512, 10240, 2);
+        AgentCapacity large = new AgentCapacity(8.0, 16384, 10240, 2);
+        zkClient.createEphemeral(ZKHelper.buildPath(zoneName, "agent-small"), small.toBytes());
+        zkClient.createEphemeral(ZKHelper.buildPath(zoneName, "agent-large"), large.toBytes());
+        zkClient.createEphemeral(ZKHelper.buildPath(zoneName, "agent-unknown"), null);
+        Thread.sleep(1000);
+
+        // when: find agent for cmd requires 4 cores
+        AgentCapacity demand = new AgentCapacity(4.0, 1024, 0, 1);
+        List<Agent> available = agentService.findAvailable(zoneName, demand);
+
+        // then: agent with enough capacity is the first, agent without capacity is the last
+        Assert.assertEquals(2, available.size());
+        Assert.assertEquals("agent-large", available.get(0).getName());
+        Assert.assertEquals("agent-unknown", available.get(1).getName());
+
+        // when: agent capacity updated
+        zkClient.setData(ZKHelper.buildPath(zoneName, "agent-small"), large.toBytes());
+        Thread.sleep(1000);
+
+        // then: both agents are fitted
+        Assert.assertEquals(3, agentService.findAvailable(zoneName, demand).size());
+    }
+
     @Test
     public void should_batch_report_agent() throws Throwable {
         // given: define zones
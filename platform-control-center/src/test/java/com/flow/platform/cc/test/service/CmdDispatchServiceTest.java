@@ -169,7 +169,7 @@ public class CmdDispatchServiceTest extends TestBase {
         cmdDispatchService.dispatch(cmdService.create(cmdToDelSession));
 
         // then: new kill cmd should been sent to agent
-        Cmd killCmd = Cmd.parse(zkClient.getData(ZKHelper.buildPath(agentPath)), Cmd.class);
+        Cmd killCmd = getLatestInboxCmd(agentPath);
         Assert.assertNotNull(killCmd);
         Assert.assertEquals(CmdType.KILL, killCmd.getType());
         Assert.assertNotEquals(cmd.getId(), killCmd.getId());
@@ -199,7 +199,7 @@ public class CmdDispatchServiceTest extends TestBase {
         cmdDispatchService.dispatch(cmdService.create(cmdToDelSession));
 
         // then: cmd in agent not changed
-        Cmd notChangeCmd = Cmd.parse(zkClient.getData(ZKHelper.buildPath(agentPath)), Cmd.class);
+        Cmd notChangeCmd = getLatestInboxCmd(agentPath);
         Assert.assertNotNull(notChangeCmd);
         Assert.assertEquals(CmdType.RUN_SHELL, notChangeCmd.getType());
         Assert.assertEquals(cmd.getId(), notChangeCmd.getId());
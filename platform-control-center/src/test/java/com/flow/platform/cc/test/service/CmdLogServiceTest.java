@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.cc.test.service;
+
+import com.flow.platform.cc.dao.CmdLogDao;
+import com.flow.platform.cc.domain.CmdLogFile;
+import com.flow.platform.cc.service.CmdLogService;
+import com.flow.platform.cc.service.CmdService;
+import com.flow.platform.cc.test.TestBase;
+import com.flow.platform.core.exception.NotFoundException;
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.CmdInfo;
+import com.flow.platform.domain.CmdLog;
+import com.flow.platform.domain.CmdType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockMultipartFile;
+
+/**
+ * @author yang
+ */
+public class CmdLogServiceTest extends TestBase {
+
+    @Autowired
+    private CmdLogService cmdLogService;
+
+    @Autowired
+    private CmdService cmdService;
+
+    @Autowired
+    private CmdLogDao cmdLogDao;
+
+    @Test
+    public void should_save_and_find_log_from_index() throws Throwable {
+        // given:
+        Cmd cmd = cmdService.create(new CmdInfo("test-zone", "test-agent", CmdType.RUN_SHELL, "/test.sh"));
+        byte[] data = "hello log".getBytes();
+        String filename = cmd.getId() + ".out.zip";
+
+        // when:
+        cmdLogService.save(cmd.getId(), new MockMultipartFile("file", filename, "application/zip", data));
+
+        // then: find same log file with etag of content
+        CmdLogFile logFile = cmdLogService.find(cmd.getId());
+        Assert.assertEquals(Paths.get(cmdLogDir.toString(), filename), logFile.getPath());
+        Assert.assertEquals(data.length, logFile.getSize());
+        Assert.assertTrue(logFile.getEtag().startsWith("\""));
+
+        // then: indexed log should not be archived even if it is old
+        Files.setLastModifiedTime(logFile.getPath(), FileTime.fromMillis(0));
+        cmdLogService.archive();
+        Assert.assertTrue(Files.exists(logFile.getPath()));
+    }
+
+    @Test
+    public void should_archive_old_log_and_restore_when_find() throws Throwable {
+        // given: old log which not in index
+        Cmd cmd = cmdService.create(new CmdInfo("test-zone", "test-agent", CmdType.RUN_SHELL, "/test.sh"));
+        byte[] data = "old log content".getBytes();
+        Path path = Paths.get(cmdLogDir.toString(), cmd.getId() + ".out.zip");
+        Files.write(path, data);
+
+        long lastModified = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified));
+
+        CmdLog cmdLog = cmdLogDao.get(cmd.getId());
+        cmdLog.setLogPath(path.toString());
+        cmdLogDao.update(cmdLog);
+
+        // when:
+        Assert.assertTrue(cmdLogService.archive() >= 1);
+
+        // then: hot log moved to cold dir
+        Assert.assertFalse(Files.exists(path));
+        Assert.assertTrue(Files.exists(Paths.get(cmdLogDir.toString(), "cold", path.getFileName() + ".gz")));
+
+        // when: find archived log
+        CmdLogFile logFile = cmdLogService.find(cmd.getId());
+
+        // then: log restored with same content and last modified time
+        Assert.assertTrue(Files.exists(path));
+        Assert.assertArrayEquals(data, Files.readAllBytes(path));
+        Assert.assertEquals(lastModified / 1000, logFile.getLastModified() / 1000);
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void should_raise_not_found_if_log_not_uploaded() {
+        Cmd cmd = cmdService.create(new CmdInfo("test-zone", "test-agent", CmdType.RUN_SHELL, "/test.sh"));
+        cmdLogService.find(cmd.getId());
+    }
+}
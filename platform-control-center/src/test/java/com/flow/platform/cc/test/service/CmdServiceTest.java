@@ -34,7 +34,6 @@ import com.flow.platform.domain.CmdInfo;
 import com.flow.platform.domain.CmdResult;
 import com.flow.platform.domain.CmdStatus;
 import com.flow.platform.domain.CmdType;
-import com.flow.platform.domain.Jsonable;
 import com.flow.platform.domain.Zone;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.util.DateUtil;
@@ -353,9 +352,8 @@ public class CmdServiceTest extends TestBase {
         // then: check agent status
         Assert.assertEquals(AgentStatus.BUSY, agentService.find(cmd.getAgentPath()).getStatus());
 
-        // then: check zk node received the same cmd
-        byte[] raw = zkClient.getData(agentPath);
-        Cmd loaded = Jsonable.parse(raw, Cmd.class);
+        // then: check zk inbox received the same cmd
+        Cmd loaded = getLatestInboxCmd(cmd.getAgentPath());
         Assert.assertEquals(cmdInfo, loaded);
         Thread.sleep(1000); // mock network delay
 
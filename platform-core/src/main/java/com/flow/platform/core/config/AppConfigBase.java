@@ -20,6 +20,7 @@ import com.flow.platform.core.context.SpringContext;
 import com.flow.platform.core.sysinfo.PropertySystemInfo;
 import com.flow.platform.core.sysinfo.SystemInfo.Status;
 import com.flow.platform.core.sysinfo.SystemInfo.Type;
+import com.flow.platform.core.timer.TimingWheel;
 import com.flow.platform.util.DateUtil;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,6 +49,14 @@ public abstract class AppConfigBase {
         return new SpringContext();
     }
 
+    /**
+     * Shared timer for cmd, job and agent session timeout with 1 second tick
+     */
+    @Bean
+    public TimingWheel timingWheel() {
+        return new TimingWheel(taskExecutor(), 1000, 64);
+    }
+
     @Bean
     public PropertySystemInfo systemInfo() {
         PropertySystemInfo info = new PropertySystemInfo(Status.RUNNING, Type.CONFIG);
@@ -16,8 +16,33 @@
 
 package com.flow.platform.core.config;
 
+import com.flow.platform.core.dao.migration.QueryPlanChecker;
+import com.flow.platform.core.dao.migration.SchemaMigrator;
+import com.flow.platform.core.dao.routing.ReadReplica;
+import com.flow.platform.core.dao.routing.ReadReplicaInterceptor;
+import com.flow.platform.core.dao.routing.RoutingDataSource;
+import com.flow.platform.core.dao.routing.WriteTrackingInterceptor;
+import com.flow.platform.util.Logger;
+import com.google.common.base.Splitter;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportResource;
+import org.springframework.context.annotation.Role;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 /**
@@ -28,4 +53,105 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 @EnableTransactionManagement
 public class DatabaseConfig {
 
-}
\ No newline at end of file
+    private final static Logger LOGGER = new Logger(DatabaseConfig.class);
+
+    @Value("${jdbc.replica.urls}")
+    private String replicaUrls;
+
+    @Value("${jdbc.replica.pool.size}")
+    private int replicaPoolSize;
+
+    @Value("${jdbc.replica.lag.max}")
+    private long replicaMaxLag;
+
+    @Value("${jdbc.replica.lag.query}")
+    private String replicaLagQuery;
+
+    @Value("${jdbc.migration.location}")
+    private String migrationLocation;
+
+    @Autowired
+    private HikariConfig hikariConfig;
+
+    /**
+     * Schema migrator applied on primary database when context initialized
+     */
+    @Bean
+    public SchemaMigrator schemaMigrator(@Qualifier("hikariCpDataSource") DataSource primary) {
+        return new SchemaMigrator(primary, migrationLocation);
+    }
+
+    @Bean
+    public QueryPlanChecker queryPlanChecker(@Qualifier("hikariCpDataSource") DataSource primary) {
+        return new QueryPlanChecker(primary, migrationLocation);
+    }
+
+    @Bean
+    public RoutingDataSource routingDataSource(@Qualifier("hikariCpDataSource") DataSource primary) {
+        List<DataSource> replicas = new ArrayList<>();
+
+        int index = 0;
+        for (String url : Splitter.on(',').trimResults().omitEmptyStrings().split(replicaUrls)) {
+            replicas.add(createReplica(url, index++));
+        }
+
+        LOGGER.trace("Num of db replicas: %s", replicas.size());
+        return new RoutingDataSource(primary, replicas, replicaMaxLag, replicaLagQuery);
+    }
+
+    /**
+     * Data source for session factory, delay connection fetching until first statement
+     * so that the routing data source can see transaction read only flag
+     */
+    @Bean
+    public LazyConnectionDataSourceProxy routingDataSourceProxy(RoutingDataSource routingDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+        proxy.setTargetDataSource(routingDataSource);
+
+        // set defaults explicitly, otherwise proxy fetches a connection to detect them
+        proxy.setDefaultAutoCommit(hikariConfig.isAutoCommit());
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        return proxy;
+    }
+
+    /**
+     * Hibernate entity interceptor to mark write of current thread for read your writes routing
+     */
+    @Bean
+    public WriteTrackingInterceptor writeTrackingInterceptor() {
+        return new WriteTrackingInterceptor();
+    }
+
+    /**
+     * Advisor for method with @ReadReplica, it is infrastructure role
+     * that can be applied by the auto proxy creator of transaction management
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public Advisor readReplicaAdvisor() {
+        ComposablePointcut pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(ReadReplica.class, true))
+            .union(AnnotationMatchingPointcut.forMethodAnnotation(ReadReplica.class));
+
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, new ReadReplicaInterceptor());
+
+        // should be applied before transaction interceptor
+        advisor.setOrder(Integer.MIN_VALUE);
+        return advisor;
+    }
+
+    private DataSource createReplica(String url, int index) {
+        HikariConfig config = new HikariConfig();
+        config.setDriverClassName(hikariConfig.getDriverClassName());
+        config.setJdbcUrl(url);
+        config.setUsername(hikariConfig.getUsername());
+        config.setPassword(hikariConfig.getPassword());
+        config.setPoolName(hikariConfig.getPoolName() + "-replica-" + index);
+        config.setMaximumPoolSize(replicaPoolSize);
+        config.setAutoCommit(hikariConfig.isAutoCommit());
+        config.setConnectionTimeout(hikariConfig.getConnectionTimeout());
+        config.setDataSourceProperties(hikariConfig.getDataSourceProperties());
+        config.setReadOnly(true);
+        config.setRegisterMbeans(true);
+        return new HikariDataSource(config);
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.flow.platform.core.context;
 
+import com.flow.platform.core.dao.migration.QueryPlanChecker;
+import com.flow.platform.core.dao.migration.SchemaMigrator;
 import com.flow.platform.util.Logger;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
@@ -28,6 +30,17 @@ public abstract class AbstractContextInitHandler implements ApplicationListener<
 
     @Override
     public void onApplicationEvent(ContextRefreshedEvent event) {
+        // apply schema migrations before any queue consumer started
+        for (String migratorName : getSpringContext().getBeanNameByType(SchemaMigrator.class)) {
+            SchemaMigrator migrator = (SchemaMigrator) getSpringContext().getBean(migratorName);
+            migrator.migrate();
+        }
+
+        for (String checkerName : getSpringContext().getBeanNameByType(QueryPlanChecker.class)) {
+            QueryPlanChecker checker = (QueryPlanChecker) getSpringContext().getBean(checkerName);
+            checker.check();
+        }
+
         // init queue consumer
         for (String eventClassName : getSpringContext().getBeanNameByType(ContextEvent.class)) {
             ContextEvent eventClass = (ContextEvent) getSpringContext().getBean(eventClassName);
@@ -16,20 +16,26 @@
 
 package com.flow.platform.core.dao;
 
+import com.flow.platform.core.dao.routing.RoutingContext;
 import com.flow.platform.core.domain.Page;
 import com.flow.platform.core.domain.Pageable;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import org.hibernate.CacheMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * @author yh@firim
@@ -37,6 +43,11 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public abstract class AbstractBaseDao<K extends Serializable, T> implements BaseDao<K, T> {
 
+    /**
+     * Default num of statements in jdbc batch if hibernate.jdbc.batch_size not set
+     */
+    private final static int DEFAULT_BATCH_SIZE = 50;
+
     @FunctionalInterface
     public interface Executable<O> {
 
@@ -56,7 +67,13 @@ public abstract class AbstractBaseDao<K extends Serializable, T> implements Base
 
     @Override
     public Session getSession() {
-        return sessionFactory.getCurrentSession();
+        Session session = sessionFactory.getCurrentSession();
+
+        // entity loaded from lagging replica should not be put into second level cache
+        if (RoutingContext.isRead()) {
+            session.setCacheMode(CacheMode.GET);
+        }
+        return session;
     }
 
     protected abstract Class<T> getEntityClass();
@@ -119,6 +136,26 @@ public abstract class AbstractBaseDao<K extends Serializable, T> implements Base
         });
     }
 
+    @Override
+    public List<T> saveAll(final Collection<T> objs) {
+        return execute(session -> {
+            List<T> saved = new ArrayList<>(objs.size());
+            batch(session, objs, obj -> {
+                session.save(obj);
+                saved.add(obj);
+            });
+            return saved;
+        });
+    }
+
+    @Override
+    public void updateAll(final Collection<T> objs) {
+        execute(session -> {
+            batch(session, objs, session::update);
+            return null;
+        });
+    }
+
     /**
      * Delete
      */
@@ -168,6 +205,51 @@ public abstract class AbstractBaseDao<K extends Serializable, T> implements Base
         });
     }
 
+    @Override
+    public void evict(final K key) {
+        sessionFactory.getCache().evictEntity(getEntityClass(), key);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    sessionFactory.getCache().evictEntity(getEntityClass(), key);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void evictAll() {
+        sessionFactory.getCache().evictEntityRegion(getEntityClass());
+    }
+
+    /**
+     * Apply action on each object and flush session every batch size,
+     * the statements will be sent by jdbc batch since inserts and updates are ordered
+     */
+    private void batch(Session session, Collection<T> objs, Consumer<T> action) {
+        Integer batchSize = session.getJdbcBatchSize();
+        if (batchSize == null) {
+            batchSize = sessionFactory.getSessionFactoryOptions().getJdbcBatchSize();
+        }
+
+        if (batchSize <= 0) {
+            batchSize = DEFAULT_BATCH_SIZE;
+        }
+
+        int count = 0;
+        for (T obj : objs) {
+            action.accept(obj);
+
+            if (++count % batchSize == 0) {
+                session.flush();
+            }
+        }
+
+        session.flush();
+    }
+
 }
 
 
@@ -40,12 +40,34 @@ public interface BaseDao<K extends Serializable, T> {
 
     void update(final T obj);
 
+    /**
+     * Save objects in jdbc batch
+     */
+    List<T> saveAll(final Collection<T> objs);
+
+    /**
+     * Update objects in jdbc batch
+     */
+    void updateAll(final Collection<T> objs);
+
     void delete(final T obj);
 
     List<T> list();
 
     Page<T> list(Pageable pageable);
 
+    /**
+     * Evict object from second level cache, should be called after object changed.
+     * It's evicted again after transaction completed if within transaction, since the cache is local
+     * to each instance and could be reloaded with stale value by concurrent read before commit
+     */
+    void evict(final K key);
+
+    /**
+     * Evict all objects of entity from second level cache
+     */
+    void evictAll();
+
     /**
      * Delete all data of table. should only used for test
      */
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.dao.migration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned migration script with file name format V{version}__{description}.sql, ex: V2.1__add_job_index.sql
+ *
+ * @author yang
+ */
+public class Migration implements Comparable<Migration> {
+
+    private final static Pattern FILE_NAME_PATTERN = Pattern.compile("^V([0-9]+(?:[._][0-9]+)*)__(.+)\\.sql$");
+
+    /**
+     * Parse migration from script file name, return null if name not matched
+     */
+    public static Migration parse(String fileName, String content) {
+        Matcher matcher = FILE_NAME_PATTERN.matcher(fileName);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        String version = matcher.group(1).replace('_', '.');
+        String description = matcher.group(2).replace('_', ' ');
+        return new Migration(version, description, fileName, content);
+    }
+
+    private final String version;
+
+    private final String description;
+
+    private final String script;
+
+    private final String content;
+
+    private final int[] versionParts;
+
+    public Migration(String version, String description, String script, String content) {
+        this.version = version;
+        this.description = description;
+        this.script = script;
+        this.content = content;
+
+        String[] parts = version.split("\\.");
+        this.versionParts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            versionParts[i] = Integer.parseInt(parts[i]);
+        }
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Checksum of script content, line separator and trailing spaces are ignored
+     */
+    public int checksum() {
+        CRC32 crc32 = new CRC32();
+        for (String line : content.split("\\r?\\n")) {
+            crc32.update(line.trim().getBytes(StandardCharsets.UTF_8));
+        }
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Split script to sql statements by ';' at line end, comment lines and USE statement are ignored
+     * since migration always applied to the configured data source
+     */
+    public List<String> statements() {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (String line : content.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--") || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            current.append(line).append('\n');
+
+            if (trimmed.endsWith(";")) {
+                addStatement(statements, current);
+                current.setLength(0);
+            }
+        }
+
+        addStatement(statements, current);
+        return statements;
+    }
+
+    @Override
+    public int compareTo(Migration o) {
+        int length = Math.max(versionParts.length, o.versionParts.length);
+        for (int i = 0; i < length; i++) {
+            int a = i < versionParts.length ? versionParts[i] : 0;
+            int b = i < o.versionParts.length ? o.versionParts[i] : 0;
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Migration{" +
+            "version='" + version + '\'' +
+            ", script='" + script + '\'' +
+            '}';
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String sql = current.toString().trim();
+        if (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1).trim();
+        }
+
+        if (sql.isEmpty() || sql.toUpperCase().startsWith("USE ")) {
+            return;
+        }
+
+        statements.add(sql);
+    }
+}
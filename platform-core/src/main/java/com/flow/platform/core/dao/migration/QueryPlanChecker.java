@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.dao.migration;
+
+import com.flow.platform.util.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import javax.sql.DataSource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+/**
+ * Run EXPLAIN for hot queries defined in {location}/hot_queries.properties at startup,
+ * and warn the query which will be executed by full table scan:
+ * - mysql: access type is ALL and no possible keys
+ * - others (h2): plan contains 'tableScan'
+ *
+ * The property key is query name and value is sql with literal parameters
+ *
+ * @author yang
+ */
+public class QueryPlanChecker {
+
+    private final static Logger LOGGER = new Logger(QueryPlanChecker.class);
+
+    public final static String HOT_QUERIES_FILE = "hot_queries.properties";
+
+    private final static String MYSQL_TYPE_COLUMN = "type";
+
+    private final static String MYSQL_KEYS_COLUMN = "possible_keys";
+
+    private final static String FULL_SCAN_TYPE = "ALL";
+
+    private final static String H2_TABLE_SCAN = "tableScan";
+
+    private final DataSource dataSource;
+
+    private final String location;
+
+    public QueryPlanChecker(DataSource dataSource, String location) {
+        this.dataSource = dataSource;
+        this.location = location;
+    }
+
+    /**
+     * Check hot queries
+     *
+     * @return names of query with full table scan
+     */
+    public List<String> check() {
+        Properties queries = load();
+        List<String> fullScans = new ArrayList<>();
+
+        if (queries.isEmpty()) {
+            return fullScans;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            for (String name : new TreeSet<>(queries.stringPropertyNames())) {
+                String sql = queries.getProperty(name);
+
+                try {
+                    if (isFullScan(connection, sql)) {
+                        fullScans.add(name);
+                        LOGGER.warn("Hot query '%s' is executed by full table scan: %s", name, sql);
+                    }
+                } catch (SQLException e) {
+                    LOGGER.warn("Unable to explain hot query '%s': %s", name, e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to check hot query plans: %s", e.getMessage());
+        }
+
+        LOGGER.trace("Hot query plan checked, %s of %s with full table scan", fullScans.size(), queries.size());
+        return fullScans;
+    }
+
+    private boolean isFullScan(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+
+            ResultSetMetaData metaData = rs.getMetaData();
+            int typeIndex = columnIndex(metaData, MYSQL_TYPE_COLUMN);
+            int keysIndex = columnIndex(metaData, MYSQL_KEYS_COLUMN);
+
+            while (rs.next()) {
+                // mysql explain has row for each table
+                if (typeIndex > 0) {
+                    if (FULL_SCAN_TYPE.equalsIgnoreCase(rs.getString(typeIndex))
+                        && (keysIndex < 0 || rs.getString(keysIndex) == null)) {
+                        return true;
+                    }
+                    continue;
+                }
+
+                String plan = rs.getString(1);
+                if (plan != null && plan.contains(H2_TABLE_SCAN)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private Properties load() {
+        Properties queries = new Properties();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+
+        try {
+            for (Resource resource : resolver.getResources(SchemaMigrator.pattern(location, HOT_QUERIES_FILE))) {
+                try (InputStream stream = resource.getInputStream()) {
+                    queries.load(stream);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to load hot queries from '%s': %s", location, e.getMessage());
+        }
+
+        return queries;
+    }
+
+    private static int columnIndex(ResultSetMetaData metaData, String name) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (name.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
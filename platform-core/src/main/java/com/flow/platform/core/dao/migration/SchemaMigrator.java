@@ -0,0 +1,354 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.dao.migration;
+
+import com.flow.platform.core.exception.IllegalStatusException;
+import com.flow.platform.util.Logger;
+import com.google.common.io.CharStreams;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * Apply versioned sql scripts V{version}__{description}.sql from migration location at startup:
+ * - scripts applied in version order, each version applied once and recorded in history table
+ * - checksum of applied script is verified, startup failed if applied script been modified
+ * - each executed statement is recorded in progress table, so a partially applied script resumes
+ *   from the failed statement on next startup since ddl cannot be rolled back in mysql
+ * - create index statement is skipped if index already exists, since mysql not support 'if not exists'
+ * - mysql named lock is used to avoid concurrent migration from multiple instances
+ *
+ * @author yang
+ */
+public class SchemaMigrator {
+
+    private final static Logger LOGGER = new Logger(SchemaMigrator.class);
+
+    public final static String HISTORY_TABLE = "flow_schema_history";
+
+    public final static String PROGRESS_TABLE = "flow_schema_progress";
+
+    private final static String LOCK_NAME = "flow_schema_migration";
+
+    private final static int LOCK_TIMEOUT = 60; // seconds
+
+    private final static Pattern CREATE_INDEX = Pattern.compile(
+        "^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+`?(\\w+)`?\\s+ON\\s+`?(\\w+)`?", Pattern.CASE_INSENSITIVE);
+
+    private final static String CREATE_HISTORY_TABLE = "CREATE TABLE IF NOT EXISTS " + HISTORY_TABLE + " ("
+        + "version VARCHAR(50) NOT NULL, "
+        + "description VARCHAR(200) NOT NULL, "
+        + "script VARCHAR(255) NOT NULL, "
+        + "checksum INT NOT NULL, "
+        + "installed_at TIMESTAMP NOT NULL, "
+        + "execution_time INT NOT NULL, "
+        + "PRIMARY KEY (version))";
+
+    private final static String CREATE_PROGRESS_TABLE = "CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE + " ("
+        + "version VARCHAR(50) NOT NULL, "
+        + "statement INT NOT NULL, "
+        + "checksum INT NOT NULL, "
+        + "PRIMARY KEY (version, statement))";
+
+    private final DataSource dataSource;
+
+    private final String location;
+
+    public SchemaMigrator(DataSource dataSource, String location) {
+        this.dataSource = dataSource;
+        this.location = location;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Load migrations from location and sort by version
+     */
+    public List<Migration> load() {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        List<Migration> migrations = new ArrayList<>();
+
+        try {
+            for (Resource resource : resolver.getResources(pattern(location, "V*__*.sql"))) {
+                try (Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+                    Migration migration = Migration.parse(resource.getFilename(), CharStreams.toString(reader));
+                    if (migration != null) {
+                        migrations.add(migration);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStatusException("Unable to load migration scripts from " + location, e);
+        }
+
+        Collections.sort(migrations);
+
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).compareTo(migrations.get(i - 1)) == 0) {
+                throw new IllegalStatusException("Duplicate migration version: " + migrations.get(i).getVersion());
+            }
+        }
+
+        return migrations;
+    }
+
+    /**
+     * Apply pending migrations
+     *
+     * @return num of applied migrations
+     */
+    public int migrate() {
+        List<Migration> migrations = load();
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean locked = lock(connection);
+
+            try {
+                return migrate(connection, migrations);
+            } finally {
+                if (locked) {
+                    unlock(connection);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStatusException("Unable to migrate schema: " + e.getMessage(), e);
+        }
+    }
+
+    private int migrate(Connection connection, List<Migration> migrations) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_HISTORY_TABLE);
+            statement.execute(CREATE_PROGRESS_TABLE);
+        }
+
+        Map<String, Integer> applied = applied(connection);
+        int numOfApplied = 0;
+
+        for (Migration migration : migrations) {
+            Integer checksum = applied.get(migration.getVersion());
+
+            if (checksum != null) {
+                if (checksum != migration.checksum()) {
+                    throw new IllegalStatusException(String.format(
+                        "Checksum mismatch for applied migration %s, script should not be modified after applied",
+                        migration.getScript()));
+                }
+                continue;
+            }
+
+            apply(connection, migration);
+            numOfApplied++;
+        }
+
+        LOGGER.trace("Schema migration from '%s' finished, %s of %s applied",
+            location, numOfApplied, migrations.size());
+        return numOfApplied;
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        Set<Integer> executed = executed(connection, migration);
+        if (!executed.isEmpty()) {
+            LOGGER.warn("Resume partially applied migration %s, %s statements skipped",
+                migration.getScript(), executed.size());
+        }
+
+        // ddl is auto committed in mysql, so statements are executed and recorded one by one
+        List<String> statements = migration.statements();
+        for (int i = 0; i < statements.size(); i++) {
+            if (executed.contains(i)) {
+                continue;
+            }
+
+            String sql = statements.get(i);
+            try (Statement statement = connection.createStatement()) {
+                if (isIndexExisted(connection, sql)) {
+                    LOGGER.warn("Index already exists, skip statement '%s' of %s", sql, migration.getScript());
+                } else {
+                    statement.execute(sql);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStatusException(String.format(
+                    "Fail to apply migration %s on statement '%s': %s", migration.getScript(), sql, e.getMessage()), e);
+            }
+
+            String insert = "INSERT INTO " + PROGRESS_TABLE + " (version, statement, checksum) VALUES (?, ?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(insert)) {
+                statement.setString(1, migration.getVersion());
+                statement.setInt(2, i);
+                statement.setInt(3, migration.checksum());
+                statement.executeUpdate();
+            }
+
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+
+        int duration = (int) (System.currentTimeMillis() - start);
+        String insert = "INSERT INTO " + HISTORY_TABLE
+            + " (version, description, script, checksum, installed_at, execution_time) VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            statement.setString(1, migration.getVersion());
+            statement.setString(2, migration.getDescription());
+            statement.setString(3, migration.getScript());
+            statement.setInt(4, migration.checksum());
+            statement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+            statement.setInt(6, duration);
+            statement.executeUpdate();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+            "DELETE FROM " + PROGRESS_TABLE + " WHERE version = ?")) {
+            statement.setString(1, migration.getVersion());
+            statement.executeUpdate();
+        }
+
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+
+        LOGGER.info("Migration %s applied in %s ms", migration.getScript(), duration);
+    }
+
+    private static boolean isIndexExisted(Connection connection, String sql) throws SQLException {
+        Matcher matcher = CREATE_INDEX.matcher(sql.trim());
+        if (!matcher.find()) {
+            return false;
+        }
+
+        String index = matcher.group(1);
+        String table = matcher.group(2);
+        DatabaseMetaData metaData = connection.getMetaData();
+
+        // table name might be stored in upper case, ex: h2
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, name, false, true)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Index of statements executed by previous failed run of the migration
+     */
+    private Set<Integer> executed(Connection connection, Migration migration) throws SQLException {
+        Set<Integer> executed = new HashSet<>();
+        String query = "SELECT statement, checksum FROM " + PROGRESS_TABLE + " WHERE version = ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, migration.getVersion());
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getInt(2) != migration.checksum()) {
+                        throw new IllegalStatusException(String.format(
+                            "Checksum mismatch for partially applied migration %s, fix schema and %s manually",
+                            migration.getScript(), PROGRESS_TABLE));
+                    }
+                    executed.add(rs.getInt(1));
+                }
+            }
+        }
+
+        return executed;
+    }
+
+    private Map<String, Integer> applied(Connection connection) throws SQLException {
+        Map<String, Integer> applied = new HashMap<>();
+
+        try (Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT version, checksum FROM " + HISTORY_TABLE)) {
+            while (rs.next()) {
+                applied.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+
+        return applied;
+    }
+
+    /**
+     * Acquire mysql named lock, return false if database not support it
+     */
+    private boolean lock(Connection connection) {
+        try (Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(String.format("SELECT GET_LOCK('%s', %s)", LOCK_NAME, LOCK_TIMEOUT))) {
+            if (rs.next() && rs.getInt(1) == 1) {
+                return true;
+            }
+            throw new IllegalStatusException("Timeout on waiting schema migration lock");
+        } catch (SQLException e) {
+            LOGGER.warn("Named lock not supported, migrate without lock: %s", e.getMessage());
+            return false;
+        }
+    }
+
+    private void unlock(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format("SELECT RELEASE_LOCK('%s')", LOCK_NAME));
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to release schema migration lock: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Resource pattern of location, the classpath*: prefix is applied if location without url prefix
+     */
+    static String pattern(String location, String fileName) {
+        String path = location.endsWith("/") ? location : location + "/";
+
+        if (path.startsWith(ResourceUtils.CLASSPATH_URL_PREFIX)
+            || path.startsWith(ResourceUtils.FILE_URL_PREFIX)
+            || path.startsWith(PathMatchingResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX)) {
+            return path + fileName;
+        }
+
+        return PathMatchingResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + path + fileName;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.dao.routing;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Thread bound routing state for RoutingDataSource
+ *
+ * @author yang
+ */
+public final class RoutingContext {
+
+    // nested depth of method with @ReadReplica
+    private final static ThreadLocal<Integer> REPLICA_DEPTH = ThreadLocal.withInitial(() -> 0);
+
+    // time in millis of last connection used for write, 0 means no write
+    private final static ThreadLocal<Long> LAST_WRITE_AT = ThreadLocal.withInitial(() -> 0L);
+
+    public static void enterReplica() {
+        REPLICA_DEPTH.set(REPLICA_DEPTH.get() + 1);
+    }
+
+    public static void exitReplica() {
+        int depth = REPLICA_DEPTH.get() - 1;
+        if (depth <= 0) {
+            REPLICA_DEPTH.remove();
+            return;
+        }
+        REPLICA_DEPTH.set(depth);
+    }
+
+    public static boolean isReplicaRequested() {
+        return REPLICA_DEPTH.get() > 0;
+    }
+
+    /**
+     * Is read only transaction, or replica requested out of transaction, which can be routed to replica
+     */
+    public static boolean isRead() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+            ? TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+            : isReplicaRequested();
+    }
+
+    public static void markWrite() {
+        LAST_WRITE_AT.set(System.currentTimeMillis());
+    }
+
+    /**
+     * Is read should stick on primary since write happened in the window
+     */
+    public static boolean isSticky(long windowInMillis) {
+        long lastWriteAt = LAST_WRITE_AT.get();
+        return lastWriteAt > 0 && System.currentTimeMillis() - lastWriteAt < windowInMillis;
+    }
+
+    /**
+     * Clean routing state, should be called on request start and end
+     */
+    public static void reset() {
+        REPLICA_DEPTH.remove();
+        LAST_WRITE_AT.remove();
+    }
+
+    private RoutingContext() {
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.dao.routing;
+
+import com.flow.platform.util.Logger;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Route connection to primary or replica database:
+ * - read only transaction, or method with @ReadReplica out of transaction goes to replica which lag less than max lag
+ * - read write transaction always goes to primary, even within method with @ReadReplica
+ * - fall back to primary if no replica available, or write happened within sticky window of current thread,
+ *   the write is marked by {@link WriteTrackingInterceptor} which should be set as hibernate entity interceptor
+ *
+ * Since the route decided on connection acquiring, it should be wrapped by LazyConnectionDataSourceProxy
+ * to let transaction attributes available before connection fetched
+ *
+ * @author yang
+ */
+public class RoutingDataSource extends AbstractRoutingDataSource {
+
+    private final static Logger LOGGER = new Logger(RoutingDataSource.class);
+
+    public final static String PRIMARY = "primary";
+
+    private final static String REPLICA_PREFIX = "replica-";
+
+    private final static int LAG_CHECK_PERIOD = 10 * 1000; // millisecond
+
+    // column name of lag from mysql 'SHOW SLAVE STATUS'
+    private final static String MYSQL_LAG_COLUMN = "Seconds_Behind_Master";
+
+    /**
+     * Replica state refreshed by lag query
+     */
+    private static class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        // replica lag in seconds, -1 means unknown, replication stopped or not configured
+        private volatile long lag = -1;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final long maxLagInSeconds;
+
+    private final String lagQuery;
+
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    /**
+     * @param primary primary data source
+     * @param replicas replica data sources, empty for primary only
+     * @param maxLagInSeconds replica lag over it will not be routed
+     * @param lagQuery sql to get lag in seconds, ex: SHOW SLAVE STATUS
+     */
+    public RoutingDataSource(DataSource primary, List<DataSource> replicas, long maxLagInSeconds, String lagQuery) {
+        this.primary = primary;
+        this.maxLagInSeconds = maxLagInSeconds;
+        this.lagQuery = lagQuery;
+
+        List<Replica> list = new ArrayList<>(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            list.add(new Replica(REPLICA_PREFIX + i, replicas.get(i)));
+        }
+        this.replicas = Collections.unmodifiableList(list);
+
+        Map<Object, Object> targets = new HashMap<>(replicas.size() + 1);
+        targets.put(PRIMARY, primary);
+        for (Replica replica : this.replicas) {
+            targets.put(replica.name, replica.dataSource);
+        }
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        refreshReplicaLag();
+    }
+
+    public boolean hasReplica() {
+        return !replicas.isEmpty();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        // write transaction always on primary even if replica requested, since the connection is read only,
+        // the write is marked by WriteTrackingInterceptor once statement actually executed
+        if (!RoutingContext.isRead()) {
+            return PRIMARY;
+        }
+
+        // read your writes
+        if (RoutingContext.isSticky(stickyWindowInMillis())) {
+            return PRIMARY;
+        }
+
+        Replica replica = nextReplica();
+        return replica == null ? PRIMARY : replica.name;
+    }
+
+    @Scheduled(initialDelay = 10 * 1000, fixedDelay = LAG_CHECK_PERIOD)
+    public void replicaLagTask() {
+        if (hasReplica()) {
+            refreshReplicaLag();
+        }
+    }
+
+    /**
+     * Load lag of each replica
+     */
+    public void refreshReplicaLag() {
+        for (Replica replica : replicas) {
+            long lag = queryLag(replica.dataSource);
+            if (lag != replica.lag) {
+                LOGGER.trace("Replica %s lag changed from %s to %s", replica.name, replica.lag, lag);
+            }
+            replica.lag = lag;
+        }
+    }
+
+    /**
+     * Get connection pool stats for each data source, key is primary or replica name
+     */
+    public Map<String, Map<String, Integer>> getPoolStats() {
+        Map<String, Map<String, Integer>> stats = new LinkedHashMap<>(replicas.size() + 1);
+        stats.put(PRIMARY, poolStats(primary));
+
+        for (Replica replica : replicas) {
+            Map<String, Integer> replicaStats = poolStats(replica.dataSource);
+            replicaStats.put("lag", (int) replica.lag);
+            stats.put(replica.name, replicaStats);
+        }
+
+        return stats;
+    }
+
+    /**
+     * Write on this thread will stick following reads to primary in the max lag window
+     */
+    private long stickyWindowInMillis() {
+        return Math.max(maxLagInSeconds, 1) * 1000;
+    }
+
+    private Replica nextReplica() {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+
+        int start = Math.abs(counter.getAndIncrement() % size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.lag >= 0 && replica.lag <= maxLagInSeconds) {
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    private long queryLag(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(lagQuery)) {
+
+            // not a replica or replication been reset
+            if (!rs.next()) {
+                return -1;
+            }
+
+            ResultSetMetaData metaData = rs.getMetaData();
+            int column = 1;
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                if (MYSQL_LAG_COLUMN.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                    column = i;
+                    break;
+                }
+            }
+
+            long lag = rs.getLong(column);
+            return rs.wasNull() ? -1 : lag;
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to query replica lag: %s", e.getMessage());
+            return -1;
+        }
+    }
+
+    private static Map<String, Integer> poolStats(DataSource dataSource) {
+        Map<String, Integer> stats = new LinkedHashMap<>(5);
+        if (!(dataSource instanceof HikariDataSource)) {
+            return stats;
+        }
+
+        HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        if (pool == null) {
+            return stats;
+        }
+
+        stats.put("active", pool.getActiveConnections());
+        stats.put("idle", pool.getIdleConnections());
+        stats.put("total", pool.getTotalConnections());
+        stats.put("waiting", pool.getThreadsAwaitingConnection());
+        return stats;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.dao.routing;
+
+import org.hibernate.EmptyInterceptor;
+
+/**
+ * Mark write on current thread when hibernate prepares a non select statement,
+ * which covers entity flush and hql or native update, so reads stick to primary only after actual write
+ *
+ * @author yang
+ */
+public class WriteTrackingInterceptor extends EmptyInterceptor {
+
+    @Override
+    public String onPrepareStatement(String sql) {
+        if (isWrite(sql)) {
+            RoutingContext.markWrite();
+        }
+        return sql;
+    }
+
+    static boolean isWrite(String sql) {
+        String trimmed = sql.trim();
+        return !trimmed.regionMatches(true, 0, "select", 0, 6)
+            && !trimmed.regionMatches(true, 0, "with", 0, 4);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.http.converter;
+
+import com.flow.platform.domain.Jsonable;
+import com.flow.platform.domain.codec.BinaryCodec;
+import com.flow.platform.domain.codec.Codec;
+import com.flow.platform.domain.codec.CodecException;
+import com.flow.platform.domain.codec.Codecs;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Read and write cmd payloads with binary codec when content type or accept is application/x-flow-binary
+ *
+ * @author yang
+ */
+public class BinaryCodecMessageConverter extends AbstractHttpMessageConverter<Jsonable> {
+
+    public final static MediaType BINARY_MEDIA_TYPE = MediaType.parseMediaType(BinaryCodec.CONTENT_TYPE);
+
+    private final Codec codec = Codecs.BINARY;
+
+    public BinaryCodecMessageConverter() {
+        super(BINARY_MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return codec.isSupported(clazz);
+    }
+
+    @Override
+    protected Jsonable readInternal(Class<? extends Jsonable> clazz, HttpInputMessage inputMessage)
+        throws IOException, HttpMessageNotReadableException {
+        byte[] body = StreamUtils.copyToByteArray(inputMessage.getBody());
+
+        try {
+            return codec.decode(body, clazz);
+        } catch (CodecException e) {
+            throw new HttpMessageNotReadableException("Binary parse error: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Jsonable object, HttpOutputMessage outputMessage)
+        throws IOException, HttpMessageNotWritableException {
+        try {
+            outputMessage.getBody().write(codec.encode(object));
+        } catch (CodecException e) {
+            throw new HttpMessageNotWritableException("Binary write error: " + e.getMessage(), e);
+        }
+    }
+}
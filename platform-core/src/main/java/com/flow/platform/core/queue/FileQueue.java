@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.core.queue;
+
+import com.flow.platform.core.context.ContextEvent;
+import com.flow.platform.queue.FsyncPolicy;
+import com.flow.platform.queue.MappedFileQueue;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * Durable queue on local journal files for installation without RabbitMQ
+ *
+ * @author yang
+ */
+public class FileQueue extends MappedFileQueue<PriorityMessage> implements ContextEvent {
+
+    public FileQueue(Executor executor, int maxSize, String name, Path dir, FsyncPolicy fsyncPolicy) {
+        super(executor, maxSize, name, dir, FileQueue::createMessage, fsyncPolicy);
+    }
+
+    private static PriorityMessage createMessage(byte[] body, long priority, long timestamp) {
+        PriorityMessage message = PriorityMessage.create(body, priority);
+        message.setTimestamp(timestamp);
+        return message;
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.flow.platform.core.service;
 
+import com.flow.platform.core.dao.routing.RoutingDataSource;
 import com.flow.platform.core.exception.IllegalParameterException;
 import com.flow.platform.core.sysinfo.PropertySystemInfo;
 import com.flow.platform.core.sysinfo.SystemInfo;
@@ -39,6 +40,9 @@ public abstract class SysInfoServiceImplBase implements SysInfoService {
     @Autowired
     private PropertySystemInfo systemInfo;
 
+    @Autowired
+    protected RoutingDataSource routingDataSource;
+
     @Value("${jdbc.url}")
     protected String dbUrl;
 
@@ -16,6 +16,7 @@
 
 package com.flow.platform.core.sysinfo;
 
+import com.flow.platform.core.dao.routing.RoutingDataSource;
 import com.flow.platform.core.sysinfo.SystemInfo.Status;
 import com.flow.platform.core.sysinfo.SystemInfo.Type;
 import com.flow.platform.util.Logger;
@@ -24,6 +25,7 @@ import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author yang
@@ -33,7 +35,9 @@ public class DBInfoLoader implements SystemInfoLoader {
     private final static Logger LOGGER = new Logger(DBInfoLoader.class);
 
     public enum DBGroupName implements GroupName {
-        MYSQL
+        MYSQL,
+
+        POOL
     }
 
     private final String driver;
@@ -44,11 +48,22 @@ public class DBInfoLoader implements SystemInfoLoader {
 
     private final String password;
 
+    private final RoutingDataSource routingDataSource;
+
     public DBInfoLoader(String driver, String url, String username, String password) {
+        this(driver, url, username, password, null);
+    }
+
+    public DBInfoLoader(String driver,
+                        String url,
+                        String username,
+                        String password,
+                        RoutingDataSource routingDataSource) {
         this.driver = driver;
         this.url = url;
         this.username = username;
         this.password = password;
+        this.routingDataSource = routingDataSource;
     }
 
     @Override
@@ -70,6 +85,10 @@ public class DBInfoLoader implements SystemInfoLoader {
                 dbInfo.setName(md.getDatabaseProductName());
                 dbInfo.setVersion(md.getDatabaseProductVersion());
                 dbInfo.put(DBGroupName.MYSQL, mysql);
+
+                if (routingDataSource != null) {
+                    dbInfo.put(DBGroupName.POOL, loadPoolStats());
+                }
                 return dbInfo;
             }
         } catch (SQLException e) {
@@ -80,4 +99,17 @@ public class DBInfoLoader implements SystemInfoLoader {
 
         return new SystemInfo(Status.OFFLINE, Type.DB);
     }
+
+    /**
+     * Flatten pool stats of primary and replicas, ex: pool.primary.active
+     */
+    private HashMap<String, String> loadPoolStats() {
+        HashMap<String, String> pool = new HashMap<>();
+        for (Map.Entry<String, Map<String, Integer>> entry : routingDataSource.getPoolStats().entrySet()) {
+            for (Map.Entry<String, Integer> stat : entry.getValue().entrySet()) {
+                pool.put("pool." + entry.getKey() + "." + stat.getKey(), stat.getValue().toString());
+            }
+        }
+        return pool;
+    }
 }
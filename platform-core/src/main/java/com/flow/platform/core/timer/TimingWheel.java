@@ -0,0 +1,284 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.core.timer;
+
+import com.flow.platform.core.context.ContextEvent;
+import com.flow.platform.util.Logger;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Hierarchical timing wheel for timeouts of cmd, job and agent session.
+ *
+ * Level n has wheelSize slots and each slot covers tick * wheelSize^n ms, task in higher level is
+ * cascaded to lower level when its slot is reached. Register and cancel are O(1), task is
+ * fired within one tick after deadline.
+ *
+ * Task is identified by key, schedule again with the same key will replace the previous one
+ *
+ * @author yang
+ */
+public class TimingWheel implements ContextEvent {
+
+    private final static Logger LOGGER = new Logger(TimingWheel.class);
+
+    private final Executor executor;
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final long origin;
+
+    private final List<Set<TimerTask>[]> levels = new ArrayList<>();
+
+    private final Map<String, TimerTask> tasks = new HashMap<>();
+
+    /**
+     * Num of ticks processed since origin
+     */
+    private long ticks = 0;
+
+    private volatile Thread ticker;
+
+    public TimingWheel(Executor executor, long tickMillis, int wheelSize) {
+        this.executor = executor;
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.origin = System.currentTimeMillis();
+    }
+
+    @Override
+    public void start() {
+        if (ticker != null) {
+            return;
+        }
+
+        ticker = new Thread(this::run, "timing-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread current = ticker;
+        ticker = null;
+
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    public void schedule(String key, ZonedDateTime deadline, Runnable runnable) {
+        schedule(key, deadline.toInstant().toEpochMilli(), runnable);
+    }
+
+    /**
+     * Schedule task on deadline in epoch millis, run immediately if deadline has passed
+     */
+    public void schedule(String key, long deadline, Runnable runnable) {
+        long expireTick = (deadline - origin + tickMillis - 1) / tickMillis;
+        TimerTask task = new TimerTask(key, expireTick, runnable);
+
+        synchronized (this) {
+            remove(tasks.put(key, task));
+
+            if (place(task)) {
+                return;
+            }
+
+            tasks.remove(key);
+        }
+
+        fire(task);
+    }
+
+    /**
+     * Cancel task by key
+     *
+     * @return true if task was scheduled and not fired yet
+     */
+    public synchronized boolean cancel(String key) {
+        TimerTask task = tasks.remove(key);
+        remove(task);
+        return task != null;
+    }
+
+    public synchronized boolean contains(String key) {
+        return tasks.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Process all ticks until the time
+     */
+    private void advanceTo(long now) {
+        while (origin + (ticks + 1) * tickMillis <= now) {
+            for (TimerTask task : tick()) {
+                fire(task);
+            }
+        }
+    }
+
+    private void run() {
+        LOGGER.trace("Timing wheel started with tick %s ms", tickMillis);
+
+        while (ticker == Thread.currentThread()) {
+            try {
+                long next = origin + (ticks + 1) * tickMillis;
+                long wait = next - System.currentTimeMillis();
+
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+
+                advanceTo(System.currentTimeMillis());
+            } catch (InterruptedException ignore) {
+                // stopped
+            } catch (Throwable e) {
+                LOGGER.error("Unexpected error on timing wheel", e);
+            }
+        }
+
+        LOGGER.trace("Timing wheel stopped");
+    }
+
+    /**
+     * Move one tick, cascade tasks from higher levels and return expired tasks
+     */
+    private synchronized List<TimerTask> tick() {
+        ticks++;
+        List<TimerTask> expired = new ArrayList<>();
+
+        // cascade from the highest level which slot boundary is reached
+        long span = 1;
+        int level = 0;
+        while (level + 1 < levels.size() && ticks % (span * wheelSize) == 0) {
+            span *= wheelSize;
+            level++;
+        }
+
+        for (; level > 0; level--, span /= wheelSize) {
+            Set<TimerTask> slot = levels.get(level)[(int) ((ticks / span) % wheelSize)];
+            List<TimerTask> cascaded = new ArrayList<>(slot);
+            slot.clear();
+
+            for (TimerTask task : cascaded) {
+                if (!place(task)) {
+                    expire(task, expired);
+                }
+            }
+        }
+
+        if (levels.isEmpty()) {
+            return expired;
+        }
+
+        Set<TimerTask> slot = levels.get(0)[(int) (ticks % wheelSize)];
+        for (TimerTask task : new ArrayList<>(slot)) {
+            expire(task, expired);
+        }
+        slot.clear();
+
+        return expired;
+    }
+
+    private void expire(TimerTask task, List<TimerTask> expired) {
+        task.slot = null;
+        tasks.remove(task.key);
+        expired.add(task);
+    }
+
+    /**
+     * Put task into slot by remaining ticks
+     *
+     * @return false if task already expired
+     */
+    private boolean place(TimerTask task) {
+        long remaining = task.expireTick - ticks;
+        if (remaining <= 0) {
+            return false;
+        }
+
+        long span = 1;
+        int level = 0;
+        while (remaining >= span * wheelSize) {
+            span *= wheelSize;
+            level++;
+        }
+
+        Set<TimerTask> slot = level(level)[(int) ((task.expireTick / span) % wheelSize)];
+        slot.add(task);
+        task.slot = slot;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<TimerTask>[] level(int level) {
+        while (levels.size() <= level) {
+            Set<TimerTask>[] slots = new Set[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                slots[i] = new LinkedHashSet<>();
+            }
+            levels.add(slots);
+        }
+        return levels.get(level);
+    }
+
+    private void remove(TimerTask task) {
+        if (task != null && task.slot != null) {
+            task.slot.remove(task);
+            task.slot = null;
+        }
+    }
+
+    private void fire(TimerTask task) {
+        executor.execute(() -> {
+            try {
+                task.runnable.run();
+            } catch (Throwable e) {
+                LOGGER.warn("Timeout task '%s' failed: %s", task.key, e.getMessage());
+            }
+        });
+    }
+
+    private static class TimerTask {
+
+        private final String key;
+
+        private final long expireTick;
+
+        private final Runnable runnable;
+
+        private Set<TimerTask> slot;
+
+        TimerTask(String key, long expireTick, Runnable runnable) {
+            this.key = key;
+            this.expireTick = expireTick;
+            this.runnable = runnable;
+        }
+    }
+}
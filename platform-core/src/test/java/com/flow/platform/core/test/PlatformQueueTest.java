@@ -16,24 +16,35 @@
 
 package com.flow.platform.core.test;
 
+import com.flow.platform.core.queue.FileQueue;
+import com.flow.platform.core.queue.MemoryQueue;
 import com.flow.platform.core.queue.PriorityMessage;
+import com.flow.platform.core.queue.RabbitQueue;
 import com.flow.platform.core.util.ThreadUtil;
+import com.flow.platform.queue.FsyncPolicy;
+import com.flow.platform.queue.MappedFileQueue;
 import com.flow.platform.queue.PlatformQueue;
 import com.flow.platform.queue.QueueListener;
+import com.flow.platform.util.Logger;
 import com.flow.platform.util.ObjectWrapper;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.context.junit4.SpringRunner;
 
 /**
@@ -44,9 +55,17 @@ import org.springframework.test.context.junit4.SpringRunner;
 @FixMethodOrder(MethodSorters.JVM)
 public class PlatformQueueTest {
 
+    private final static Logger LOGGER = new Logger(PlatformQueueTest.class);
+
+    @Autowired
+    private ThreadPoolTaskExecutor executor;
+
     @Autowired
     private PlatformQueue<PriorityMessage> inMemoryQueue;
 
+    @Autowired
+    private PlatformQueue<PriorityMessage> fileQueue;
+
     @Autowired
     private PlatformQueue<PriorityMessage> rabbitQueue;
 
@@ -54,6 +73,8 @@ public class PlatformQueueTest {
     public void init() {
         inMemoryQueue.clean();
         inMemoryQueue.cleanListener();
+        fileQueue.clean();
+        fileQueue.cleanListener();
         rabbitQueue.cleanListener();
     }
 
@@ -151,9 +172,191 @@ public class PlatformQueueTest {
         Assert.assertEquals(0, inMemoryQueue.size());
     }
 
+    @Test
+    public void should_enqueue_with_priority_in_file_queue() throws Throwable {
+        // given:
+        final int size = 4;
+        CountDownLatch latch = new CountDownLatch(size);
+        List<String> prioritizedList = new ArrayList<>(size);
+        fileQueue.register(item -> {
+            prioritizedList.add(new String(item.getBody()));
+            latch.countDown();
+        });
+
+        // when:
+        fileQueue.enqueue(createMessage("1", 1, 1));
+        fileQueue.enqueue(createMessage("2", 1, 2));
+        fileQueue.enqueue(createMessage("3", 10, 3));
+        fileQueue.enqueue(createMessage("4", 10, 4));
+        Assert.assertEquals(size, fileQueue.size());
+        fileQueue.start();
+
+        // then:
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals("3", prioritizedList.get(0));
+        Assert.assertEquals("4", prioritizedList.get(1));
+        Assert.assertEquals("1", prioritizedList.get(2));
+        Assert.assertEquals("2", prioritizedList.get(3));
+
+        Thread.sleep(100);
+        Assert.assertEquals(0, fileQueue.size());
+    }
+
+    @Test
+    public void should_redeliver_item_when_listener_failed() throws Throwable {
+        // given: listener failed on first delivery
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger deliveries = new AtomicInteger(0);
+        fileQueue.register(item -> {
+            if (deliveries.incrementAndGet() == 1) {
+                throw new IllegalStateException("mock failure");
+            }
+            latch.countDown();
+        });
+        fileQueue.start();
+
+        // when:
+        fileQueue.enqueue(PriorityMessage.create("retry".getBytes(), 1));
+
+        // then:
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(2, deliveries.get());
+    }
+
+    @Test
+    public void should_recover_unacked_items_from_journal_after_restart() throws Throwable {
+        Path dir = Files.createTempDirectory("flow-queue");
+
+        // given: enqueue three items and ack one of them
+        FileQueue queue = new FileQueue(executor, 10, "recoverQueue", dir, FsyncPolicy.ALWAYS);
+        queue.enqueue(createMessage("low", 1, 1));
+        queue.enqueue(createMessage("high", 10, 2));
+        queue.enqueue(createMessage("middle", 5, 3));
+        Assert.assertEquals("high", new String(queue.dequeue().getBody()));
+        queue.close();
+
+        // when: reload from the same dir
+        FileQueue reloaded = new FileQueue(executor, 10, "recoverQueue", dir, FsyncPolicy.ALWAYS);
+
+        // then:
+        Assert.assertEquals(2, reloaded.size());
+
+        PriorityMessage middle = reloaded.dequeue();
+        Assert.assertEquals("middle", new String(middle.getBody()));
+        Assert.assertEquals(5L, middle.getPriority().longValue());
+        Assert.assertEquals(3L, middle.getTimestamp().longValue());
+
+        Assert.assertEquals("low", new String(reloaded.dequeue().getBody()));
+        Assert.assertEquals(0, reloaded.size());
+        reloaded.close();
+    }
+
+    @Test
+    public void should_reject_enqueue_when_file_queue_is_full() throws Throwable {
+        Path dir = Files.createTempDirectory("flow-queue");
+        FileQueue queue = new FileQueue(executor, 2, "fullQueue", dir, FsyncPolicy.NEVER);
+        queue.enqueue(createMessage("1", 1, 1));
+        queue.enqueue(createMessage("2", 1, 2));
+        Assert.assertTrue(queue.isFull());
+
+        // when: enqueue over max size
+        try {
+            queue.enqueue(createMessage("3", 1, 3));
+            Assert.fail("should reject enqueue when queue is full");
+        } catch (IllegalStateException ignore) {
+        }
+
+        // then: enqueue is accepted once an item is acked
+        Assert.assertEquals(2, queue.size());
+        Assert.assertNotNull(queue.dequeue());
+        Assert.assertFalse(queue.isFull());
+        queue.enqueue(createMessage("3", 1, 3));
+        Assert.assertEquals(2, queue.size());
+        queue.close();
+    }
+
+    @Test
+    public void should_compact_journal_segments() throws Throwable {
+        Path dir = Files.createTempDirectory("flow-queue");
+        MappedFileQueue<PriorityMessage> queue = new MappedFileQueue<>(executor, 10, "compactQueue", dir,
+            (body, priority, timestamp) -> PriorityMessage.create(body, priority), FsyncPolicy.NEVER, 1024);
+
+        // given: an item never acked
+        queue.enqueue(PriorityMessage.create("slow".getBytes(), 1));
+
+        // when: write and ack records which needs many segments
+        for (int i = 0; i < 500; i++) {
+            queue.enqueue(PriorityMessage.create(("item-" + i).getBytes(), 10));
+            Assert.assertNotNull(queue.dequeue());
+        }
+
+        // then: segments are compacted and slow item is kept
+        Assert.assertTrue(queue.segmentCount() <= 6);
+        Assert.assertEquals(1, queue.size());
+        queue.close();
+
+        MappedFileQueue<PriorityMessage> reloaded = new MappedFileQueue<>(executor, 10, "compactQueue", dir,
+            (body, priority, timestamp) -> PriorityMessage.create(body, priority), FsyncPolicy.NEVER, 1024);
+        Assert.assertEquals(1, reloaded.size());
+        Assert.assertEquals("slow", new String(reloaded.dequeue().getBody()));
+        reloaded.close();
+    }
+
+    @Test
+    public void should_benchmark_file_and_memory_queues() throws Throwable {
+        final int size = 10000;
+        Path dir = Files.createTempDirectory("flow-queue");
+        ThreadPoolTaskExecutor benchmarkExecutor = ThreadUtil.createTaskExecutor(4, 4, 0, "benchmark");
+        benchmarkExecutor.initialize();
+
+        MemoryQueue memoryQueue = new MemoryQueue(benchmarkExecutor, size, "benchmarkMemoryQueue");
+        FileQueue intervalQueue = new FileQueue(benchmarkExecutor, size, "benchmarkFileQueue", dir, FsyncPolicy.INTERVAL);
+
+        LOGGER.info("Memory queue: %s ms for %s items", benchmark(memoryQueue, size), size);
+        LOGGER.info("File queue: %s ms for %s items", benchmark(intervalQueue, size), size);
+        intervalQueue.close();
+        benchmarkExecutor.shutdown();
+    }
+
+    @Test
+    @Ignore("needs local RabbitMQ, run manually for benchmark")
+    public void should_benchmark_rabbit_queue() throws Throwable {
+        final int size = 10000;
+        ThreadPoolTaskExecutor benchmarkExecutor = ThreadUtil.createTaskExecutor(4, 4, 0, "benchmark");
+        benchmarkExecutor.initialize();
+
+        RabbitQueue rabbitMQ = new RabbitQueue(benchmarkExecutor, "amqp://localhost:5672", size, 1, "ut-benchmark-queue");
+        LOGGER.info("RabbitMQ queue: %s ms for %s items", benchmark(rabbitMQ, size), size);
+        benchmarkExecutor.shutdown();
+    }
+
+    private long benchmark(PlatformQueue<PriorityMessage> queue, int size) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(size);
+        queue.register(item -> latch.countDown());
+        queue.start();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            queue.enqueue(PriorityMessage.create(("cmd-" + i).getBytes(), 1));
+        }
+
+        Assert.assertTrue(latch.await(60, TimeUnit.SECONDS));
+        long elapsed = System.currentTimeMillis() - start;
+
+        queue.stop();
+        return elapsed;
+    }
+
+    private static PriorityMessage createMessage(String body, long priority, long timestamp) {
+        PriorityMessage message = PriorityMessage.create(body.getBytes(), priority);
+        message.setTimestamp(timestamp);
+        return message;
+    }
+
     @After
     public void stop() {
         inMemoryQueue.stop();
+        fileQueue.stop();
         rabbitQueue.stop();
     }
 
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.test;
+
+import com.flow.platform.core.dao.routing.ReadReplicaInterceptor;
+import com.flow.platform.core.dao.routing.RoutingContext;
+import com.flow.platform.core.dao.routing.RoutingDataSource;
+import com.flow.platform.core.dao.routing.WriteTrackingInterceptor;
+import com.google.common.collect.Lists;
+import java.sql.Connection;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Route between two embedded h2 databases, each has table 'source' with its own name
+ *
+ * @author yang
+ */
+public class RoutingDataSourceTest {
+
+    private final static String LAG_QUERY = "SELECT seconds FROM replica_lag";
+
+    private EmbeddedDatabase primary;
+
+    private EmbeddedDatabase replica;
+
+    private RoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate txTemplate;
+
+    // hibernate calls it before statement prepared
+    private final WriteTrackingInterceptor writeTracking = new WriteTrackingInterceptor();
+
+    @Before
+    public void init() {
+        primary = createDatabase("primary");
+        replica = createDatabase("replica");
+
+        routingDataSource = new RoutingDataSource(primary, Lists.newArrayList(replica), 5, LAG_QUERY);
+        routingDataSource.afterPropertiesSet();
+
+        // defaults should be set, otherwise connection fetched before transaction read only flag available
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+        proxy.setTargetDataSource(routingDataSource);
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        proxy.afterPropertiesSet();
+
+        jdbcTemplate = new JdbcTemplate(proxy);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(proxy));
+
+        RoutingContext.reset();
+    }
+
+    @Test
+    public void should_route_to_primary_by_default() {
+        Assert.assertEquals("primary", querySource());
+    }
+
+    @Test
+    public void should_route_read_only_transaction_to_replica() {
+        txTemplate.setReadOnly(true);
+        String source = txTemplate.execute(status -> querySource());
+        Assert.assertEquals("replica", source);
+    }
+
+    @Test
+    public void should_route_explicit_read_to_replica() {
+        RoutingContext.enterReplica();
+        try {
+            Assert.assertEquals("replica", querySource());
+        } finally {
+            RoutingContext.exitReplica();
+        }
+
+        Assert.assertEquals("primary", querySource());
+    }
+
+    @Test
+    public void should_stick_to_primary_after_write() {
+        // when: write on primary
+        txTemplate.execute(status -> jdbcTemplate.update(writeTracking.onPrepareStatement("UPDATE source SET name = name")));
+
+        // then: following read in the same request still on primary
+        RoutingContext.enterReplica();
+        try {
+            Assert.assertEquals("primary", querySource());
+
+            // when: request finished
+            RoutingContext.reset();
+            RoutingContext.enterReplica();
+
+            // then:
+            Assert.assertEquals("replica", querySource());
+        } finally {
+            RoutingContext.exitReplica();
+        }
+    }
+
+    @Test
+    public void should_not_stick_to_primary_after_read_in_read_write_transaction() {
+        // when: only read in read write transaction
+        String source = txTemplate.execute(status -> querySource(writeTracking.onPrepareStatement("SELECT name FROM source")));
+        Assert.assertEquals("primary", source);
+
+        // then: following read still can be routed to replica
+        RoutingContext.enterReplica();
+        try {
+            Assert.assertEquals("replica", querySource());
+        } finally {
+            RoutingContext.exitReplica();
+        }
+    }
+
+    @Test
+    public void should_fallback_to_primary_if_replica_lag() {
+        // given: replica lag over max lag
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 100");
+        routingDataSource.refreshReplicaLag();
+
+        // then:
+        RoutingContext.enterReplica();
+        try {
+            Assert.assertEquals("primary", querySource());
+        } finally {
+            RoutingContext.exitReplica();
+        }
+
+        // then: stats show lag of replica
+        Map<String, Map<String, Integer>> stats = routingDataSource.getPoolStats();
+        Assert.assertEquals(100, stats.get("replica-0").get("lag").intValue());
+    }
+
+    @Test
+    public void should_route_write_transaction_to_primary_within_read_replica() {
+        // given: method with @ReadReplica which write in read write transaction
+        Supplier<String> method = readReplica(() -> txTemplate.execute(status -> {
+            jdbcTemplate.update("UPDATE source SET name = 'updated'");
+            return querySource();
+        }));
+
+        // when:
+        String source = method.get();
+
+        // then: write and read of transaction on primary
+        Assert.assertEquals("updated", source);
+        Assert.assertEquals("updated", new JdbcTemplate(primary).queryForObject("SELECT name FROM source", String.class));
+        Assert.assertEquals("replica", new JdbcTemplate(replica).queryForObject("SELECT name FROM source", String.class));
+    }
+
+    @Test
+    public void should_exclude_replica_without_replication_status() {
+        // given: replication stopped which lag is null
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = NULL");
+        routingDataSource.refreshReplicaLag();
+
+        // then:
+        RoutingContext.enterReplica();
+        try {
+            Assert.assertEquals("primary", querySource());
+        } finally {
+            RoutingContext.exitReplica();
+        }
+
+        // given: replication been reset which has no status row
+        new JdbcTemplate(replica).update("DELETE FROM replica_lag");
+        routingDataSource.refreshReplicaLag();
+
+        // then:
+        RoutingContext.enterReplica();
+        try {
+            Assert.assertEquals("primary", querySource());
+        } finally {
+            RoutingContext.exitReplica();
+        }
+
+        Assert.assertEquals(-1, routingDataSource.getPoolStats().get("replica-0").get("lag").intValue());
+    }
+
+    @After
+    public void after() {
+        RoutingContext.reset();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    private String querySource() {
+        return querySource("SELECT name FROM source");
+    }
+
+    private String querySource(String sql) {
+        return jdbcTemplate.queryForObject(sql, String.class);
+    }
+
+    /**
+     * Proxy target as method annotated with @ReadReplica
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> readReplica(Supplier<T> target) {
+        ProxyFactory factory = new ProxyFactory(target);
+        factory.addInterface(Supplier.class);
+        factory.addAdvice(new ReadReplicaInterceptor());
+        return (Supplier<T>) factory.getProxy();
+    }
+
+    private static EmbeddedDatabase createDatabase(String name) {
+        EmbeddedDatabase db = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .setName(name)
+            .build();
+
+        JdbcTemplate template = new JdbcTemplate(db);
+        template.execute("CREATE TABLE source (name VARCHAR(20))");
+        template.update("INSERT INTO source VALUES (?)", name);
+        template.execute("CREATE TABLE replica_lag (seconds INT)");
+        template.update("INSERT INTO replica_lag VALUES (0)");
+        return db;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.core.test;
+
+import com.flow.platform.core.dao.migration.Migration;
+import com.flow.platform.core.dao.migration.QueryPlanChecker;
+import com.flow.platform.core.dao.migration.SchemaMigrator;
+import com.flow.platform.core.exception.IllegalStatusException;
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * Apply scripts from classpath migration/test to embedded h2 database
+ *
+ * @author yang
+ */
+public class SchemaMigratorTest {
+
+    private final static String LOCATION = "migration/test";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedDatabase db;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        db = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .setName("migration")
+            .build();
+
+        jdbcTemplate = new JdbcTemplate(db);
+    }
+
+    @Test
+    public void should_load_migrations_by_version_order() {
+        List<Migration> migrations = new SchemaMigrator(db, LOCATION).load();
+
+        List<String> versions = migrations.stream().map(Migration::getVersion).collect(Collectors.toList());
+        Assert.assertEquals(Lists.newArrayList("1", "1.2", "1.10"), versions);
+        Assert.assertEquals("add job session index", migrations.get(1).getDescription());
+
+        // comment line should be ignored
+        Assert.assertEquals(1, migrations.get(1).statements().size());
+        Assert.assertEquals(2, migrations.get(2).statements().size());
+    }
+
+    @Test
+    public void should_apply_migrations_once() {
+        SchemaMigrator migrator = new SchemaMigrator(db, LOCATION);
+        Assert.assertEquals(3, migrator.migrate());
+
+        Assert.assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM job", Integer.class).intValue());
+        Assert.assertEquals(3, countHistory());
+
+        // should not apply again
+        Assert.assertEquals(0, migrator.migrate());
+        Assert.assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM job", Integer.class).intValue());
+        Assert.assertEquals(3, countHistory());
+    }
+
+    @Test(expected = IllegalStatusException.class)
+    public void should_fail_if_applied_script_modified() throws IOException {
+        File dir = folder.newFolder("migration");
+        Path script = dir.toPath().resolve("V1__create_table.sql");
+        Files.write(script, "CREATE TABLE build (id BIGINT);".getBytes(StandardCharsets.UTF_8));
+
+        SchemaMigrator migrator = new SchemaMigrator(db, "file:" + dir.getAbsolutePath());
+        Assert.assertEquals(1, migrator.migrate());
+
+        Files.write(script, "\nALTER TABLE build ADD name VARCHAR(10);".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+        migrator.migrate();
+    }
+
+    @Test
+    public void should_resume_partially_applied_migration() throws IOException {
+        File dir = folder.newFolder("migration");
+        Path script = dir.toPath().resolve("V1__create_table.sql");
+        Files.write(script, ("CREATE TABLE build (id BIGINT);\n"
+            + "CREATE INDEX idx_build_id ON build (id);\n"
+            + "INSERT INTO build_source VALUES (1);").getBytes(StandardCharsets.UTF_8));
+
+        // given: migration failed on the last statement
+        SchemaMigrator migrator = new SchemaMigrator(db, "file:" + dir.getAbsolutePath());
+        try {
+            migrator.migrate();
+            Assert.fail("should fail since table build_source not exist");
+        } catch (IllegalStatusException ignore) {
+        }
+        Assert.assertEquals(0, countHistory());
+
+        // when: fix the cause and migrate again
+        jdbcTemplate.execute("CREATE TABLE build_source (id BIGINT)");
+        Assert.assertEquals(1, migrator.migrate());
+
+        // then: executed statements are not applied again
+        Assert.assertEquals(1, countHistory());
+        Assert.assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM build_source", Integer.class).intValue());
+
+        String sql = "SELECT COUNT(*) FROM " + SchemaMigrator.PROGRESS_TABLE;
+        Assert.assertEquals(0, jdbcTemplate.queryForObject(sql, Integer.class).intValue());
+    }
+
+    @Test
+    public void should_skip_create_index_if_index_existed() throws IOException {
+        File dir = folder.newFolder("migration");
+        Files.write(dir.toPath().resolve("V1__create_index.sql"),
+            "CREATE INDEX `idx_build_id` ON `build` (`id`);".getBytes(StandardCharsets.UTF_8));
+
+        // given: index created by schema file
+        jdbcTemplate.execute("CREATE TABLE build (id BIGINT)");
+        jdbcTemplate.execute("CREATE INDEX idx_build_id ON build (id)");
+
+        // when:
+        SchemaMigrator migrator = new SchemaMigrator(db, "file:" + dir.getAbsolutePath());
+
+        // then:
+        Assert.assertEquals(1, migrator.migrate());
+        Assert.assertEquals(1, countHistory());
+    }
+
+    @Test
+    public void should_warn_hot_query_with_full_table_scan() {
+        new SchemaMigrator(db, LOCATION).migrate();
+
+        List<String> fullScans = new QueryPlanChecker(db, LOCATION).check();
+        Assert.assertEquals(Lists.newArrayList("job.by_node_path"), fullScans);
+    }
+
+    @After
+    public void after() {
+        db.shutdown();
+    }
+
+    private int countHistory() {
+        String sql = "SELECT COUNT(*) FROM " + SchemaMigrator.HISTORY_TABLE;
+        return jdbcTemplate.queryForObject(sql, Integer.class);
+    }
+}
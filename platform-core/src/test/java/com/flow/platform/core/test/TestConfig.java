@@ -16,11 +16,15 @@
 
 package com.flow.platform.core.test;
 
+import com.flow.platform.core.queue.FileQueue;
 import com.flow.platform.core.queue.MemoryQueue;
 import com.flow.platform.core.queue.PriorityMessage;
 import com.flow.platform.core.queue.RabbitQueue;
 import com.flow.platform.core.util.ThreadUtil;
+import com.flow.platform.queue.FsyncPolicy;
 import com.flow.platform.queue.PlatformQueue;
+import java.io.IOException;
+import java.nio.file.Files;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -33,16 +37,28 @@ public class TestConfig {
 
     private final ThreadPoolTaskExecutor executor = ThreadUtil.createTaskExecutor(2, 2, 2, "test-executor");
 
+    private final ThreadPoolTaskExecutor fileQueueExecutor = ThreadUtil.createTaskExecutor(2, 2, 2, "test-file-queue");
+
     @Bean
     public ThreadPoolTaskExecutor executor() {
         return executor;
     }
 
+    @Bean
+    public ThreadPoolTaskExecutor fileQueueExecutor() {
+        return fileQueueExecutor;
+    }
+
     @Bean
     public PlatformQueue<PriorityMessage> inMemoryQueue() {
         return new MemoryQueue(executor, 1, "testInMemoryQueue");
     }
 
+    @Bean
+    public PlatformQueue<PriorityMessage> fileQueue() throws IOException {
+        return new FileQueue(fileQueueExecutor, 10, "testFileQueue", Files.createTempDirectory("flow-queue"), FsyncPolicy.NEVER);
+    }
+
     @Bean
     public PlatformQueue<PriorityMessage> rabbitQueue() {
         return new RabbitQueue(executor, "amqp://localhost:5672", 1, 1, "ut-queue");
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.core.test;
+
+import com.flow.platform.core.timer.TimingWheel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author yang
+ */
+public class TimingWheelTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private TimingWheel wheel;
+
+    @Before
+    public void init() {
+        wheel = new TimingWheel(executor, 10, 8);
+        wheel.start();
+    }
+
+    @Test
+    public void should_fire_tasks_by_deadline_across_levels() throws Throwable {
+        // given: deadlines in level 0, 1 and 2 of the wheel
+        CountDownLatch latch = new CountDownLatch(3);
+        List<String> fired = new CopyOnWriteArrayList<>();
+        long now = System.currentTimeMillis();
+
+        wheel.schedule("level-2", now + 700, () -> { fired.add("level-2"); latch.countDown(); });
+        wheel.schedule("level-0", now + 50, () -> { fired.add("level-0"); latch.countDown(); });
+        wheel.schedule("level-1", now + 200, () -> { fired.add("level-1"); latch.countDown(); });
+        Assert.assertEquals(3, wheel.size());
+
+        // then:
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("level-0", fired.get(0));
+        Assert.assertEquals("level-1", fired.get(1));
+        Assert.assertEquals("level-2", fired.get(2));
+        Assert.assertTrue(System.currentTimeMillis() >= now + 700);
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void should_not_fire_cancelled_or_replaced_task() throws Throwable {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> fired = new CopyOnWriteArrayList<>();
+        long now = System.currentTimeMillis();
+
+        // when: cancel one and replace another
+        wheel.schedule("cancelled", now + 100, () -> fired.add("cancelled"));
+        wheel.schedule("replaced", now + 100, () -> fired.add("old"));
+        wheel.schedule("replaced", now + 150, () -> { fired.add("new"); latch.countDown(); });
+        Assert.assertTrue(wheel.cancel("cancelled"));
+        Assert.assertFalse(wheel.cancel("not-exist"));
+
+        // then:
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals("new", fired.get(0));
+    }
+
+    @Test
+    public void should_fire_immediately_if_deadline_passed() throws Throwable {
+        CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule("expired", System.currentTimeMillis() - 1000, latch::countDown);
+
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assert.assertFalse(wheel.contains("expired"));
+    }
+
+    @After
+    public void stop() {
+        wheel.stop();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,2 @@
+INSERT INTO job (id, node_path, session_id) VALUES (1, 'flow', 'session');
+INSERT INTO job (id, node_path, session_id) VALUES (2, 'flow', NULL);
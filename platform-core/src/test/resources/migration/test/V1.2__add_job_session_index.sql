@@ -0,0 +1,2 @@
+-- index for job find by session id
+CREATE INDEX idx_job_session_id ON job (session_id);
@@ -0,0 +1,6 @@
+CREATE TABLE job (
+  id BIGINT NOT NULL,
+  node_path VARCHAR(255) NOT NULL,
+  session_id VARCHAR(50),
+  PRIMARY KEY (id)
+);
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain;
+
+import com.google.common.base.Strings;
+import com.google.gson.annotations.Expose;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Remaining resource, warm workspaces and log disk usage of agent which published as agent zookeeper node data,
+ * also used as resource demand of cmd which declared by env hints
+ *
+ * @author yang
+ */
+public class AgentCapacity extends Jsonable {
+
+    /**
+     * Env of cmd inputs to declare required cpu cores, ex: 1.5
+     */
+    public final static String ENV_CMD_CPU = "FLOW_JOB_CMD_CPU";
+
+    /**
+     * Env of cmd inputs to declare required memory in MB
+     */
+    public final static String ENV_CMD_MEMORY = "FLOW_JOB_CMD_MEMORY";
+
+    /**
+     * Env of cmd inputs for flow name and git branch, which identify the workspace of cmd
+     */
+    public final static String ENV_FLOW_NAME = "FLOW_NAME";
+
+    public final static String ENV_GIT_BRANCH = "FLOW_GIT_BRANCH";
+
+    private final static String DEFAULT_BRANCH = "master";
+
+    /**
+     * Get workspace key '{flow}/{branch}' from cmd inputs
+     *
+     * @return workspace key or null if flow name not in inputs
+     */
+    public static String workspaceOf(Map<String, String> inputs) {
+        if (inputs == null || Strings.isNullOrEmpty(inputs.get(ENV_FLOW_NAME))) {
+            return null;
+        }
+
+        String branch = inputs.get(ENV_GIT_BRANCH);
+        if (Strings.isNullOrEmpty(branch)) {
+            branch = DEFAULT_BRANCH;
+        }
+
+        return inputs.get(ENV_FLOW_NAME) + "/" + branch;
+    }
+
+    /**
+     * Create resource demand of cmd from hints in inputs, unknown or invalid hint is zero
+     */
+    public static AgentCapacity demandOf(Map<String, String> inputs) {
+        AgentCapacity demand = new AgentCapacity();
+        demand.setSlots(1);
+
+        if (inputs == null) {
+            return demand;
+        }
+
+        String workspace = workspaceOf(inputs);
+        if (workspace != null) {
+            demand.getWorkspaces().add(workspace);
+        }
+
+        try {
+            demand.setCpu(Math.max(0.0, Double.parseDouble(inputs.getOrDefault(ENV_CMD_CPU, "0"))));
+        } catch (NumberFormatException ignore) {
+        }
+
+        try {
+            demand.setMemory(Math.max(0L, Long.parseLong(inputs.getOrDefault(ENV_CMD_MEMORY, "0"))));
+        } catch (NumberFormatException ignore) {
+        }
+
+        return demand;
+    }
+
+    /**
+     * Free cpu cores
+     */
+    @Expose
+    private double cpu;
+
+    /**
+     * Free memory in MB
+     */
+    @Expose
+    private long memory;
+
+    /**
+     * Free disk of workspace in MB
+     */
+    @Expose
+    private long disk;
+
+    /**
+     * Free cmd slots
+     */
+    @Expose
+    private int slots;
+
+    /**
+     * Keys of warm workspaces kept on agent, or the workspace required by demand
+     */
+    @Expose
+    private Set<String> workspaces = new HashSet<>();
+
+    /**
+     * Disk used by cmd logs on agent in MB
+     */
+    @Expose
+    private long logDisk;
+
+    /**
+     * Is cmd log throttled since low disk space on agent
+     */
+    @Expose
+    private boolean logPressure;
+
+    public AgentCapacity() {
+    }
+
+    public AgentCapacity(double cpu, long memory, long disk, int slots) {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.disk = disk;
+        this.slots = slots;
+    }
+
+    public double getCpu() {
+        return cpu;
+    }
+
+    public void setCpu(double cpu) {
+        this.cpu = cpu;
+    }
+
+    public long getMemory() {
+        return memory;
+    }
+
+    public void setMemory(long memory) {
+        this.memory = memory;
+    }
+
+    public long getDisk() {
+        return disk;
+    }
+
+    public void setDisk(long disk) {
+        this.disk = disk;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public void setSlots(int slots) {
+        this.slots = slots;
+    }
+
+    public Set<String> getWorkspaces() {
+        return workspaces;
+    }
+
+    public void setWorkspaces(Set<String> workspaces) {
+        this.workspaces = workspaces;
+    }
+
+    public long getLogDisk() {
+        return logDisk;
+    }
+
+    public void setLogDisk(long logDisk) {
+        this.logDisk = logDisk;
+    }
+
+    public boolean isLogPressure() {
+        return logPressure;
+    }
+
+    public void setLogPressure(boolean logPressure) {
+        this.logPressure = logPressure;
+    }
+
+    /**
+     * Is any workspace required by demand already kept on agent
+     */
+    public boolean isWarmFor(AgentCapacity demand) {
+        if (workspaces == null || demand.workspaces == null) {
+            return false;
+        }
+
+        for (String workspace : demand.workspaces) {
+            if (workspaces.contains(workspace)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is the demand can be placed on current capacity
+     */
+    public boolean fits(AgentCapacity demand) {
+        return slots >= demand.slots
+            && cpu >= demand.cpu
+            && memory >= demand.memory
+            && disk >= demand.disk;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        AgentCapacity that = (AgentCapacity) o;
+        return Double.compare(that.cpu, cpu) == 0
+            && memory == that.memory
+            && disk == that.disk
+            && slots == that.slots
+            && logDisk == that.logDisk
+            && logPressure == that.logPressure
+            && Objects.equals(workspaces, that.workspaces);
+    }
+
+    @Override
+    public int hashCode() {
+        long temp = Double.doubleToLongBits(cpu);
+        int result = (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (memory ^ (memory >>> 32));
+        result = 31 * result + (int) (disk ^ (disk >>> 32));
+        result = 31 * result + slots;
+        result = 31 * result + (workspaces != null ? workspaces.hashCode() : 0);
+        result = 31 * result + (int) (logDisk ^ (logDisk >>> 32));
+        result = 31 * result + (logPressure ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "AgentCapacity{" +
+            "cpu=" + cpu +
+            ", memory=" + memory +
+            ", disk=" + disk +
+            ", slots=" + slots +
+            ", workspaces=" + workspaces +
+            ", logDisk=" + logDisk +
+            ", logPressure=" + logPressure +
+            "} " + super.toString();
+    }
+}
@@ -111,6 +111,14 @@ public class Cmd extends CmdBase {
         this.retry = retry;
     }
 
+    public ZonedDateTime getFinishedDate() {
+        return finishedDate;
+    }
+
+    public void setFinishedDate(ZonedDateTime finishedDate) {
+        this.finishedDate = finishedDate;
+    }
+
     public ZonedDateTime getCreatedDate() {
         return createdDate;
     }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain;
+
+import com.google.common.base.Strings;
+import com.google.gson.annotations.Expose;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependency cache declared by step, the dir of path is restored before cmd and saved after cmd by key
+ *
+ * The key is template which support ${ENV} from cmd inputs and {{ checksum "file" }} for sha256 of file
+ *
+ * @author yang
+ */
+public class CmdCache extends Jsonable {
+
+    /**
+     * Env of cmd inputs to deliver cache list as json
+     */
+    public final static String ENV_CMD_CACHE = "FLOW_JOB_CMD_CACHE";
+
+    /**
+     * Parse cache list from cmd inputs
+     */
+    public static List<CmdCache> listOf(Map<String, String> inputs) {
+        if (inputs == null || Strings.isNullOrEmpty(inputs.get(ENV_CMD_CACHE))) {
+            return Collections.emptyList();
+        }
+
+        return Arrays.asList(parseArray(inputs.get(ENV_CMD_CACHE), CmdCache[].class));
+    }
+
+    /**
+     * Dir to cache, relative path is based on working dir, '~' is user home
+     */
+    @Expose
+    private String path;
+
+    /**
+     * Key template of cache
+     */
+    @Expose
+    private String key;
+
+    public CmdCache() {
+    }
+
+    public CmdCache(String path, String key) {
+        this.path = path;
+        this.key = key;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        CmdCache cmdCache = (CmdCache) o;
+        return (path != null ? path.equals(cmdCache.path) : cmdCache.path == null)
+            && (key != null ? key.equals(cmdCache.key) : cmdCache.key == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = path != null ? path.hashCode() : 0;
+        result = 31 * result + (key != null ? key.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CmdCache{" +
+            "path='" + path + '\'' +
+            ", key='" + key + '\'' +
+            "} " + super.toString();
+    }
+}
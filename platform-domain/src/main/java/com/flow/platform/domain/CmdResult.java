@@ -34,6 +34,10 @@ public class CmdResult extends Jsonable {
 
     public static final Integer EXIT_VALUE_FOR_TIMEOUT = -200;
 
+    public static final Integer EXIT_VALUE_FOR_OVER_LIMIT = -300; // killed since over cpu or memory limit
+
+    public static final Integer EXIT_VALUE_FOR_ENV_BASE_MISSING = -400; // env base layer not held by agent
+
     public static final CmdResult EMPTY = new CmdResult();
 
     /**
@@ -81,6 +85,41 @@ public class CmdResult extends Jsonable {
      */
     private ZonedDateTime finishTime;
 
+    /**
+     * Sampled cpu time (user + system) of cmd process tree in millis
+     */
+    private Long cpuTime;
+
+    /**
+     * Sampled peak resident memory of cmd process tree in bytes
+     */
+    private Long maxMemory;
+
+    /**
+     * Sampled bytes read from storage by cmd process tree
+     */
+    private Long readBytes;
+
+    /**
+     * Sampled bytes written to storage by cmd process tree
+     */
+    private Long writeBytes;
+
+    /**
+     * Num of dependency cache restored by key
+     */
+    private Integer cacheHits;
+
+    /**
+     * Num of dependency cache not found by key
+     */
+    private Integer cacheMisses;
+
+    /**
+     * Time to restore dependency caches in millis
+     */
+    private Long cacheRestoreTime;
+
     /**
      * Env for output
      */
@@ -181,6 +220,62 @@ public class CmdResult extends Jsonable {
         this.totalDuration = totalDuration;
     }
 
+    public Long getCpuTime() {
+        return cpuTime;
+    }
+
+    public void setCpuTime(Long cpuTime) {
+        this.cpuTime = cpuTime;
+    }
+
+    public Long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public void setMaxMemory(Long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    public Long getReadBytes() {
+        return readBytes;
+    }
+
+    public void setReadBytes(Long readBytes) {
+        this.readBytes = readBytes;
+    }
+
+    public Long getWriteBytes() {
+        return writeBytes;
+    }
+
+    public void setWriteBytes(Long writeBytes) {
+        this.writeBytes = writeBytes;
+    }
+
+    public Integer getCacheHits() {
+        return cacheHits;
+    }
+
+    public void setCacheHits(Integer cacheHits) {
+        this.cacheHits = cacheHits;
+    }
+
+    public Integer getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public void setCacheMisses(Integer cacheMisses) {
+        this.cacheMisses = cacheMisses;
+    }
+
+    public Long getCacheRestoreTime() {
+        return cacheRestoreTime;
+    }
+
+    public void setCacheRestoreTime(Long cacheRestoreTime) {
+        this.cacheRestoreTime = cacheRestoreTime;
+    }
+
     public Map<String, String> getOutput() {
         return output;
     }
@@ -222,6 +317,10 @@ public class CmdResult extends Jsonable {
                 ", startTime=" + startTime +
                 ", executedTime=" + executedTime +
                 ", finishTime=" + finishTime +
+                ", cpuTime=" + cpuTime +
+                ", maxMemory=" + maxMemory +
+                ", cacheHits=" + cacheHits +
+                ", cacheMisses=" + cacheMisses +
                 ", outputSize=" + output.size() +
                 '}';
     }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable env variables by layers, the entries of layer overlay the entries of parent layer,
+ * so the envs shared by steps (ex: job envs) are held once and each step only holds its own entries
+ *
+ * Cmd inputs created by {@link #toInputs(boolean)} only include entries above the base layer with
+ * digest of base layer, the base layer is included only if agent does not hold it, and the agent
+ * resolves inputs to layered envs by {@link #resolve(Map, Map)}
+ *
+ * @author yang
+ */
+public final class LayeredEnvs extends AbstractMap<String, String> {
+
+    /**
+     * Env of cmd inputs for digest of base layer
+     */
+    public final static String ENV_BASE = "FLOW_ENV_BASE";
+
+    /**
+     * Env of cmd inputs for json of base layer
+     */
+    public final static String ENV_BASE_LAYER = "FLOW_ENV_BASE_LAYER";
+
+    private final static Type LAYER_TYPE = new TypeToken<Map<String, String>>() {
+    }.getType();
+
+    /**
+     * Create base layer from envs
+     */
+    public static LayeredEnvs of(Map<String, String> envs) {
+        return new LayeredEnvs(null, copyOf(envs));
+    }
+
+    /**
+     * Create layer on top of envs, the envs is used as parent without copy if it is layered
+     */
+    public static LayeredEnvs overlay(Map<String, String> envs, Map<String, String> layer) {
+        LayeredEnvs parent = envs instanceof LayeredEnvs ? (LayeredEnvs) envs : of(envs);
+        return parent.with(layer);
+    }
+
+    /**
+     * Resolve cmd inputs to layered envs by the base layers held by agent
+     *
+     * @param inputs cmd inputs
+     * @param bases base layers by digest, the base layer from inputs will be put into it
+     * @return inputs if not created by layered envs, otherwise the layered envs
+     * @throws IllegalStateException if base layer not found or digest not matched
+     */
+    public static Map<String, String> resolve(Map<String, String> inputs, Map<String, LayeredEnvs> bases) {
+        if (inputs == null || !inputs.containsKey(ENV_BASE)) {
+            return inputs;
+        }
+
+        String digest = inputs.get(ENV_BASE);
+        String layer = inputs.get(ENV_BASE_LAYER);
+        LayeredEnvs base;
+
+        if (layer != null) {
+            base = of(Jsonable.GSON_CONFIG.fromJson(layer, LAYER_TYPE));
+            if (!base.digest().equals(digest)) {
+                throw new IllegalStateException("The digest of env base layer not matched: " + digest);
+            }
+            bases.put(digest, base);
+        } else {
+            base = bases.get(digest);
+            if (base == null) {
+                throw new IllegalStateException("The env base layer not found on agent: " + digest);
+            }
+        }
+
+        Map<String, String> delta = new HashMap<>(inputs);
+        delta.remove(ENV_BASE);
+        delta.remove(ENV_BASE_LAYER);
+        return base.with(delta);
+    }
+
+    private static Map<String, String> copyOf(Map<String, String> envs) {
+        if (envs == null || envs.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        // skip null key or value which cannot be passed as env
+        Map<String, String> copy = new LinkedHashMap<>(envs.size());
+        for (Map.Entry<String, String> entry : envs.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                copy.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private final LayeredEnvs parent;
+
+    private final Map<String, String> layer;
+
+    private volatile Map<String, String> flattened;
+
+    private volatile String digest;
+
+    private LayeredEnvs(LayeredEnvs parent, Map<String, String> layer) {
+        this.parent = parent;
+        this.layer = layer;
+    }
+
+    /**
+     * Create layer on top of current layer
+     */
+    public LayeredEnvs with(Map<String, String> envs) {
+        if (envs == null || envs.isEmpty()) {
+            return this;
+        }
+        return new LayeredEnvs(this, copyOf(envs));
+    }
+
+    public LayeredEnvs with(String key, String value) {
+        return with(Collections.singletonMap(key, value));
+    }
+
+    public LayeredEnvs getParent() {
+        return parent;
+    }
+
+    /**
+     * Entries of current layer only
+     */
+    public Map<String, String> getLayer() {
+        return layer;
+    }
+
+    /**
+     * The bottom layer
+     */
+    public LayeredEnvs base() {
+        LayeredEnvs base = this;
+        while (base.parent != null) {
+            base = base.parent;
+        }
+        return base;
+    }
+
+    /**
+     * Entries of layers above the ancestor, the entry of upper layer overwrites the lower one
+     */
+    public Map<String, String> deltaOf(LayeredEnvs ancestor) {
+        Deque<Map<String, String>> layers = new ArrayDeque<>();
+        for (LayeredEnvs item = this; item != ancestor; item = item.parent) {
+            if (item == null) {
+                throw new IllegalArgumentException("The layer is not an ancestor");
+            }
+            layers.push(item.layer);
+        }
+
+        Map<String, String> delta = new LinkedHashMap<>();
+        for (Map<String, String> item : layers) {
+            delta.putAll(item);
+        }
+        return delta;
+    }
+
+    /**
+     * Sha256 of all entries in order of key
+     */
+    public String digest() {
+        if (digest == null) {
+            Hasher hasher = Hashing.sha256().newHasher();
+            for (Map.Entry<String, String> entry : new TreeMap<>(flatten()).entrySet()) {
+                hasher.putString(entry.getKey(), StandardCharsets.UTF_8).putByte((byte) 0);
+                hasher.putString(entry.getValue(), StandardCharsets.UTF_8).putByte((byte) 0);
+            }
+            digest = hasher.hash().toString();
+        }
+        return digest;
+    }
+
+    /**
+     * Create cmd inputs with entries above the base layer
+     *
+     * @param withBase include base layer if the agent does not hold it
+     */
+    public Map<String, String> toInputs(boolean withBase) {
+        LayeredEnvs base = base();
+
+        Map<String, String> inputs = new HashMap<>(deltaOf(base));
+        inputs.put(ENV_BASE, base.digest());
+
+        if (withBase) {
+            inputs.put(ENV_BASE_LAYER, Jsonable.GSON_CONFIG.toJson(base.layer));
+        }
+
+        return inputs;
+    }
+
+    @Override
+    public String get(Object key) {
+        for (LayeredEnvs item = this; item != null; item = item.parent) {
+            if (item.layer.containsKey(key)) {
+                return item.layer.get(key);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        for (LayeredEnvs item = this; item != null; item = item.parent) {
+            if (item.layer.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return flatten().size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return flatten().entrySet();
+    }
+
+    private Map<String, String> flatten() {
+        if (flattened == null) {
+            flattened = parent == null ? layer : Collections.unmodifiableMap(deltaOf(null));
+        }
+        return flattened;
+    }
+}
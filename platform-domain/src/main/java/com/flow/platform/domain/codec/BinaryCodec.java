@@ -0,0 +1,589 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain.codec;
+
+import com.flow.platform.domain.AgentPath;
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.CmdReport;
+import com.flow.platform.domain.CmdResult;
+import com.flow.platform.domain.CmdStatus;
+import com.flow.platform.domain.CmdType;
+import com.flow.platform.domain.Jsonable;
+import com.google.common.base.Charsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary codec for Cmd, CmdResult and CmdReport
+ * <p>
+ * Layout: magic(3) | version(1) | tag(1) | string table | body
+ * <p>
+ * Every string in body (env keys, values, enum names, zone ids) is written as varint index
+ * to the string table, so duplicated keys and values are only written once. Index 0 is null.
+ * <p>
+ * Fields are written in fixed order per version, new fields must be appended and read only
+ * when version of payload is greater or equal than the version which the field introduced
+ *
+ * @author yang
+ */
+public class BinaryCodec implements Codec {
+
+    public final static String CONTENT_TYPE = "application/x-flow-binary";
+
+    public final static byte VERSION = 3;
+
+    // version which cmd result usage fields been introduced
+    private final static byte VERSION_CMD_RESULT_USAGE = 2;
+
+    // version which cmd result cache fields been introduced
+    private final static byte VERSION_CMD_RESULT_CACHE = 3;
+
+    // first byte 0x00 never be the start of json document
+    private final static byte[] MAGIC = {0x00, 'F', 'B'};
+
+    private final static int HEADER_SIZE = MAGIC.length + 2;
+
+    private final static byte TAG_CMD = 1;
+
+    private final static byte TAG_CMD_RESULT = 2;
+
+    private final static byte TAG_CMD_REPORT = 3;
+
+    public static boolean isBinary(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_SIZE) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public boolean isSupported(Class<?> type) {
+        return type == Cmd.class || type == CmdResult.class || type == CmdReport.class;
+    }
+
+    @Override
+    public byte[] encode(Jsonable object) {
+        Output output = new Output();
+
+        if (object.getClass() == Cmd.class) {
+            output.writeCmd((Cmd) object);
+            return output.toBytes(TAG_CMD);
+        }
+
+        if (object instanceof CmdResult) {
+            output.writeCmdResult((CmdResult) object);
+            return output.toBytes(TAG_CMD_RESULT);
+        }
+
+        if (object instanceof CmdReport) {
+            output.writeCmdReport((CmdReport) object);
+            return output.toBytes(TAG_CMD_REPORT);
+        }
+
+        throw new CodecException("Unsupported type for binary codec: " + object.getClass().getName());
+    }
+
+    @Override
+    public <T extends Jsonable> T decode(byte[] bytes, Class<T> type) {
+        if (!isBinary(bytes)) {
+            throw new CodecException("Invalid binary payload header");
+        }
+
+        byte version = bytes[MAGIC.length];
+        if (version < 1 || version > VERSION) {
+            throw new CodecException("Unsupported binary payload version " + version);
+        }
+
+        byte tag = bytes[MAGIC.length + 1];
+
+        try {
+            Input input = new Input(bytes, HEADER_SIZE, version);
+            Object decoded;
+
+            switch (tag) {
+                case TAG_CMD:
+                    decoded = input.readCmd();
+                    break;
+                case TAG_CMD_RESULT:
+                    decoded = input.readCmdResult();
+                    break;
+                case TAG_CMD_REPORT:
+                    decoded = input.readCmdReport();
+                    break;
+                default:
+                    throw new CodecException("Unknown binary payload tag " + tag);
+            }
+
+            if (!type.isInstance(decoded)) {
+                throw new CodecException("Binary payload is " + decoded.getClass().getSimpleName()
+                    + " but " + type.getSimpleName() + " required");
+            }
+            return type.cast(decoded);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new CodecException("Truncated binary payload", e);
+        }
+    }
+
+    private static class Output {
+
+        private final Map<String, Integer> index = new HashMap<>();
+
+        private final List<String> strings = new ArrayList<>();
+
+        private byte[] buffer = new byte[256];
+
+        private int position;
+
+        byte[] toBytes(byte tag) {
+            byte[][] encoded = new byte[strings.size()][];
+            int tableSize = varintSize(strings.size());
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = strings.get(i).getBytes(Charsets.UTF_8);
+                tableSize += varintSize(encoded[i].length) + encoded[i].length;
+            }
+
+            byte[] body = buffer;
+            int bodySize = position;
+
+            buffer = new byte[HEADER_SIZE + tableSize + bodySize];
+            position = 0;
+
+            writeBytes(MAGIC, MAGIC.length);
+            writeByte(VERSION);
+            writeByte(tag);
+
+            writeVarLong(encoded.length);
+            for (byte[] item : encoded) {
+                writeVarLong(item.length);
+                writeBytes(item, item.length);
+            }
+
+            writeBytes(body, bodySize);
+            return buffer;
+        }
+
+        void writeCmd(Cmd cmd) {
+            AgentPath path = cmd.getAgentPath();
+            writeBoolean(path != null);
+            if (path != null) {
+                writeString(path.getZone());
+                writeString(path.getName());
+            }
+
+            writeString(cmd.getType() == null ? null : cmd.getType().name());
+            writeString(cmd.getStatus() == null ? null : cmd.getStatus().name());
+            writeString(cmd.getCmd());
+            writeNullableLong(cmd.getTimeout());
+            writeString(cmd.getSessionId());
+            writeMap(cmd.getInputs());
+            writeString(cmd.getWorkingDir());
+            writeList(cmd.getOutputEnvFilter());
+            writeString(cmd.getExtra());
+            writeString(cmd.getWebhook());
+
+            writeString(cmd.getId());
+            writeString(cmd.getLogPath());
+            writeNullableLong(cmd.getRetry());
+            writeDate(cmd.getFinishedDate());
+            writeDate(cmd.getCreatedDate());
+            writeDate(cmd.getUpdatedDate());
+
+            writeBoolean(cmd.getCmdResult() != null);
+            if (cmd.getCmdResult() != null) {
+                writeCmdResult(cmd.getCmdResult());
+            }
+        }
+
+        void writeCmdResult(CmdResult result) {
+            writeString(result.getCmdId());
+            writeNullableLong(result.getProcessId());
+            writeNullableLong(result.getExitValue());
+            writeNullableLong(result.getDuration());
+            writeNullableLong(result.getTotalDuration());
+            writeDate(result.getStartTime());
+            writeDate(result.getExecutedTime());
+            writeDate(result.getFinishTime());
+            writeMap(result.getOutput());
+
+            // exceptions only keep message as json does not restore exception type either
+            List<Throwable> exceptions = result.getExceptions();
+            if (exceptions == null) {
+                writeVarLong(0);
+            } else {
+                writeVarLong(exceptions.size() + 1);
+                for (Throwable e : exceptions) {
+                    writeString(e == null ? null : e.getMessage());
+                }
+            }
+
+            writeNullableLong(result.getCpuTime());
+            writeNullableLong(result.getMaxMemory());
+            writeNullableLong(result.getReadBytes());
+            writeNullableLong(result.getWriteBytes());
+
+            writeNullableLong(result.getCacheHits());
+            writeNullableLong(result.getCacheMisses());
+            writeNullableLong(result.getCacheRestoreTime());
+        }
+
+        void writeCmdReport(CmdReport report) {
+            writeString(report.getId());
+            writeString(report.getStatus() == null ? null : report.getStatus().name());
+
+            writeBoolean(report.getResult() != null);
+            if (report.getResult() != null) {
+                writeCmdResult(report.getResult());
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+
+            Integer i = index.get(value);
+            if (i == null) {
+                strings.add(value);
+                i = strings.size();
+                index.put(value, i);
+            }
+            writeVarLong(i);
+        }
+
+        void writeMap(Map<String, String> map) {
+            if (map == null) {
+                writeVarLong(0);
+                return;
+            }
+
+            writeVarLong(map.size() + 1);
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        void writeList(List<String> list) {
+            if (list == null) {
+                writeVarLong(0);
+                return;
+            }
+
+            writeVarLong(list.size() + 1);
+            for (String item : list) {
+                writeString(item);
+            }
+        }
+
+        void writeDate(ZonedDateTime date) {
+            writeBoolean(date != null);
+            if (date != null) {
+                writeVarLong(zigzag(date.toEpochSecond()));
+                writeVarLong(date.getNano());
+                writeString(date.getZone().getId());
+            }
+        }
+
+        void writeNullableLong(Number value) {
+            writeBoolean(value != null);
+            if (value != null) {
+                writeVarLong(zigzag(value.longValue()));
+            }
+        }
+
+        void writeBoolean(boolean value) {
+            writeByte(value ? (byte) 1 : (byte) 0);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeByte(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buffer, position, length);
+            position += length;
+        }
+
+        private void ensure(int size) {
+            if (position + size > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + size));
+            }
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static int varintSize(long value) {
+            int size = 1;
+            while ((value & ~0x7FL) != 0) {
+                size++;
+                value >>>= 7;
+            }
+            return size;
+        }
+    }
+
+    private static class Input {
+
+        private final byte[] buffer;
+
+        private final byte version;
+
+        private final String[] strings;
+
+        private int position;
+
+        Input(byte[] buffer, int offset, byte version) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.version = version;
+
+            // each string takes at least one byte for its length
+            int size = readSize();
+            checkRemaining(size);
+
+            strings = new String[size];
+            for (int i = 0; i < size; i++) {
+                int length = readSize();
+                checkRemaining(length);
+                strings[i] = new String(buffer, position, length, Charsets.UTF_8);
+                position += length;
+            }
+        }
+
+        Cmd readCmd() {
+            Cmd cmd = new Cmd();
+
+            if (readBoolean()) {
+                cmd.setAgentPath(new AgentPath(readString(), readString()));
+            } else {
+                cmd.setAgentPath(null);
+            }
+
+            String type = readString();
+            cmd.setType(type == null ? null : CmdType.valueOf(type));
+
+            String status = readString();
+            cmd.setStatus(status == null ? null : CmdStatus.valueOf(status));
+
+            cmd.setCmd(readString());
+            cmd.setTimeout(readNullableInt());
+            cmd.setSessionId(readString());
+            cmd.setInputs(readMap());
+            cmd.setWorkingDir(readString());
+            cmd.setOutputEnvFilter(readList());
+            cmd.setExtra(readString());
+            cmd.setWebhook(readString());
+
+            cmd.setId(readString());
+            cmd.setLogPath(readString());
+            cmd.setRetry(readNullableInt());
+            cmd.setFinishedDate(readDate());
+            cmd.setCreatedDate(readDate());
+            cmd.setUpdatedDate(readDate());
+
+            if (readBoolean()) {
+                cmd.setCmdResult(readCmdResult());
+            }
+            return cmd;
+        }
+
+        CmdResult readCmdResult() {
+            CmdResult result = new CmdResult();
+            result.setCmdId(readString());
+            result.setProcessId(readNullableInt());
+            result.setExitValue(readNullableInt());
+            result.setDuration(readNullableLong());
+            result.setTotalDuration(readNullableLong());
+            result.setStartTime(readDate());
+            result.setExecutedTime(readDate());
+            result.setFinishTime(readDate());
+            result.setOutput(readMap());
+
+            int size = readSize();
+            if (size == 0) {
+                result.setExceptions(null);
+            } else {
+                List<Throwable> exceptions = new ArrayList<>(size - 1);
+                for (int i = 0; i < size - 1; i++) {
+                    exceptions.add(new Throwable(readString()));
+                }
+                result.setExceptions(exceptions);
+            }
+
+            if (version >= VERSION_CMD_RESULT_USAGE) {
+                result.setCpuTime(readNullableLong());
+                result.setMaxMemory(readNullableLong());
+                result.setReadBytes(readNullableLong());
+                result.setWriteBytes(readNullableLong());
+            }
+
+            if (version >= VERSION_CMD_RESULT_CACHE) {
+                Long hits = readNullableLong();
+                Long misses = readNullableLong();
+                result.setCacheHits(hits == null ? null : hits.intValue());
+                result.setCacheMisses(misses == null ? null : misses.intValue());
+                result.setCacheRestoreTime(readNullableLong());
+            }
+            return result;
+        }
+
+        CmdReport readCmdReport() {
+            CmdReport report = new CmdReport();
+            report.setId(readString());
+
+            String status = readString();
+            report.setStatus(status == null ? null : CmdStatus.valueOf(status));
+
+            if (readBoolean()) {
+                report.setResult(readCmdResult());
+            }
+            return report;
+        }
+
+        String readString() {
+            int i = readSize();
+            if (i == 0) {
+                return null;
+            }
+
+            if (i > strings.length) {
+                throw new CodecException("String index " + i + " out of string table");
+            }
+            return strings[i - 1];
+        }
+
+        Map<String, String> readMap() {
+            int size = readSize();
+            if (size == 0) {
+                return null;
+            }
+
+            Map<String, String> map = new LinkedHashMap<>(capacity(size - 1));
+            for (int i = 0; i < size - 1; i++) {
+                map.put(readString(), readString());
+            }
+            return map;
+        }
+
+        List<String> readList() {
+            int size = readSize();
+            if (size == 0) {
+                return null;
+            }
+
+            List<String> list = new ArrayList<>(size - 1);
+            for (int i = 0; i < size - 1; i++) {
+                list.add(readString());
+            }
+            return list;
+        }
+
+        ZonedDateTime readDate() {
+            if (!readBoolean()) {
+                return null;
+            }
+
+            long seconds = unzigzag(readVarLong());
+            int nano = (int) readVarLong();
+            ZoneId zone = ZoneId.of(readString());
+            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nano), zone);
+        }
+
+        Integer readNullableInt() {
+            Long value = readNullableLong();
+            return value == null ? null : value.intValue();
+        }
+
+        Long readNullableLong() {
+            if (!readBoolean()) {
+                return null;
+            }
+            return unzigzag(readVarLong());
+        }
+
+        boolean readBoolean() {
+            return buffer[position++] != 0;
+        }
+
+        int readSize() {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new CodecException("Invalid size " + value + " in binary payload");
+            }
+            return (int) value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new CodecException("Malformed varint in binary payload");
+        }
+
+        private void checkRemaining(int length) {
+            if (length > buffer.length - position) {
+                throw new CodecException("Length " + length + " exceeds remaining bytes of binary payload");
+            }
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private static int capacity(int size) {
+            return size < 3 ? size + 1 : (int) (size / 0.75f + 1.0f);
+        }
+    }
+}
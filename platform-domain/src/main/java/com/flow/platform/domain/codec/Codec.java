@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain.codec;
+
+import com.flow.platform.domain.Jsonable;
+
+/**
+ * Encode and decode domain payloads which are transferred between cc, agent and api
+ *
+ * @author yang
+ */
+public interface Codec {
+
+    /**
+     * Http content type of encoded payload
+     */
+    String getContentType();
+
+    /**
+     * Is codec able to encode and decode the type
+     */
+    boolean isSupported(Class<?> type);
+
+    byte[] encode(Jsonable object);
+
+    <T extends Jsonable> T decode(byte[] bytes, Class<T> type);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain.codec;
+
+import com.flow.platform.domain.Jsonable;
+
+/**
+ * Registry of codecs, binary payload is detected by magic header, otherwise treat as json
+ *
+ * @author yang
+ */
+public final class Codecs {
+
+    public final static Codec JSON = new JsonCodec();
+
+    public final static Codec BINARY = new BinaryCodec();
+
+    /**
+     * Get codec by name, binary or json, the json codec is default for compatibility
+     */
+    public static Codec of(String name) {
+        return "binary".equalsIgnoreCase(name) ? BINARY : JSON;
+    }
+
+    public static Codec detect(byte[] bytes) {
+        return BinaryCodec.isBinary(bytes) ? BINARY : JSON;
+    }
+
+    /**
+     * Decode payload from either binary or json format
+     */
+    public static <T extends Jsonable> T decode(byte[] bytes, Class<T> type) {
+        return detect(bytes).decode(bytes, type);
+    }
+
+    /**
+     * Encode by binary codec if type supported, otherwise fallback to json.
+     * Only for payload read by {@link #decode}, use {@link #of} for payload to other component
+     */
+    public static byte[] encode(Jsonable object) {
+        if (BINARY.isSupported(object.getClass())) {
+            return BINARY.encode(object);
+        }
+        return JSON.encode(object);
+    }
+
+    private Codecs() {
+    }
+}
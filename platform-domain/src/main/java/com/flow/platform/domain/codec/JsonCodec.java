@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain.codec;
+
+import com.flow.platform.domain.Jsonable;
+import com.google.common.base.Charsets;
+import com.google.gson.JsonParseException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Gson based codec, writes utf-8 bytes directly without intermediate json string
+ *
+ * @author yang
+ */
+public class JsonCodec implements Codec {
+
+    public final static String CONTENT_TYPE = "application/json";
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public boolean isSupported(Class<?> type) {
+        return Jsonable.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public byte[] encode(Jsonable object) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (Writer writer = new OutputStreamWriter(out, Charsets.UTF_8)) {
+            Jsonable.GSON_CONFIG.toJson(object, writer);
+        } catch (IOException | JsonParseException e) {
+            throw new CodecException("Unable to encode json: " + e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T extends Jsonable> T decode(byte[] bytes, Class<T> type) {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(bytes), Charsets.UTF_8)) {
+            return Jsonable.GSON_CONFIG.fromJson(reader, type);
+        } catch (IOException | JsonParseException e) {
+            throw new CodecException("Unable to decode json: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain.test;
+
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.CmdReport;
+import com.flow.platform.domain.CmdResult;
+import com.flow.platform.domain.CmdStatus;
+import com.flow.platform.domain.CmdType;
+import com.flow.platform.domain.Jsonable;
+import com.flow.platform.domain.codec.BinaryCodec;
+import com.flow.platform.domain.codec.Codec;
+import com.flow.platform.domain.codec.CodecException;
+import com.flow.platform.domain.codec.Codecs;
+import com.flow.platform.util.Logger;
+import com.google.common.collect.Lists;
+import java.lang.management.ManagementFactory;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author yang
+ */
+public class CodecTest {
+
+    private final static Logger LOGGER = new Logger(CodecTest.class);
+
+    @Test
+    public void should_encode_and_decode_cmd_by_binary() {
+        // given:
+        Cmd cmd = createCmd(100);
+        cmd.setCmdResult(createResult());
+
+        // when:
+        byte[] bytes = Codecs.BINARY.encode(cmd);
+        Assert.assertTrue(BinaryCodec.isBinary(bytes));
+
+        // then:
+        Cmd decoded = Codecs.decode(bytes, Cmd.class);
+        Assert.assertEquals(cmd, decoded);
+        Assert.assertEquals(cmd.getAgentPath(), decoded.getAgentPath());
+        Assert.assertEquals(cmd.getStatus(), decoded.getStatus());
+        Assert.assertEquals(cmd.getTimeout(), decoded.getTimeout());
+        Assert.assertEquals(cmd.getInputs(), decoded.getInputs());
+        Assert.assertEquals(cmd.getOutputEnvFilter(), decoded.getOutputEnvFilter());
+        Assert.assertEquals(cmd.getWebhook(), decoded.getWebhook());
+        Assert.assertEquals(cmd.getCreatedDate(), decoded.getCreatedDate());
+        Assert.assertNull(decoded.getFinishedDate());
+
+        CmdResult result = decoded.getCmdResult();
+        Assert.assertEquals(cmd.getCmdResult().getExitValue(), result.getExitValue());
+        Assert.assertEquals(cmd.getCmdResult().getDuration(), result.getDuration());
+        Assert.assertEquals(cmd.getCmdResult().getStartTime(), result.getStartTime());
+        Assert.assertEquals(cmd.getCmdResult().getOutput(), result.getOutput());
+        Assert.assertEquals(1, result.getExceptions().size());
+        Assert.assertEquals("mock exception", result.getExceptions().get(0).getMessage());
+    }
+
+    @Test
+    public void should_encode_and_decode_cmd_report_by_binary() {
+        CmdResult result = createResult();
+        result.setCacheHits(2);
+        result.setCacheMisses(1);
+        result.setCacheRestoreTime(350L);
+        CmdReport report = new CmdReport("cmd-id", CmdStatus.EXECUTED, result);
+
+        CmdReport decoded = Codecs.decode(Codecs.encode(report), CmdReport.class);
+        Assert.assertEquals("cmd-id", decoded.getId());
+        Assert.assertEquals(CmdStatus.EXECUTED, decoded.getStatus());
+        Assert.assertEquals(report.getResult().getProcessId(), decoded.getResult().getProcessId());
+        Assert.assertEquals(report.getResult().getFinishTime(), decoded.getResult().getFinishTime());
+        Assert.assertEquals(report.getResult().getCpuTime(), decoded.getResult().getCpuTime());
+        Assert.assertEquals(report.getResult().getMaxMemory(), decoded.getResult().getMaxMemory());
+        Assert.assertNull(decoded.getResult().getReadBytes());
+        Assert.assertEquals(report.getResult().getCacheHits(), decoded.getResult().getCacheHits());
+        Assert.assertEquals(report.getResult().getCacheMisses(), decoded.getResult().getCacheMisses());
+        Assert.assertEquals(report.getResult().getCacheRestoreTime(), decoded.getResult().getCacheRestoreTime());
+    }
+
+    @Test
+    public void should_decode_cmd_result_of_version_one() {
+        CmdResult result = createResult();
+        result.setCpuTime(null);
+        result.setMaxMemory(null);
+
+        // given: payload of version 1 without usage and cache fields
+        byte[] bytes = Codecs.BINARY.encode(result);
+        bytes = Arrays.copyOf(bytes, bytes.length - 4 - 3);
+        bytes[3] = 1;
+
+        // then: usage fields should be null
+        CmdResult decoded = Codecs.decode(bytes, CmdResult.class);
+        Assert.assertEquals(result.getProcessId(), decoded.getProcessId());
+        Assert.assertEquals(1, decoded.getExceptions().size());
+        Assert.assertNull(decoded.getCpuTime());
+    }
+
+    @Test
+    public void should_decode_cmd_result_of_version_two() {
+        CmdResult result = createResult();
+
+        // given: payload of version 2 without cache fields
+        byte[] bytes = Codecs.BINARY.encode(result);
+        bytes = Arrays.copyOf(bytes, bytes.length - 3);
+        bytes[3] = 2;
+
+        // then: cache fields should be null
+        CmdResult decoded = Codecs.decode(bytes, CmdResult.class);
+        Assert.assertEquals(result.getCpuTime(), decoded.getCpuTime());
+        Assert.assertNull(decoded.getCacheHits());
+        Assert.assertNull(decoded.getCacheRestoreTime());
+    }
+
+    @Test
+    public void should_decode_json_payload_by_detect() {
+        Cmd cmd = createCmd(10);
+
+        Cmd fromJson = Codecs.decode(cmd.toBytes(), Cmd.class);
+        Assert.assertEquals(cmd, fromJson);
+        Assert.assertEquals(cmd.getInputs(), fromJson.getInputs());
+
+        Cmd fromJsonCodec = Codecs.decode(Codecs.JSON.encode(cmd), Cmd.class);
+        Assert.assertEquals(cmd.getInputs(), fromJsonCodec.getInputs());
+    }
+
+    @Test
+    public void should_write_duplicated_strings_once() {
+        Cmd cmd = createCmd(200);
+        for (String key : cmd.getInputs().keySet()) {
+            cmd.getInputs().put(key, "same value for every env variable");
+        }
+
+        byte[] binary = Codecs.BINARY.encode(cmd);
+        byte[] json = Codecs.JSON.encode(cmd);
+        Assert.assertTrue(binary.length < json.length / 2);
+    }
+
+    @Test(expected = CodecException.class)
+    public void should_reject_unknown_binary_version() {
+        byte[] bytes = Codecs.BINARY.encode(createCmd(1));
+        bytes[3] = BinaryCodec.VERSION + 1;
+        Codecs.decode(bytes, Cmd.class);
+    }
+
+    @Test(expected = CodecException.class)
+    public void should_reject_string_length_over_payload() {
+        byte[] header = Codecs.BINARY.encode(createCmd(1));
+
+        // one string in table with length 100 but only 2 bytes left
+        byte[] bytes = Arrays.copyOf(header, 9);
+        bytes[5] = 1;
+        bytes[6] = 100;
+        Codecs.decode(bytes, Cmd.class);
+    }
+
+    @Test(expected = CodecException.class)
+    public void should_reject_mismatched_binary_type() {
+        byte[] bytes = Codecs.BINARY.encode(createResult());
+        Codecs.decode(bytes, Cmd.class);
+    }
+
+    @Test
+    public void should_benchmark_json_and_binary_codec() {
+        final int rounds = 2000;
+        Cmd cmd = createCmd(300);
+        cmd.setCmdResult(createResult());
+
+        // warm up
+        benchmark(Codecs.JSON, cmd, rounds);
+        benchmark(Codecs.BINARY, cmd, rounds);
+
+        benchmark(Codecs.JSON, cmd, rounds);
+        benchmark(Codecs.BINARY, cmd, rounds);
+    }
+
+    private void benchmark(Codec codec, Cmd cmd, int rounds) {
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        int size = 0;
+        for (int i = 0; i < rounds; i++) {
+            byte[] bytes = codec.encode(cmd);
+            size = bytes.length;
+            Assert.assertNotNull(codec.decode(bytes, Cmd.class));
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        long allocated = (allocatedBytes() - bytesBefore) / rounds;
+        LOGGER.info("%s codec: %s ms for %s round trips, payload %s bytes, %s bytes allocated per round trip",
+            codec.getContentType(), elapsed, rounds, size, allocated);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static Cmd createCmd(int numOfInputs) {
+        Cmd cmd = new Cmd("default", "mac-test", CmdType.RUN_SHELL, "echo hello");
+        cmd.setId("1234567890");
+        cmd.setStatus(CmdStatus.SENT);
+        cmd.setTimeout(1800);
+        cmd.setSessionId("session-id");
+        cmd.setWorkingDir("/tmp/flow");
+        cmd.setLogPath("/tmp/flow/logs/1234567890.zip");
+        cmd.setWebhook("http://localhost:8080/hooks/cmd?identifier=abc");
+        cmd.setOutputEnvFilter(Lists.newArrayList("FLOW_", "GIT_"));
+        cmd.setCreatedDate(ZonedDateTime.now());
+        cmd.setUpdatedDate(ZonedDateTime.now());
+
+        Map<String, String> inputs = new HashMap<>();
+        for (int i = 0; i < numOfInputs; i++) {
+            inputs.put("FLOW_ENV_VARIABLE_" + i, "value of variable " + i);
+        }
+        cmd.setInputs(inputs);
+        return cmd;
+    }
+
+    private static CmdResult createResult() {
+        CmdResult result = new CmdResult(0);
+        result.setProcessId(12345);
+        result.setDuration(100L);
+        result.setTotalDuration(120L);
+        result.setStartTime(ZonedDateTime.now());
+        result.setFinishTime(ZonedDateTime.now());
+        result.getOutput().put("FLOW_OUTPUT", "hello");
+        result.setCpuTime(1500L);
+        result.setMaxMemory(64L * 1024 * 1024);
+        result.getExceptions().add(new RuntimeException("mock exception"));
+        return result;
+    }
+}
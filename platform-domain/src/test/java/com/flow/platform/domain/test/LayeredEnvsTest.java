@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.domain.test;
+
+import com.flow.platform.domain.LayeredEnvs;
+import com.google.common.collect.ImmutableMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author yang
+ */
+public class LayeredEnvsTest {
+
+    @Test
+    public void should_lookup_envs_by_overlay() {
+        // given:
+        Map<String, String> jobEnvs = new HashMap<>();
+        jobEnvs.put("FLOW_NAME", "flow");
+        jobEnvs.put("FLOW_VERSION", "1");
+
+        // when:
+        LayeredEnvs base = LayeredEnvs.of(jobEnvs);
+        LayeredEnvs step = base.with(ImmutableMap.of("FLOW_VERSION", "2", "FLOW_STEP", "step1"));
+        jobEnvs.put("FLOW_NAME", "changed");
+
+        // then: upper layer overwrite lower layer and base layer is not copied
+        Assert.assertEquals("flow", step.get("FLOW_NAME"));
+        Assert.assertEquals("2", step.get("FLOW_VERSION"));
+        Assert.assertEquals("1", base.get("FLOW_VERSION"));
+        Assert.assertEquals(3, step.size());
+        Assert.assertSame(base, step.getParent());
+        Assert.assertSame(base, step.with("FLOW_OTHER", "x").base());
+        Assert.assertSame(step, step.with(new HashMap<>()));
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("FLOW_NAME", "flow");
+        expected.put("FLOW_VERSION", "2");
+        expected.put("FLOW_STEP", "step1");
+        Assert.assertEquals(expected, step);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void should_not_modify_layered_envs() {
+        LayeredEnvs.of(ImmutableMap.of("FLOW_NAME", "flow")).with("A", "B").put("FLOW_NAME", "other");
+    }
+
+    @Test
+    public void should_resolve_inputs_with_delta_of_base_layer() {
+        // given:
+        Map<String, String> jobEnvs = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            jobEnvs.put("FLOW_ENV_" + i, "value-" + i);
+        }
+
+        LayeredEnvs base = LayeredEnvs.of(jobEnvs);
+        LayeredEnvs step1 = base.with("FLOW_STEP", "step1").with("FLOW_ENV_1", "overwrite");
+        LayeredEnvs step2 = base.with("FLOW_STEP", "step2");
+
+        // when: the first cmd includes base layer
+        Map<String, LayeredEnvs> bases = new HashMap<>();
+        Map<String, String> resolved = LayeredEnvs.resolve(step1.toInputs(true), bases);
+
+        // then:
+        Assert.assertEquals(step1, resolved);
+        Assert.assertEquals(1, bases.size());
+        Assert.assertEquals("overwrite", resolved.get("FLOW_ENV_1"));
+
+        // when: the next cmd only includes delta layers
+        Map<String, String> inputs = step2.toInputs(false);
+        Assert.assertEquals(2, inputs.size());
+        Assert.assertEquals(base.digest(), inputs.get(LayeredEnvs.ENV_BASE));
+
+        // then:
+        resolved = LayeredEnvs.resolve(inputs, bases);
+        Assert.assertEquals(step2, resolved);
+        Assert.assertFalse(resolved.containsKey(LayeredEnvs.ENV_BASE));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void should_raise_error_if_base_layer_not_held() {
+        LayeredEnvs step = LayeredEnvs.of(ImmutableMap.of("FLOW_NAME", "flow")).with("FLOW_STEP", "step1");
+        LayeredEnvs.resolve(step.toInputs(false), new HashMap<>());
+    }
+
+    @Test
+    public void should_not_resolve_plain_inputs() {
+        Map<String, String> inputs = ImmutableMap.of("FLOW_NAME", "flow");
+        Assert.assertSame(inputs, LayeredEnvs.resolve(inputs, new HashMap<>()));
+    }
+}
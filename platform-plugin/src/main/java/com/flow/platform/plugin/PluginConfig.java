@@ -49,6 +49,12 @@ public class PluginConfig {
     @Value("${plugins.repository}")
     private String pluginRepoUrl;
 
+    @Value("${plugins.pool.fetch.size}")
+    private int fetchPoolSize;
+
+    @Value("${plugins.pool.build.size}")
+    private int buildPoolSize;
+
     @Bean
     public Path gitCacheWorkspace() {
         try {
@@ -77,12 +83,32 @@ public class PluginConfig {
         return executor;
     }
 
+    /**
+     * Executor for plugin install fetch stage which is network bound
+     */
+    @Bean
+    public ThreadPoolTaskExecutor pluginFetchExecutor() {
+        return createExecutor(fetchPoolSize, "plugin-fetch-");
+    }
+
+    /**
+     * Executor for plugin install build stage which is cpu bound
+     */
+    @Bean
+    public ThreadPoolTaskExecutor pluginBuildExecutor() {
+        return createExecutor(buildPoolSize, "plugin-build-");
+    }
+
     private static ThreadPoolTaskExecutor initExecutor() {
+        return createExecutor(5, "plugin-");
+    }
+
+    private static ThreadPoolTaskExecutor createExecutor(int poolSize, String threadNamePrefix) {
         ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
-        taskExecutor.setCorePoolSize(5);
-        taskExecutor.setMaxPoolSize(5);
+        taskExecutor.setCorePoolSize(poolSize);
+        taskExecutor.setMaxPoolSize(poolSize);
         taskExecutor.setQueueCapacity(100);
-        taskExecutor.setThreadNamePrefix("plugin-");
+        taskExecutor.setThreadNamePrefix(threadNamePrefix);
         taskExecutor.setDaemon(true);
         return taskExecutor;
     }
@@ -17,6 +17,8 @@
 package com.flow.platform.plugin.context;
 
 import com.flow.platform.plugin.dao.PluginDao;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextClosedEvent;
@@ -35,13 +37,24 @@ public class PluginContextCloseHandler implements ApplicationListener<ContextClo
     @Autowired
     private ThreadPoolTaskExecutor pluginPoolExecutor;
 
+    @Autowired
+    private ThreadPoolTaskExecutor pluginFetchExecutor;
+
+    @Autowired
+    private ThreadPoolTaskExecutor pluginBuildExecutor;
+
     @Override
     public void onApplicationEvent(ContextClosedEvent event) {
 
-        // shutdown executor
-        pluginPoolExecutor.setWaitForTasksToCompleteOnShutdown(true);
-        pluginPoolExecutor.setAwaitTerminationSeconds(10);
-        pluginPoolExecutor.shutdown();
+        // shutdown executors of install stages
+        List<ThreadPoolTaskExecutor> executors =
+            ImmutableList.of(pluginFetchExecutor, pluginPoolExecutor, pluginBuildExecutor);
+
+        for (ThreadPoolTaskExecutor executor : executors) {
+            executor.setWaitForTasksToCompleteOnShutdown(true);
+            executor.setAwaitTerminationSeconds(10);
+            executor.shutdown();
+        }
 
         // dump cache to file
         pluginDao.dump();
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.plugin.dao;
+
+import com.flow.platform.plugin.domain.Plugin;
+import com.flow.platform.plugin.domain.PluginStatus;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Sets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of plugins with indexes by status, label and keyword token,
+ * the put returns new catalog therefore the catalog can be read without lock
+ *
+ * @author yh@firim
+ */
+public class PluginCatalog {
+
+    public final static PluginCatalog EMPTY = new PluginCatalog(Collections.emptyList());
+
+    private final static String TOKEN_SEPARATOR = "[^\\p{Alnum}]+";
+
+    private final ImmutableMap<String, Plugin> plugins;
+
+    // the indexed values of each plugin, to detect which index should be rebuilt on put
+    private final ImmutableMap<String, IndexKey> keys;
+
+    private final ImmutableSetMultimap<PluginStatus, String> statusIndex;
+
+    private final ImmutableSetMultimap<String, String> labelIndex;
+
+    // suffixes of tokens from name and description to names, keyword matches by prefix of suffix
+    private final ImmutableSortedMap<String, ImmutableSet<String>> tokenIndex;
+
+    public PluginCatalog(Collection<Plugin> plugins) {
+        Map<String, Plugin> pluginMap = new TreeMap<>();
+        Map<String, IndexKey> keyMap = new TreeMap<>();
+
+        for (Plugin plugin : plugins) {
+            pluginMap.put(plugin.getName(), plugin);
+            keyMap.put(plugin.getName(), new IndexKey(plugin));
+        }
+
+        this.plugins = ImmutableMap.copyOf(pluginMap);
+        this.keys = ImmutableMap.copyOf(keyMap);
+        this.statusIndex = buildStatusIndex(keys);
+        this.labelIndex = buildLabelIndex(keys);
+        this.tokenIndex = buildTokenIndex(keys);
+    }
+
+    private PluginCatalog(ImmutableMap<String, Plugin> plugins,
+                          ImmutableMap<String, IndexKey> keys,
+                          ImmutableSetMultimap<PluginStatus, String> statusIndex,
+                          ImmutableSetMultimap<String, String> labelIndex,
+                          ImmutableSortedMap<String, ImmutableSet<String>> tokenIndex) {
+        this.plugins = plugins;
+        this.keys = keys;
+        this.statusIndex = statusIndex;
+        this.labelIndex = labelIndex;
+        this.tokenIndex = tokenIndex;
+    }
+
+    public Plugin get(String name) {
+        return plugins.get(name);
+    }
+
+    public Collection<Plugin> all() {
+        return plugins.values();
+    }
+
+    public Set<String> labels() {
+        return labelIndex.keySet();
+    }
+
+    public int size() {
+        return plugins.size();
+    }
+
+    /**
+     * Create new catalog with plugin added or replaced, only the changed indexes will be rebuilt
+     */
+    public PluginCatalog put(Plugin plugin) {
+        IndexKey key = new IndexKey(plugin);
+        IndexKey previous = keys.get(plugin.getName());
+
+        Map<String, Plugin> newPlugins = new TreeMap<>(plugins);
+        newPlugins.put(plugin.getName(), plugin);
+
+        Map<String, IndexKey> newKeys = new TreeMap<>(keys);
+        newKeys.put(plugin.getName(), key);
+        ImmutableMap<String, IndexKey> immutableKeys = ImmutableMap.copyOf(newKeys);
+
+        boolean isNew = Objects.isNull(previous);
+
+        return new PluginCatalog(
+            ImmutableMap.copyOf(newPlugins),
+            immutableKeys,
+            isNew || previous.status != key.status ? buildStatusIndex(immutableKeys) : statusIndex,
+            isNew || !previous.labels.equals(key.labels) ? buildLabelIndex(immutableKeys) : labelIndex,
+            isNew || !previous.tokens.equals(key.tokens) ? buildTokenIndex(immutableKeys) : tokenIndex
+        );
+    }
+
+    /**
+     * List plugins by status, keyword and labels, the null criteria will be ignored
+     */
+    public Set<Plugin> list(Set<PluginStatus> status, String keyword, Set<String> labels) {
+        // candidate names from indexes, null means all plugins
+        Set<String> names = null;
+
+        if (!Objects.isNull(status)) {
+            Set<String> byStatus = new HashSet<>();
+            for (PluginStatus item : status) {
+                byStatus.addAll(statusIndex.get(item));
+            }
+            names = byStatus;
+        }
+
+        if (!Objects.isNull(labels)) {
+            Set<String> byLabel = new HashSet<>();
+            for (String label : labels) {
+                byLabel.addAll(labelIndex.get(label));
+            }
+            names = intersect(names, byLabel);
+        }
+
+        if (!Objects.isNull(keyword)) {
+            for (String token : tokenize(keyword)) {
+                Set<String> byToken = new HashSet<>();
+                for (Set<String> tokenNames : prefixRange(token).values()) {
+                    byToken.addAll(tokenNames);
+                }
+                names = intersect(names, byToken);
+            }
+        }
+
+        Collection<Plugin> candidates = plugins.values();
+        if (!Objects.isNull(names)) {
+            candidates = new HashSet<>(names.size());
+            for (String name : names) {
+                candidates.add(plugins.get(name));
+            }
+        }
+
+        // check candidates by criteria since index is lower case and split by token
+        Set<Plugin> list = new HashSet<>(candidates.size());
+        for (Plugin plugin : candidates) {
+            if (isMatch(plugin, status, keyword, labels)) {
+                list.add(plugin);
+            }
+        }
+        return list;
+    }
+
+    private SortedMap<String, ImmutableSet<String>> prefixRange(String prefix) {
+        return tokenIndex.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private static boolean isMatch(Plugin plugin, Set<PluginStatus> status, String keyword, Set<String> labels) {
+        if (!Objects.isNull(status) && !status.contains(plugin.getStatus())) {
+            return false;
+        }
+
+        if (!Objects.isNull(labels)) {
+            if (Objects.isNull(plugin.getLabels()) || Sets.intersection(labels, plugin.getLabels()).isEmpty()) {
+                return false;
+            }
+        }
+
+        if (!Objects.isNull(keyword)) {
+            return contains(plugin.getName(), keyword) || contains(plugin.getDescription(), keyword);
+        }
+
+        return true;
+    }
+
+    private static boolean contains(String value, String keyword) {
+        return !Objects.isNull(value) && value.contains(keyword);
+    }
+
+    private static Set<String> intersect(Set<String> names, Set<String> other) {
+        if (Objects.isNull(names)) {
+            return other;
+        }
+        names.retainAll(other);
+        return names;
+    }
+
+    private static Set<String> tokenize(String value) {
+        if (Objects.isNull(value)) {
+            return Collections.emptySet();
+        }
+
+        Set<String> tokens = new HashSet<>();
+        for (String token : value.toLowerCase().split(TOKEN_SEPARATOR)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static ImmutableSetMultimap<PluginStatus, String> buildStatusIndex(Map<String, IndexKey> keys) {
+        ImmutableSetMultimap.Builder<PluginStatus, String> builder = ImmutableSetMultimap.builder();
+        for (Map.Entry<String, IndexKey> entry : keys.entrySet()) {
+            if (!Objects.isNull(entry.getValue().status)) {
+                builder.put(entry.getValue().status, entry.getKey());
+            }
+        }
+        return builder.build();
+    }
+
+    private static ImmutableSetMultimap<String, String> buildLabelIndex(Map<String, IndexKey> keys) {
+        ImmutableSetMultimap.Builder<String, String> builder = ImmutableSetMultimap.builder();
+        for (Map.Entry<String, IndexKey> entry : keys.entrySet()) {
+            for (String label : entry.getValue().labels) {
+                builder.put(label, entry.getKey());
+            }
+        }
+        return builder.build();
+    }
+
+    private static ImmutableSortedMap<String, ImmutableSet<String>> buildTokenIndex(Map<String, IndexKey> keys) {
+        Map<String, ImmutableSet.Builder<String>> builders = new TreeMap<>();
+        for (Map.Entry<String, IndexKey> entry : keys.entrySet()) {
+            for (String token : entry.getValue().tokens) {
+                for (int i = 0; i < token.length(); i++) {
+                    builders.computeIfAbsent(token.substring(i), k -> ImmutableSet.builder()).add(entry.getKey());
+                }
+            }
+        }
+
+        ImmutableSortedMap.Builder<String, ImmutableSet<String>> builder = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, ImmutableSet.Builder<String>> entry : builders.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * The plugin values which been indexed
+     */
+    private static class IndexKey {
+
+        private final PluginStatus status;
+
+        private final Set<String> labels;
+
+        private final Set<String> tokens;
+
+        IndexKey(Plugin plugin) {
+            this.status = plugin.getStatus();
+            this.labels = Objects.isNull(plugin.getLabels())
+                ? ImmutableSet.of() : ImmutableSet.copyOf(plugin.getLabels());
+
+            Set<String> tokens = new HashSet<>(tokenize(plugin.getName()));
+            tokens.addAll(tokenize(plugin.getDescription()));
+            this.tokens = ImmutableSet.copyOf(tokens);
+        }
+    }
+}
@@ -45,19 +45,19 @@ public interface PluginDao {
     Plugin get(String name);
 
     /**
-     * update plugin
+     * update plugin, the change will be appended to journal
      * @param plugin
      * @return
      */
     Plugin update(Plugin plugin);
 
     /**
-     * Dump cache to file
+     * Dump cache to snapshot file and truncate journal
      */
     void dump();
 
     /**
-     * Fill in cache from file
+     * Fill in cache from snapshot file and journal
      */
     void load();
 
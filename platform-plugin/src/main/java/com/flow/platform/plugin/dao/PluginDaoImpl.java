@@ -22,29 +22,18 @@ import com.flow.platform.plugin.exception.PluginException;
 import com.flow.platform.util.Logger;
 import com.flow.platform.util.http.HttpClient;
 import com.flow.platform.util.http.HttpResponse;
-import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
-import com.google.common.collect.Sets.SetView;
-import com.google.common.io.Files;
-import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.SerializedName;
-import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -58,16 +47,22 @@ public class PluginDaoImpl implements PluginDao {
 
     private final static String PLUGIN_STORE_FILE = "plugin_cache.json";
 
+    private final static String PLUGIN_JOURNAL_FILE = "plugin_cache.journal";
+
+    // write snapshot and truncate journal after num of updates
+    private final static int SNAPSHOT_INTERVAL = 200;
+
     private final static Logger LOGGER = new Logger(PluginDao.class);
 
     private final static Gson GSON = new GsonBuilder().create();
 
-    private Map<String, Plugin> pluginCache = new ConcurrentHashMap<>();
+    private final static Set<PluginStatus> IN_INSTALL_STATUS =
+        ImmutableSet.of(PluginStatus.IN_QUEUE, PluginStatus.INSTALLING);
 
     /**
-     * Unique label list
+     * Immutable plugin catalog for read, replaced on every change
      */
-    private Set<String> allLabels = Collections.emptySet();
+    private volatile PluginCatalog catalog = PluginCatalog.EMPTY;
 
     @Autowired
     private Path gitWorkspace;
@@ -75,140 +70,106 @@ public class PluginDaoImpl implements PluginDao {
     @Autowired
     private String pluginSourceUrl;
 
-    private Path storePath;
+    private PluginJournal journal;
 
     @PostConstruct
     private void init() {
-        this.storePath = Paths.get(gitWorkspace.toString(), PLUGIN_STORE_FILE);
+        this.journal = new PluginJournal(
+            Paths.get(gitWorkspace.toString(), PLUGIN_STORE_FILE),
+            Paths.get(gitWorkspace.toString(), PLUGIN_JOURNAL_FILE),
+            GSON);
         load();
     }
 
     @Override
-    public void refresh() {
+    public synchronized void refresh() {
         List<Plugin> plugins = doFetchPlugins();
 
-        allLabels = new HashSet<>(plugins.size() * 2);
+        Map<String, Plugin> merged = new LinkedHashMap<>();
+        for (Plugin plugin : catalog.all()) {
+            merged.put(plugin.getName(), plugin);
+        }
 
         for (Plugin plugin : plugins) {
-            allLabels.addAll(plugin.getLabels());
-
-            Plugin cached = pluginCache.get(plugin.getName());
+            Plugin cached = merged.get(plugin.getName());
 
             // only update no plugins
             if (Objects.isNull(cached)) {
                 plugin.setStatus(PluginStatus.PENDING);
-                pluginCache.put(plugin.getName(), plugin);
+                merged.put(plugin.getName(), plugin);
+                continue;
+            }
+
+            // plugin in installing is held by install task and written back by update, refresh it next time
+            if (IN_INSTALL_STATUS.contains(cached.getStatus())) {
                 continue;
             }
 
-            // copy latest plugin data to cached
-            cached.setAuthor(plugin.getAuthor());
-            cached.setTag(plugin.getTag());
-            cached.setSource(plugin.getSource());
-            cached.setPlatform(plugin.getPlatform());
-            cached.setLabels(plugin.getLabels());
-            cached.setDescription(plugin.getDescription());
-            cached.setLatestCommit(plugin.getLatestCommit());
+            // copy latest plugin data to a copy of cached, since cached plugin is shared by current catalog
+            Plugin updated = GSON.fromJson(GSON.toJsonTree(cached), Plugin.class);
+            updated.setAuthor(plugin.getAuthor());
+            updated.setTag(plugin.getTag());
+            updated.setSource(plugin.getSource());
+            updated.setPlatform(plugin.getPlatform());
+            updated.setLabels(plugin.getLabels());
+            updated.setDescription(plugin.getDescription());
+            updated.setLatestCommit(plugin.getLatestCommit());
+            merged.put(updated.getName(), updated);
         }
 
+        catalog = new PluginCatalog(merged.values());
         dump();
     }
 
     @Override
     public Plugin get(String name) {
-        return pluginCache.get(name);
+        return catalog.get(name);
     }
 
     @Override
     public Set<Plugin> list(Set<PluginStatus> status, String keyword, Set<String> labels) {
-        final Set<Plugin> list = new HashSet<>(pluginCache.values());
-
-        // filter for status
-        iteratorNext(list, (iterator, plugin) -> {
-            if (Objects.isNull(status)) {
-                return;
-            }
-
-            if (!status.contains(plugin.getStatus())) {
-                iterator.remove();
-            }
-        });
-
-        // filter for labels
-        iteratorNext(list, (iterator, plugin) -> {
-            if (Objects.isNull(labels)) {
-                return;
-            }
-
-            SetView<String> intersection = Sets.intersection(labels, plugin.getLabels());
-            if (intersection.size() == 0) {
-                iterator.remove();
-            }
-        });
-
-        // filter for keyword
-        iteratorNext(list, (iterator, plugin) -> {
-            if (Objects.isNull(keyword)) {
-                return;
-            }
-
-            if (!plugin.getName().contains(keyword) && !plugin.getDescription().contains(keyword)) {
-                list.add(plugin);
-                iterator.remove();
-            }
-        });
-
-        return list;
+        return catalog.list(status, keyword, labels);
     }
 
     @Override
     public Set<String> labels() {
-        return ImmutableSet.<String>builder().addAll(allLabels).build();
+        return ImmutableSet.<String>builder().addAll(catalog.labels()).build();
     }
 
     @Override
-    public Plugin update(Plugin plugin) {
-        pluginCache.put(plugin.getName(), plugin);
+    public synchronized Plugin update(Plugin plugin) {
+        catalog = catalog.put(plugin);
+
+        try {
+            journal.append(plugin);
+
+            if (journal.size() >= SNAPSHOT_INTERVAL) {
+                journal.snapshot(catalog.all());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write plugin journal: " + e.getMessage());
+        }
+
         return plugin;
     }
 
     @Override
-    public void load() {
-        Type type = new TypeToken<Map<String, Plugin>>() {
-        }.getType();
-
-        File file = storePath.toFile();
-        if (!file.exists()) {
-            return;
-        }
+    public synchronized void load() {
+        catalog = new PluginCatalog(journal.recover().values());
 
-        try {
-            String rawData = Files.toString(file, Charsets.UTF_8);
-            pluginCache = GSON.fromJson(rawData, type);
-            LOGGER.trace("Plugin data been loaded from path: " + file);
-        } catch (Throwable e) {
-            LOGGER.warn("Unable to load plugin data: " + e.getMessage());
-        }
+        // compact journal to snapshot, the incomplete journal entry will be dropped
+        dump();
     }
 
     @Override
-    public void dump() {
+    public synchronized void dump() {
         try {
-            Files.write(GSON.toJson(pluginCache).getBytes(), storePath.toFile());
-            LOGGER.trace("Plugin data been dumped to path: " + storePath);
+            journal.snapshot(catalog.all());
         } catch (IOException e) {
             throw new PluginException(e.getMessage());
         }
     }
 
-    private void iteratorNext(Collection<Plugin> plugins, PluginIteratorConsumer consumer) {
-        Iterator<Plugin> iterator = plugins.iterator();
-        while(iterator.hasNext()) {
-            Plugin plugin = iterator.next();
-            consumer.consume(iterator, plugin);
-        }
-    }
-
     /**
      * Load plugin list from remote url
      *
@@ -240,9 +201,4 @@ public class PluginDaoImpl implements PluginDao {
         private List<Plugin> plugins;
     }
 
-    private interface PluginIteratorConsumer {
-
-        void consume(Iterator<Plugin> iterator, Plugin plugin);
-    }
-
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.plugin.dao;
+
+import com.flow.platform.plugin.domain.Plugin;
+import com.flow.platform.util.Logger;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Plugin store on disk with snapshot file and append only journal file,
+ * the plugin changes are appended to journal and replayed on top of snapshot when recover
+ *
+ * @author yh@firim
+ */
+public class PluginJournal implements Closeable {
+
+    private final static Logger LOGGER = new Logger(PluginJournal.class);
+
+    private final static Type SNAPSHOT_TYPE = new TypeToken<Map<String, Plugin>>() {
+    }.getType();
+
+    private final static byte[] LINE_SEPARATOR = "\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Path snapshotPath;
+
+    private final Path journalPath;
+
+    private final Gson gson;
+
+    private FileChannel journal;
+
+    // num of entries appended to journal since last snapshot
+    private int size = 0;
+
+    public PluginJournal(Path snapshotPath, Path journalPath, Gson gson) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = journalPath;
+        this.gson = gson;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Load plugins from snapshot and replay journal, the incomplete entry at the end of journal
+     * been written while crash will be ignored
+     */
+    public synchronized Map<String, Plugin> recover() {
+        Map<String, Plugin> plugins = new LinkedHashMap<>();
+
+        if (Files.exists(snapshotPath)) {
+            try {
+                String raw = new String(Files.readAllBytes(snapshotPath), StandardCharsets.UTF_8);
+                Map<String, Plugin> snapshot = gson.fromJson(raw, SNAPSHOT_TYPE);
+                if (!Objects.isNull(snapshot)) {
+                    plugins.putAll(snapshot);
+                }
+                LOGGER.trace("Plugin snapshot been loaded from path: %s", snapshotPath);
+            } catch (Throwable e) {
+                LOGGER.warn("Unable to load plugin snapshot: " + e.getMessage());
+            }
+        }
+
+        if (!Files.exists(journalPath)) {
+            return plugins;
+        }
+
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Plugin plugin = gson.fromJson(line, Plugin.class);
+                if (Objects.isNull(plugin) || Objects.isNull(plugin.getName())) {
+                    break;
+                }
+
+                plugins.put(plugin.getName(), plugin);
+                replayed++;
+            }
+        } catch (Throwable e) {
+            LOGGER.warn("Plugin journal stopped at entry %s: %s", replayed, e.getMessage());
+        }
+
+        LOGGER.trace("Plugin journal replayed %s entries from path: %s", replayed, journalPath);
+        return plugins;
+    }
+
+    /**
+     * Append plugin to journal and sync to disk
+     */
+    public synchronized void append(Plugin plugin) throws IOException {
+        if (Objects.isNull(journal)) {
+            journal = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        byte[] entry = gson.toJson(plugin).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length + LINE_SEPARATOR.length);
+        buffer.put(entry).put(LINE_SEPARATOR).flip();
+
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        journal.force(false);
+        size++;
+    }
+
+    /**
+     * Write all plugins to snapshot and truncate journal,
+     * the snapshot is synced and replaced atomically so the journal can be replayed again if crash before truncate
+     */
+    public synchronized void snapshot(Collection<Plugin> plugins) throws IOException {
+        Map<String, Plugin> snapshot = new LinkedHashMap<>(plugins.size());
+        for (Plugin plugin : plugins) {
+            snapshot.put(plugin.getName(), plugin);
+        }
+
+        Path tmp = Paths.get(snapshotPath.toString() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // the rename must be on disk before journal truncated
+        forceDir(snapshotPath.toAbsolutePath().getParent());
+
+        close();
+        Files.write(journalPath, new byte[0]);
+        size = 0;
+
+        LOGGER.trace("Plugin snapshot been dumped to path: %s", snapshotPath);
+    }
+
+    /**
+     * Sync directory entries to disk, not supported on some platforms such as windows
+     */
+    private static void forceDir(Path dir) {
+        if (Objects.isNull(dir)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to sync directory %s: %s", dir, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!Objects.isNull(journal)) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
@@ -40,17 +40,23 @@ import com.flow.platform.util.git.GitException;
 import com.flow.platform.util.git.JGitUtil;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import javax.annotation.PostConstruct;
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.util.Strings;
@@ -58,6 +64,7 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
@@ -86,6 +93,15 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
 
     private final static String TMP = "tmp";
 
+    // bare repo in git cache workspace which shares objects to all plugin cache repos
+    private final static String SHARED_GIT = ".objects.git";
+
+    // build outputs cache folder in git cache workspace
+    private final static String BUILD_CACHE = ".build-cache";
+
+    // tags of plugin source fetched into shared repo as refs/sources/{source hash}/tags/*
+    private final static String SOURCE_REFS = "refs/sources/";
+
     @Value("${api.run.indocker}")
     private boolean runInDocker;
 
@@ -100,23 +116,61 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
     @Autowired
     private ThreadPoolTaskExecutor pluginPoolExecutor;
 
+    @Autowired
+    private ThreadPoolTaskExecutor pluginFetchExecutor;
+
+    @Autowired
+    private ThreadPoolTaskExecutor pluginBuildExecutor;
+
     @Autowired
     private PluginDao pluginDao;
 
     @Autowired
     private String pluginSourceUrl;
 
-    private final Map<Plugin, Future<?>> taskCache = new ConcurrentHashMap<>();
+    private final Map<Plugin, InstallTask> taskCache = new ConcurrentHashMap<>();
+
+    // lock per plugin source to fetch the same source only once for concurrent installing
+    private final Map<String, Object> sourceLocks = new ConcurrentHashMap<>();
 
-    private final List<Processor> processors = ImmutableList.of(
+    private final List<Processor> fetchProcessors = ImmutableList.of(
         new InitGitProcessor(),
-        new FetchProcessor(),
+        new FetchProcessor()
+    );
+
+    private final List<Processor> prepareProcessors = ImmutableList.of(
         new CompareCommitProcessor(),
-        new AnalysisYmlProcessor(),
-        new BuildProcessor(),
+        new AnalysisYmlProcessor()
+    );
+
+    private final List<Processor> buildProcessors = ImmutableList.of(
+        new BuildProcessor()
+    );
+
+    private final List<Processor> pushProcessors = ImmutableList.of(
         new PushProcessor()
     );
 
+    private final List<Processor> processors = ImmutableList.<Processor>builder()
+        .addAll(fetchProcessors)
+        .addAll(prepareProcessors)
+        .addAll(buildProcessors)
+        .addAll(pushProcessors)
+        .build();
+
+    private List<Stage> stages;
+
+    @PostConstruct
+    private void init() {
+        // each stage runs on its own executor, so the plugins can be fetched, built and pushed in parallel
+        stages = ImmutableList.of(
+            new Stage("Fetch", pluginFetchExecutor, fetchProcessors),
+            new Stage("Prepare", pluginPoolExecutor, prepareProcessors),
+            new Stage("Build", pluginBuildExecutor, buildProcessors),
+            new Stage("Push", pluginPoolExecutor, pushProcessors)
+        );
+    }
+
     @Override
     public Plugin find(String name) {
         return pluginDao.get(name);
@@ -147,9 +201,10 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
             // update plugin status
             updatePluginStatus(plugin, IN_QUEUE);
 
-            // record future task
-            Future<?> submit = pluginPoolExecutor.submit(new InstallRunnable(plugin));
-            taskCache.put(plugin, submit);
+            // record install task
+            InstallTask task = new InstallTask(plugin);
+            taskCache.put(plugin, task);
+            task.submit();
             LOGGER.trace("Plugin %s finish To Queue", pluginName);
         }
 
@@ -169,9 +224,9 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
         }
 
         try {
-            Future<?> submit = taskCache.get(plugin);
-            if (!Objects.isNull(submit)) {
-                submit.cancel(true);
+            InstallTask task = taskCache.get(plugin);
+            if (!Objects.isNull(task)) {
+                task.cancel();
             } else {
                 plugin.setStopped(true);
             }
@@ -277,6 +332,35 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
         return Paths.get(gitCacheWorkspace.toString(), plugin.getName());
     }
 
+    /**
+     * Shared bare repo which stores git objects for all plugin cache repos
+     */
+    private Path sharedGitPath() throws GitException {
+        Path path = Paths.get(gitCacheWorkspace.toString(), SHARED_GIT);
+        synchronized (sourceLocks) {
+            if (!path.toFile().exists()) {
+                JGitUtil.init(path, true);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Build outputs cache path which keyed by plugin source, tag commit, build image and build command
+     */
+    private Path buildCachePath(Plugin plugin) {
+        PluginDetail detail = plugin.getPluginDetail();
+        String key = Hashing.sha256()
+            .newHasher()
+            .putString(plugin.getSource(), StandardCharsets.UTF_8).putChar('|')
+            .putString(plugin.getLatestCommit(), StandardCharsets.UTF_8).putChar('|')
+            .putString(detail.getImage(), StandardCharsets.UTF_8).putChar('|')
+            .putString(detail.getBuild(), StandardCharsets.UTF_8)
+            .hash()
+            .toString();
+        return Paths.get(gitCacheWorkspace.toString(), BUILD_CACHE, key);
+    }
+
     private interface Processor {
 
         void exec(Plugin plugin);
@@ -299,6 +383,9 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
                 JGitUtil.init(cachePath, false);
                 JGitUtil.init(localPath, true);
 
+                // read objects from shared repo instead of storing them in each plugin
+                JGitUtil.shareObjects(cachePath, sharedGitPath());
+
                 // remote set
                 JGitUtil.remoteSet(cachePath, ORIGIN_REMOTE, plugin.getSource() + GIT_SUFFIX);
                 JGitUtil.remoteSet(cachePath, LOCAL_REMOTE, localPath.toString());
@@ -366,7 +453,21 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
         public void exec(Plugin plugin) {
             LOGGER.traceMarker("FetchProcessor", "Fetch tags");
             try {
-                JGitUtil.fetchTags(gitCachePath(plugin), ORIGIN_REMOTE);
+                Path sharedPath = sharedGitPath();
+                String source = plugin.getSource() + GIT_SUFFIX;
+                String sourceTags = SOURCE_REFS
+                    + Hashing.sha256().hashString(source, StandardCharsets.UTF_8) + "/tags/";
+
+                // fetch source to shared repo only if the tag commit not been fetched by other plugins
+                synchronized (sourceLocks.computeIfAbsent(source, key -> new Object())) {
+                    String fetched = JGitUtil.resolveCommit(sharedPath, sourceTags + plugin.getTag());
+                    if (!Objects.equals(fetched, plugin.getLatestCommit())) {
+                        JGitUtil.fetch(sharedPath, source, "+refs/tags/*:" + sourceTags + "*");
+                    }
+                }
+
+                // only tags are updated since objects are read from shared repo
+                JGitUtil.fetch(gitCachePath(plugin), sharedPath.toString(), "+" + sourceTags + "*:refs/tags/*");
             } catch (Throwable e) {
                 LOGGER.error("Git Fetch", e);
                 throw new PluginException(e.getMessage());
@@ -463,17 +564,27 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
                     String latestGitTag = plugin.getTag();
                     JGitUtil.checkout(cachePath, latestGitTag);
 
-                    // first pull image and build
-                    if (!runInDocker) {
-                        dockerPullAndBuild(plugin);
+                    Path buildCachePath = buildCachePath(plugin);
+                    if (buildCachePath.toFile().exists()) {
+                        // reuse outputs which built from same commit by same image and command
+                        LOGGER.traceMarker("BuildProcessor", "Build outputs found in cache");
+                        Path artifactPath = Paths.get(cachePath.toString(), DIST);
+                        FileUtils.deleteDirectory(artifactPath.toFile());
+                        FileUtils.copyDirectory(buildCachePath.toFile(), artifactPath.toFile());
                     } else {
-                        // if run in docker only build
-                        build(plugin);
+                        // first pull image and build
+                        if (!runInDocker) {
+                            dockerPullAndBuild(plugin);
+                        } else {
+                            // if run in docker only build
+                            build(plugin);
+                        }
+
+                        // second detect outputs
+                        detectBuildArtifacts(plugin);
+                        saveBuildArtifacts(plugin, buildCachePath);
                     }
 
-                    // second detect outputs
-                    detectBuildArtifacts(plugin);
-
                     // third push outputs to localRepo
                     pushArtifactsToLocalRepo(plugin);
 
@@ -517,6 +628,25 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
             }
         }
 
+        /**
+         * Copy build outputs to build cache, the cache folder is moved in atomically
+         * therefore the partial outputs will not be reused
+         */
+        private void saveBuildArtifacts(Plugin plugin, Path buildCachePath) {
+            Path artifactPath = Paths.get(gitCachePath(plugin).toString(), DIST);
+            Path tmp = Paths.get(gitCacheWorkspace.toString(), TMP, UUID.randomUUID().toString());
+
+            try {
+                FileUtils.copyDirectory(artifactPath.toFile(), tmp.toFile());
+                Files.createDirectories(buildCachePath.getParent());
+                Files.move(tmp, buildCachePath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // cache been saved by other plugin with same outputs or cannot be saved
+                LOGGER.warn("Unable to save build outputs to cache: " + e.getMessage());
+                FileUtils.deleteQuietly(tmp.toFile());
+            }
+        }
+
         private void pushArtifactsToLocalRepo(Plugin plugin) {
             try {
 
@@ -527,8 +657,8 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
                 // default outputs is dist folder
                 Path artifactPath = Paths.get(cachePath.toString(), DIST);
 
-                // create tmp folder to store build outputs
-                Path tmp = Paths.get(gitCacheWorkspace.toString(), "tmp");
+                // create tmp folder for each plugin to store build outputs
+                Path tmp = Paths.get(gitCacheWorkspace.toString(), TMP, plugin.getName());
                 if (!tmp.toFile().exists()) {
                     Files.createDirectories(tmp);
                 }
@@ -545,20 +675,21 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
                 // init git and push tags
                 JGitUtil.init(actPath, false);
                 JGitUtil.remoteSet(actPath, LOCAL_REMOTE, localPath.toString());
-                Git git = Git.open(actPath.toFile());
 
-                git.add()
-                    .addFilepattern(".")
-                    .call();
+                try (Git git = Git.open(actPath.toFile())) {
+                    git.add()
+                        .addFilepattern(".")
+                        .call();
 
-                git.commit()
-                    .setMessage("add build outputs")
-                    .call();
+                    git.commit()
+                        .setMessage("add build outputs")
+                        .call();
 
-                git.tag()
-                    .setName(plugin.getTag())
-                    .setMessage("add " + plugin.getTag())
-                    .call();
+                    git.tag()
+                        .setName(plugin.getTag())
+                        .setMessage("add " + plugin.getTag())
+                        .call();
+                }
 
                 JGitUtil.push(actPath, LOCAL_REMOTE, latestGitTag);
                 // set currentTag latestTag
@@ -568,9 +699,9 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
                 // delete path
                 FileUtils.deleteDirectory(actPath.toFile());
             } catch (Throwable e) {
-
+                LOGGER.error("Push Build Outputs", e);
+                throw new PluginException("Push Build Outputs", e);
             }
-
         }
 
         @Override
@@ -610,27 +741,109 @@ public class PluginServiceImpl extends ApplicationEventService implements Plugin
         }
     }
 
-    private class InstallRunnable implements Runnable {
+    private class Stage {
+
+        private final String name;
+
+        private final ThreadPoolTaskExecutor executor;
+
+        private final List<Processor> processors;
+
+        Stage(String name, ThreadPoolTaskExecutor executor, List<Processor> processors) {
+            this.name = name;
+            this.executor = executor;
+            this.processors = processors;
+        }
+    }
+
+    /**
+     * Install task which runs stages one by one, the next stage is submitted to
+     * its executor when the current stage finished
+     */
+    private class InstallTask implements Runnable {
 
         private final Plugin plugin;
 
-        public InstallRunnable(Plugin plugin) {
+        private int stageIndex = 0;
+
+        private volatile boolean cancelled = false;
+
+        private volatile Future<?> future;
+
+        InstallTask(Plugin plugin) {
             this.plugin = plugin;
         }
 
+        /**
+         * Submit current stage, the plugin is marked as failed if the stage executor is full
+         */
+        void submit() {
+            Stage stage = stages.get(stageIndex);
+            try {
+                future = stage.executor.submit(this);
+            } catch (TaskRejectedException e) {
+                LOGGER.warn("Plugin %s stage %s rejected: %s", plugin.getName(), stage.name, e.getMessage());
+                plugin.setReason("Too many plugins in " + stage.name + " stage, please retry later");
+                updatePluginStatus(plugin, PENDING);
+                taskCache.remove(plugin);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+
+            Future<?> current = future;
+            if (!Objects.isNull(current)) {
+                current.cancel(true);
+            }
+        }
+
         @Override
         public void run() {
-            if (Objects.equals(false, plugin.getStopped())) {
-                LOGGER.traceMarker("InstallRunnable", "Plugin Start Install Or Update");
-                execInstallOrUpdate(plugin);
-                LOGGER.traceMarker("InstallRunnable", "Plugin Finish Install Or Update");
+            if (cancelled) {
+                return;
+            }
+
+            if (stageIndex == 0 && !Objects.equals(false, plugin.getStopped())) {
+                plugin.setStopped(false);
+                plugin.setStatus(PluginStatus.PENDING);
+                pluginDao.update(plugin);
+                taskCache.remove(plugin);
+                LOGGER.traceMarker("InstallTask", "Plugin Stopped");
                 return;
             }
 
-            plugin.setStopped(false);
-            plugin.setStatus(PluginStatus.PENDING);
-            pluginDao.update(plugin);
-            LOGGER.traceMarker("InstallRunnable", "Plugin Stopped");
+            Stage stage = stages.get(stageIndex);
+            LOGGER.traceMarker("InstallTask", "Plugin %s Start Stage %s", plugin.getName(), stage.name);
+
+            try {
+                if (stageIndex == 0) {
+                    updatePluginStatus(plugin, INSTALLING);
+                }
+
+                for (Processor processor : stage.processors) {
+                    processor.exec(plugin);
+                }
+            } catch (Throwable e) {
+                if (!cancelled) {
+                    plugin.setReason(ExceptionUtil.findRootCause(e).getMessage());
+                    updatePluginStatus(plugin, PENDING);
+                    taskCache.remove(plugin);
+                }
+                return;
+            }
+
+            LOGGER.traceMarker("InstallTask", "Plugin %s Finish Stage %s", plugin.getName(), stage.name);
+
+            stageIndex++;
+            if (stageIndex == stages.size()) {
+                taskCache.remove(plugin);
+                return;
+            }
+
+            if (!cancelled) {
+                submit();
+            }
         }
     }
 }
@@ -41,7 +41,7 @@ public class CmdUtil {
 
     public static void exeCmd(String shell) {
 
-        LOGGER.debug("Exec cmd is " + shell);
+        LOGGER.debug("Exec cmd is %s", shell);
         try {
             Process process;
             ProcessBuilder pb = new ProcessBuilder(Unix.CMD_EXECUTOR, "-c", shell);
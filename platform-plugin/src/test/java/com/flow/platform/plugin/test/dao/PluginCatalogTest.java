@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.plugin.test.dao;
+
+import com.flow.platform.plugin.dao.PluginCatalog;
+import com.flow.platform.plugin.dao.PluginJournal;
+import com.flow.platform.plugin.domain.Plugin;
+import com.flow.platform.plugin.domain.PluginStatus;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author yh@firim
+ */
+public class PluginCatalogTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void should_list_plugins_by_index() {
+        Plugin fir = createPlugin("fircli", "upload package to fir.im", "fir");
+        Plugin flow = createPlugin("flowCliA", "flow ci cli", "flow");
+
+        PluginCatalog catalog = new PluginCatalog(ImmutableList.of(fir, flow));
+        Assert.assertEquals(ImmutableSet.of("fir", "flow"), catalog.labels());
+
+        // when: list by keyword inside of word
+        Set<Plugin> plugins = catalog.list(null, "Cli", null);
+
+        // then: only match the case sensitive keyword
+        Assert.assertEquals(ImmutableSet.of(flow), plugins);
+        Assert.assertEquals(ImmutableSet.of(fir, flow), catalog.list(null, "cli", null));
+        Assert.assertEquals(ImmutableSet.of(fir), catalog.list(null, "to fir", null));
+
+        // when: update plugin status
+        fir.setStatus(PluginStatus.INSTALLED);
+        PluginCatalog updated = catalog.put(fir);
+
+        // then: status index of previous catalog should not be changed
+        Assert.assertEquals(0, catalog.list(ImmutableSet.of(PluginStatus.INSTALLED), null, null).size());
+
+        Set<Plugin> installed = updated.list(ImmutableSet.of(PluginStatus.INSTALLED), null, ImmutableSet.of("fir"));
+        Assert.assertEquals(ImmutableSet.of(fir), installed);
+        Assert.assertEquals(1, updated.list(ImmutableSet.of(PluginStatus.INSTALLED), null, null).size());
+        Assert.assertEquals(0, updated.list(null, "fir", ImmutableSet.of("flow")).size());
+    }
+
+    @Test
+    public void should_recover_plugins_from_snapshot_and_journal() throws Throwable {
+        Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("plugin_cache.json");
+        Path journalPath = temporaryFolder.getRoot().toPath().resolve("plugin_cache.journal");
+        Gson gson = new Gson();
+
+        Plugin fir = createPlugin("fircli", "upload package to fir.im", "fir");
+        Plugin flow = createPlugin("flowCliA", "flow ci cli", "flow");
+
+        PluginJournal journal = new PluginJournal(snapshotPath, journalPath, gson);
+        journal.snapshot(ImmutableList.of(fir, flow));
+
+        // when: append changes to journal and write incomplete entry as crash
+        fir.setStatus(PluginStatus.INSTALLING);
+        journal.append(fir);
+        fir.setStatus(PluginStatus.INSTALLED);
+        journal.append(fir);
+        journal.close();
+        Assert.assertEquals(2, journal.size());
+
+        Files.write(journalPath, "{\"name\":\"flowCliA\",\"sta".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+
+        // then: latest change should be recovered and incomplete entry is ignored
+        Map<String, Plugin> plugins = new PluginJournal(snapshotPath, journalPath, gson).recover();
+        Assert.assertEquals(2, plugins.size());
+        Assert.assertEquals(PluginStatus.INSTALLED, plugins.get("fircli").getStatus());
+        Assert.assertEquals(PluginStatus.PENDING, plugins.get("flowCliA").getStatus());
+
+        // when: snapshot again
+        journal.snapshot(plugins.values());
+
+        // then: journal should be truncated
+        Assert.assertEquals(0, Files.size(journalPath));
+        Assert.assertEquals(0, journal.size());
+    }
+
+    private static Plugin createPlugin(String name, String description, String label) {
+        Plugin plugin = new Plugin(name, "https://github.com/flowci/" + name, ImmutableSet.of(label), "flow", null);
+        plugin.setDescription(description);
+        return plugin;
+    }
+}
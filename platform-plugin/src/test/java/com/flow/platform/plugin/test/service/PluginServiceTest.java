@@ -20,6 +20,7 @@ import com.flow.platform.plugin.domain.Plugin;
 import com.flow.platform.plugin.domain.PluginStatus;
 import com.flow.platform.plugin.event.PluginStatusChangeEvent;
 import com.flow.platform.plugin.test.TestBase;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultiset;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -152,6 +153,36 @@ public class PluginServiceTest extends TestBase {
         Assert.assertEquals(false, plugin.getStopped());
     }
 
+    @Test
+    public void should_install_plugins_from_same_source_concurrently() throws Throwable {
+        ImmutableList<String> names = ImmutableList.of("flowCliA", "flowCliD", "flowCliF");
+
+        CountDownLatch countDownLatch = new CountDownLatch(names.size());
+        applicationEventMulticaster.addApplicationListener((ApplicationListener<PluginStatusChangeEvent>) event -> {
+            if (names.contains(event.getPluginName()) && event.getPluginStatus() == PluginStatus.INSTALLED) {
+                countDownLatch.countDown();
+            }
+        });
+
+        // when: install plugins at same time
+        for (String name : names) {
+            cleanFolder(name);
+            resetPluginStatus(name);
+            pluginService.install(name);
+        }
+
+        // then: all plugins should be installed
+        Assert.assertTrue(countDownLatch.await(60, TimeUnit.SECONDS));
+
+        for (String name : names) {
+            Assert.assertEquals(PluginStatus.INSTALLED, pluginService.find(name).getStatus());
+
+            // then: objects of plugin cache repo should be read from shared repo
+            Path alternates = Paths.get(gitCacheWorkspace.toString(), name, ".git", "objects", "info", "alternates");
+            Assert.assertTrue(alternates.toFile().exists());
+        }
+    }
+
     private void resetPluginStatus(String name) {
         Plugin plugin = pluginService.find(name);
         plugin.setStatus(PluginStatus.PENDING);
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.queue;
+
+/**
+ * When the journal of {@link MappedFileQueue} is forced to the disk
+ *
+ * @author yang
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Force after every enqueue and ack, safest and slowest
+     */
+    ALWAYS,
+
+    /**
+     * Force at most once per interval, records written within the interval can be lost on power failure
+     */
+    INTERVAL,
+
+    /**
+     * Leave it to the os page cache, only survive process crash
+     */
+    NEVER
+}
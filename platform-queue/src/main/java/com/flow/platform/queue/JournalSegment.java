@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.queue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed size, memory mapped, append only journal file used by {@link MappedFileQueue}
+ *
+ * Layout: magic(4) followed by records, the zero type byte marks the end
+ *   enqueue: type(1) id(8) priority(8) timestamp(8) length(4) body(length) crc(4)
+ *   ack:     type(1) id(8) crc(4)
+ *
+ * @author yang
+ */
+class JournalSegment implements Closeable {
+
+    interface RecordVisitor {
+
+        void onEnqueue(long id, long priority, long timestamp, byte[] body);
+
+        void onAck(long id);
+    }
+
+    final static String SUFFIX = ".seg";
+
+    final static int MAGIC = 0x464C5131;
+
+    final static int ENQUEUE_OVERHEAD = 1 + 8 + 8 + 8 + 4 + 4;
+
+    final static int ACK_SIZE = 1 + 8 + 4;
+
+    private final static byte TYPE_END = 0;
+
+    private final static byte TYPE_ENQUEUE = 1;
+
+    private final static byte TYPE_ACK = 2;
+
+    private final long seq;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Num of enqueue records in this segment not acked yet, guarded by queue lock
+     */
+    int live;
+
+    static String fileName(long seq) {
+        return String.format("%020d%s", seq, SUFFIX);
+    }
+
+    static long parseSeq(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    JournalSegment(Path dir, long seq, int size) throws IOException {
+        this.seq = seq;
+        this.path = dir.resolve(fileName(seq));
+
+        boolean created = !Files.exists(path);
+        this.channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int capacity = created ? size : (int) Math.max(channel.size(), size);
+        this.buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+
+        if (created) {
+            buffer.putInt(MAGIC);
+            return;
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Illegal queue journal file: " + path);
+        }
+    }
+
+    long getSeq() {
+        return seq;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean hasRoom(int recordSize) {
+        // keep one byte for the end mark
+        return buffer.remaining() > recordSize;
+    }
+
+    void appendEnqueue(long id, long priority, long timestamp, byte[] body) {
+        int start = buffer.position();
+        buffer.put(TYPE_ENQUEUE);
+        buffer.putLong(id);
+        buffer.putLong(priority);
+        buffer.putLong(timestamp);
+        buffer.putInt(body.length);
+        buffer.put(body);
+        buffer.putInt(checksum(start, buffer.position()));
+    }
+
+    void appendAck(long id) {
+        int start = buffer.position();
+        buffer.put(TYPE_ACK);
+        buffer.putLong(id);
+        buffer.putInt(checksum(start, buffer.position()));
+    }
+
+    /**
+     * Read records from the beginning and move write position to the end of last valid record,
+     * a torn record from crash and everything after it are ignored
+     */
+    void replay(RecordVisitor visitor) {
+        buffer.position(4);
+
+        while (buffer.remaining() > 0) {
+            int start = buffer.position();
+            byte type = buffer.get();
+
+            if (type == TYPE_ENQUEUE && buffer.remaining() >= ENQUEUE_OVERHEAD - 1) {
+                long id = buffer.getLong();
+                long priority = buffer.getLong();
+                long timestamp = buffer.getLong();
+                int length = buffer.getInt();
+
+                if (length >= 0 && buffer.remaining() >= length + 4) {
+                    byte[] body = new byte[length];
+                    buffer.get(body);
+
+                    if (buffer.getInt() == checksum(start, start + ENQUEUE_OVERHEAD - 4 + length)) {
+                        visitor.onEnqueue(id, priority, timestamp, body);
+                        continue;
+                    }
+                }
+            }
+
+            if (type == TYPE_ACK && buffer.remaining() >= ACK_SIZE - 1) {
+                long id = buffer.getLong();
+                if (buffer.getInt() == checksum(start, start + ACK_SIZE - 4)) {
+                    visitor.onAck(id);
+                    continue;
+                }
+            }
+
+            buffer.position(start);
+            if (type != TYPE_END) {
+                eraseFrom(start);
+            }
+            return;
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Close channel and unmap buffer, the segment cannot be used after closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        unmap(buffer);
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Release mapped memory right away instead of waiting for gc, otherwise deleted segment files
+     * still take disk space and address space until the buffer is collected
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException ignore) {
+            // java 8 fall through
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return;
+        }
+
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignore) {
+            // buffer will be released by gc
+        }
+    }
+
+    private void eraseFrom(int start) {
+        ByteBuffer tail = buffer.duplicate();
+        tail.position(start);
+        while (tail.hasRemaining()) {
+            tail.put(TYPE_END);
+        }
+    }
+
+    private int checksum(int start, int end) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(start);
+        slice.limit(end);
+
+        CRC32 crc = new CRC32();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.queue;
+
+import com.flow.platform.util.Logger;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable queue backed by segmented memory mapped journal files, no broker needed.
+ *
+ * Items are delivered by priority lane and timestamp as {@link PriorityQueueItem#COMPARATOR},
+ * acked after all listeners returned and redelivered if listener failed or process restarted.
+ * Enqueue is rejected by {@link IllegalStateException} when max size of items are not acked,
+ * caller should check {@link #isFull()} before persist anything related to the item
+ *
+ * @author yang
+ */
+public class MappedFileQueue<T extends PriorityQueueItem> extends PlatformQueue<T> implements Closeable {
+
+    /**
+     * Rebuild queue item from journal record
+     */
+    public interface ItemFactory<T> {
+
+        T create(byte[] body, long priority, long timestamp);
+    }
+
+    public final static int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final static long FSYNC_INTERVAL = 1000L;
+
+    private final static int MAX_DELIVERIES = 3;
+
+    /**
+     * Rewrite live records of the oldest segment when more closed segments than this are kept
+     */
+    private final static int MAX_CLOSED_SEGMENTS = 4;
+
+    private final static Logger LOGGER = new Logger(MappedFileQueue.class);
+
+    private final Comparator<Entry> entryComparator = Comparator
+        .comparingLong((Entry entry) -> entry.timestamp)
+        .thenComparingLong(entry -> entry.id);
+
+    private final Path dir;
+
+    private final ItemFactory<T> factory;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final int segmentSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Object pauseLock = new Object();
+
+    /**
+     * Priority lanes, highest priority first
+     */
+    private final NavigableMap<Long, NavigableSet<Entry>> lanes = new TreeMap<>(Comparator.reverseOrder());
+
+    /**
+     * All items not acked, include waiting and delivering
+     */
+    private final Map<Long, Entry> unacked = new HashMap<>();
+
+    private final LinkedList<JournalSegment> segments = new LinkedList<>();
+
+    private long nextId = 1;
+
+    private long lastForce = System.currentTimeMillis();
+
+    private boolean dirty = false;
+
+    private volatile boolean stop = false;
+
+    private volatile boolean pause = false;
+
+    /**
+     * Journal buffers are unmapped once closed, guarded by lock
+     */
+    private boolean closed = false;
+
+    public MappedFileQueue(Executor executor, int maxSize, String name, Path dir, ItemFactory<T> factory,
+                           FsyncPolicy fsyncPolicy) {
+        this(executor, maxSize, name, dir, factory, fsyncPolicy, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MappedFileQueue(Executor executor, int maxSize, String name, Path dir, ItemFactory<T> factory,
+                           FsyncPolicy fsyncPolicy, int segmentSize) {
+        super(executor, maxSize, name);
+        this.dir = dir;
+        this.factory = factory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.segmentSize = segmentSize;
+
+        try {
+            load();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load queue journal from " + dir, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        stop = false;
+        executor.execute(new QueueProcessor());
+    }
+
+    @Override
+    public void stop() {
+        cleanListener();
+        stop = true;
+        sync(true);
+    }
+
+    @Override
+    public void enqueue(T item) {
+        byte[] body = item.getBody();
+        if (body.length + JournalSegment.ENQUEUE_OVERHEAD + 4 >= segmentSize) {
+            throw new IllegalArgumentException("Queue item is larger than journal segment size " + segmentSize);
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Queue '" + name + "' is closed");
+            }
+
+            if (unacked.size() >= maxSize) {
+                throw new IllegalStateException("Queue '" + name + "' is full with max size " + maxSize);
+            }
+
+            Entry entry = new Entry(nextId++, item.getPriority(), item.getTimestamp(), item);
+            entry.segment = writableSegment(JournalSegment.ENQUEUE_OVERHEAD + body.length);
+            entry.segment.appendEnqueue(entry.id, entry.priority, entry.timestamp, body);
+            entry.segment.live++;
+            afterWrite();
+
+            unacked.put(entry.id, entry);
+            offer(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The item is acked once it's taken out
+     */
+    @Override
+    public T dequeue() {
+        Entry entry = poll(1, TimeUnit.SECONDS);
+        if (Objects.isNull(entry)) {
+            return null;
+        }
+
+        ack(entry);
+        return entry.item;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return unacked.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        lock.lock();
+        try {
+            return unacked.size() >= maxSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void pause() {
+        pause = true;
+    }
+
+    @Override
+    public void resume() {
+        if (!pause) {
+            return;
+        }
+
+        synchronized (pauseLock) {
+            pause = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void clean() {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Queue '" + name + "' is closed");
+            }
+
+            lanes.clear();
+            unacked.clear();
+
+            long seq = segments.getLast().getSeq() + 1;
+            for (JournalSegment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            segments.add(new JournalSegment(dir, seq, segmentSize));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to clean queue journal " + dir, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !pause && !stop;
+    }
+
+    /**
+     * Stop processor and release journal files
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            for (JournalSegment segment : segments) {
+                segment.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Num of journal segment files on disk
+     */
+    public int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(dir);
+
+        lock.lock();
+        try {
+            replay();
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.trace("Queue '%s' loaded %s items from %s segments", name, unacked.size(), segments.size());
+    }
+
+    private void replay() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + JournalSegment.SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparingLong(JournalSegment::parseSeq));
+
+        Map<Long, Entry> recovered = new TreeMap<>();
+        for (Path file : files) {
+            JournalSegment segment = new JournalSegment(dir, JournalSegment.parseSeq(file), segmentSize);
+            segments.add(segment);
+            segment.replay(new JournalSegment.RecordVisitor() {
+                @Override
+                public void onEnqueue(long id, long priority, long timestamp, byte[] body) {
+                    // same id appears again if the queue crashed during compaction
+                    Entry entry = new Entry(id, priority, timestamp, factory.create(body, priority, timestamp));
+                    entry.segment = segment;
+                    segment.live++;
+
+                    Entry previous = recovered.put(id, entry);
+                    if (previous != null) {
+                        previous.segment.live--;
+                    }
+                    nextId = Math.max(nextId, id + 1);
+                }
+
+                @Override
+                public void onAck(long id) {
+                    Entry entry = recovered.remove(id);
+                    if (entry != null) {
+                        entry.segment.live--;
+                    }
+                    nextId = Math.max(nextId, id + 1);
+                }
+            });
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(new JournalSegment(dir, 0, segmentSize));
+        }
+
+        for (Entry entry : recovered.values()) {
+            unacked.put(entry.id, entry);
+            offer(entry);
+        }
+
+        compact();
+    }
+
+    private void ack(Entry entry) {
+        lock.lock();
+        try {
+            if (closed || unacked.remove(entry.id) == null) {
+                return;
+            }
+
+            entry.segment.live--;
+            writableSegment(JournalSegment.ACK_SIZE).appendAck(entry.id);
+            afterWrite();
+
+            if (entry.segment.live == 0 && entry.segment == segments.getFirst()) {
+                compact();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void redeliver(Entry entry) {
+        lock.lock();
+        try {
+            if (unacked.containsKey(entry.id)) {
+                offer(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called within lock
+     */
+    private void offer(Entry entry) {
+        lanes.computeIfAbsent(entry.priority, key -> new TreeSet<>(entryComparator)).add(entry);
+        notEmpty.signal();
+    }
+
+    private Entry poll(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+
+        lock.lock();
+        try {
+            while (lanes.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+
+            Map.Entry<Long, NavigableSet<Entry>> lane = lanes.firstEntry();
+            Entry entry = lane.getValue().pollFirst();
+            if (lane.getValue().isEmpty()) {
+                lanes.remove(lane.getKey());
+            }
+            return entry;
+        } catch (InterruptedException e) {
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get active segment which has room for the record, roll to new segment if it's full
+     */
+    private JournalSegment writableSegment(int recordSize) {
+        JournalSegment active = segments.getLast();
+        if (active.hasRoom(recordSize)) {
+            return active;
+        }
+
+        try {
+            active.force();
+            JournalSegment next = new JournalSegment(dir, active.getSeq() + 1, segmentSize);
+            segments.add(next);
+            compact();
+            return segments.getLast();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to roll queue journal segment in " + dir, e);
+        }
+    }
+
+    /**
+     * Delete fully acked segments from the head, and rewrite live records of the oldest segment to the
+     * active one if too many segments are kept by few slow items.
+     *
+     * Only the head segment can be deleted since ack record always lives in the same or later segment
+     * of the enqueue record. Must be called within lock
+     */
+    private void compact() {
+        // segments created by rewriting are not compacted again in this round
+        long activeSeq = segments.getLast().getSeq();
+
+        try {
+            while (segments.size() > 1) {
+                JournalSegment head = segments.getFirst();
+                if (head.getSeq() >= activeSeq) {
+                    return;
+                }
+
+                if (head.live > 0 && segments.size() - 1 <= MAX_CLOSED_SEGMENTS) {
+                    return;
+                }
+
+                if (head.live > 0) {
+                    rewrite(head);
+                }
+
+                segments.removeFirst();
+                head.delete();
+                LOGGER.debug("Queue '%s' journal segment %s deleted", name, head.getSeq());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to compact queue journal segment: %s", e.getMessage());
+        }
+    }
+
+    private void rewrite(JournalSegment head) {
+        List<Entry> entries = new ArrayList<>(head.live);
+        for (Entry entry : unacked.values()) {
+            if (entry.segment == head) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, Comparator.comparingLong(entry -> entry.id));
+
+        for (Entry entry : entries) {
+            byte[] body = entry.item.getBody();
+            JournalSegment active = segments.getLast();
+
+            if (!active.hasRoom(JournalSegment.ENQUEUE_OVERHEAD + body.length)) {
+                try {
+                    active.force();
+                    active = new JournalSegment(dir, active.getSeq() + 1, segmentSize);
+                    segments.add(active);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to roll queue journal segment in " + dir, e);
+                }
+            }
+
+            active.appendEnqueue(entry.id, entry.priority, entry.timestamp, body);
+            active.live++;
+            head.live--;
+            entry.segment = active;
+        }
+
+        // copies must be on disk before the head segment is deleted
+        segments.getLast().force();
+    }
+
+    /**
+     * Must be called within lock
+     */
+    private void afterWrite() {
+        dirty = true;
+
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            sync(true);
+            return;
+        }
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            sync(false);
+        }
+    }
+
+    private void sync(boolean force) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (closed || !dirty || (!force && now - lastForce < FSYNC_INTERVAL)) {
+                return;
+            }
+
+            segments.getLast().force();
+            dirty = false;
+            lastForce = now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Entry {
+
+        private final long id;
+
+        private final long priority;
+
+        private final long timestamp;
+
+        private final T item;
+
+        private JournalSegment segment;
+
+        private int deliveries;
+
+        Entry(long id, long priority, long timestamp, T item) {
+            this.id = id;
+            this.priority = priority;
+            this.timestamp = timestamp;
+            this.item = item;
+        }
+    }
+
+    private class QueueProcessor implements Runnable {
+
+        @Override
+        public void run() {
+            while (!stop) {
+
+                synchronized (pauseLock) {
+                    while (pause && !stop) {
+                        try {
+                            pauseLock.wait(1000);
+                        } catch (InterruptedException ignore) {
+                        }
+                    }
+                }
+
+                Entry entry = poll(1, TimeUnit.SECONDS);
+
+                if (Objects.isNull(entry)) {
+                    if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                        sync(false);
+                    }
+                    continue;
+                }
+
+                try {
+                    for (QueueListener<T> listener : listeners) {
+                        listener.onQueueItem(entry.item);
+                    }
+                    ack(entry);
+                } catch (Throwable e) {
+                    if (++entry.deliveries < MAX_DELIVERIES) {
+                        LOGGER.warn("Queue '%s' item %s redelivered: %s", name, entry.id, e.getMessage());
+                        redeliver(entry);
+                        continue;
+                    }
+
+                    LOGGER.warn("Queue '%s' item %s dropped after %s deliveries", name, entry.id, MAX_DELIVERIES);
+                    ack(entry);
+                }
+            }
+        }
+    }
+}
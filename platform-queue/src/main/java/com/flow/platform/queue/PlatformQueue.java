@@ -81,6 +81,13 @@ public abstract class PlatformQueue<T> {
      */
     public abstract int size();
 
+    /**
+     * Is queue reached max size and new item will be rejected
+     */
+    public boolean isFull() {
+        return false;
+    }
+
     /**
      * Hold queue which not process queue item
      */
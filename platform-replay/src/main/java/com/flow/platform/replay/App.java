@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.replay;
+
+import com.flow.platform.agent.Config;
+import com.flow.platform.domain.AgentSettings;
+import com.flow.platform.domain.Jsonable;
+import com.flow.platform.util.Logger;
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.trace.TrafficTrace;
+import com.flow.platform.util.zk.ZKClient;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.ZKPaths;
+
+/**
+ * Replay traffic trace recorded by api and control center
+ *
+ * The embedded zookeeper is started as stand-in of production zookeeper, the control center under test
+ * should be started with 'zk.server.embedded = false' and 'zk.host' to the embedded zookeeper, and
+ * api under test should set 'domain.cc' to the control center
+ *
+ * @author yang
+ */
+public class App {
+
+    private final static Logger LOGGER = new Logger(App.class);
+
+    private final static long ZONE_CHECK_PERIOD = 1000;
+
+    public static void main(String args[]) {
+        if (args.length != 3) {
+            System.out.println("Missing arguments: please specify trace file, api and control center url");
+            System.out.println("Cmd: java -jar {trace file} {api baseUrl} {control center baseUrl}");
+            Runtime.getRuntime().exit(1);
+            return;
+        }
+
+        Path traceFile = Paths.get(args[0]);
+        String apiUrl = args[1];
+        String ccUrl = args[2];
+
+        try (TestingServer zkServer = new TestingServer(ReplayConfig.zkPort(), true)) {
+            LOGGER.trace("========= Embedded zookeeper started: %s =========", zkServer.getConnectString());
+
+            List<TrafficRecord> records = TrafficTrace.read(traceFile);
+            LOGGER.trace("=== %s records loaded from %s", records.size(), traceFile);
+
+            ZKClient zkClient = new ZKClient(zkServer.getConnectString());
+            if (!zkClient.start()) {
+                throw new IllegalStateException("Unable to connect embedded zookeeper");
+            }
+
+            AgentSettings settings = waitForZone(zkClient, ReplayConfig.zone(), ReplayConfig.ccWait());
+            LOGGER.trace("=== Agent settings: %s", settings);
+
+            ReplayReport recorded = ReplayReport.of(records);
+            ReplayReport replayed;
+
+            double speed = ReplayConfig.speed();
+            try (TrafficReplayer replayer = new TrafficReplayer(
+                records, apiUrl, ccUrl, settings.getCmdStatusUrl(), zkClient, speed, ReplayConfig.thread())) {
+                replayed = replayer.run(ReplayConfig.zone(), ReplayConfig.agents(), ReplayConfig.stuckTimeout());
+            }
+
+            System.out.println(recorded.format("recorded"));
+            System.out.println(replayed.format("replayed x" + speed));
+
+            zkClient.close();
+            Runtime.getRuntime().exit(replayed.getStuck().isEmpty() ? 0 : 2);
+        } catch (Throwable e) {
+            LOGGER.error("Fail to replay traffic", e);
+            Runtime.getRuntime().exit(1);
+        }
+    }
+
+    /**
+     * Wait for control center under test connect to embedded zookeeper and create zone node
+     */
+    private static AgentSettings waitForZone(ZKClient zkClient, String zone, long timeout) throws Exception {
+        String zonePath = ZKPaths.makePath(Config.ZK_ROOT, zone);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+
+        LOGGER.trace("=== Waiting for control center to create zone %s", zonePath);
+
+        while (System.currentTimeMillis() < deadline) {
+            if (zkClient.exist(zonePath)) {
+                byte[] raw = zkClient.getData(zonePath);
+                if (raw != null && raw.length > 0) {
+                    return Jsonable.parse(raw, AgentSettings.class);
+                }
+            }
+            Thread.sleep(ZONE_CHECK_PERIOD);
+        }
+
+        throw new IllegalStateException("Control center not connected to embedded zookeeper");
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.replay;
+
+import com.flow.platform.domain.CmdReport;
+import com.flow.platform.domain.CmdStatus;
+import com.flow.platform.domain.codec.Codecs;
+import com.flow.platform.util.Logger;
+import com.flow.platform.util.trace.TrafficRecord;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cmd running time and exit value recorded from agent reports, which are used by fake agent in turn
+ *
+ * @author yang
+ */
+public class CmdProfiles {
+
+    private final static Logger LOGGER = new Logger(CmdProfiles.class);
+
+    private final static CmdProfile DEFAULT_PROFILE = new CmdProfile(1000, 0);
+
+    /**
+     * Collect time between RUNNING and LOGGED report of each cmd
+     */
+    public static CmdProfiles of(List<TrafficRecord> records) {
+        Map<String, Long> started = new HashMap<>();
+        List<CmdProfile> profiles = new ArrayList<>();
+
+        for (TrafficRecord record : records) {
+            if (record.getType() != TrafficRecord.Type.CMD_REPORT) {
+                continue;
+            }
+
+            CmdReport report;
+            try {
+                report = Codecs.decode(record.getBody(), CmdReport.class);
+            } catch (Throwable e) {
+                LOGGER.warn("Invalid cmd report in trace: %s", e.getMessage());
+                continue;
+            }
+
+            if (report == null || report.getId() == null) {
+                continue;
+            }
+
+            if (report.getStatus() == CmdStatus.RUNNING) {
+                started.put(report.getId(), record.getTime());
+                continue;
+            }
+
+            if (report.getStatus() != CmdStatus.LOGGED) {
+                continue;
+            }
+
+            Long start = started.remove(report.getId());
+            if (start == null) {
+                continue;
+            }
+
+            Integer exitValue = report.getResult() == null ? null : report.getResult().getExitValue();
+            profiles.add(new CmdProfile(record.getTime() - start, exitValue == null ? 0 : exitValue));
+        }
+
+        return new CmdProfiles(profiles);
+    }
+
+    private final List<CmdProfile> profiles;
+
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    public CmdProfiles(List<CmdProfile> profiles) {
+        this.profiles = profiles;
+    }
+
+    public int size() {
+        return profiles.size();
+    }
+
+    /**
+     * Get profile in recorded order and start over at the end
+     */
+    public CmdProfile next() {
+        if (profiles.isEmpty()) {
+            return DEFAULT_PROFILE;
+        }
+
+        int index = Math.floorMod(next.getAndIncrement(), profiles.size());
+        return profiles.get(index);
+    }
+
+    public static class CmdProfile {
+
+        private final long duration;
+
+        private final int exitValue;
+
+        public CmdProfile(long duration, int exitValue) {
+            this.duration = duration;
+            this.exitValue = exitValue;
+        }
+
+        /**
+         * Millis from cmd running to logged
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public int getExitValue() {
+            return exitValue;
+        }
+    }
+}
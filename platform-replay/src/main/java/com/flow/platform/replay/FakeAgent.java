@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.replay;
+
+import com.flow.platform.agent.CmdInbox;
+import com.flow.platform.agent.Config;
+import com.flow.platform.domain.Cmd;
+import com.flow.platform.domain.CmdReport;
+import com.flow.platform.domain.CmdResult;
+import com.flow.platform.domain.CmdStatus;
+import com.flow.platform.domain.CmdType;
+import com.flow.platform.domain.codec.Codec;
+import com.flow.platform.domain.codec.Codecs;
+import com.flow.platform.replay.CmdProfiles.CmdProfile;
+import com.flow.platform.util.DateUtil;
+import com.flow.platform.util.Logger;
+import com.flow.platform.util.http.HttpClient;
+import com.flow.platform.util.http.HttpResponse;
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.zk.ZKClient;
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Agent registered on zookeeper with recorded capacity, it receives cmd from inbox as real agent
+ * but only report cmd status to control center after recorded running time instead of executing
+ *
+ * @author yang
+ */
+public class FakeAgent implements Closeable {
+
+    private final static Logger LOGGER = new Logger(FakeAgent.class);
+
+    private final static Codec REPORT_CODEC = Codecs.BINARY;
+
+    private final ZKClient zkClient;
+
+    private final String zone;
+
+    private final String name;
+
+    private final String nodePath;
+
+    private final String reportUrl;
+
+    private final CmdProfiles profiles;
+
+    private final double speed;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ReplayReport report;
+
+    private final Map<String, ScheduledFuture<?>> running = new ConcurrentHashMap<>();
+
+    // session id to epoch millis of last cmd received
+    private final Map<String, Long> sessions = new ConcurrentHashMap<>();
+
+    public FakeAgent(ZKClient zkClient,
+                     String zone,
+                     String name,
+                     String reportUrl,
+                     CmdProfiles profiles,
+                     double speed,
+                     ScheduledExecutorService scheduler,
+                     ReplayReport report) {
+        this.zkClient = zkClient;
+        this.zone = zone;
+        this.name = name;
+        this.nodePath = ZKPaths.makePath(Config.ZK_ROOT, zone, name);
+        this.reportUrl = reportUrl;
+        this.profiles = profiles;
+        this.speed = speed;
+        this.scheduler = scheduler;
+        this.report = report;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get epoch millis of last cmd received in session, null if no cmd in session
+     */
+    public Long getLastCmdTime(String sessionId) {
+        return sessionId == null ? null : sessions.get(sessionId);
+    }
+
+    /**
+     * Register agent node with capacity data and start to receive cmd
+     */
+    public void start(byte[] data) {
+        zkClient.createEphemeral(nodePath, data);
+        new CmdInbox(zkClient, zone, name, this::onCmd).start();
+        LOGGER.trace("Fake agent %s started in zone %s", name, zone);
+    }
+
+    /**
+     * Publish capacity data
+     */
+    public void update(byte[] data) {
+        zkClient.setData(nodePath, data);
+    }
+
+    @Override
+    public void close() {
+        for (ScheduledFuture<?> future : running.values()) {
+            future.cancel(false);
+        }
+        running.clear();
+
+        zkClient.deleteWithoutGuaranteed(nodePath, false);
+        LOGGER.trace("Fake agent %s stopped", name);
+    }
+
+    private void onCmd(Cmd cmd) {
+        if (cmd.getSessionId() != null) {
+            sessions.put(cmd.getSessionId(), System.currentTimeMillis());
+        }
+
+        if (cmd.getType() == CmdType.RUN_SHELL) {
+            scheduler.execute(() -> run(cmd));
+            return;
+        }
+
+        if (cmd.getType() == CmdType.KILL) {
+            scheduler.execute(this::kill);
+            return;
+        }
+
+        LOGGER.trace("Cmd %s with type %s been ignored by fake agent", cmd.getId(), cmd.getType());
+    }
+
+    private void run(Cmd cmd) {
+        CmdProfile profile = profiles.next();
+
+        CmdResult result = new CmdResult();
+        result.setCmdId(cmd.getId());
+        result.setStartTime(DateUtil.now());
+        report(cmd.getId(), CmdStatus.RUNNING, result);
+
+        long delay = (long) (profile.getDuration() / speed);
+        running.put(cmd.getId(), scheduler.schedule(() -> {
+            running.remove(cmd.getId());
+            result.setExitValue(profile.getExitValue());
+            result.setExecutedTime(DateUtil.now());
+            report(cmd.getId(), CmdStatus.EXECUTED, result);
+
+            result.setFinishTime(DateUtil.now());
+            report(cmd.getId(), CmdStatus.LOGGED, result);
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void kill() {
+        for (Map.Entry<String, ScheduledFuture<?>> entry : running.entrySet()) {
+            if (!entry.getValue().cancel(false)) {
+                continue;
+            }
+
+            running.remove(entry.getKey());
+
+            CmdResult result = new CmdResult(CmdResult.EXIT_VALUE_FOR_KILL);
+            result.setCmdId(entry.getKey());
+            result.setFinishTime(DateUtil.now());
+            report(entry.getKey(), CmdStatus.KILLED, result);
+        }
+    }
+
+    private void report(String cmdId, CmdStatus status, CmdResult result) {
+        final long start = System.currentTimeMillis();
+        boolean success = false;
+
+        try {
+            byte[] body = REPORT_CODEC.encode(new CmdReport(cmdId, status, result));
+            HttpEntity entity = new ByteArrayEntity(body, ContentType.create(REPORT_CODEC.getContentType()));
+
+            HttpResponse<String> response = HttpClient.build(reportUrl).post(entity).retry(5).bodyAsString();
+            success = response.hasSuccess();
+
+            if (!success) {
+                LOGGER.warn("Fail to report cmd %s status %s: %s", cmdId, status, response.getStatusCode());
+            }
+        } catch (Throwable e) {
+            LOGGER.warn("Fail to report cmd %s status %s: %s", cmdId, status, e.getMessage());
+        } finally {
+            report.add(TrafficRecord.Type.CMD_REPORT.name(), start, System.currentTimeMillis() - start, success);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.replay;
+
+/**
+ * @author yang
+ */
+public class ReplayConfig {
+
+    /* Config properties by using -Dxxx.xxx = xxx as JVM parameter */
+    public final static String PROP_SPEED = "flow.replay.speed";
+    public final static String PROP_THREAD = "flow.replay.thread";
+    public final static String PROP_ZK_PORT = "flow.replay.zk.port";
+    public final static String PROP_ZONE = "flow.replay.zone";
+    public final static String PROP_AGENTS = "flow.replay.agents";
+    public final static String PROP_STUCK_TIMEOUT = "flow.replay.stuck.timeout";
+    public final static String PROP_CC_WAIT = "flow.replay.cc.wait";
+
+    /**
+     * Multiple of recorded speed, 2.0 means replay in half of recorded time
+     */
+    public static double speed() {
+        String doubleStr = System.getProperty(PROP_SPEED, "1.0");
+        double speed = Double.parseDouble(doubleStr);
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Replay speed must be positive");
+        }
+        return speed;
+    }
+
+    /**
+     * Num of threads to send requests and fake agent reports
+     */
+    public static int thread() {
+        String intStr = System.getProperty(PROP_THREAD, "50");
+        return Integer.parseInt(intStr);
+    }
+
+    /**
+     * Port of embedded zookeeper which control center under test connect to
+     */
+    public static int zkPort() {
+        String intStr = System.getProperty(PROP_ZK_PORT, "2181");
+        return Integer.parseInt(intStr);
+    }
+
+    /**
+     * Zone of fake agents if no agent event in trace
+     */
+    public static String zone() {
+        return System.getProperty(PROP_ZONE, "default");
+    }
+
+    /**
+     * Num of fake agents to start if no agent event in trace
+     */
+    public static int agents() {
+        String intStr = System.getProperty(PROP_AGENTS, "5");
+        return Integer.parseInt(intStr);
+    }
+
+    /**
+     * Seconds without progress after all traffic been sent, the jobs still hold agent session are stuck
+     */
+    public static long stuckTimeout() {
+        String longStr = System.getProperty(PROP_STUCK_TIMEOUT, "120");
+        return Long.parseLong(longStr);
+    }
+
+    /**
+     * Seconds to wait for control center initialize zone on embedded zookeeper
+     */
+    public static long ccWait() {
+        String longStr = System.getProperty(PROP_CC_WAIT, "300");
+        return Long.parseLong(longStr);
+    }
+}
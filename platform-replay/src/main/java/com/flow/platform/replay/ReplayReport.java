@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.replay;
+
+import com.flow.platform.util.trace.TrafficRecord;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Throughput and latency percentiles of requests grouped by name
+ *
+ * @author yang
+ */
+public class ReplayReport {
+
+    /**
+     * Build report from handling duration recorded in trace
+     */
+    public static ReplayReport of(List<TrafficRecord> records) {
+        ReplayReport report = new ReplayReport();
+        for (TrafficRecord record : records) {
+            report.add(record.getType().name(), record.getTime(), record.getDuration(), true);
+        }
+        return report;
+    }
+
+    private final Map<String, Stats> stats = new TreeMap<>();
+
+    private final List<String> stuck = new ArrayList<>();
+
+    /**
+     * Add request result
+     *
+     * @param time epoch millis when request sent
+     * @param latency millis to get response
+     */
+    public synchronized void add(String name, long time, long latency, boolean success) {
+        stats.computeIfAbsent(name, key -> new Stats()).add(time, latency, success);
+    }
+
+    public synchronized void addStuck(String description) {
+        stuck.add(description);
+    }
+
+    public synchronized Stats get(String name) {
+        return stats.get(name);
+    }
+
+    public synchronized List<String> getStuck() {
+        return new ArrayList<>(stuck);
+    }
+
+    /**
+     * Print report as table
+     */
+    public synchronized String format(String title) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("=== ").append(title).append(" ===\n");
+        builder.append(String.format("%-12s %8s %8s %10s %8s %8s %8s %8s%n",
+            "name", "count", "errors", "rate(/s)", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)"));
+
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            builder.append(String.format("%-12s %8d %8d %10.2f %8d %8d %8d %8d%n",
+                entry.getKey(), s.count(), s.errors, s.throughput(),
+                s.percentile(50), s.percentile(90), s.percentile(99), s.percentile(100)));
+        }
+
+        if (!stuck.isEmpty()) {
+            builder.append("stuck jobs: ").append(stuck.size()).append('\n');
+            for (String item : stuck) {
+                builder.append("  ").append(item).append('\n');
+            }
+        }
+
+        return builder.toString();
+    }
+
+    public static class Stats {
+
+        private final List<Long> latencies = new ArrayList<>();
+
+        private long errors = 0;
+
+        private long first = Long.MAX_VALUE;
+
+        private long last = Long.MIN_VALUE;
+
+        private boolean sorted = true;
+
+        private void add(long time, long latency, boolean success) {
+            latencies.add(latency);
+            sorted = false;
+
+            if (!success) {
+                errors++;
+            }
+
+            first = Math.min(first, time);
+            last = Math.max(last, time + latency);
+        }
+
+        public int count() {
+            return latencies.size();
+        }
+
+        public long errors() {
+            return errors;
+        }
+
+        /**
+         * Num of requests per second from the first request sent to the last response received
+         */
+        public double throughput() {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+
+            long period = Math.max(last - first, 1);
+            return latencies.size() * 1000.0 / period;
+        }
+
+        /**
+         * Latency at percentile by nearest rank
+         */
+        public long percentile(int percent) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+
+            if (!sorted) {
+                Collections.sort(latencies);
+                sorted = true;
+            }
+
+            int rank = (int) Math.ceil(percent / 100.0 * latencies.size());
+            return latencies.get(Math.max(rank, 1) - 1);
+        }
+    }
+}
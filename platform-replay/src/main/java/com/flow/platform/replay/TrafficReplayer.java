@@ -0,0 +1,307 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.replay;
+
+import com.flow.platform.domain.Agent;
+import com.flow.platform.domain.Jsonable;
+import com.flow.platform.util.Logger;
+import com.flow.platform.util.http.HttpClient;
+import com.flow.platform.util.http.HttpResponse;
+import com.flow.platform.util.http.HttpURL;
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.trace.TrafficRecord.Type;
+import com.flow.platform.util.trace.TrafficSanitizer;
+import com.flow.platform.util.zk.ZKClient;
+import com.google.common.collect.ImmutableSet;
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.utils.ZKPaths;
+
+/**
+ * Replay recorded traffic in recorded order and pace multiplied by speed:
+ *
+ * - WEBHOOK is sent to api, which create jobs and send cmd to control center as production
+ * - AGENT_EVENT start, update or stop fake agent on zookeeper
+ * - CMD_SEND and CMD_REPORT are not sent, cmd are generated by api and the recorded running time
+ *   of cmd is used by fake agent to report cmd status
+ *
+ * The job is stuck if its session still hold agent when no progress for stuck timeout after all
+ * traffic been sent
+ *
+ * @author yang
+ */
+public class TrafficReplayer implements Closeable {
+
+    private final static Logger LOGGER = new Logger(TrafficReplayer.class);
+
+    private final static long STUCK_CHECK_PERIOD = 5 * 1000;
+
+    // headers set by http client
+    private final static Set<String> SKIPPED_HEADERS =
+        ImmutableSet.of("host", "content-length", "connection", "transfer-encoding", "accept-encoding");
+
+    private final List<TrafficRecord> records;
+
+    private final String apiUrl;
+
+    private final String ccUrl;
+
+    private final String reportUrl;
+
+    private final ZKClient zkClient;
+
+    private final double speed;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final CmdProfiles profiles;
+
+    private final ReplayReport report = new ReplayReport();
+
+    private final Map<String, FakeAgent> agents = new ConcurrentHashMap<>();
+
+    private final Set<String> zones = ConcurrentHashMap.newKeySet();
+
+    public TrafficReplayer(List<TrafficRecord> records,
+                           String apiUrl,
+                           String ccUrl,
+                           String reportUrl,
+                           ZKClient zkClient,
+                           double speed,
+                           int thread) {
+        this.records = new ArrayList<>(records);
+        this.records.sort(Comparator.comparingLong(TrafficRecord::getTime));
+
+        this.apiUrl = apiUrl;
+        this.ccUrl = ccUrl;
+        this.reportUrl = reportUrl;
+        this.zkClient = zkClient;
+        this.speed = speed;
+        this.scheduler = Executors.newScheduledThreadPool(thread);
+        this.profiles = CmdProfiles.of(this.records);
+    }
+
+    /**
+     * Replay all records and wait until jobs finished or stuck
+     *
+     * @param zone zone to start fake agents if no agent event in trace
+     * @param numOfAgents num of fake agents to start if no agent event in trace
+     * @param stuckTimeout seconds without progress to treat remaining jobs as stuck
+     */
+    public ReplayReport run(String zone, int numOfAgents, long stuckTimeout) throws InterruptedException {
+        LOGGER.trace("Replay %s records with %s cmd profiles at speed %s", records.size(), profiles.size(), speed);
+
+        boolean hasAgentEvent = records.stream().anyMatch(record -> record.getType() == Type.AGENT_EVENT);
+        if (!hasAgentEvent) {
+            for (int i = 0; i < numOfAgents; i++) {
+                startAgent(zone, "replay-agent-" + i, null);
+            }
+        }
+
+        if (records.isEmpty()) {
+            return report;
+        }
+
+        final long base = records.get(0).getTime();
+        List<ScheduledFuture<?>> futures = new ArrayList<>(records.size());
+
+        for (TrafficRecord record : records) {
+            long delay = (long) ((record.getTime() - base) / speed);
+            futures.add(scheduler.schedule(() -> replay(record), delay, TimeUnit.MILLISECONDS));
+        }
+
+        for (ScheduledFuture<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                LOGGER.warn("Fail to replay record: %s", e.getCause().getMessage());
+            }
+        }
+
+        LOGGER.trace("All records been replayed, wait for jobs finished");
+        waitForSessions(stuckTimeout);
+        return report;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        for (FakeAgent agent : agents.values()) {
+            agent.close();
+        }
+        agents.clear();
+    }
+
+    private void replay(TrafficRecord record) {
+        if (record.getType() == Type.WEBHOOK) {
+            sendWebhook(record);
+            return;
+        }
+
+        if (record.getType() == Type.AGENT_EVENT) {
+            onAgentEvent(record);
+        }
+    }
+
+    private void sendWebhook(TrafficRecord record) {
+        final long start = System.currentTimeMillis();
+        boolean success = false;
+
+        try {
+            Map<String, String> headers = new HashMap<>(record.getHeaders().size());
+            for (Map.Entry<String, String> entry : record.getHeaders().entrySet()) {
+                String name = entry.getKey().toLowerCase();
+                if (SKIPPED_HEADERS.contains(name) || Objects.equals(entry.getValue(), TrafficSanitizer.MASK)) {
+                    continue;
+                }
+                headers.put(entry.getKey(), entry.getValue());
+            }
+
+            String url = HttpURL.build(apiUrl).append(record.getPath()).toString();
+            HttpResponse<String> response = HttpClient.build(url)
+                .post(new String(record.getBody(), StandardCharsets.UTF_8))
+                .withHeader(headers)
+                .bodyAsString();
+
+            success = response.hasSuccess();
+            if (!success) {
+                LOGGER.warn("Fail to send webhook %s: %s", record.getPath(), response.getStatusCode());
+            }
+        } catch (Throwable e) {
+            LOGGER.warn("Fail to send webhook %s: %s", record.getPath(), e.getMessage());
+        } finally {
+            report.add(Type.WEBHOOK.name(), start, System.currentTimeMillis() - start, success);
+        }
+    }
+
+    private void onAgentEvent(TrafficRecord record) {
+        String event = record.getHeaders().get(TrafficRecord.HEADER_AGENT_EVENT);
+        String zone = ZKPaths.getNodeFromPath(ZKPaths.getPathAndNode(record.getPath()).getPath());
+        String name = ZKPaths.getNodeFromPath(record.getPath());
+        byte[] data = record.getBody().length == 0 ? null : record.getBody();
+
+        if (Objects.equals(event, PathChildrenCacheEvent.Type.CHILD_REMOVED.name())) {
+            FakeAgent agent = agents.remove(name);
+            if (agent != null) {
+                agent.close();
+            }
+            return;
+        }
+
+        FakeAgent agent = agents.get(name);
+        if (agent == null) {
+            startAgent(zone, name, data);
+            return;
+        }
+
+        if (Objects.equals(event, PathChildrenCacheEvent.Type.CHILD_UPDATED.name())) {
+            agent.update(data);
+        }
+    }
+
+    private void startAgent(String zone, String name, byte[] data) {
+        agents.computeIfAbsent(name, key -> {
+            FakeAgent agent = new FakeAgent(zkClient, zone, name, reportUrl, profiles, speed, scheduler, report);
+            agent.start(data);
+            zones.add(zone);
+            return agent;
+        });
+    }
+
+    /**
+     * Wait until no agent hold session, or no progress for stuck timeout
+     */
+    private void waitForSessions(long stuckTimeout) throws InterruptedException {
+        long lastProgress = System.currentTimeMillis();
+        int lastReported = 0;
+        Set<String> lastSessions = new HashSet<>();
+        List<Agent> busy = new ArrayList<>();
+
+        while (System.currentTimeMillis() - lastProgress < TimeUnit.SECONDS.toMillis(stuckTimeout)) {
+            busy = listBusyAgents();
+            if (busy.isEmpty()) {
+                return;
+            }
+
+            Set<String> sessions = new HashSet<>();
+            for (Agent agent : busy) {
+                sessions.add(agent.getSessionId());
+            }
+
+            ReplayReport.Stats reported = report.get(Type.CMD_REPORT.name());
+            int numOfReported = reported == null ? 0 : reported.count();
+
+            if (numOfReported != lastReported || !sessions.equals(lastSessions)) {
+                lastProgress = System.currentTimeMillis();
+                lastReported = numOfReported;
+                lastSessions = sessions;
+            }
+
+            Thread.sleep(STUCK_CHECK_PERIOD);
+        }
+
+        for (Agent agent : busy) {
+            FakeAgent fakeAgent = agents.get(agent.getName());
+            Long lastCmdTime = fakeAgent == null ? null : fakeAgent.getLastCmdTime(agent.getSessionId());
+
+            String lastCmd = lastCmdTime == null
+                ? "no cmd received"
+                : "last cmd received " + (System.currentTimeMillis() - lastCmdTime) / 1000 + "s ago";
+
+            report.addStuck(String.format("session %s on agent %s, %s", agent.getSessionId(), agent.getPath(), lastCmd));
+        }
+    }
+
+    private List<Agent> listBusyAgents() {
+        List<Agent> busy = new ArrayList<>();
+
+        for (String zone : zones) {
+            String url = HttpURL.build(ccUrl).append("agents/list").withParam("zone", zone).toString();
+            HttpResponse<String> response = HttpClient.build(url).get().retry(3).bodyAsString();
+
+            if (!response.hasSuccess()) {
+                LOGGER.warn("Fail to list agents of zone %s: %s", zone, response.getStatusCode());
+                continue;
+            }
+
+            for (Agent agent : Jsonable.parseArray(response.getBody(), Agent[].class)) {
+                if (agent.getSessionId() != null && agents.containsKey(agent.getName())) {
+                    busy.add(agent);
+                }
+            }
+        }
+
+        return busy;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.replay.test;
+
+import com.flow.platform.domain.CmdReport;
+import com.flow.platform.domain.CmdResult;
+import com.flow.platform.domain.CmdStatus;
+import com.flow.platform.domain.codec.Codecs;
+import com.flow.platform.replay.CmdProfiles;
+import com.flow.platform.replay.CmdProfiles.CmdProfile;
+import com.flow.platform.replay.ReplayReport;
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.trace.TrafficRecord.Type;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author yang
+ */
+public class ReplayReportTest {
+
+    @Test
+    public void should_calculate_percentiles_and_throughput() {
+        ReplayReport report = new ReplayReport();
+        for (int i = 1; i <= 100; i++) {
+            report.add("WEBHOOK", i * 10, i, i != 100);
+        }
+
+        ReplayReport.Stats stats = report.get("WEBHOOK");
+        Assert.assertEquals(100, stats.count());
+        Assert.assertEquals(1, stats.errors());
+        Assert.assertEquals(50, stats.percentile(50));
+        Assert.assertEquals(90, stats.percentile(90));
+        Assert.assertEquals(99, stats.percentile(99));
+        Assert.assertEquals(100, stats.percentile(100));
+
+        // 100 requests from 10 ms to 1100 ms
+        Assert.assertEquals(100 * 1000.0 / 1090, stats.throughput(), 0.001);
+        Assert.assertTrue(report.format("replayed").contains("WEBHOOK"));
+    }
+
+    @Test
+    public void should_build_cmd_profiles_from_reports() {
+        List<TrafficRecord> records = ImmutableList.of(
+            report(1000, "cmd-1", CmdStatus.RUNNING, 0),
+            report(1500, "cmd-2", CmdStatus.RUNNING, 0),
+            report(1800, "cmd-2", CmdStatus.EXECUTED, 1),
+            report(2000, "cmd-2", CmdStatus.LOGGED, 1),
+            report(4000, "cmd-1", CmdStatus.LOGGED, 0),
+            report(5000, "cmd-3", CmdStatus.LOGGED, 0));
+
+        CmdProfiles profiles = CmdProfiles.of(records);
+        Assert.assertEquals(2, profiles.size());
+
+        CmdProfile first = profiles.next();
+        Assert.assertEquals(500, first.getDuration());
+        Assert.assertEquals(1, first.getExitValue());
+
+        CmdProfile second = profiles.next();
+        Assert.assertEquals(3000, second.getDuration());
+        Assert.assertEquals(0, second.getExitValue());
+
+        // start over
+        Assert.assertSame(first, profiles.next());
+    }
+
+    private static TrafficRecord report(long time, String cmdId, CmdStatus status, int exitValue) {
+        byte[] body = Codecs.encode(new CmdReport(cmdId, status, new CmdResult(exitValue)));
+        return new TrafficRecord(Type.CMD_REPORT, time, 10, "/cmd/report", null, body);
+    }
+}
@@ -21,6 +21,7 @@ import com.flow.platform.util.git.model.GitProject;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.eclipse.jgit.lib.ProgressMonitor;
 
@@ -94,7 +95,14 @@ public interface GitClient {
     List<String> tags() throws GitException;
 
     /**
-     * Git latest commit from ref
+     * Load all branches and tags with commit id in one call
+     *
+     * @return full ref name, ex: refs/heads/master or refs/tags/v1.0, to commit id
+     */
+    Map<String, String> refs() throws GitException;
+
+    /**
+     * Git latest commit from ref, or commit by commit id
      */
     GitCommit commit(String refName) throws GitException;
 }
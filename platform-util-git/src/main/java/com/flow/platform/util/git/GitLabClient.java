@@ -26,8 +26,11 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.gitlab.api.GitlabAPI;
 import org.gitlab.api.models.GitlabBranch;
@@ -155,6 +158,27 @@ public class GitLabClient implements GitClient {
         }
     }
 
+    @Override
+    public Map<String, String> refs() throws GitException {
+        checkProject();
+
+        try {
+            List<GitlabBranch> branches = connect.getBranches(project);
+            List<GitlabTag> tags = connect.getTags(project);
+
+            Map<String, String> refs = new HashMap<>(branches.size() + tags.size());
+            for (GitlabBranch branch : branches) {
+                refs.put(Constants.R_HEADS + branch.getName(), branch.getCommit().getId());
+            }
+            for (GitlabTag tag : tags) {
+                refs.put(Constants.R_TAGS + tag.getName(), tag.getCommit().getId());
+            }
+            return refs;
+        } catch (IOException e) {
+            throw new GitException(e.getMessage());
+        }
+    }
+
     @Override
     public GitCommit commit(String refName) throws GitException {
         checkProject();
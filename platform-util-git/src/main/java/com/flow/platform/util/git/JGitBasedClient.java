@@ -32,14 +32,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.PullCommand;
 import org.eclipse.jgit.api.TransportCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -205,20 +208,44 @@ public abstract class JGitBasedClient implements GitClient {
     }
 
     /**
-     * Get latest commit by ref name from local .git
+     * List heads and tags from remote repo by ls-remote, annotated tag is peeled to its commit id
+     */
+    @Override
+    public Map<String, String> refs() throws GitException {
+        try {
+            Collection<Ref> refs = buildCommand(Git.lsRemoteRepository()
+                .setHeads(true)
+                .setTags(true)
+                .setTimeout(GIT_TRANS_TIMEOUT)
+                .setRemote(gitUrl)).call();
+
+            Map<String, String> refMap = new HashMap<>(refs.size());
+            for (Ref ref : refs) {
+                // use commit id instead of tag object id for annotated tag
+                ObjectId id = ref.getPeeledObjectId() != null ? ref.getPeeledObjectId() : ref.getObjectId();
+                refMap.put(ref.getName(), id.getName());
+            }
+            return refMap;
+        } catch (GitAPIException e) {
+            throw new GitException("Fail to list refs from remote repo", ExceptionUtil.findRootCause(e));
+        }
+    }
+
+    /**
+     * Get latest commit by ref name or commit id from local .git
      */
     @Override
     public GitCommit commit(String refName) throws GitException {
         try (Git git = gitOpen()) {
             Repository repo = git.getRepository();
-            Ref head = repo.findRef(refName);
+            ObjectId head = repo.resolve(refName);
 
             if (head == null) {
                 return null;
             }
 
             try (RevWalk walk = new RevWalk(repo)) {
-                RevCommit commit = walk.parseCommit(head.getObjectId());
+                RevCommit commit = walk.parseCommit(head);
                 walk.dispose();
 
                 String id = commit.getId().getName();
@@ -22,6 +22,8 @@ import static java.util.stream.StreamSupport.stream;
 import com.flow.platform.util.StringUtil;
 import com.google.common.collect.Lists;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -32,6 +34,7 @@ import java.util.Map;
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
@@ -209,6 +212,62 @@ public class JGitUtil {
         return path;
     }
 
+    /**
+     * Fetch refs by ref spec from remote name or url without auto following tags
+     *
+     * @param path local repo path
+     * @param remote remote name or url
+     * @param refSpec ref spec, ex: +refs/tags/*:refs/tags/*
+     */
+    public static Path fetch(Path path, String remote, String refSpec) throws GitException {
+        try (Git git = Git.open(path.toFile())) {
+            git.fetch()
+                .setRemote(remote)
+                .setRefSpecs(new RefSpec(refSpec))
+                .setTagOpt(TagOpt.NO_TAGS)
+                .call();
+        } catch (Throwable throwable) {
+            throw new GitException("fetch error", throwable);
+        }
+
+        return path;
+    }
+
+    /**
+     * Resolve revision to commit id
+     *
+     * @return commit id or null if revision not found
+     */
+    public static String resolveCommit(Path path, String revision) throws GitException {
+        try (Git git = Git.open(path.toFile())) {
+            ObjectId id = git.getRepository().resolve(revision + "^{commit}");
+            return id == null ? null : id.getName();
+        } catch (Throwable throwable) {
+            throw new GitException("resolve revision error", throwable);
+        }
+    }
+
+    /**
+     * Let repo read objects from shared repo by git alternates,
+     * the objects already in shared repo will not be fetched or stored again
+     *
+     * @param path local repo path
+     * @param sharedGitPath shared repo path, the .git folder for non bare repo
+     */
+    public static Path shareObjects(Path path, Path sharedGitPath) throws GitException {
+        try (Git git = Git.open(path.toFile())) {
+            Path info = git.getRepository().getDirectory().toPath().resolve("objects").resolve("info");
+            Path sharedObjects = sharedGitPath.resolve("objects").toAbsolutePath();
+
+            Files.createDirectories(info);
+            Files.write(info.resolve("alternates"), (sharedObjects + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (Throwable throwable) {
+            throw new GitException("share objects error", throwable);
+        }
+
+        return path;
+    }
+
     public static Path checkout(Path path, String branch) throws GitException {
         try (Git git = Git.open(path.toFile())) {
             git
@@ -89,6 +89,7 @@ public class GitHubEvents {
             event.setUsername(helper.pusher.getName());
             event.setUserEmail(helper.pusher.getEmail());
 
+            event.setHeadCommitId(helper.headCommit.getId());
             event.setHeadCommitUrl(helper.headCommit.getUrl());
             event.setCompareId(GitPushTagEvent.buildCompareId(event));
             event.setGitSource(gitSource);
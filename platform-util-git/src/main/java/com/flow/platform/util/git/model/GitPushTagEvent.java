@@ -63,6 +63,14 @@ public class GitPushTagEvent extends GitEvent {
     @SerializedName(value = "after", alternate = "head")
     private String after;
 
+    /**
+     * Commit SHA of ref after event, it's the peeled commit for annotated tag that the 'after' is tag object
+     * - Gitlab: checkout_sha
+     * - Github: head_commit.id
+     */
+    @SerializedName(value = "checkout_sha")
+    private String headCommitId;
+
     /**
      * The url for head commit
      */
@@ -126,6 +134,14 @@ public class GitPushTagEvent extends GitEvent {
         this.after = after;
     }
 
+    public String getHeadCommitId() {
+        return headCommitId;
+    }
+
+    public void setHeadCommitId(String headCommitId) {
+        this.headCommitId = headCommitId;
+    }
+
     public String getHeadCommitUrl() {
         return headCommitUrl;
     }
@@ -22,6 +22,7 @@ import java.io.File;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.eclipse.jgit.lib.Ref;
 import org.junit.After;
@@ -56,6 +57,12 @@ public class GitHttpClientTest {
         Assert.assertNotNull(tags);
         Assert.assertTrue(tags.size() >= 1);
         Assert.assertFalse(tags.get(0).startsWith("refs/tags/"));
+
+        // load all refs with commit id
+        Map<String, String> refs = client.refs();
+        Assert.assertEquals(branches.size() + tags.size(), refs.size());
+        Assert.assertTrue(refs.containsKey("refs/heads/" + branches.get(0)));
+        Assert.assertEquals(40, refs.get("refs/tags/" + tags.get(0)).length());
     }
 
     @Test
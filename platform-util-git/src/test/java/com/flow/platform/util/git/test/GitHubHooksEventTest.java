@@ -99,6 +99,7 @@ public class GitHubHooksEventTest {
         Assert.assertEquals("refs/heads/developer", tagEvent.getBaseRef());
         Assert.assertEquals("0000000000000000000000000000000000000000", tagEvent.getBefore());
         Assert.assertEquals("26d1d0fa6ee44a8f4e02250d13e84bf02722f5e7", tagEvent.getAfter());
+        Assert.assertEquals("26d1d0fa6ee44a8f4e02250d13e84bf02722f5e7", tagEvent.getHeadCommitId());
         Assert.assertEquals("23307997", tagEvent.getUserId());
         Assert.assertEquals("yang-guo-2016", tagEvent.getUsername());
         Assert.assertEquals("gy@fir.im", tagEvent.getUserEmail());
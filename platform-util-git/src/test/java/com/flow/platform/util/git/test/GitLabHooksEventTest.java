@@ -99,6 +99,7 @@ public class GitLabHooksEventTest {
         Assert.assertEquals(GitEventType.TAG, tagEvent.getType());
         Assert.assertEquals("0000000000000000000000000000000000000000", tagEvent.getBefore());
         Assert.assertEquals("82b3d5ae55f7080f1e6022629cdb57bfae7cccc7", tagEvent.getAfter());
+        Assert.assertEquals("82b3d5ae55f7080f1e6022629cdb57bfae7cccc7", tagEvent.getHeadCommitId());
         Assert.assertEquals("refs/tags/v1.0.0", tagEvent.getRef());
         Assert.assertEquals(1, Integer.parseInt(tagEvent.getUserId()));
         Assert.assertEquals("John Smith", tagEvent.getUsername());
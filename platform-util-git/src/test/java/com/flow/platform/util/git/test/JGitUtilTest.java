@@ -18,6 +18,7 @@ package com.flow.platform.util.git.test;
 
 import com.flow.platform.util.git.JGitUtil;
 import java.io.File;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import org.eclipse.jgit.api.Git;
@@ -152,4 +153,36 @@ public class JGitUtilTest {
             JGitUtil.latestCommit(folder.toPath()).getId().getName());
 
     }
+
+    @Test
+    public void should_fetch_tags_by_shared_objects() throws Throwable {
+        // given: source repo with tag
+        File source = folder.newFolder("source");
+        JGitUtil.init(source.toPath(), false);
+        Files.write(source.toPath().resolve("readme.md"), "hello".getBytes());
+
+        Git git = Git.open(source);
+        git.add().addFilepattern(".").call();
+        RevCommit commit = git.commit().setMessage("init").call();
+        git.tag().setName("v1.0").setMessage("add tag v1.0").call();
+
+        // when: fetch tags to shared repo with prefix
+        File shared = folder.newFolder("shared.git");
+        JGitUtil.init(shared.toPath(), true);
+        JGitUtil.fetch(shared.toPath(), source.toString(), "+refs/tags/*:refs/sources/demo/tags/*");
+
+        // then: tag can be resolved from shared repo
+        Assert.assertEquals(commit.getName(), JGitUtil.resolveCommit(shared.toPath(), "refs/sources/demo/tags/v1.0"));
+
+        // when: fetch tags from shared repo to local repo which share objects
+        File local = folder.newFolder("local");
+        JGitUtil.init(local.toPath(), false);
+        JGitUtil.shareObjects(local.toPath(), shared.toPath());
+        JGitUtil.fetch(local.toPath(), shared.toString(), "+refs/sources/demo/tags/*:refs/tags/*");
+
+        // then: tag should be in local repo
+        Assert.assertTrue(Files.exists(local.toPath().resolve(".git/objects/info/alternates")));
+        Assert.assertEquals(commit.getName(), JGitUtil.resolveCommit(local.toPath(), "v1.0"));
+        Assert.assertNull(JGitUtil.resolveCommit(local.toPath(), "v2.0"));
+    }
 }
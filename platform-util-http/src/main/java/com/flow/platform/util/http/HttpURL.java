@@ -41,6 +41,21 @@ public class HttpURL {
         }
     }
 
+    /**
+     * Content-Disposition value of attachment, the quoted file name is ascii only for legacy clients
+     * and the RFC 5987 encoded file name keeps the original one
+     */
+    public static String contentDisposition(String fileName) {
+        StringBuilder ascii = new StringBuilder(fileName.length());
+        for (char c : fileName.toCharArray()) {
+            boolean isSafe = c >= 0x20 && c < 0x7F && c != '"' && c != '\\';
+            ascii.append(isSafe ? c : '_');
+        }
+
+        String encoded = encode(fileName).replace("+", "%20").replace("*", "%2A");
+        return String.format("attachment; filename=\"%s\"; filename*=UTF-8''%s", ascii, encoded);
+    }
+
     public static String decode(String str) {
         try {
             return URLDecoder.decode(str, "UTF-8");
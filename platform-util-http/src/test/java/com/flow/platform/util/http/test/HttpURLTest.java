@@ -39,4 +39,13 @@ public class HttpURLTest {
         url.withParam("cmdId", "1").withParam("taskId", "/test");
         Assert.assertEquals("http://localhost/flow-test/test?cmdId=1&taskId=%2Ftest", url.toString());
     }
+
+    @Test
+    public void should_build_content_disposition_with_quoted_and_encoded_file_name() {
+        Assert.assertEquals("attachment; filename=\"log 1.zip\"; filename*=UTF-8''log%201.zip",
+            HttpURL.contentDisposition("log 1.zip"));
+
+        Assert.assertEquals("attachment; filename=\"_a_;b_.zip\"; filename*=UTF-8''%22a%22%3Bb%E6%97%A5.zip",
+            HttpURL.contentDisposition("\"a\";b\u65e5.zip"));
+    }
 }
@@ -171,6 +171,28 @@ public class ZKClient implements Closeable {
         }
     }
 
+    /**
+     * Create zookeeper persistent sequential node, parent nodes will be created if not exist
+     *
+     * @param prefixPath node path prefix, ex: /inbox/cmd-
+     * @param data node data, it can be set to null
+     * @return zookeeper node path with sequence suffix, ex: /inbox/cmd-0000000001
+     */
+    public String createSequential(String prefixPath, byte[] data) {
+        if (data == null) {
+            data = new byte[0];
+        }
+
+        try {
+            return client.create()
+                .creatingParentsIfNeeded()
+                .withMode(CreateMode.PERSISTENT_SEQUENTIAL)
+                .forPath(prefixPath, data);
+        } catch (Throwable e) {
+            throw checkException(String.format("Fail to create sequential node: %s", prefixPath), e);
+        }
+    }
+
     public List<String> getChildren(String rootPath) {
         try {
             return client.getChildren().forPath(rootPath);
@@ -290,6 +312,15 @@ public class ZKClient implements Closeable {
     }
 
     public boolean watchChildren(String rootPath, PathChildrenCacheListener listener) {
+        return watchChildren(rootPath, false, listener);
+    }
+
+    /**
+     * Watch children of root path
+     *
+     * @param cacheData true to load child node data into event
+     */
+    public boolean watchChildren(String rootPath, boolean cacheData, PathChildrenCacheListener listener) {
         if (!exist(rootPath)) {
             return false;
         }
@@ -300,7 +331,7 @@ public class ZKClient implements Closeable {
         }
 
         try {
-            pcc = new PathChildrenCache(client, rootPath, false);
+            pcc = new PathChildrenCache(client, rootPath, cacheData);
             pcc.start();
 
             if (executor != null) {
@@ -18,6 +18,7 @@ package com.flow.platform.util.zk.test;
 
 import com.flow.platform.util.zk.ZKClient;
 import com.flow.platform.util.zk.ZkException;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -110,6 +111,26 @@ public class ZkClientTest {
         zkClient.delete(root, true);
     }
 
+    @Test
+    public void should_create_sequential_node_in_order() throws Throwable {
+        // given:
+        final String inbox = "/flow-inbox/default/agent";
+
+        // when: create sequential nodes under parent which not exist
+        String first = zkClient.createSequential(ZKPaths.makePath(inbox, "cmd-"), "1".getBytes());
+        String second = zkClient.createSequential(ZKPaths.makePath(inbox, "cmd-"), "2".getBytes());
+
+        // then:
+        Assert.assertTrue(first.compareTo(second) < 0);
+
+        List<String> children = zkClient.getChildren(inbox);
+        Assert.assertEquals(2, children.size());
+        Assert.assertEquals("1", new String(zkClient.getData(first)));
+        Assert.assertEquals("2", new String(zkClient.getData(second)));
+
+        zkClient.delete("/flow-inbox", true);
+    }
+
     @Test
     public void should_create_and_delete_zk_node() throws Throwable {
         // init:
@@ -16,42 +16,108 @@
 
 package com.flow.platform.util;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.message.MapMessage;
+import org.apache.logging.log4j.message.StringFormattedMessage;
 
 /**
+ * Logger facade with %s formatter
+ * <p>
+ * Level is checked before any formatting, the message is formatted lazily by appender,
+ * methods with one or two params avoid varargs array when level is disabled
+ *
  * @author gy@fir.im
  */
 public class Logger {
 
+    /**
+     * Logger name for structured key value fields, it is off unless configured in log4j2.xml
+     */
+    public final static String FIELDS_LOGGER_NAME = "flow.fields";
+
+    private final static org.apache.logging.log4j.Logger FIELDS_LOGGER = LogManager.getLogger(FIELDS_LOGGER_NAME);
+
+    private final static Map<String, Marker> MARKERS = new ConcurrentHashMap<>();
+
+    private final String name;
+
     private org.apache.logging.log4j.Logger logger = null;
 
     public Logger(Class clazz) {
-        logger = LogManager.getLogger(clazz.getSimpleName());
+        name = clazz.getSimpleName();
+        logger = LogManager.getLogger(name);
+    }
+
+    public boolean isTraceEnabled() {
+        return logger.isTraceEnabled();
+    }
+
+    public boolean isDebugEnabled() {
+        return logger.isDebugEnabled();
     }
 
     public void trace(String message) {
         logger.trace(message);
     }
 
+    public void trace(String message, Object param) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(new StringFormattedMessage(message, param));
+        }
+    }
+
+    public void trace(String message, Object param1, Object param2) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(new StringFormattedMessage(message, param1, param2));
+        }
+    }
+
     public void trace(String message, Object ...params) {
-        logger.trace(String.format(message, params));
+        if (logger.isTraceEnabled()) {
+            logger.trace(new StringFormattedMessage(message, params));
+        }
+    }
+
+    public void trace(Supplier<String> supplier) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(supplier.get());
+        }
     }
 
     public void traceMarker(String method, String message, Object ...params) {
-        logger.trace(MarkerManager.getMarker(method), String.format(message, params));
+        log(Level.TRACE, method, message, params);
     }
 
     public void info(String message) {
         logger.info(message);
     }
 
+    public void info(String message, Object param) {
+        if (logger.isInfoEnabled()) {
+            logger.info(new StringFormattedMessage(message, param));
+        }
+    }
+
+    public void info(String message, Object param1, Object param2) {
+        if (logger.isInfoEnabled()) {
+            logger.info(new StringFormattedMessage(message, param1, param2));
+        }
+    }
+
     public void info(String message, Object... params) {
-        logger.info(String.format(message, params));
+        if (logger.isInfoEnabled()) {
+            logger.info(new StringFormattedMessage(message, params));
+        }
     }
 
     public void infoMarker(String method, String message, Object... params) {
-        logger.info(MarkerManager.getMarker(method), String.format(message, params));
+        log(Level.INFO, method, message, params);
     }
 
     public void error(String message, Throwable e) {
@@ -59,30 +125,98 @@ public class Logger {
     }
 
     public void errorMarker(String method, String message, Throwable e) {
-        logger.error(MarkerManager.getMarker(method), message, e);
+        logger.error(marker(method), message, e);
     }
 
     public void warn(String message) {
         logger.warn(message);
     }
 
+    public void warn(String message, Object param) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(new StringFormattedMessage(message, param));
+        }
+    }
+
+    public void warn(String message, Object param1, Object param2) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(new StringFormattedMessage(message, param1, param2));
+        }
+    }
+
     public void warn(String message, Object... params) {
-        logger.warn(String.format(message, params));
+        if (logger.isWarnEnabled()) {
+            logger.warn(new StringFormattedMessage(message, params));
+        }
     }
 
     public void warnMarker(String method, String message, Object... params) {
-        logger.warn(MarkerManager.getMarker(method), String.format(message, params));
+        log(Level.WARN, method, message, params);
     }
 
     public void debug(String message) {
         logger.debug(message);
     }
 
+    public void debug(String message, Object param) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(new StringFormattedMessage(message, param));
+        }
+    }
+
+    public void debug(String message, Object param1, Object param2) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(new StringFormattedMessage(message, param1, param2));
+        }
+    }
+
     public void debug(String message, Object... params) {
-        logger.debug(String.format(message, params));
+        if (logger.isDebugEnabled()) {
+            logger.debug(new StringFormattedMessage(message, params));
+        }
+    }
+
+    public void debug(Supplier<String> supplier) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(supplier.get());
+        }
     }
 
     public void debugMarker(String method, String message, Object... params) {
-        logger.debug(MarkerManager.getMarker(method), String.format(message, params));
+        log(Level.DEBUG, method, message, params);
+    }
+
+    /**
+     * Emit structured key value fields to 'flow.fields' logger, ex: fields("cmd-report", "id", id, "status", status)
+     */
+    public void fields(String event, Object... keyValues) {
+        if (!FIELDS_LOGGER.isInfoEnabled()) {
+            return;
+        }
+
+        MapMessage message = new MapMessage();
+        message.put("logger", name);
+        message.put("event", event);
+
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            message.put(String.valueOf(keyValues[i]), String.valueOf(keyValues[i + 1]));
+        }
+
+        FIELDS_LOGGER.info(message);
+    }
+
+    private void log(Level level, String method, String message, Object[] params) {
+        Marker marker = marker(method);
+        if (logger.isEnabled(level, marker)) {
+            logger.log(level, marker, new StringFormattedMessage(message, params));
+        }
+    }
+
+    private static Marker marker(String name) {
+        Marker marker = MARKERS.get(name);
+        if (marker != null) {
+            return marker;
+        }
+        return MARKERS.computeIfAbsent(name, MarkerManager::getMarker);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.trace;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Single request or event recorded from production traffic
+ *
+ * @author yang
+ */
+public class TrafficRecord {
+
+    /**
+     * Header of zookeeper event type for AGENT_EVENT record
+     */
+    public final static String HEADER_AGENT_EVENT = "event";
+
+    public enum Type {
+
+        /**
+         * Git webhook received by api
+         */
+        WEBHOOK,
+
+        /**
+         * Cmd sent to control center by api
+         */
+        CMD_SEND,
+
+        /**
+         * Cmd status reported to control center by agent
+         */
+        CMD_REPORT,
+
+        /**
+         * Agent node added, updated or removed on zookeeper
+         */
+        AGENT_EVENT
+    }
+
+    private final Type type;
+
+    /**
+     * Epoch millis when request received
+     */
+    private final long time;
+
+    /**
+     * Millis to handle the request
+     */
+    private final long duration;
+
+    /**
+     * Request path or zookeeper node path
+     */
+    private final String path;
+
+    private final Map<String, String> headers;
+
+    private final byte[] body;
+
+    public TrafficRecord(Type type, long time, long duration, String path, Map<String, String> headers,
+                         byte[] body) {
+        this.type = type;
+        this.time = time;
+        this.duration = duration;
+        this.path = path;
+        this.headers = headers == null ? Collections.emptyMap() : headers;
+        this.body = body == null ? new byte[0] : body;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficRecord{" +
+            "type=" + type +
+            ", time=" + time +
+            ", duration=" + duration +
+            ", path='" + path + '\'' +
+            ", body=" + body.length +
+            '}';
+    }
+}
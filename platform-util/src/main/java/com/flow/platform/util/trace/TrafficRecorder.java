@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.trace;
+
+import com.flow.platform.util.Logger;
+import com.flow.platform.util.trace.TrafficRecord.Type;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Record traffic to trace file in background thread, the record is dropped rather than blocking
+ * the request if writer cannot catch up
+ *
+ * @author yang
+ */
+public class TrafficRecorder implements Closeable {
+
+    private final static Logger LOGGER = new Logger(TrafficRecorder.class);
+
+    private final static TrafficRecorder DISABLED = new TrafficRecorder();
+
+    /**
+     * Recorder which ignore all records
+     */
+    public static TrafficRecorder disabled() {
+        return DISABLED;
+    }
+
+    private final Path file;
+
+    private final BlockingQueue<TrafficRecord> queue;
+
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    private final Thread writer;
+
+    private volatile boolean running;
+
+    private TrafficRecorder() {
+        this.file = null;
+        this.queue = null;
+        this.writer = null;
+        this.running = false;
+    }
+
+    public TrafficRecorder(Path file, int queueSize) throws IOException {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(file), true);
+        DataOutputStream data = new DataOutputStream(out);
+        TrafficTrace.writeHeader(data);
+
+        this.running = true;
+        this.writer = new Thread(() -> write(data), "traffic-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        LOGGER.trace("Traffic is recording to %s", file);
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Num of records dropped since queue is full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Record sanitized text body
+     *
+     * @param start epoch millis when request received, duration is counted till now
+     */
+    public void record(Type type, long start, String path, Map<String, String> headers, String body) {
+        if (!running) {
+            return;
+        }
+
+        byte[] bytes = body == null ? null : TrafficSanitizer.body(body).getBytes(StandardCharsets.UTF_8);
+        record(type, start, path, headers, bytes);
+    }
+
+    /**
+     * Record binary body as it is, the body should not contain secret
+     *
+     * @param start epoch millis when request received, duration is counted till now
+     */
+    public void record(Type type, long start, String path, Map<String, String> headers, byte[] body) {
+        if (!running) {
+            return;
+        }
+
+        Map<String, String> sanitized = headers == null ? null : TrafficSanitizer.headers(headers);
+        long duration = Math.max(System.currentTimeMillis() - start, 0);
+
+        if (!queue.offer(new TrafficRecord(type, start, duration, path, sanitized, body))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop recording and write the records in queue
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+
+        LOGGER.trace("Traffic recording stopped, %s records dropped", dropped.get());
+    }
+
+    private void write(DataOutputStream out) {
+        try (DataOutputStream data = out) {
+            while (running || !queue.isEmpty()) {
+                TrafficRecord record = queue.poll(1, TimeUnit.SECONDS);
+                if (record == null) {
+                    continue;
+                }
+
+                TrafficTrace.writeRecord(data, record);
+
+                // sync flush when idle, so the trace is readable if process killed
+                if (queue.isEmpty()) {
+                    data.flush();
+                }
+            }
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            running = false;
+            LOGGER.error("Fail to write traffic trace to " + file, e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Remove credentials and personal data from recorded traffic
+ *
+ * @author yang
+ */
+public final class TrafficSanitizer {
+
+    public final static String MASK = "***";
+
+    private final static String SECRET_KEYWORDS =
+        "password|passwd|token|secret|private_key|privatekey|credential|api_key|signature|authorization|cookie";
+
+    private final static Pattern SECRET_NAME = Pattern.compile(".*(" + SECRET_KEYWORDS + ").*",
+        Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Json string field with secret name, the json might be escaped in string value such as env
+     * variables, so the quote of field name is reused for value
+     */
+    private final static Pattern SECRET_FIELD = Pattern.compile(
+        "(\\\\?\")([^\"\\\\]*(?i:" + SECRET_KEYWORDS + ")[^\"\\\\]*)\\1(\\s*:\\s*)\\1(?:[^\"\\\\]|\\\\.)*?\\1");
+
+    private final static Pattern EMAIL = Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+
+    /**
+     * Mask value of header with secret name
+     */
+    public static Map<String, String> headers(Map<String, String> headers) {
+        Map<String, String> sanitized = new LinkedHashMap<>(headers.size());
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            String value = entry.getValue() == null ? "" : entry.getValue();
+            sanitized.put(entry.getKey(), isSecret(entry.getKey()) ? MASK : body(value));
+        }
+
+        return sanitized;
+    }
+
+    /**
+     * Mask json string field with secret name, and replace email with pseudonym which is the same
+     * for the same email, so the num of users of replayed traffic is kept
+     */
+    public static String body(String body) {
+        if (body == null || body.isEmpty()) {
+            return body;
+        }
+
+        String masked = SECRET_FIELD.matcher(body).replaceAll("$1$2$1$3$1" + MASK + "$1");
+
+        Matcher matcher = EMAIL.matcher(masked);
+        StringBuffer buffer = new StringBuffer(masked.length());
+        while (matcher.find()) {
+            String pseudonym = "user-" + Integer.toHexString(matcher.group().toLowerCase().hashCode()) + "@example.com";
+            matcher.appendReplacement(buffer, pseudonym);
+        }
+        matcher.appendTail(buffer);
+
+        return buffer.toString();
+    }
+
+    public static boolean isSecret(String name) {
+        return name != null && SECRET_NAME.matcher(name).matches();
+    }
+
+    private TrafficSanitizer() {
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.trace;
+
+import com.flow.platform.util.trace.TrafficRecord.Type;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Trace file of recorded traffic, the gzipped content is header with magic and version, then
+ * records in the order been written:
+ *
+ * [type][time][duration][path][num of headers][header name and value]...[body length][body]
+ *
+ * @author yang
+ */
+public final class TrafficTrace {
+
+    final static int MAGIC = 0x464C5452;
+
+    final static byte VERSION = 1;
+
+    /**
+     * Read all records from trace file, the records of partial written trace are returned until the
+     * last complete record
+     */
+    public static List<TrafficRecord> read(Path file) throws IOException {
+        List<TrafficRecord> records = new LinkedList<>();
+
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream data = new DataInputStream(new GZIPInputStream(in));
+            readHeader(data);
+
+            while (true) {
+                try {
+                    records.add(readRecord(data));
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+
+        return records;
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    static void writeRecord(DataOutputStream out, TrafficRecord record) throws IOException {
+        out.writeByte(record.getType().ordinal());
+        out.writeLong(record.getTime());
+        out.writeInt((int) Math.min(record.getDuration(), Integer.MAX_VALUE));
+        out.writeUTF(record.getPath());
+
+        out.writeShort(record.getHeaders().size());
+        for (Map.Entry<String, String> entry : record.getHeaders().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+
+        out.writeInt(record.getBody().length);
+        out.write(record.getBody());
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a traffic trace file");
+        }
+
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported traffic trace version " + version);
+        }
+    }
+
+    private static TrafficRecord readRecord(DataInputStream in) throws IOException {
+        Type type = Type.values()[in.readByte()];
+        long time = in.readLong();
+        long duration = in.readInt();
+        String path = in.readUTF();
+
+        int numOfHeaders = in.readShort();
+        Map<String, String> headers = new LinkedHashMap<>(numOfHeaders);
+        for (int i = 0; i < numOfHeaders; i++) {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+
+        return new TrafficRecord(type, time, duration, path, headers, body);
+    }
+
+    private TrafficTrace() {
+    }
+}
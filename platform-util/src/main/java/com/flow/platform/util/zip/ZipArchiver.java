@@ -0,0 +1,430 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Zip folder by walking file tree and deflating entries in parallel
+ *
+ * Each entry is deflated by worker thread into a spool file, then the spooled
+ * data is written to the target stream in walk order, so memory usage is bounded
+ * by buffer size instead of archive size.
+ *
+ * The worker threads are shared by all archivers, parallelism only limits the
+ * entries in flight of single zip.
+ *
+ * Zip64 is not supported, archive and each entry must less than 4GB
+ *
+ * @author yang
+ */
+public class ZipArchiver {
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private final static long MAX_ZIP32_VALUE = 0xFFFFFFFFL;
+
+    private final static int MAX_ZIP32_ENTRIES = 0xFFFF;
+
+    private final static AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private final static ExecutorService SHARED_EXECUTOR =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "zip-deflater-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private Path spoolDir;
+
+    private ExecutorService executor = SHARED_EXECUTOR;
+
+    /**
+     * Set compression level from 0 (no compression) to 9 (best compression), -1 for default
+     */
+    public ZipArchiver level(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION
+            || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * Set number of entries to deflate at the same time
+     */
+    public ZipArchiver parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Set dir for deflated entry data, default is system temp dir
+     */
+    public ZipArchiver spoolDir(Path spoolDir) {
+        this.spoolDir = spoolDir;
+        return this;
+    }
+
+    /**
+     * Set executor to deflate entries, default is shared by all archivers and never shutdown
+     */
+    public ZipArchiver executor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public ZipStats zip(Path folder, Path zipFile) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(zipFile)) {
+            return zip(folder, outputStream);
+        }
+    }
+
+    /**
+     * Zip all files under folder to output stream, the stream will not be closed
+     */
+    public ZipStats zip(Path folder, OutputStream outputStream) throws IOException {
+        final long start = System.currentTimeMillis();
+        final List<Path> files = listFiles(folder);
+
+        Path spool = spoolDir == null
+            ? Files.createTempDirectory("flow-zip-")
+            : Files.createTempDirectory(spoolDir, "flow-zip-");
+
+        Deque<Future<DeflatedEntry>> inFlight = new ArrayDeque<>(parallelism * 2);
+        ZipWriter writer = new ZipWriter(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+
+        try {
+            Iterator<Path> iterator = files.iterator();
+
+            while (iterator.hasNext() || !inFlight.isEmpty()) {
+
+                // keep limited entries in flight to bound spool disk usage
+                while (iterator.hasNext() && inFlight.size() < parallelism * 2) {
+                    Path file = iterator.next();
+                    String name = toEntryName(folder.relativize(file));
+                    inFlight.add(executor.submit(() -> deflate(file, name, spool)));
+                }
+
+                DeflatedEntry entry = await(inFlight.poll());
+                try {
+                    writer.write(entry);
+                } finally {
+                    Files.deleteIfExists(entry.data);
+                }
+            }
+
+            writer.finish();
+        } finally {
+            for (Future<DeflatedEntry> future : inFlight) {
+                future.cancel(true);
+            }
+            deleteSpool(spool);
+        }
+
+        return new ZipStats(writer.entries.size(), writer.rawBytes, writer.compressedBytes,
+            System.currentTimeMillis() - start);
+    }
+
+    private List<Path> listFiles(Path folder) throws IOException {
+        final List<Path> files = new ArrayList<>();
+
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return files;
+    }
+
+    private DeflatedEntry deflate(Path file, String name, Path spool) throws IOException {
+        Path data = Files.createTempFile(spool, "entry-", ".deflate");
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(level, true);
+        long size = 0;
+
+        try (InputStream in = Files.newInputStream(file);
+            OutputStream out = new DeflaterOutputStream(Files.newOutputStream(data), deflater, BUFFER_SIZE)) {
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, length);
+                out.write(buffer, 0, length);
+                size += length;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        return new DeflatedEntry(name, data, crc.getValue(), size, Files.size(data), toDosTime(modified));
+    }
+
+    private static DeflatedEntry await(Future<DeflatedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deflating zip entry", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to deflate zip entry", e.getCause());
+        }
+    }
+
+    private static void deleteSpool(Path spool) {
+        try {
+            File[] files = spool.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+            Files.deleteIfExists(spool);
+        } catch (IOException ignore) {
+            // temp dir will be cleaned by system
+        }
+    }
+
+    private static String toEntryName(Path relative) {
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    private static long toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+
+        return (time.getYear() - 1980) << 25
+            | time.getMonthValue() << 21
+            | time.getDayOfMonth() << 16
+            | time.getHour() << 11
+            | time.getMinute() << 5
+            | time.getSecond() >> 1;
+    }
+
+    private static class DeflatedEntry {
+
+        private final String name;
+
+        private final Path data;
+
+        private final long crc;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        private final long dosTime;
+
+        DeflatedEntry(String name, Path data, long crc, long size, long compressedSize, long dosTime) {
+            this.name = name;
+            this.data = data;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.dosTime = dosTime;
+        }
+    }
+
+    /**
+     * Write deflated entries with local file header and central directory
+     */
+    private static class ZipWriter {
+
+        private final static int LOCAL_HEADER_SIG = 0x04034b50;
+
+        private final static int CENTRAL_HEADER_SIG = 0x02014b50;
+
+        private final static int END_SIG = 0x06054b50;
+
+        private final static int VERSION = 20;
+
+        private final static int FLAG_UTF8 = 0x0800;
+
+        private final static int METHOD_DEFLATED = 8;
+
+        private final OutputStream out;
+
+        private final List<Record> entries = new ArrayList<>();
+
+        private long offset = 0;
+
+        private long rawBytes = 0;
+
+        private long compressedBytes = 0;
+
+        ZipWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(DeflatedEntry entry) throws IOException {
+            if (entry.size > MAX_ZIP32_VALUE || entry.compressedSize > MAX_ZIP32_VALUE) {
+                throw new IOException("Zip entry too large: " + entry.name);
+            }
+
+            if (entries.size() >= MAX_ZIP32_ENTRIES) {
+                throw new IOException("Too many zip entries");
+            }
+
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            Record record = new Record(entry, name, offset);
+
+            writeInt(LOCAL_HEADER_SIG);
+            writeShort(VERSION);
+            writeShort(FLAG_UTF8);
+            writeShort(METHOD_DEFLATED);
+            writeInt(entry.dosTime);
+            writeInt(entry.crc);
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+            writeShort(name.length);
+            writeShort(0);
+            writeBytes(name);
+
+            offset += Files.copy(entry.data, out);
+            checkOffset();
+
+            entries.add(record);
+            rawBytes += entry.size;
+            compressedBytes += entry.compressedSize;
+        }
+
+        void finish() throws IOException {
+            long centralStart = offset;
+
+            for (Record record : entries) {
+                DeflatedEntry entry = record.entry;
+                writeInt(CENTRAL_HEADER_SIG);
+                writeShort(VERSION);
+                writeShort(VERSION);
+                writeShort(FLAG_UTF8);
+                writeShort(METHOD_DEFLATED);
+                writeInt(entry.dosTime);
+                writeInt(entry.crc);
+                writeInt(entry.compressedSize);
+                writeInt(entry.size);
+                writeShort(record.name.length);
+                writeShort(0); // extra length
+                writeShort(0); // comment length
+                writeShort(0); // disk number
+                writeShort(0); // internal attrs
+                writeInt(0); // external attrs
+                writeInt(record.headerOffset);
+                writeBytes(record.name);
+            }
+
+            long centralSize = offset - centralStart;
+            checkOffset();
+
+            writeInt(END_SIG);
+            writeShort(0);
+            writeShort(0);
+            writeShort(entries.size());
+            writeShort(entries.size());
+            writeInt(centralSize);
+            writeInt(centralStart);
+            writeShort(0);
+
+            out.flush();
+        }
+
+        private void checkOffset() throws IOException {
+            if (offset > MAX_ZIP32_VALUE) {
+                throw new IOException("Zip archive exceed 4GB which is not supported");
+            }
+        }
+
+        private void writeShort(int value) throws IOException {
+            out.write(value & 0xFF);
+            out.write((value >>> 8) & 0xFF);
+            offset += 2;
+        }
+
+        private void writeInt(long value) throws IOException {
+            out.write((int) (value & 0xFF));
+            out.write((int) ((value >>> 8) & 0xFF));
+            out.write((int) ((value >>> 16) & 0xFF));
+            out.write((int) ((value >>> 24) & 0xFF));
+            offset += 4;
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            out.write(bytes);
+            offset += bytes.length;
+        }
+
+        private static class Record {
+
+            private final DeflatedEntry entry;
+
+            private final byte[] name;
+
+            private final long headerOffset;
+
+            Record(DeflatedEntry entry, byte[] name, long headerOffset) {
+                this.entry = entry;
+                this.name = name;
+                this.headerOffset = headerOffset;
+            }
+        }
+    }
+}
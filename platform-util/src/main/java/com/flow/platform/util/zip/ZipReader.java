@@ -0,0 +1,237 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.zip;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Iterate zip entries from stream without loading entry content into memory
+ *
+ * The entry stream from {@link ZipItem#getStream()} is only valid before next entry
+ *
+ * @author yang
+ */
+public class ZipReader implements Iterator<ZipReader.ZipItem>, Closeable {
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Open lazy stream of zip entries, the zipped stream will be closed when the stream is closed
+     */
+    public static Stream<ZipItem> stream(InputStream zipped) {
+        ZipReader reader = new ZipReader(zipped);
+        Spliterator<ZipItem> spliterator = Spliterators
+            .spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Write content of all entries to output stream in order
+     */
+    public static ZipStats copy(InputStream zipped, OutputStream out) throws IOException {
+        final long start = System.currentTimeMillis();
+        int entries = 0;
+        long rawBytes = 0;
+
+        try (ZipReader reader = new ZipReader(zipped)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            while (reader.hasNext()) {
+                ZipItem item = reader.next();
+                InputStream stream = item.getStream();
+
+                int length;
+                while ((length = stream.read(buffer)) != -1) {
+                    out.write(buffer, 0, length);
+                    rawBytes += length;
+                }
+                entries++;
+            }
+
+            return new ZipStats(entries, rawBytes, reader.compressedBytes, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Extract all entries to dest folder
+     */
+    public static ZipStats unzip(InputStream zipped, Path dest) throws IOException {
+        final long start = System.currentTimeMillis();
+        final Path root = dest.toAbsolutePath().normalize();
+        int entries = 0;
+        long rawBytes = 0;
+
+        try (ZipReader reader = new ZipReader(zipped)) {
+            while (reader.hasNext()) {
+                ZipItem item = reader.next();
+                Path target = root.resolve(item.getName()).normalize();
+
+                // prevent entry name like '../../xxx' write file out of dest
+                if (!target.startsWith(root)) {
+                    throw new IOException("Illegal zip entry name: " + item.getName());
+                }
+
+                if (item.isDirectory()) {
+                    Files.createDirectories(target);
+                    continue;
+                }
+
+                Files.createDirectories(target.getParent());
+                rawBytes += Files.copy(item.getStream(), target, StandardCopyOption.REPLACE_EXISTING);
+                entries++;
+            }
+
+            return new ZipStats(entries, rawBytes, reader.compressedBytes, System.currentTimeMillis() - start);
+        }
+    }
+
+    private final ZipInputStream zis;
+
+    private ZipEntry current;
+
+    private ZipItem next;
+
+    private boolean finished = false;
+
+    private long compressedBytes = 0;
+
+    public ZipReader(InputStream zipped) {
+        this.zis = new ZipInputStream(zipped);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+
+        if (finished) {
+            return false;
+        }
+
+        try {
+            // sizes of previous entry are available after it been closed by getNextEntry
+            ZipEntry entry = zis.getNextEntry();
+            if (current != null && current.getCompressedSize() > 0) {
+                compressedBytes += current.getCompressedSize();
+            }
+            current = entry;
+
+            if (entry == null) {
+                finished = true;
+                return false;
+            }
+
+            next = new ZipItem(entry, new EntryStream(zis));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ZipItem next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        ZipItem item = next;
+        next = null;
+        return item;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zis.close();
+    }
+
+    public static class ZipItem {
+
+        private final ZipEntry entry;
+
+        private final InputStream stream;
+
+        ZipItem(ZipEntry entry, InputStream stream) {
+            this.entry = entry;
+            this.stream = stream;
+        }
+
+        public String getName() {
+            return entry.getName();
+        }
+
+        public boolean isDirectory() {
+            return entry.isDirectory();
+        }
+
+        /**
+         * Uncompressed size, -1 if unknown before read
+         */
+        public long getSize() {
+            return entry.getSize();
+        }
+
+        /**
+         * Entry content stream, closing it will not close the zip stream
+         */
+        public InputStream getStream() {
+            return stream;
+        }
+    }
+
+    /**
+     * Entry content stream which only close current entry instead of zip stream
+     */
+    private static class EntryStream extends FilterInputStream {
+
+        private final ZipInputStream source;
+
+        EntryStream(ZipInputStream source) {
+            super(source);
+            this.source = source;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.closeEntry();
+        }
+    }
+}
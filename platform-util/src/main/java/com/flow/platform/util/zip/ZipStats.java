@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.zip;
+
+/**
+ * Throughput and compression metrics of a zip or unzip run
+ *
+ * @author yang
+ */
+public class ZipStats {
+
+    private final int entries;
+
+    /**
+     * Uncompressed bytes of all entries
+     */
+    private final long rawBytes;
+
+    /**
+     * Deflated bytes of all entries, not include zip headers
+     */
+    private final long compressedBytes;
+
+    private final long elapsedMillis;
+
+    public ZipStats(int entries, long rawBytes, long compressedBytes, long elapsedMillis) {
+        this.entries = entries;
+        this.rawBytes = rawBytes;
+        this.compressedBytes = compressedBytes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Compressed size / raw size, 1.0 if nothing been processed
+     */
+    public double getCompressionRatio() {
+        if (rawBytes == 0) {
+            return 1.0;
+        }
+        return (double) compressedBytes / rawBytes;
+    }
+
+    /**
+     * Raw bytes processed per second
+     */
+    public double getThroughput() {
+        if (elapsedMillis == 0) {
+            return rawBytes * 1000.0;
+        }
+        return rawBytes * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ZipStats{" +
+            "entries=" + entries +
+            ", rawBytes=" + rawBytes +
+            ", compressedBytes=" + compressedBytes +
+            ", elapsedMillis=" + elapsedMillis +
+            ", ratio=" + String.format("%.3f", getCompressionRatio()) +
+            ", throughput=" + String.format("%.1f KB/s", getThroughput() / 1024) +
+            '}';
+    }
+}
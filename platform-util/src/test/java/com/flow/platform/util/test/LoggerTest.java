@@ -17,6 +17,7 @@
 package com.flow.platform.util.test;
 
 import com.flow.platform.util.Logger;
+import org.junit.Assert;
 import org.junit.Test;
 
 /**
@@ -35,4 +36,22 @@ public class LoggerTest {
         logger.errorMarker("should_print_log", "my formatter test", null);
         logger.debugMarker("should_print_log", "my formatter test %s", 123);
     }
+
+    @Test
+    public void should_print_log_with_params_and_supplier() {
+        logger.trace("one param %s", 1);
+        logger.debug("two params %s %s", 1, "2");
+        logger.info("three params %s %s %s", 1, "2", 3L);
+        logger.warn("param with percent char %s", "100%");
+        logger.trace(() -> "trace from supplier");
+        logger.debug(() -> "debug from supplier");
+
+        Assert.assertTrue(logger.isTraceEnabled());
+        Assert.assertTrue(logger.isDebugEnabled());
+    }
+
+    @Test
+    public void should_emit_fields_when_enabled() {
+        logger.fields("should_emit_fields", "id", "cmd-001", "status", "RUNNING");
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.test;
+
+import com.flow.platform.util.trace.TrafficRecord;
+import com.flow.platform.util.trace.TrafficRecord.Type;
+import com.flow.platform.util.trace.TrafficRecorder;
+import com.flow.platform.util.trace.TrafficSanitizer;
+import com.flow.platform.util.trace.TrafficTrace;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author yang
+ */
+public class TrafficRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_record_and_read_sanitized_traffic() throws Throwable {
+        Path file = folder.getRoot().toPath().resolve("trace/traffic.trace");
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-GitHub-Event", "push");
+        headers.put("Authorization", "Basic abc");
+
+        long start = System.currentTimeMillis();
+        try (TrafficRecorder recorder = new TrafficRecorder(file, 10)) {
+            recorder.record(Type.WEBHOOK, start, "/hooks/git/flow", headers, "{\"ref\": \"refs/heads/master\"}");
+            recorder.record(Type.CMD_REPORT, start + 10, "/cmd/report", null, new byte[]{1, 2, 3});
+        }
+
+        List<TrafficRecord> records = TrafficTrace.read(file);
+        Assert.assertEquals(2, records.size());
+
+        TrafficRecord webhook = records.get(0);
+        Assert.assertEquals(Type.WEBHOOK, webhook.getType());
+        Assert.assertEquals(start, webhook.getTime());
+        Assert.assertEquals("/hooks/git/flow", webhook.getPath());
+        Assert.assertEquals("push", webhook.getHeaders().get("X-GitHub-Event"));
+        Assert.assertEquals(TrafficSanitizer.MASK, webhook.getHeaders().get("Authorization"));
+        Assert.assertEquals("{\"ref\": \"refs/heads/master\"}", new String(webhook.getBody(), StandardCharsets.UTF_8));
+
+        TrafficRecord report = records.get(1);
+        Assert.assertEquals(Type.CMD_REPORT, report.getType());
+        Assert.assertEquals(0, report.getHeaders().size());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, report.getBody());
+    }
+
+    @Test
+    public void should_mask_secret_fields_and_emails() throws Throwable {
+        String json = "{\"user_email\":\"Will@Fir.im\",\"password\": \"123\",\"name\":\"my token\",\"inputs\":"
+            + "{\"FLOW_GIT_SSH_PRIVATE_KEY\":\"---\\nkey\\\"\\n---\",\"FLOW_ENV_BASE_LAYER\":"
+            + "\"{\\\"FLOW_API_TOKEN\\\":\\\"abc\\\\n\\\",\\\"FLOW_BRANCH\\\":\\\"master\\\"}\"}}";
+
+        String sanitized = TrafficSanitizer.body(json);
+        Assert.assertFalse(sanitized.contains("Fir.im"));
+        Assert.assertTrue(sanitized.contains("\"password\": \"***\""));
+        Assert.assertTrue(sanitized.contains("\"name\":\"my token\""));
+        Assert.assertTrue(sanitized.contains("\"FLOW_GIT_SSH_PRIVATE_KEY\":\"***\","));
+        Assert.assertTrue(sanitized.contains("\\\"FLOW_API_TOKEN\\\":\\\"***\\\","));
+        Assert.assertTrue(sanitized.contains("\\\"FLOW_BRANCH\\\":\\\"master\\\""));
+
+        // same email has the same pseudonym
+        Assert.assertEquals(TrafficSanitizer.body("will@fir.im"), TrafficSanitizer.body("Will@Fir.im"));
+    }
+}
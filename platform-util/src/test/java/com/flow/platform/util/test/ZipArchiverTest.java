@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.flow.platform.util.test;
+
+import com.flow.platform.util.zip.ZipArchiver;
+import com.flow.platform.util.zip.ZipReader;
+import com.flow.platform.util.zip.ZipReader.ZipItem;
+import com.flow.platform.util.zip.ZipStats;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author yang
+ */
+public class ZipArchiverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+
+    @Before
+    public void init() throws Throwable {
+        source = folder.newFolder("source").toPath();
+        Files.createDirectories(source.resolve("step/sub"));
+        Files.write(source.resolve("root.log"), "root log content".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("step/sub/step.log"), "step log content".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("step/empty.log"), new byte[0]);
+    }
+
+    @Test
+    public void should_zip_folder_readable_by_jdk() throws Throwable {
+        File zipFile = folder.newFile("source.zip");
+        ZipStats stats = new ZipArchiver().parallelism(2).level(Deflater.BEST_COMPRESSION)
+            .zip(source, zipFile.toPath());
+
+        Assert.assertEquals(3, stats.getEntries());
+        Assert.assertEquals(32, stats.getRawBytes());
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Assert.assertEquals(3, zip.size());
+
+            ZipEntry entry = zip.getEntry("step/sub/step.log");
+            Assert.assertNotNull(entry);
+
+            try (InputStream stream = zip.getInputStream(entry)) {
+                Assert.assertEquals("step log content", read(stream));
+            }
+
+            Assert.assertEquals(0, zip.getEntry("step/empty.log").getSize());
+        }
+    }
+
+    @Test
+    public void should_iterate_entries_as_stream() throws Throwable {
+        File zipFile = folder.newFile("source.zip");
+        new ZipArchiver().level(Deflater.NO_COMPRESSION).zip(source, zipFile.toPath());
+
+        try (Stream<ZipItem> items = ZipReader.stream(Files.newInputStream(zipFile.toPath()))) {
+            List<String> names = items.map(ZipItem::getName).sorted().collect(Collectors.toList());
+            Assert.assertEquals(3, names.size());
+            Assert.assertEquals("root.log", names.get(0));
+        }
+    }
+
+    @Test
+    public void should_copy_and_unzip_with_stats() throws Throwable {
+        File zipFile = folder.newFile("source.zip");
+        new ZipArchiver().zip(source, zipFile.toPath());
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ZipStats stats = ZipReader.copy(Files.newInputStream(zipFile.toPath()), content);
+        Assert.assertEquals(32, content.size());
+        Assert.assertEquals(3, stats.getEntries());
+        Assert.assertTrue(stats.getCompressedBytes() > 0);
+
+        Path dest = folder.newFolder("dest").toPath();
+        stats = ZipReader.unzip(Files.newInputStream(zipFile.toPath()), dest);
+        Assert.assertEquals(32, stats.getRawBytes());
+        Assert.assertEquals("root log content", new String(Files.readAllBytes(dest.resolve("root.log")),
+            StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void should_share_deflater_threads_between_zips() throws Throwable {
+        // when: zip many times
+        for (int i = 0; i < 10; i++) {
+            new ZipArchiver().zip(source, folder.newFile("source-" + i + ".zip").toPath());
+        }
+
+        // then: deflater threads should not be created for each zip
+        long threads = Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().startsWith("zip-deflater-"))
+            .count();
+        Assert.assertTrue(threads <= Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_invalid_level() {
+        new ZipArchiver().level(10);
+    }
+
+    private static String read(InputStream stream) throws Throwable {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
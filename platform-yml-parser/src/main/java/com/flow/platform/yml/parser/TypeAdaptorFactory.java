@@ -27,17 +27,18 @@ import com.flow.platform.yml.parser.util.TypeUtil;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Type;
 import java.util.Collection;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author yh@firim
  */
 public class TypeAdaptorFactory {
 
-    private static Map<Type, YmlAdaptor> adaptorCache = new LinkedHashMap<>();
+    // adaptor registry, adaptor is stateless and created once per type
+    private static final Map<Type, YmlAdaptor> adaptorCache = new ConcurrentHashMap<>();
 
     private static final List<AdaptorSelector> selectorChain = new LinkedList<>();
 
@@ -50,15 +51,17 @@ public class TypeAdaptorFactory {
     }
 
     public static YmlAdaptor getAdaptor(Type type) {
-
-        if (adaptorCache.get(type) != null) {
-            return adaptorCache.get(type);
+        YmlAdaptor cached = adaptorCache.get(type);
+        if (cached != null) {
+            return cached;
         }
 
+        // not use computeIfAbsent since selector will get adaptor of component type recursively
         for (AdaptorSelector selector : selectorChain) {
             YmlAdaptor adaptor = selector.selectAdaptor(type);
             if (adaptor != null) {
-                return adaptor;
+                YmlAdaptor exist = adaptorCache.putIfAbsent(type, adaptor);
+                return exist == null ? adaptor : exist;
             }
         }
 
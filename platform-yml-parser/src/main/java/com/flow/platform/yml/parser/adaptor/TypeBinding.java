@@ -0,0 +1,367 @@
+/*
+ * Copyright 2017 flow.ci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flow.platform.yml.parser.adaptor;
+
+import com.flow.platform.yml.parser.TypeAdaptorFactory;
+import com.flow.platform.yml.parser.annotations.YmlSerializer;
+import com.flow.platform.yml.parser.empty.EmptyAdapter;
+import com.flow.platform.yml.parser.empty.EmptyValidator;
+import com.flow.platform.yml.parser.exception.YmlFormatException;
+import com.flow.platform.yml.parser.exception.YmlParseException;
+import com.flow.platform.yml.parser.validator.YmlValidator;
+import com.google.common.base.Strings;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed @YmlSerializer bindings of class, fields are discovered once per class
+ * and accessed by method handles
+ *
+ * @author yh@firim
+ */
+final class TypeBinding {
+
+    private final static Map<Class<?>, TypeBinding> REGISTRY = new ConcurrentHashMap<>();
+
+    private final static MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final static MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final static MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    static TypeBinding of(Class<?> clazz) {
+        TypeBinding binding = REGISTRY.get(clazz);
+        if (binding != null) {
+            return binding;
+        }
+
+        binding = new TypeBinding(clazz);
+        TypeBinding exist = REGISTRY.putIfAbsent(clazz, binding);
+        return exist == null ? binding : exist;
+    }
+
+    private final Class<?> clazz;
+
+    private final MethodHandle constructor;
+
+    private final List<FieldBinding> readFields = new ArrayList<>();
+
+    private final Collection<FieldBinding> writeFields;
+
+    private TypeBinding(Class<?> clazz) {
+        this.clazz = clazz;
+        this.constructor = findConstructor(clazz);
+
+        Map<String, FieldBinding> writeBindings = new LinkedHashMap<>();
+
+        Class<?> raw = clazz;
+        while (raw != null && raw != Object.class) {
+            for (Field field : raw.getDeclaredFields()) {
+                YmlSerializer ymlSerializer = field.getAnnotation(YmlSerializer.class);
+                if (ymlSerializer == null) {
+                    continue;
+                }
+
+                FieldBinding binding = new FieldBinding(clazz, field, ymlSerializer);
+                writeBindings.put(binding.name, binding);
+
+                if (!ymlSerializer.ignore()) {
+                    readFields.add(binding);
+                }
+            }
+
+            for (Method method : raw.getDeclaredMethods()) {
+                YmlSerializer ymlSerializer = method.getAnnotation(YmlSerializer.class);
+                if (ymlSerializer == null || ymlSerializer.ignore()) {
+                    continue;
+                }
+                readFields.add(new FieldBinding(clazz, matchFieldFromMethod(clazz, method), ymlSerializer));
+            }
+
+            for (Method method : raw.getMethods()) {
+                YmlSerializer ymlSerializer = method.getAnnotation(YmlSerializer.class);
+                if (ymlSerializer == null) {
+                    continue;
+                }
+
+                FieldBinding binding = new FieldBinding(clazz, matchFieldFromMethod(clazz, method), ymlSerializer);
+                writeBindings.put(binding.name, binding);
+            }
+
+            raw = raw.getSuperclass();
+        }
+
+        this.writeFields = Collections.unmodifiableCollection(writeBindings.values());
+    }
+
+    /**
+     * Create instance and set values from yml map
+     */
+    Object read(Object o) {
+        Object instance = newInstance();
+        Map map = (Map) o;
+
+        for (FieldBinding binding : readFields) {
+            binding.read(map, instance);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Write instance fields to map
+     */
+    Map<String, Object> write(Object instance) {
+        Map<String, Object> map = new LinkedHashMap<>(writeFields.size() * 2);
+        for (FieldBinding binding : writeFields) {
+            map.put(binding.name, binding.write(instance));
+        }
+        return map;
+    }
+
+    private Object newInstance() {
+        if (constructor == null) {
+            throw new YmlParseException(String.format("clazz '%s' create instance error ", clazz.getName()));
+        }
+
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable throwable) {
+            throw new YmlParseException(String.format("clazz '%s' create instance error ", clazz.getName()), throwable);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return LOOKUP.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+        } catch (Throwable throwable) {
+            return null;
+        }
+    }
+
+    private static Field matchFieldFromMethod(Class<?> clazz, Method method) {
+        String fieldName = splitNameFromMethod(method);
+
+        Class<?> raw = clazz;
+        while (raw != null && raw != Object.class) {
+            for (Field field : raw.getDeclaredFields()) {
+                if (field.getName().equals(fieldName)) {
+                    return field;
+                }
+            }
+            raw = raw.getSuperclass();
+        }
+
+        throw new YmlParseException(String.format("field of method '%s' not found", method.getName()));
+    }
+
+    private static String splitNameFromMethod(Method method) {
+        String name = null;
+        if (method.getName().contains("set")) {
+            name = method.getName().split("set")[1];
+            if (name != null) {
+                return name.toLowerCase();
+            }
+        }
+
+        if (method.getName().contains("get")) {
+            name = method.getName().split("get")[1].toLowerCase();
+        }
+
+        return name;
+    }
+
+    private static class FieldBinding {
+
+        private final String name;
+
+        private final Field field;
+
+        private final Type type;
+
+        private final boolean required;
+
+        private final MethodHandle getter;
+
+        private final MethodHandle setter;
+
+        // adaptor from annotation, created once
+        private final YmlAdaptor customAdaptor;
+
+        private final YmlValidator validator;
+
+        // adaptor from factory, resolved on first use since field type may refer to the owner type
+        private volatile YmlAdaptor typeAdaptor;
+
+        FieldBinding(Class<?> owner, Field field, YmlSerializer ymlSerializer) {
+            this.field = field;
+            this.name = Strings.isNullOrEmpty(ymlSerializer.name()) ? field.getName() : ymlSerializer.name();
+            this.required = ymlSerializer.required();
+            this.type = getFieldType(field, owner);
+
+            field.setAccessible(true);
+            this.getter = unreflect(field, false);
+            this.setter = unreflect(field, true);
+
+            if (ymlSerializer.adaptor() == EmptyAdapter.class) {
+                this.customAdaptor = null;
+            } else {
+                try {
+                    this.customAdaptor = ymlSerializer.adaptor().newInstance();
+                } catch (Throwable throwable) {
+                    throw new YmlParseException(
+                        String.format("create instance '%s' adaptor error", ymlSerializer.adaptor().getName()),
+                        throwable);
+                }
+            }
+
+            if (ymlSerializer.validator() == EmptyValidator.class) {
+                this.validator = null;
+            } else {
+                try {
+                    this.validator = ymlSerializer.validator().newInstance();
+                } catch (Throwable throwable) {
+                    throw new YmlFormatException(String
+                        .format("field '%s' is validate error %s", ymlSerializer.validator().getName(),
+                            throwable.getMessage()));
+                }
+            }
+        }
+
+        void read(Map map, Object instance) {
+            Object obj = map.get(name);
+
+            if (obj == null) {
+                if (required) {
+                    throw new YmlParseException(String.format("field '%s' is missing", field.getName()));
+                }
+                return;
+            }
+
+            Object value;
+            if (customAdaptor == null) {
+                value = adaptor().read(obj);
+            } else {
+                try {
+                    value = customAdaptor.read(obj);
+                } catch (Throwable throwable) {
+                    throw new YmlParseException("create instance adaptor", throwable);
+                }
+            }
+
+            if (setter == null) {
+                throw new YmlParseException(String.format("field - %s set value error", field.getName()));
+            }
+
+            try {
+                setter.invokeExact(instance, value);
+            } catch (Throwable throwable) {
+                throw new YmlParseException(String.format("field - %s set value error", field.getName()),
+                    throwable);
+            }
+
+            validate(instance);
+        }
+
+        Object write(Object instance) {
+            if (getter == null) {
+                throw new YmlParseException(String.format("field '%s' is get error", field.getName()));
+            }
+
+            try {
+                Object value = (Object) getter.invokeExact(instance);
+                return adaptor().write(value);
+            } catch (Throwable throwable) {
+                throw new YmlParseException(String.format("field '%s' is get error", field.getName()), throwable);
+            }
+        }
+
+        private void validate(Object instance) {
+            if (validator == null) {
+                return;
+            }
+
+            Object value;
+            try {
+                value = (Object) getter.invokeExact(instance);
+            } catch (Throwable throwable) {
+                // getter is null if field not accessible
+                throw new YmlFormatException(String
+                    .format("field '%s' is validate error %s", field.getName(), throwable.getMessage()));
+            }
+
+            if (!validator.validate(value)) {
+                throw new YmlFormatException(String.format("field '%s' is validate error", field.getName()));
+            }
+        }
+
+        private YmlAdaptor adaptor() {
+            if (customAdaptor != null) {
+                return customAdaptor;
+            }
+
+            YmlAdaptor adaptor = typeAdaptor;
+            if (adaptor == null) {
+                adaptor = TypeAdaptorFactory.getAdaptor(type);
+                typeAdaptor = adaptor;
+            }
+            return adaptor;
+        }
+
+        /**
+         * @return null if field cannot be accessed, ex: final field for setter
+         */
+        private static MethodHandle unreflect(Field field, boolean isSetter) {
+            try {
+                if (isSetter) {
+                    return LOOKUP.unreflectSetter(field).asType(SETTER_TYPE);
+                }
+                return LOOKUP.unreflectGetter(field).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Field type from getter declared in owner class, otherwise generic type of field
+         */
+        private static Type getFieldType(Field field, Class<?> owner) {
+            String getterName = "get" + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+            try {
+                return owner.getDeclaredMethod(getterName).getGenericReturnType();
+            } catch (NoSuchMethodException e) {
+                return field.getGenericType();
+            }
+        }
+    }
+}
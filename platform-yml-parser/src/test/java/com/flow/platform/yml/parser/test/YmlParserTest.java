@@ -16,7 +16,9 @@
 
 package com.flow.platform.yml.parser.test;
 
+import com.flow.platform.yml.parser.TypeAdaptorFactory;
 import com.flow.platform.yml.parser.YmlParser;
+import com.flow.platform.yml.parser.adaptor.YmlAdaptor;
 import com.flow.platform.yml.parser.exception.YmlFormatException;
 import com.flow.platform.yml.parser.exception.YmlParseException;
 import com.flow.platform.yml.parser.test.domain.FlowTest;
@@ -26,7 +28,9 @@ import com.flow.platform.yml.parser.test.domain.FlowTestInteger;
 import com.flow.platform.yml.parser.test.domain.FlowTestPrimitativeBoolean;
 import com.flow.platform.yml.parser.test.domain.FlowTestRequired;
 import com.flow.platform.yml.parser.test.domain.FlowTestValidator;
+import java.util.Map;
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 /**
@@ -116,6 +120,37 @@ public class YmlParserTest extends TestBase {
         Assert.assertNotNull(flows[0].getScript());
     }
 
+    @Test
+    public void should_register_adaptor_once_per_type() {
+        YmlAdaptor adaptor = TypeAdaptorFactory.getAdaptor(FlowTest[].class);
+        Assert.assertSame(adaptor, TypeAdaptorFactory.getAdaptor(FlowTest[].class));
+        Assert.assertSame(TypeAdaptorFactory.getAdaptor(FlowTest.class), TypeAdaptorFactory.getAdaptor(FlowTest.class));
+    }
+
+    @Ignore("benchmark only, run manually")
+    @Test
+    public void should_benchmark_parse_complex_yml() {
+        final int rounds = 1000;
+        String demo = loadDemoFlowYaml("demo-yml-complex.yaml");
+        Map flow = YmlParser.ymlToMap(demo);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < rounds; i++) {
+            YmlParser.ymlToMap(demo);
+        }
+        long parseTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < rounds; i++) {
+            FlowTest[] flows = YmlParser.fromObject(flow.get("flow"), FlowTest[].class);
+            Assert.assertEquals(1, flows.length);
+            Assert.assertNotNull(YmlParser.toObject(flows));
+        }
+        long bindTime = System.currentTimeMillis() - start;
+
+        System.out.println(String.format("%s rounds: yml to map %s ms, bind and write %s ms", rounds, parseTime, bindTime));
+    }
+
     @Test
     public void should_primitative_boolean(){
         String demo = loadDemoFlowYaml("demo-yml-primitive-boolen.yaml");
@@ -11,7 +11,10 @@ CREATE TABLE `agent` (
   `status` varchar(10) NOT NULL,
   `created_date` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `updated_date` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-  PRIMARY KEY (`agent_zone`,`agent_name`)
+  PRIMARY KEY (`agent_zone`,`agent_name`),
+  KEY `idx_agent_zone_status` (`agent_zone`,`status`),
+  KEY `idx_agent_session_id` (`session_id`),
+  KEY `idx_agent_token` (`token`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 
@@ -36,7 +39,10 @@ CREATE TABLE `cmd` (
   `retry` int(11) DEFAULT NULL,
   `created_date` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `updated_date` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `idx_cmd_agent_status` (`agent_zone`,`agent_name`,`status`,`created_date`),
+  KEY `idx_cmd_session_id` (`session_id`),
+  KEY `idx_cmd_status` (`status`,`created_date`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 
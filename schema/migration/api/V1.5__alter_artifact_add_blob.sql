@@ -0,0 +1,5 @@
+USE flow_api_db;
+
+ALTER TABLE `artifact` ADD COLUMN `sha256` varchar(64) DEFAULT NULL;
+ALTER TABLE `artifact` ADD COLUMN `size` bigint DEFAULT NULL;
+CREATE INDEX `idx_artifact_sha256` ON `artifact` (`sha256`);